@@ -0,0 +1,88 @@
+package com.paul.app;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.paul.app.expression.ColumnEvaluator;
+import com.paul.app.expression.CompiledExpression;
+import com.paul.app.expression.Program;
+
+/**
+ * One formula applied to a million rows of variable values: row by row with
+ * the compiled program, column by column on the calling thread and column by
+ * column on the common fork-join pool.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ColumnEvaluatorBenchmark {
+
+	@Param({ "let(a, x, add(mult(a, y), z))", "mult(add(x, y), sub(x, let(a, mult(y, 3), add(a, z))))" })
+	public String formula;
+
+	@Param({ "1000000" })
+	public int rows;
+
+	private Program program;
+	private ColumnEvaluator evaluator;
+	private int[][] columns;
+	private int[] results;
+
+	@Setup
+	public void setUp() throws Exception {
+
+		CompiledExpression compiled = Calculator.compile(formula);
+		program = compiled.getProgram();
+		evaluator = new ColumnEvaluator(compiled);
+
+		Random random = new Random(1);
+		columns = new int[compiled.getVariables().size()][rows];
+		for (int[] column : columns) {
+			for (int row = 0; row < rows; ++row) {
+				column[row] = random.nextInt();
+			}
+		}
+		results = new int[rows];
+	}
+
+	@Benchmark
+	public int[] rowByRow() {
+		int[] inputs = new int[columns.length];
+		for (int row = 0; row < rows; ++row) {
+			for (int i = 0; i < columns.length; ++i) {
+				inputs[i] = columns[i][row];
+			}
+			results[row] = program.execute(inputs);
+		}
+		return results;
+	}
+
+	@Benchmark
+	public int[] columns() {
+		evaluator.evaluate(columns, results);
+		return results;
+	}
+
+	@Benchmark
+	public int[] parallel() {
+		evaluator.evaluate(columns, results, ForkJoinPool.commonPool());
+		return results;
+	}
+
+}
@@ -0,0 +1,62 @@
+package com.paul.app;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.paul.app.expression.CommonSubexpressions;
+import com.paul.app.expression.CompiledExpression;
+import com.paul.app.expression.ConstantFolder;
+import com.paul.app.expression.Parser;
+
+/**
+ * A generated expression repeating the same subtree: evaluating every copy
+ * against evaluating the shared node once, and the cost of sharing it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CommonSubexpressionsBenchmark {
+
+	@Param({ "16", "256" })
+	public int copies;
+
+	private CompiledExpression tree;
+	private CompiledExpression shared;
+	private int update = 0;
+
+	@Setup
+	public void setUp() throws Exception {
+		tree = ConstantFolder.fold(Parser.parse(Expressions.repeated(copies)));
+		shared = CommonSubexpressions.share(tree);
+	}
+
+	@Benchmark
+	public int tree() {
+		return tree.evaluate(++update, 5);
+	}
+
+	@Benchmark
+	public int shared() {
+		return shared.evaluate(++update, 5);
+	}
+
+	@Benchmark
+	public CompiledExpression share() {
+		return CommonSubexpressions.share(tree);
+	}
+
+}
@@ -0,0 +1,84 @@
+package com.paul.app;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.paul.app.expression.CompiledExpression;
+
+/**
+ * End to end evaluation of the footer examples and of generated deep and wide
+ * expressions: parsing, folding and running the program on every call, and
+ * running an already compiled program.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class EvaluationBenchmark {
+
+	// deep:n is a chain of n lets, wide:n a balanced tree of height n
+	@Param({ "footer", "deep:10", "deep:200", "wide:6", "wide:14" })
+	public String shape;
+
+	private String[] expressions;
+	private CompiledExpression[] compiled;
+	private int[] noInputs = new int[0];
+
+	@Setup
+	public void setUp() throws Exception {
+
+		if ("footer".equals(shape)) {
+			expressions = Expressions.FOOTER;
+		} else {
+			int size = Integer.parseInt(shape.substring(shape.indexOf(':') + 1));
+			expressions = new String[] {
+					shape.startsWith("deep") ? Expressions.deep(size) : Expressions.wide(size) };
+		}
+
+		compiled = new CompiledExpression[expressions.length];
+		for (int i = 0; i < expressions.length; ++i) {
+			compiled[i] = Calculator.compile(expressions[i]);
+		}
+	}
+
+	@Benchmark
+	public int evaluate() throws Exception {
+		int sum = 0;
+		for (String expression : expressions) {
+			sum += Calculator.evaluate(expression).intValue();
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public int compile() throws Exception {
+		int size = 0;
+		for (String expression : expressions) {
+			size += Calculator.compile(expression).getFrameSize();
+		}
+		return size;
+	}
+
+	@Benchmark
+	public int execute() {
+		int sum = 0;
+		for (CompiledExpression expression : compiled) {
+			sum += expression.eval(noInputs);
+		}
+		return sum;
+	}
+
+}
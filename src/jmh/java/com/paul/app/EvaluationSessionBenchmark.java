@@ -0,0 +1,90 @@
+package com.paul.app;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.paul.app.expression.CompiledExpression;
+import com.paul.app.expression.EvaluationSession;
+import com.paul.app.expression.Parser;
+
+/**
+ * Changing one of many variables of a large expression: evaluating the whole
+ * program again against re-evaluating only the nodes that depend on it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class EvaluationSessionBenchmark {
+
+	// a balanced tree with one distinct variable per leaf
+	@Param({ "6", "12" })
+	public int levels;
+
+	private CompiledExpression expression;
+	private EvaluationSession session;
+	private int[] values;
+	private int update = 0;
+
+	@Setup
+	public void setUp() throws Exception {
+
+		StringBuilder text = new StringBuilder();
+		tree(text, levels, 1);
+		// not folded, nothing could be folded anyway
+		expression = Parser.parse(text);
+
+		values = new int[expression.getVariables().size()];
+		session = new EvaluationSession(expression);
+		for (int i = 0; i < values.length; ++i) {
+			values[i] = i + 1;
+			session.set(i, values[i]);
+		}
+		session.evaluate();
+	}
+
+	@Benchmark
+	public int fullEvaluation() {
+		int variable = update++ % values.length;
+		values[variable] = update;
+		return expression.evaluate(values);
+	}
+
+	@Benchmark
+	public int session() {
+		session.set(update++ % values.length, update);
+		return session.evaluate();
+	}
+
+	private static void tree(StringBuilder text, int levels, int index) {
+
+		if (levels == 0) {
+			// letters only, as variable names cannot contain digits
+			text.append('v');
+			for (int i = index; i > 0; i /= 26) {
+				text.append((char) ('a' + i % 26));
+			}
+			return;
+		}
+
+		text.append(index % 2 == 0 ? "add(" : "sub(");
+		tree(text, levels - 1, index * 2);
+		text.append(", ");
+		tree(text, levels - 1, index * 2 + 1);
+		text.append(')');
+	}
+
+}
@@ -0,0 +1,116 @@
+package com.paul.app;
+
+/**
+ * Expressions shared by the benchmarks: the examples from the help footer and
+ * generated deep, nested and wide expressions.
+ */
+final class Expressions {
+
+	static final String[] FOOTER = { "add(1, 2)", "add(1, mult(2, 3))", "mult(add(2, 2), div(9, 3))",
+			"let(a, 5, add(a, a))", "let(a, 5, let(b, mult(a, 10), add(b, a)))",
+			"let(a, let(b, 10, add(b, b)), let(b, 20, add(a, b)))" };
+
+	private static final String[] OPERATORS = { "add", "sub", "mult" };
+
+	private Expressions() {}
+
+	/**
+	 * @param depth
+	 * @return a chain of lets, each binding a variable used by the next
+	 */
+	static String deep(int depth) {
+
+		StringBuilder expression = new StringBuilder(depth * 24);
+		for (int i = 0; i < depth; ++i) {
+			expression.append("let(").append(name(i)).append(", ");
+			if (i == 0) {
+				expression.append(1);
+			} else {
+				expression.append(OPERATORS[i % OPERATORS.length]).append('(').append(name(i - 1)).append(", ")
+						.append(i % 7 + 1).append(')');
+			}
+			expression.append(", ");
+		}
+		expression.append(name(depth - 1));
+		for (int i = 0; i < depth; ++i) {
+			expression.append(')');
+		}
+		return expression.toString();
+	}
+
+	/**
+	 * @param depth
+	 * @return lets nested in the value of each other, each adding one to the
+	 *         value of the let it contains
+	 */
+	static String nested(int depth) {
+
+		StringBuilder expression = new StringBuilder(depth * 20);
+		for (int i = 0; i < depth; ++i) {
+			expression.append("let(x, ");
+		}
+		expression.append(1);
+		for (int i = 0; i < depth; ++i) {
+			expression.append(", add(x, 1))");
+		}
+		return expression.toString();
+	}
+
+	/**
+	 * @param levels
+	 * @return a balanced tree of operations with 2^levels literal leaves
+	 */
+	static String wide(int levels) {
+		StringBuilder expression = new StringBuilder(12 << levels);
+		wide(expression, levels, 1);
+		return expression.toString();
+	}
+
+	private static void wide(StringBuilder expression, int levels, int index) {
+
+		if (levels == 0) {
+			expression.append(index % 9 + 1);
+			return;
+		}
+
+		expression.append(OPERATORS[index % OPERATORS.length]).append('(');
+		wide(expression, levels - 1, index * 2);
+		expression.append(", ");
+		wide(expression, levels - 1, index * 2 + 1);
+		expression.append(')');
+	}
+
+	/**
+	 * @param copies
+	 * @return a sum of copies terms over x and y, all built around the same
+	 *         subtree, as formula generators tend to produce
+	 */
+	static String repeated(int copies) {
+
+		StringBuilder expression = new StringBuilder(copies * 64);
+		for (int i = 0; i < copies - 1; ++i) {
+			expression.append("add(");
+		}
+		for (int i = 0; i < copies; ++i) {
+			expression.append("add(mult(mult(add(x, y), sub(y, 3)), 10), ").append(i % 7 + 1).append(')');
+			if (i > 0) {
+				expression.append(')');
+			}
+			if (i < copies - 1) {
+				expression.append(", ");
+			}
+		}
+		return expression.toString();
+	}
+
+	// letters only, as variable names cannot contain digits
+	private static String name(int i) {
+		StringBuilder name = new StringBuilder("v");
+		do {
+			name.append((char) ('a' + i % 26));
+			i /= 26;
+		} while (i > 0);
+		return name.toString();
+	}
+
+}
@@ -0,0 +1,68 @@
+package com.paul.app;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.paul.app.expression.CompiledExpression;
+import com.paul.app.expression.Parser;
+
+/**
+ * Parsing, compiling and evaluating expressions nested far deeper than the
+ * Java stack would allow a recursive evaluator to go. The time per call should
+ * grow linearly with the depth. The innermost let nests one function deeper
+ * than the depth, so the fork raises the calculator.maxDepth limit.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Dcalculator.maxDepth=2000000")
+public class NestingBenchmark {
+
+	@Param({ "100000", "300000", "1000000" })
+	public int depth;
+
+	private String expression;
+	private CompiledExpression parsed;
+	private int[] noInputs = new int[0];
+
+	@Setup
+	public void setUp() throws Exception {
+		expression = Expressions.nested(depth);
+		// not folded, so executing still adds up every level
+		parsed = Parser.parse(expression);
+	}
+
+	@Benchmark
+	public CompiledExpression parse() throws Exception {
+		return Parser.parse(expression);
+	}
+
+	@Benchmark
+	public CompiledExpression compile() throws Exception {
+		return Calculator.compile(expression);
+	}
+
+	@Benchmark
+	public int execute() {
+		return parsed.eval(noInputs);
+	}
+
+	@Benchmark
+	public Integer reference() throws Exception {
+		return Calculator.evaluateReference(expression);
+	}
+
+}
@@ -0,0 +1,69 @@
+package com.paul.app;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.paul.app.expression.CompiledExpression;
+import com.paul.app.expression.NumericMode;
+import com.paul.app.expression.Parser;
+
+/**
+ * The cost of each numeric mode on the help footer examples, none of which
+ * overflows, and of the big mode once its values no longer fit in a long.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class NumericModeBenchmark {
+
+	@Param({ "int", "checked", "long", "big" })
+	public String mode;
+
+	private CompiledExpression[] expressions;
+	private CompiledExpression wide;
+
+	@Setup
+	public void setUp() throws Exception {
+
+		// not folded, as only the int mode folds
+		expressions = new CompiledExpression[Expressions.FOOTER.length];
+		for (int i = 0; i < expressions.length; ++i) {
+			Parser parser = new Parser(Expressions.FOOTER[i]);
+			parser.setNumericMode(NumericMode.forName(mode));
+			expressions[i] = parser.parse();
+		}
+
+		Parser parser = new Parser("let(a, mult(x, x), let(b, mult(a, a), sub(div(mult(b, x), a), 12345)))");
+		parser.setNumericMode(NumericMode.BIG);
+		wide = parser.parse();
+	}
+
+	@Benchmark
+	public long footer() {
+		long sum = 0;
+		for (CompiledExpression expression : expressions) {
+			sum += expression.compute().longValue();
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public Number bigBeyondLong() {
+		return wide.compute(3037000499L);
+	}
+
+}
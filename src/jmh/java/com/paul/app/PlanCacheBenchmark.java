@@ -0,0 +1,85 @@
+package com.paul.app;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.paul.app.expression.ExpressionCache;
+import com.paul.app.expression.ExpressionCompiler;
+import com.paul.app.expression.NumericMode;
+import com.paul.app.expression.PlanCache;
+import com.paul.app.generator.ExpressionGenerator;
+
+/**
+ * Getting a few thousand compiled expressions at startup: parsing their text
+ * against loading their plans from a cache file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PlanCacheBenchmark {
+
+	private static final int EXPRESSIONS = 3000;
+
+	private String[] keys;
+	private File file;
+
+	@Setup
+	public void setUp() throws Exception {
+
+		ExpressionGenerator generator = new ExpressionGenerator(42);
+		generator.setMaxDepth(6);
+		generator.setVariableCount(3);
+
+		PlanCache plans = new PlanCache();
+		keys = new String[EXPRESSIONS];
+		for (int i = 0; i < keys.length; ++i) {
+			StringBuilder expression = new StringBuilder();
+			generator.generate(expression);
+			keys[i] = ExpressionCache.normalize(expression);
+			plans.put(keys[i], ExpressionCompiler.compile(keys[i]));
+		}
+
+		file = File.createTempFile("plans", ".bin");
+		plans.save(file.toPath());
+	}
+
+	@TearDown
+	public void tearDown() {
+		file.delete();
+	}
+
+	@Benchmark
+	public int parse() throws Exception {
+		int size = 0;
+		for (String key : keys) {
+			size += ExpressionCompiler.compile(key).getFrameSize();
+		}
+		return size;
+	}
+
+	@Benchmark
+	public int load() throws Exception {
+		PlanCache plans = PlanCache.load(file.toPath());
+		int size = 0;
+		for (String key : keys) {
+			size += plans.get(key, NumericMode.INT).getFrameSize();
+		}
+		return size;
+	}
+
+}
@@ -0,0 +1,84 @@
+package com.paul.app;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The stages of the reference stack evaluator on the footer examples:
+ * splitting an expression into the working stack, evaluating the stack, and
+ * the token checks both stages use.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ReferenceEvaluatorBenchmark {
+
+	@Param({ "0", "1", "2", "3", "4", "5" })
+	public int example;
+
+	private static final String[] TOKENS = { "add", "let", "x", "abc", "12345", "-2147483648", "99999999999",
+			"1a" };
+
+	private String expression;
+	private ArrayDeque<String> workingStack;
+
+	@Setup
+	public void setUp() throws Exception {
+		expression = Expressions.FOOTER[example];
+		workingStack = Calculator.buildWorkingStack(expression);
+	}
+
+	@Benchmark
+	public ArrayDeque<String> buildWorkingStack() throws Exception {
+		return Calculator.buildWorkingStack(expression);
+	}
+
+	@Benchmark
+	public Integer evaluateStack() throws Exception {
+		// evaluating empties the stack
+		return Calculator.evaluateStack(workingStack.clone());
+	}
+
+	@Benchmark
+	public Integer evaluateReference() throws Exception {
+		return Calculator.evaluateReference(expression);
+	}
+
+	@Benchmark
+	public void isInt(Blackhole blackhole) {
+		for (String token : TOKENS) {
+			blackhole.consume(Calculator.isInt(token));
+		}
+	}
+
+	@Benchmark
+	public void isVariable(Blackhole blackhole) {
+		for (String token : TOKENS) {
+			blackhole.consume(Calculator.isVariable(token));
+		}
+	}
+
+	@Benchmark
+	public void getInt(Blackhole blackhole) {
+		for (int i = 4; i < 6; ++i) {
+			blackhole.consume(Calculator.getInt(TOKENS[i]));
+		}
+	}
+
+}
@@ -0,0 +1,73 @@
+package com.paul.app;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time to the first answer of a one-shot invocation, java -jar calculator.jar
+ * "add(2,4)" run in a new JVM, with and without the class data sharing
+ * archive written by mvn package. Run mvn package before the benchmark.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class StartupBenchmark {
+
+	@Param({ "false", "true" })
+	public boolean archive;
+
+	private List<String> command;
+
+	@Setup
+	public void setUp() {
+
+		File jar = new File("target", "calculator.jar");
+		File jsa = new File("target", "calculator.jsa");
+		if (!jar.isFile() || archive && !jsa.isFile()) {
+			throw new IllegalStateException("Run mvn package to build " + jar + " and " + jsa);
+		}
+
+		command = new ArrayList<String>();
+		command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+		if (archive) {
+			command.add("-XX:SharedArchiveFile=" + jsa);
+		}
+		command.add("-jar");
+		command.add(jar.getPath());
+		command.add("add(2,4)");
+	}
+
+	@Benchmark
+	public String firstAnswer() throws Exception {
+
+		Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+		String answer;
+		try (BufferedReader output = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+			answer = output.readLine();
+		}
+		if (process.waitFor() != 0 || !"Expression Answer: 6".equals(answer)) {
+			throw new IllegalStateException("Unexpected output: " + answer);
+		}
+		return answer;
+	}
+
+}
@@ -0,0 +1,125 @@
+package com.paul.app.batch;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reads a file of expressions through memory mapped regions and through a
+ * BufferedReader, once only splitting lines and once evaluating them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MappedLineReaderBenchmark {
+
+	@Param({ "1000000" })
+	public int lines;
+
+	private File file;
+
+	@Setup(Level.Trial)
+	public void createFile() throws IOException {
+
+		file = File.createTempFile("expressions", ".txt");
+		Random random = new Random(42);
+
+		PrintWriter writer = new PrintWriter(file, "UTF-8");
+		try {
+			for (int i = 0; i < lines; ++i) {
+				writer.printf("let(a, %d, let(b, mult(a, %d), add(b, a)))%n", random.nextInt(1000),
+						random.nextInt(1000));
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void deleteFile() {
+		file.delete();
+	}
+
+	@Benchmark
+	public long splitMapped() throws IOException {
+		return split(new MappedLineReader(file.toPath()));
+	}
+
+	@Benchmark
+	public long splitBufferedReader() throws IOException {
+		return split(openReader());
+	}
+
+	@Benchmark
+	public long evaluateMapped() throws IOException {
+		return evaluate(new MappedLineReader(file.toPath()));
+	}
+
+	@Benchmark
+	public long evaluateBufferedReader() throws IOException {
+		return evaluate(openReader());
+	}
+
+	private LineSource openReader() throws IOException {
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		return new ReaderLineSource(new BufferedReader(
+				Channels.newReader(channel, StandardCharsets.UTF_8.newDecoder(), BatchEvaluator.BUFFER_SIZE),
+				BatchEvaluator.BUFFER_SIZE));
+	}
+
+	private static long split(LineSource source) throws IOException {
+
+		long characters = 0;
+		try {
+			CharSequence line;
+			while ((line = source.readLine()) != null) {
+				characters += line.length();
+			}
+		} finally {
+			source.close();
+		}
+		return characters;
+	}
+
+	private static long evaluate(LineSource source) throws IOException {
+
+		long length = 0;
+		StringBuilder result = new StringBuilder(64);
+		try {
+			CharSequence line;
+			while ((line = source.readLine()) != null) {
+				result.setLength(0);
+				BatchEvaluator.evaluateLine(line, null, result);
+				length += result.length();
+			}
+		} finally {
+			source.close();
+		}
+		return length;
+	}
+
+}
@@ -0,0 +1,100 @@
+package com.paul.app.batch;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A script of 100000 definitions forming independent chains, each line
+ * reading the previous line of its chain, evaluated on one and on several
+ * threads. With one chain every line waits for the one above it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ScriptEvaluatorBenchmark {
+
+	private static final int LINES = 100000;
+
+	@Param({ "1", "1000" })
+	public int chains;
+
+	@Param({ "1", "4" })
+	public int threads;
+
+	private String script;
+
+	@Setup
+	public void setUp() {
+
+		StringBuilder text = new StringBuilder(LINES * 64);
+		int length = LINES / chains;
+
+		// the chains are interleaved, as independent calculations would be
+		for (int step = 0; step < length; ++step) {
+			for (int chain = 0; chain < chains; ++chain) {
+				String previous = step == 0 ? String.valueOf(chain) : name(chain, step - 1);
+				text.append(name(chain, step)).append(" = add(mult(").append(previous)
+						.append(", 3), let(a, ").append(previous).append(", div(sub(a, 7), 2)))\n");
+			}
+		}
+
+		script = text.toString();
+	}
+
+	private static String name(int chain, int step) {
+		StringBuilder name = new StringBuilder("c");
+		letters(name, chain);
+		name.append('s');
+		letters(name, step);
+		return name.toString();
+	}
+
+	private static void letters(StringBuilder name, int value) {
+		do {
+			name.append((char) ('a' + value % 26));
+			value /= 26;
+		} while (value > 0);
+	}
+
+	@Benchmark
+	public long run() throws IOException {
+		ScriptEvaluator evaluator = new ScriptEvaluator(threads, null);
+		evaluator.run(new BufferedReader(new StringReader(script)), new NullWriter());
+		return evaluator.getErrorCount();
+	}
+
+	private static final class NullWriter extends Writer {
+
+		@Override
+		public void write(char[] buffer, int offset, int length) {
+		}
+
+		@Override
+		public void flush() {
+		}
+
+		@Override
+		public void close() {
+		}
+
+	}
+
+}
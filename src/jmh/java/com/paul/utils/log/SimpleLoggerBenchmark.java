@@ -0,0 +1,94 @@
+package com.paul.utils.log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.paul.utils.log.SimpleLogger.Level;
+
+/**
+ * Cost of an INFO log call on the evaluation path at each logger level: eager
+ * string concatenation against a template, a supplier and an explicit level
+ * check. At NONE and ERROR nothing is written; at INFO and DEBUG the messages
+ * go to rolling files in a temporary directory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SimpleLoggerBenchmark {
+
+	@Param({ "NONE", "DEBUG", "INFO", "ERROR" })
+	public Level level;
+
+	private final SimpleLogger logger = new SimpleLogger();
+	private File directory;
+
+	public String element = "add";
+	public int arg1 = 12345;
+	public int arg2 = 678;
+
+	@Setup
+	public void setUp() throws IOException {
+		directory = Files.createTempDirectory("logs").toFile();
+		logger.setDirectory(directory);
+		logger.setRolling(64 << 20, 0, 2, false);
+		logger.setLevel(level);
+	}
+
+	@TearDown
+	public void tearDown() {
+		logger.shutdown();
+		for (File file : directory.listFiles()) {
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	@Benchmark
+	public void eagerConcatenation() {
+		logger.logMessage(Level.INFO, "Evaluating Expression: " + element + "(" + arg1 + "," + arg2 + ")");
+	}
+
+	@Benchmark
+	public void template() {
+		logger.logFormat(Level.INFO, "Evaluating Expression: {}({},{})", element, arg1, arg2);
+	}
+
+	@Benchmark
+	public void supplier() {
+		final String e = element;
+		final int a = arg1;
+		final int b = arg2;
+		logger.logMessage(Level.INFO, new Supplier<String>() {
+			@Override
+			public String get() {
+				return "Evaluating Expression: " + e + "(" + a + "," + b + ")";
+			}
+		});
+	}
+
+	@Benchmark
+	public void guarded() {
+		if (logger.isEnabled(Level.INFO)) {
+			logger.logMessage(Level.INFO, "Evaluating Expression: " + element + "(" + arg1 + "," + arg2 + ")");
+		}
+	}
+}
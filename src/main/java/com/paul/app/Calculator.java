@@ -3,8 +3,15 @@
  */
 package com.paul.app;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.ArrayDeque;
-import java.util.Hashtable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -14,8 +21,26 @@ import org.apache.commons.cli.Option;
 import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
 
+import com.paul.app.batch.BatchEvaluator;
+import com.paul.app.batch.ParallelBatchEvaluator;
+import com.paul.app.batch.ScriptEvaluator;
+import com.paul.app.expression.CommonSubexpressions;
+import com.paul.app.expression.CompiledExpression;
+import com.paul.app.expression.ConstantFolder;
+import com.paul.app.expression.ExpressionCache;
+import com.paul.app.expression.ExpressionParseException;
+import com.paul.app.expression.NumericMode;
+import com.paul.app.expression.Parser;
+import com.paul.app.expression.PlanCache;
+import com.paul.app.metrics.CalculatorMetrics;
+import com.paul.app.metrics.CalculatorMetrics.Failure;
+import com.paul.app.metrics.CalculatorMetrics.Phase;
+import com.paul.app.metrics.PrometheusExporter;
+import com.paul.app.server.CalculatorServer;
+import com.paul.utils.log.AsyncLogWriter;
 import com.paul.utils.log.SimpleLogger;
 import com.paul.utils.log.SimpleLogger.Level;
+import com.paul.utils.log.TraceWriter;
 
 /**
  * @author Paul Canvin
@@ -30,12 +55,44 @@ public class Calculator {
 	private static final String LET = "let";
 	private static final SimpleLogger logger = SimpleLogger.getInstance();
 
+	private static final String USAGE = "java -jar calculator.jar "
+			+ "[-h] [-info] [-error] [-debug] [-async] [-logdir <dir>] [-logsize <mb>] [-logage <minutes>] [-logkeep <n>] [-logzip] [-metrics <file>] [-metricsport <port>] [-mode <int|checked|long|big>] [-reference [-trace <file>]] \"<expression>\" | -batch [-threads <n>] [-cache <size>] [-plancache <file>] [<file>] | -script [-threads <n>] [-cache <size>] [-plancache <file>] [<file>] | -serve [-port <port>] [-cache <size>] [-plancache <file>]";
+
+	// evaluate with the original stack based evaluator instead of the compiled tree
+	private static boolean referenceMode = false;
+
+	// evaluate newline delimited expressions from batchFile, or stdin when null
+	private static boolean batchMode = false;
+	private static String batchFile = null;
+	// evaluate the lines of the batch as a script whose definitions persist
+	private static boolean scriptMode = false;
+	private static int batchThreads = 1;
+
+	// answer expressions sent to a local port until the process is stopped
+	private static boolean serveMode = false;
+	private static int servePort = CalculatorServer.DEFAULT_PORT;
+
+	// compiled expressions kept by -batch and -serve, 0 to parse every expression
+	private static int cacheSize = ExpressionCache.DEFAULT_MAX_SIZE;
+
+	// compiled expressions saved between runs of -batch and -serve
+	private static String planCacheFile = null;
+
+	// binary record of the reference evaluator steps, replacing their log lines
+	private static TraceWriter tracer = null;
+
+	// Prometheus text dump written on exit, and local port serving it
+	private static String metricsFile = null;
+	private static int metricsPort = -1;
+	private static PrometheusExporter metricsEndpoint = null;
+	private static final CalculatorMetrics metrics = CalculatorMetrics.getInstance();
+
 	/**
 	 * @param args
 	 */
 	public static void main(String[] args) {
 
-		Integer answer = null;
+		Number answer = null;
 		String expression = null;
 		ArrayDeque<String> expressionStack;
 
@@ -43,15 +100,89 @@ public class Calculator {
 
 			expression = processCommandLine(args);
 
-			if (expression != null) {
+			if (serveMode) {
+
+				final CalculatorServer server = new CalculatorServer(servePort,
+						new ExpressionCache(Math.max(cacheSize, 1)));
+				metrics.registerCache(server.getCache());
+				loadPlans(server.getCache());
+				Runtime.getRuntime().addShutdownHook(new Thread() {
+					@Override
+					public void run() {
+						try {
+							server.close();
+						} catch (Exception e) {
+							// exiting anyway
+						}
+						savePlans(server.getCache());
+						writeMetrics();
+					}
+				});
+
+				server.start();
+				System.out.println("Calculator listening on port " + server.getPort());
+				server.join();
+
+			} else if (batchMode) {
+
+				logger.logMessage(Level.INFO,
+						(scriptMode ? "Script input: " : "Batch input: ") + (batchFile == null ? "stdin" : batchFile));
+
+				ExpressionCache cache = cacheSize > 0 || planCacheFile != null
+						? new ExpressionCache(Math.max(cacheSize, 1)) : null;
+				if (cache != null) {
+					metrics.registerCache(cache);
+					loadPlans(cache);
+				}
+
+				if (scriptMode) {
+					ScriptEvaluator script = new ScriptEvaluator(batchThreads, cache);
+					script.run(batchFile);
+
+					logger.logMessage(Level.INFO, "Script finished: " + script.getLineCount() + " lines, "
+							+ script.getErrorCount() + " errors, " + script.getEnvironment().size() + " variables");
+				} else if (batchThreads > 1) {
+					ParallelBatchEvaluator batch = new ParallelBatchEvaluator(batchThreads, cache);
+					batch.run(batchFile);
+
+					logger.logMessage(Level.INFO, "Batch finished: " + batch.getLineCount() + " expressions, "
+							+ batch.getErrorCount() + " errors");
+				} else {
+					BatchEvaluator batch = new BatchEvaluator(cache);
+					batch.run(batchFile);
+
+					logger.logMessage(Level.INFO, "Batch finished: " + batch.getLineCount() + " expressions, "
+							+ batch.getErrorCount() + " errors");
+				}
+
+				if (cache != null) {
+					logger.logMessage(Level.INFO, cache.toString());
+					savePlans(cache);
+				}
+
+			} else if (expression != null) {
 
 				logger.logMessage(Level.INFO, "Input Expression: " + expression);
 
-				expressionStack = buildWorkingStack(expression);
+				if (referenceMode) {
+					long start = System.nanoTime();
+					expressionStack = buildWorkingStack(expression);
+					if (metrics.isEnabled()) {
+						metrics.recordPhase(Phase.COMPILE, start);
+						metrics.recordStackDepth(expressionStack.size());
+					}
 
-				logger.logMessage(Level.INFO, "Working Stack: " + expressionStack);
+					logger.logMessage(Level.INFO, "Working Stack: " + expressionStack);
 
-				answer = evaluateStack(expressionStack);
+					start = System.nanoTime();
+					answer = evaluateStack(expressionStack);
+					if (metrics.isEnabled()) {
+						metrics.recordPhase(Phase.EVALUATE, start);
+						metrics.recordEvaluated();
+					}
+				} else {
+					answer = evaluate(expression);
+				}
 
 				if (answer != null) {
 					String message = "Expression Answer: " + answer;
@@ -64,14 +195,34 @@ public class Calculator {
 				}
 			}
 
+		} catch (ExpressionParseException epex) {
+			StringBuilder marker = new StringBuilder();
+			for (int i = 0; i < epex.getPosition(); ++i) {
+				marker.append(' ');
+			}
+			String message = "Invalid expression: " + epex.getMessage() + "\n " + expression + "\n " + marker + "^";
+			writeErrortoConsole(message, null);
+			logger.logMessage(Level.ERROR, message);
 		} catch (ParseException pex) {
-			String message = "An error occured while trying to parse the command line arguments:\n " + args[0];
+			String message = "An error occured while trying to parse the command line arguments:\n " + pex.getMessage();
 			writeErrortoConsole(message, null);
 			logger.logMessage(Level.ERROR, message, pex);
 		} catch (Exception e) {
 			String message = "Program exited abnormally";
 			writeErrortoConsole(message, e);
 			logger.logMessage(Level.ERROR, message, e);
+		} finally {
+			writeMetrics();
+			if (metricsEndpoint != null) {
+				metricsEndpoint.stop();
+			}
+			if (tracer != null) {
+				try {
+					tracer.close();
+				} catch (IOException e) {
+					writeErrortoConsole("Unable to close the trace file", e);
+				}
+			}
 		}
 
 	}
@@ -83,33 +234,22 @@ public class Calculator {
 	 *            from main
 	 * @return String expression to be evaluated
 	 */
-	private static String processCommandLine(String[] args) throws ParseException {
-
-		CommandLine cmdLine = null;
-		String expression = null;
+	static String processCommandLine(String[] args) throws ParseException {
 
-		HelpFormatter formatter = new HelpFormatter();
-
-		// create Options object
-		Options options = new Options();
-
-		Option help = new Option("h", "print this message");
-		Option error = new Option("error", "error log level");
-		Option info = new Option("info", "info logging level");
-		Option debug = new Option("debug", "debug logging level");
+		String expression = processSimpleCommandLine(args);
+		if (expression != null) {
+			return expression;
+		}
 
-		options.addOption(help);
-		options.addOption(error);
-		options.addOption(info);
-		options.addOption(debug);
+		CommandLine cmdLine = null;
+		Options options = createOptions();
 
 		CommandLineParser parser = new DefaultParser();
 		cmdLine = parser.parse(options, args);
 
 		// check options passed
 		if (cmdLine.hasOption("h")) {
-			formatter.printHelp("java -jar calculator.jar " + "[-h] [-info] [-error] [-debug] \"<expression>\"", null,
-					options, getFooter());
+			printHelp(options);
 		} else {
 			if (cmdLine.hasOption("error")) {
 				logger.setLevel(Level.ERROR);
@@ -120,12 +260,108 @@ public class Calculator {
 			if (cmdLine.hasOption("info")) {
 				logger.setLevel(Level.INFO);
 			}
+			if (cmdLine.hasOption("async")) {
+				logger.setAsync(AsyncLogWriter.DEFAULT_CAPACITY, AsyncLogWriter.OverflowPolicy.BLOCK);
+			}
+			if (cmdLine.hasOption("logdir")) {
+				logger.setDirectory(new File(cmdLine.getOptionValue("logdir")));
+			}
+			if (cmdLine.hasOption("logsize") || cmdLine.hasOption("logage") || cmdLine.hasOption("logkeep")
+					|| cmdLine.hasOption("logzip")) {
+				long logSizeMb = 0;
+				long logAgeMinutes = 0;
+				int logFiles = 0;
+				try {
+					if (cmdLine.hasOption("logsize")) {
+						logSizeMb = Long.parseLong(cmdLine.getOptionValue("logsize"));
+					}
+					if (cmdLine.hasOption("logage")) {
+						logAgeMinutes = Long.parseLong(cmdLine.getOptionValue("logage"));
+					}
+					if (cmdLine.hasOption("logkeep")) {
+						logFiles = Integer.parseInt(cmdLine.getOptionValue("logkeep"));
+					}
+				} catch (NumberFormatException nex) {
+					throw new ParseException("Invalid log size, age or number of log files");
+				}
+				if (logSizeMb < 0 || logAgeMinutes < 0 || logFiles < 0) {
+					throw new ParseException("Invalid log size, age or number of log files");
+				}
+				logger.setRolling(logSizeMb << 20, TimeUnit.MINUTES.toMillis(logAgeMinutes), logFiles,
+						cmdLine.hasOption("logzip"));
+			}
+			if (cmdLine.hasOption("metrics") || cmdLine.hasOption("metricsport")) {
+				metricsFile = cmdLine.getOptionValue("metrics");
+				if (cmdLine.hasOption("metricsport")) {
+					try {
+						metricsPort = Integer.parseInt(cmdLine.getOptionValue("metricsport"));
+					} catch (NumberFormatException nex) {
+						throw new ParseException("Invalid metrics port: " + cmdLine.getOptionValue("metricsport"));
+					}
+				}
+				startMetrics();
+			}
+			if (cmdLine.hasOption("trace")) {
+				try {
+					tracer = new TraceWriter(Paths.get(cmdLine.getOptionValue("trace")));
+				} catch (IOException e) {
+					throw new ParseException("Unable to create trace file: " + e.getMessage());
+				}
+			}
+			if (cmdLine.hasOption("mode")) {
+				try {
+					NumericMode.setDefault(NumericMode.forName(cmdLine.getOptionValue("mode")));
+				} catch (IllegalArgumentException iaex) {
+					throw new ParseException(iaex.getMessage());
+				}
+			}
+			if (cmdLine.hasOption("reference")) {
+				if (NumericMode.getDefault() != NumericMode.INT) {
+					throw new ParseException("The reference evaluator only evaluates int expressions");
+				}
+				referenceMode = true;
+			}
 
 			String[] remainingArguments = cmdLine.getArgs();
 
-			if (remainingArguments.length != 1) {
-				formatter.printHelp("java -jar calculator.jar " + "[-h] [-info] [-error] [-debug] \"<expression>\"", null,
-						options, getFooter());
+			if (cmdLine.hasOption("cache")) {
+				try {
+					cacheSize = Integer.parseInt(cmdLine.getOptionValue("cache"));
+				} catch (NumberFormatException nex) {
+					throw new ParseException("Invalid cache size: " + cmdLine.getOptionValue("cache"));
+				}
+			}
+			if (cmdLine.hasOption("plancache")) {
+				planCacheFile = cmdLine.getOptionValue("plancache");
+			}
+
+			if (cmdLine.hasOption("serve") && remainingArguments.length == 0) {
+				serveMode = true;
+				if (cmdLine.hasOption("port")) {
+					try {
+						servePort = Integer.parseInt(cmdLine.getOptionValue("port"));
+					} catch (NumberFormatException nex) {
+						throw new ParseException("Invalid port: " + cmdLine.getOptionValue("port"));
+					}
+				}
+			} else if ((cmdLine.hasOption("batch") || cmdLine.hasOption("script")) && remainingArguments.length <= 1) {
+				batchMode = true;
+				scriptMode = cmdLine.hasOption("script");
+				if (remainingArguments.length == 1) {
+					batchFile = remainingArguments[0];
+				}
+				if (cmdLine.hasOption("threads")) {
+					try {
+						batchThreads = Integer.parseInt(cmdLine.getOptionValue("threads"));
+					} catch (NumberFormatException nex) {
+						throw new ParseException("Invalid number of threads: " + cmdLine.getOptionValue("threads"));
+					}
+					if (batchThreads < 1) {
+						throw new ParseException("Invalid number of threads: " + batchThreads);
+					}
+				}
+			} else if (remainingArguments.length != 1) {
+				printHelp(options);
 			} else {
 				expression = remainingArguments[0];
 			}
@@ -135,6 +371,234 @@ public class Calculator {
 
 	}
 
+	/**
+	 * Answers the usual one-shot invocation, an expression after at most the
+	 * log level options, without building the commons-cli options, which are
+	 * most of the classes loaded before the first answer
+	 * 
+	 * @param args
+	 *            from main
+	 * @return expression to be evaluated, or null if args need the full
+	 *         command line parser
+	 */
+	static String processSimpleCommandLine(String[] args) {
+
+		if (args.length == 0 || args[args.length - 1].startsWith("-")) {
+			return null;
+		}
+
+		boolean error = false;
+		boolean debug = false;
+		boolean info = false;
+		for (int i = 0; i < args.length - 1; ++i) {
+			if (args[i].equals("-error")) {
+				error = true;
+			} else if (args[i].equals("-debug")) {
+				debug = true;
+			} else if (args[i].equals("-info")) {
+				info = true;
+			} else {
+				return null;
+			}
+		}
+
+		// same precedence as the full parser
+		if (error) {
+			logger.setLevel(Level.ERROR);
+		}
+		if (debug) {
+			logger.setLevel(Level.DEBUG);
+		}
+		if (info) {
+			logger.setLevel(Level.INFO);
+		}
+
+		return args[args.length - 1];
+	}
+
+	private static Options createOptions() {
+
+		Options options = new Options();
+
+		Option help = new Option("h", "print this message");
+		Option error = new Option("error", "error log level");
+		Option info = new Option("info", "info logging level");
+		Option debug = new Option("debug", "debug logging level");
+		Option async = new Option("async", "write log messages on a background thread");
+		Option reference = new Option("reference", "evaluate with the reference stack evaluator");
+		Option mode = new Option("mode", true,
+				"int wraps on overflow (default), checked fails on int overflow, long evaluates as long and fails on overflow, big never overflows");
+		mode.setArgName("mode");
+		Option batch = new Option("batch", "evaluate one expression per line of a file, or of stdin if no file is given");
+		Option script = new Option("script",
+				"evaluate a file, or stdin if no file is given, as a script: lines name = <expression> and let(name, <expression>) define variables for the lines below");
+		Option threads = new Option("threads", true, "number of threads evaluating a batch or script");
+		threads.setArgName("n");
+		Option serve = new Option("serve", "answer newline delimited expressions sent to a local TCP port");
+		Option port = new Option("port", true, "port for -serve, default " + CalculatorServer.DEFAULT_PORT);
+		port.setArgName("port");
+		Option cache = new Option("cache", true,
+				"compiled expressions kept by -batch and -serve, default " + ExpressionCache.DEFAULT_MAX_SIZE);
+		cache.setArgName("size");
+		Option planCache = new Option("plancache", true,
+				"file the expressions compiled by -batch and -serve are saved to and loaded from on the next run");
+		planCache.setArgName("file");
+		Option logDir = new Option("logdir", true, "directory the log files are written to, default the current directory");
+		logDir.setArgName("dir");
+		Option logSize = new Option("logsize", true, "start a new log file after this many megabytes");
+		logSize.setArgName("mb");
+		Option logAge = new Option("logage", true, "start a new log file after this many minutes");
+		logAge.setArgName("minutes");
+		Option logKeep = new Option("logkeep", true, "number of log files kept, the oldest are deleted");
+		logKeep.setArgName("n");
+		Option logZip = new Option("logzip", "gzip log files once a new one is started");
+		Option metricsOption = new Option("metrics", true,
+				"write evaluation counters and latencies in the Prometheus text format to a file on exit");
+		metricsOption.setArgName("file");
+		Option metricsPortOption = new Option("metricsport", true,
+				"serve the metrics in the Prometheus text format at http://localhost:<port>/metrics");
+		metricsPortOption.setArgName("port");
+		Option trace = new Option("trace", true,
+				"record the steps of the reference evaluator in a binary file, decoded by com.paul.utils.log.TraceDecoder");
+		trace.setArgName("file");
+
+		options.addOption(help);
+		options.addOption(error);
+		options.addOption(info);
+		options.addOption(debug);
+		options.addOption(async);
+		options.addOption(reference);
+		options.addOption(mode);
+		options.addOption(batch);
+		options.addOption(script);
+		options.addOption(threads);
+		options.addOption(serve);
+		options.addOption(port);
+		options.addOption(cache);
+		options.addOption(planCache);
+		options.addOption(logDir);
+		options.addOption(logSize);
+		options.addOption(logAge);
+		options.addOption(logKeep);
+		options.addOption(logZip);
+		options.addOption(trace);
+		options.addOption(metricsOption);
+		options.addOption(metricsPortOption);
+
+		return options;
+	}
+
+	// the help text is only built when it is printed
+	private static void printHelp(Options options) {
+
+		new HelpFormatter().printHelp(USAGE, null, options, getFooter());
+	}
+
+	/**
+	 * Compiles an expression into a tree that can be evaluated repeatedly
+	 * without re-tokenizing
+	 * 
+	 * @param inputExpression
+	 * @return CompiledExpression
+	 * @throws Exception
+	 *             if the expression is not valid
+	 */
+	public static CompiledExpression compile(String inputExpression) throws Exception {
+
+		long start = System.nanoTime();
+		CompiledExpression parsed;
+
+		try {
+			parsed = Parser.parse(inputExpression);
+		} catch (ExpressionParseException epex) {
+			if (metrics.isEnabled()) {
+				metrics.recordFailure(Failure.PARSE_ERROR);
+			}
+			throw epex;
+		}
+
+		logger.logFormat(Level.DEBUG, "Compiled expression: {}", parsed);
+
+		CompiledExpression folded = ConstantFolder.fold(parsed);
+		CompiledExpression compiled = CommonSubexpressions.share(folded);
+
+		if (metrics.isEnabled()) {
+			metrics.recordPhase(Phase.COMPILE, start);
+		}
+
+		// counting nodes walks both trees
+		if (logger.isEnabled(Level.DEBUG)) {
+			logger.logMessage(Level.DEBUG, "Constant folding: " + parsed.getRoot().size() + " nodes before, "
+					+ folded.getRoot().size() + " nodes after: " + folded);
+			logger.logMessage(Level.DEBUG, "Common subexpressions: " + folded.getRoot().size() + " nodes before, "
+					+ CommonSubexpressions.countDistinct(compiled.getRoot()) + " distinct nodes after");
+			logger.logMessage(Level.DEBUG, "Program: " + compiled.getProgram());
+		}
+
+		return compiled;
+
+	}
+
+	/**
+	 * Compiles and evaluates an expression
+	 * 
+	 * @param inputExpression
+	 * @return answer of expression, an Integer unless the numeric mode is long
+	 *         or big
+	 * @throws Exception
+	 *             if the expression is not valid or cannot be evaluated
+	 */
+	static Number evaluate(String inputExpression) throws Exception {
+
+		CompiledExpression compiled = compile(inputExpression);
+
+		if (!compiled.getVariables().isEmpty()) {
+			if (metrics.isEnabled()) {
+				metrics.recordFailure(Failure.MISSING_OPERAND);
+			}
+			throw new Exception("Unable to evaluate expression, variable " + compiled.getVariables().get(0)
+					+ " has not been assigned a value.");
+		}
+
+		long start = System.nanoTime();
+		Number answer;
+
+		try {
+			answer = compiled.compute();
+		} catch (ArithmeticException aex) {
+			if (metrics.isEnabled()) {
+				if (NumericMode.isOverflow(aex)) {
+					metrics.recordFailure(Failure.OVERFLOW);
+				} else if (NumericMode.isDivisionByZero(aex)) {
+					metrics.recordFailure(Failure.DIVISION_BY_ZERO);
+				}
+			}
+			throw aex;
+		}
+
+		if (metrics.isEnabled()) {
+			metrics.recordPhase(Phase.EVALUATE, start);
+			metrics.recordEvaluated();
+			metrics.recordStackDepth(compiled.getProgram().getMaxStack());
+		}
+
+		return answer;
+
+	}
+
+	/**
+	 * Evaluates an expression with the original stack based evaluator. Kept as
+	 * a reference to compare the compiled evaluator against.
+	 * 
+	 * @param inputExpression
+	 * @return Integer answer of expression
+	 * @throws Exception
+	 *             if the expression is not valid or cannot be evaluated
+	 */
+	static Integer evaluateReference(String inputExpression) throws Exception {
+		return evaluateStack(buildWorkingStack(inputExpression));
+	}
+
 	// build a stack to work off of and validate the expression tokens
 	/**
 	 * Build an expression stack and validates the expression types
@@ -144,32 +608,46 @@ public class Calculator {
 	 *         reverse polish notation
 	 * @throws Exception
 	 */
-	private static ArrayDeque<String> buildWorkingStack(String inputExpression) throws Exception {
+	static ArrayDeque<String> buildWorkingStack(String inputExpression) throws Exception {
 
 		String element = null;
 		ArrayDeque<String> workingStack = new ArrayDeque<String>();
 
 		if (inputExpression != null) {
 
-			String testing = inputExpression.replaceAll("[ ]", "");
-			testing = testing.replaceAll("[,()]+", " ");
-			String exp[] = testing.split(" ");
-
 			logger.logMessage(Level.DEBUG, "Building working stack");
 
+			// spaces are ignored and ',', '(' and ')' separate the elements
+			ArrayList<String> exp = new ArrayList<String>();
+			StringBuilder current = new StringBuilder();
+
+			for (int i = 0; i < inputExpression.length(); ++i) {
+				char c = inputExpression.charAt(i);
+				if (c == ',' || c == '(' || c == ')') {
+					if (current.length() > 0) {
+						exp.add(current.toString());
+						current.setLength(0);
+					}
+				} else if (c != ' ') {
+					current.append(c);
+				}
+			}
+			if (current.length() > 0) {
+				exp.add(current.toString());
+			}
+
 			// put in proper order
-			for (int i = exp.length - 1; i >= 0; --i) {
+			for (int i = exp.size() - 1; i >= 0; --i) {
 
 				// force all input characters to lowercase
-				element = exp[i].toLowerCase();
+				element = exp.get(i).toLowerCase();
 
 				// validate element types
 				if (isOperator(element) || isVariable(element) || isInt(element)) {
 					workingStack.push(element);
-					logger.logMessage(Level.DEBUG,
-							"Pushing element on stack: " + element + " (size: " + workingStack.size() + ")");
+					tracePush(Level.DEBUG, element, workingStack.size());
 				} else {
-					logger.logMessage(Level.DEBUG, "Nonvalid element type located: " + element);
+					logger.logFormat(Level.DEBUG, "Nonvalid element type located: {}", element);
 					System.err.println("Error: Element: " + element + " is not a valid element type.");
 					throw new Exception(" Element: " + element + " is not a valid element type.");
 				}
@@ -191,7 +669,7 @@ public class Calculator {
 	 *         evaluated
 	 * @throws Exception
 	 */
-	private static Integer evaluateStack(ArrayDeque<String> workingStack) throws Exception {
+	static Integer evaluateStack(ArrayDeque<String> workingStack) throws Exception {
 
 		String arg1 = null;
 		String arg2 = null;
@@ -199,14 +677,13 @@ public class Calculator {
 		Integer intValue2 = null;
 		String element = null;
 		Integer intAnswer = null;
-		Hashtable<String, String> varValPair = new Hashtable<String, String>();
+		HashMap<String, String> varValPair = new HashMap<String, String>();
 
 		while (workingStack.size() > 1) {
 
 			if (workingStack.size() > 0) {
 				element = workingStack.pop();
-				logger.logMessage(Level.INFO,
-						"Popping stack element : " + element + " (remaining size: " + workingStack.size() + ")");
+				tracePop(element, workingStack.size());
 			} else {
 				throw new Exception(
 						"The stack is empty and the expression has not finished evaluating. Most likely cause is incorrect expression.");
@@ -220,8 +697,7 @@ public class Calculator {
 
 				if (workingStack.size() > 0) {
 					arg1 = workingStack.pop();
-					logger.logMessage(Level.INFO,
-							"Popping stack element : " + arg1 + " (remaining size: " + workingStack.size() + ")");
+					tracePop(arg1, workingStack.size());
 				} else {
 					throw new Exception(
 							"The stack is empty and the expression has not finished evaluating. Most likely cause is incorrect expression.");
@@ -232,7 +708,7 @@ public class Calculator {
 					if (varValPair.containsKey(arg1)) {
 						String tempValue = varValPair.get(arg1);
 						intValue1 = getInt(tempValue);
-						logger.logMessage(Level.INFO, "Getting variable from table: " + arg1 + "=" + intValue1);
+						traceLoad(arg1, intValue1);
 					}
 				} else if (isInt(arg1)) {
 					intValue1 = getInt(arg1);
@@ -242,8 +718,7 @@ public class Calculator {
 
 				if (workingStack.size() > 0) {
 					arg2 = workingStack.pop();
-					logger.logMessage(Level.INFO,
-							"Popping stack element : " + arg2 + " (remaining size: " + workingStack.size() + ")");
+					tracePop(arg2, workingStack.size());
 				} else {
 					throw new Exception(
 							"The stack is empty and the expression has not finished evaluating. Most likely cause is incorrect expression.");
@@ -253,7 +728,7 @@ public class Calculator {
 					if (varValPair.containsKey(arg2)) {
 						String tempValue = varValPair.get(arg2);
 						intValue2 = getInt(tempValue);
-						logger.logMessage(Level.INFO, "Getting variable from table: " + arg2 + "=" + intValue2);
+						traceLoad(arg2, intValue2);
 					}
 				} else if (isInt(arg2)) {
 					intValue2 = getInt(arg2);
@@ -264,8 +739,7 @@ public class Calculator {
 				// perform operation
 				Integer tempResult = eval(operator, intValue1, intValue2);
 				workingStack.push(String.valueOf(tempResult.intValue()));
-				logger.logMessage(Level.INFO,
-						"Pushing element on stack: " + tempResult + " (size: " + workingStack.size() + ")");
+				tracePush(Level.INFO, workingStack.peek(), workingStack.size());
 
 			} else if (LET.equalsIgnoreCase(element)) {
 
@@ -273,8 +747,7 @@ public class Calculator {
 
 				if (workingStack.size() > 0) {
 					arg1 = workingStack.pop();
-					logger.logMessage(Level.INFO,
-							"Popping stack element : " + arg1 + " (remaining size: " + workingStack.size() + ")");
+					tracePop(arg1, workingStack.size());
 				} else {
 					throw new Exception(
 							"The stack is empty and the expression has not finished evaluating. Most likely cause is incorrect expression.");
@@ -288,20 +761,19 @@ public class Calculator {
 
 				if (workingStack.size() > 0) {
 					arg2 = workingStack.pop();
-					logger.logMessage(Level.INFO,
-							"Popping stack element : " + arg2 + " (remaining size: " + workingStack.size() + ")");
+					tracePop(arg2, workingStack.size());
 				} else {
 					throw new Exception(
 							"The stack is empty and the expression has not finished evaluating. Most likely cause is incorrect expression.");
 				}
 
-				logger.logMessage(Level.INFO, "Evaluating Expression: " + element + "(" + arg1 + "," + arg2 + ")");
+				traceEvaluate(element, arg1, arg2);
 
 				if (isVariable(arg2)) {
 					if (varValPair.containsKey(arg2)) {
 						String tempValue = varValPair.get(arg2);
 						value = getInt(tempValue);
-						logger.logMessage(Level.INFO, "Getting variable from table: " + arg2 + "=" + value);
+						traceLoad(arg2, value);
 					}
 				} else if (isInt(arg2)) {
 					value = getInt(arg2);
@@ -312,20 +784,18 @@ public class Calculator {
 				arg2 = String.valueOf(value);
 
 				// out name/value pair in map
-				logger.logMessage(Level.INFO, "Setting variable in table: " + arg1 + "=" + arg2);
+				traceStore(arg1, arg2);
 				varValPair.put(arg1, arg2);
 
 			} else {
 				workingStack.push(element);
-				logger.logMessage(Level.INFO,
-						"Pushing element on stack: " + element + " (size: " + workingStack.size() + ")");
+				tracePush(Level.INFO, element, workingStack.size());
 			}
 		}
 
 		if (workingStack.size() == 1) {
 			String answer = workingStack.pop();
-			logger.logMessage(Level.INFO,
-					"Poppping stack element : " + answer + "(remaining size: " + workingStack.size() + ")");
+			tracePop(answer, workingStack.size());
 			intAnswer = getInt(answer);
 		} else {
 			throw new Exception("All items in the stack have been evaluated and no answer has been determined.");
@@ -337,7 +807,10 @@ public class Calculator {
 
 	/**
 	 * 
-	 * Performs operation with operator
+	 * Performs operation with operator. A let whose value is itself an
+	 * operation is kept on an explicit stack while the value is evaluated, and
+	 * the body of a let is evaluated in the same loop, so nesting does not use
+	 * the Java stack.
 	 * 
 	 * @param operator
 	 *            operation to be performed
@@ -348,9 +821,11 @@ public class Calculator {
 	 *            statement
 	 * @return
 	 * @throws Exception
+	 *             if the expression is incorrect or nested deeper than
+	 *             {@link Parser#DEFAULT_MAX_DEPTH} lets
 	 */
 	private static Integer performOperation(String operator, ArrayDeque<String> workingStack,
-			Hashtable<String, String> varValPair) throws Exception {
+			HashMap<String, String> varValPair) throws Exception {
 
 		String arg1;
 		String arg2;
@@ -358,118 +833,159 @@ public class Calculator {
 		Integer intValue2 = null;
 		Integer tempResult = null;
 
-		if (isMathOperator(operator)) {
+		// variables of the lets whose value is being evaluated
+		ArrayDeque<String> pendingLets = new ArrayDeque<String>();
 
-			if (workingStack.size() > 0) {
-				arg1 = workingStack.pop();
-				logger.logMessage(Level.INFO,
-						"Poppping stack element : " + arg1 + "(remaining size: " + workingStack.size() + ")");
-			} else {
-				throw new Exception(
-						"The stack is empty and the expression has not finished evaluating. Most likely cause is incorrect expression.");
-			}
+		while (true) {
 
-			if (workingStack.size() > 0) {
-				arg2 = workingStack.pop();
-				logger.logMessage(Level.INFO,
-						"Poppping stack element : " + arg2 + "(remaining size: " + workingStack.size() + ")");
-			} else {
-				throw new Exception(
-						"The stack is empty and the expression has not finished evaluating. Most likely cause is incorrect expression.");
-			}
+			if (isMathOperator(operator)) {
 
-			logger.logMessage(Level.INFO, "Evaluating Expression: " + operator + "(" + arg1 + "," + arg2 + ")");
+				intValue1 = null;
+				intValue2 = null;
 
-			// arg1
-			if (isInt(arg1)) {
-				intValue1 = getInt(arg1);
-			} else {
-				// see if value for variable in hash map
-				if (varValPair.containsKey(arg1)) {
-					String tempValue = varValPair.get(arg1);
-					intValue1 = getInt(tempValue);
-					logger.logMessage(Level.INFO, "Getting variable from table: " + arg1 + "=" + intValue1);
+				if (workingStack.size() > 0) {
+					arg1 = workingStack.pop();
+					tracePop(arg1, workingStack.size());
+				} else {
+					throw new Exception(
+							"The stack is empty and the expression has not finished evaluating. Most likely cause is incorrect expression.");
 				}
-			}
 
-			// arg2
-			if (isInt(arg2)) {
-				intValue2 = getInt(arg2);
-			} else {
-				// see if value for variable in hash map
-				if (varValPair.containsKey(arg2)) {
-					String tempValue = varValPair.get(arg2);
-					intValue2 = getInt(tempValue);
-					logger.logMessage(Level.INFO, "Getting variable from table: " + arg2 + "=" + intValue2);
+				if (workingStack.size() > 0) {
+					arg2 = workingStack.pop();
+					tracePop(arg2, workingStack.size());
+				} else {
+					throw new Exception(
+							"The stack is empty and the expression has not finished evaluating. Most likely cause is incorrect expression.");
 				}
-			}
 
-			tempResult = eval(operator, intValue1, intValue2);
+				traceEvaluate(operator, arg1, arg2);
 
-		} else if (LET.equalsIgnoreCase(operator)) {
+				// arg1
+				if (isInt(arg1)) {
+					intValue1 = getInt(arg1);
+				} else {
+					// see if value for variable in hash map
+					if (varValPair.containsKey(arg1)) {
+						String tempValue = varValPair.get(arg1);
+						intValue1 = getInt(tempValue);
+						traceLoad(arg1, intValue1);
+					}
+				}
+
+				// arg2
+				if (isInt(arg2)) {
+					intValue2 = getInt(arg2);
+				} else {
+					// see if value for variable in hash map
+					if (varValPair.containsKey(arg2)) {
+						String tempValue = varValPair.get(arg2);
+						intValue2 = getInt(tempValue);
+						traceLoad(arg2, intValue2);
+					}
+				}
 
-			Integer value = null;
+				tempResult = eval(operator, intValue1, intValue2);
 
-			if (workingStack.size() > 0) {
-				arg1 = workingStack.pop();
-				logger.logMessage(Level.INFO,
-						"Poppping stack element : " + arg1 + "(remaining size: " + workingStack.size() + ")");
-			} else {
-				throw new Exception(
-						"The stack is empty and the expression has not finished evaluating. Most likely cause is incorrect expression.");
-			}
+			} else if (LET.equalsIgnoreCase(operator)) {
 
-			if (!isVariable(arg1)) {
+				Integer value = null;
 
-				throw new Exception(
-						"Invalid element sequence, first element after a let must always be a variable. Element located: "
-								+ arg1);
-			}
+				if (workingStack.size() > 0) {
+					arg1 = workingStack.pop();
+					tracePop(arg1, workingStack.size());
+				} else {
+					throw new Exception(
+							"The stack is empty and the expression has not finished evaluating. Most likely cause is incorrect expression.");
+				}
 
-			if (workingStack.size() > 0) {
-				arg2 = workingStack.pop();
-				logger.logMessage(Level.INFO,
-						"Poppping stack element : " + arg2 + "(remaining size: " + workingStack.size() + ")");
-			} else {
-				throw new Exception(
-						"The stack is empty and the expression has not finished evaluating. Most likely cause is incorrect expression.");
-			}
+				if (!isVariable(arg1)) {
 
-			logger.logMessage(Level.INFO, "Evaluating Expression: " + operator + "(" + arg1 + "," + arg2 + ")");
+					throw new Exception(
+							"Invalid element sequence, first element after a let must always be a variable. Element located: "
+									+ arg1);
+				}
 
-			if (isVariable(arg2)) {
-				if (varValPair.containsKey(arg2)) {
-					String tempValue = varValPair.get(arg2);
-					value = getInt(tempValue);
-					logger.logMessage(Level.INFO, "Getting variable from table: " + arg2 + "=" + value);
+				if (workingStack.size() > 0) {
+					arg2 = workingStack.pop();
+					tracePop(arg2, workingStack.size());
+				} else {
+					throw new Exception(
+							"The stack is empty and the expression has not finished evaluating. Most likely cause is incorrect expression.");
 				}
-			} else if (isInt(arg2)) {
-				value = getInt(arg2);
-			} else if (isOperator(arg2)) {
-				value = performOperation(arg2, workingStack, varValPair);
-			}
 
-			arg2 = String.valueOf(value);
+				traceEvaluate(operator, arg1, arg2);
 
-			logger.logMessage(Level.INFO, "Setting variable in table: " + arg1 + "=" + arg2);
-			varValPair.put(arg1, arg2);
+				if (isOperator(arg2)) {
+					// evaluate the value first, the let resumes below
+					if (pendingLets.size() == Parser.DEFAULT_MAX_DEPTH) {
+						throw new Exception(
+								"Expression is nested deeper than " + Parser.DEFAULT_MAX_DEPTH + " functions.");
+					}
+					pendingLets.push(arg1);
+					operator = arg2;
+					continue;
+				}
+
+				if (isVariable(arg2)) {
+					if (varValPair.containsKey(arg2)) {
+						String tempValue = varValPair.get(arg2);
+						value = getInt(tempValue);
+						traceLoad(arg2, value);
+					}
+				} else if (isInt(arg2)) {
+					value = getInt(arg2);
+				}
+
+				operator = bindLet(arg1, value, workingStack, varValPair);
+				continue;
 
-			// pop expression
-			if (workingStack.size() > 0) {
-				arg1 = workingStack.pop();
-				logger.logMessage(Level.INFO,
-						"Poppping stack element : " + arg1 + "(remaining size: " + workingStack.size() + ")");
 			} else {
-				throw new Exception(
-						"The stack is empty and the expression has not finished evaluating. Most likely cause is incorrect expression.");
+				tempResult = null;
 			}
 
-			tempResult = performOperation(arg1, workingStack, varValPair);
+			if (pendingLets.isEmpty()) {
+				return tempResult;
+			}
 
+			// the operation was the value of a let, go on with its body
+			operator = bindLet(pendingLets.pop(), tempResult, workingStack, varValPair);
 		}
 
-		return tempResult;
+	}
+
+	/**
+	 * Assigns the value of a let to its variable
+	 * 
+	 * @param name
+	 *            variable of the let
+	 * @param value
+	 *            value of the let
+	 * @param workingStack
+	 *            elements of the expression in reverse polish notation
+	 * @param varValPair
+	 *            contains definition assigned variables through a "let"
+	 *            statement
+	 * @return first element of the body of the let
+	 * @throws Exception
+	 */
+	private static String bindLet(String name, Integer value, ArrayDeque<String> workingStack,
+			HashMap<String, String> varValPair) throws Exception {
+
+		String arg2 = String.valueOf(value);
 
+		traceStore(name, arg2);
+		varValPair.put(name, arg2);
+
+		// pop expression
+		if (workingStack.size() > 0) {
+			String body = workingStack.pop();
+			tracePop(body, workingStack.size());
+			return body;
+		} else {
+			throw new Exception(
+					"The stack is empty and the expression has not finished evaluating. Most likely cause is incorrect expression.");
+		}
 	}
 
 	/**
@@ -498,14 +1014,27 @@ public class Calculator {
 	}
 
 	/**
-	 * Checks to if token contains has a value of [a-z, A-Z]
+	 * Checks to if token contains only characters of [a-z, A-Z] and is not an
+	 * operator
 	 * 
 	 * @param token
 	 *            expression element
-	 * @return true if token is one of [a-z, A-Z], false otherwise
+	 * @return true if token is a variable name, false otherwise
 	 */
 	static boolean isVariable(String token) {
-		return (token.matches("[a-z,A-Z]"));
+
+		if (token.isEmpty() || isOperator(token)) {
+			return false;
+		}
+
+		for (int i = 0; i < token.length(); ++i) {
+			char c = token.charAt(i);
+			if (!((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z'))) {
+				return false;
+			}
+		}
+
+		return true;
 	}
 
 	/**
@@ -516,16 +1045,31 @@ public class Calculator {
 	 * @return true if token is an Integer , false otherwise
 	 */
 	static boolean isInt(String token) {
-		boolean isInt = false;
 
-		try {
-			Integer.parseInt(token);
-			isInt = true;
-		} catch (NumberFormatException nex) {
-			// ignore
+		int start = 0;
+
+		if (token.length() > 0 && (token.charAt(0) == '-' || token.charAt(0) == '+')) {
+			start = 1;
+		}
+
+		if (token.length() == start) {
+			return false;
 		}
 
-		return isInt;
+		// accumulate negatively so Integer.MIN_VALUE can be represented
+		long value = 0;
+		for (int i = start; i < token.length(); ++i) {
+			char c = token.charAt(i);
+			if (c < '0' || c > '9') {
+				return false;
+			}
+			value = value * 10 - (c - '0');
+			if (value < Integer.MIN_VALUE) {
+				return false;
+			}
+		}
+
+		return token.charAt(0) == '-' || -value <= Integer.MAX_VALUE;
 	}
 
 	/**
@@ -560,22 +1104,29 @@ public class Calculator {
 		if (operator != null && x != null && y != null) {
 
 			if (ADD.equals(operator)) {
-				logger.logMessage(Level.INFO, "Performing Operation: " + ADD + "(" + x + "," + y + ")");
+				traceOperate(ADD, x, y);
 				answer = x + y;
 			} else if (SUB.equals(operator)) {
-				logger.logMessage(Level.INFO, "Performing Operation: " + SUB + "(" + x + "," + y + ")");
+				traceOperate(SUB, x, y);
 				answer = x - y;
 			} else if (MULT.equals(operator)) {
-				logger.logMessage(Level.INFO, "Performing Operation: " + MULT + "(" + x + "," + y + ")");
+				traceOperate(MULT, x, y);
 				answer = x * y;
 			} else if (DIV.equals(operator)) {
-				logger.logMessage(Level.INFO, "Performing Operation: " + DIV + "(" + x + "," + y + ")");
+				traceOperate(DIV, x, y);
+				if (y == 0 && metrics.isEnabled()) {
+					metrics.recordFailure(Failure.DIVISION_BY_ZERO);
+				}
 				answer = x / y;
 			} else {
 				throw new Exception("Invalid Operator " + x + " " + operator + " " + y);
 			}
 		} else {
-			
+
+			if (metrics.isEnabled() && operator != null) {
+				metrics.recordFailure(Failure.MISSING_OPERAND);
+			}
+
 			if (operator == null) {
 				throw new Exception("Unable to evaluate expression with arguments: " + x + "," + y + " no operator is present." );				
 			} else if (x == null) {
@@ -589,6 +1140,112 @@ public class Calculator {
 
 	}
 
+	private static void startMetrics() throws ParseException {
+
+		metrics.setEnabled(true);
+
+		try {
+			metrics.registerMBean();
+		} catch (JMException e) {
+			logger.logMessage(Level.ERROR, "Unable to register the metrics MBean", e);
+		}
+
+		if (metricsPort >= 0) {
+			try {
+				metricsEndpoint = new PrometheusExporter(metrics);
+				metricsEndpoint.start(metricsPort);
+			} catch (IOException e) {
+				throw new ParseException("Unable to serve metrics on port " + metricsPort + ": " + e.getMessage());
+			}
+		}
+	}
+
+	private static void loadPlans(ExpressionCache cache) throws IOException {
+
+		if (planCacheFile != null) {
+			PlanCache plans = PlanCache.load(Paths.get(planCacheFile));
+			cache.setPlanCache(plans);
+			logger.logMessage(Level.INFO, "Plan cache " + planCacheFile + " loaded: " + plans);
+		}
+	}
+
+	private static void savePlans(ExpressionCache cache) {
+
+		PlanCache plans = cache.getPlanCache();
+		if (plans == null) {
+			return;
+		}
+
+		logger.logMessage(Level.INFO, plans.toString());
+		if (plans.isModified()) {
+			try {
+				plans.save(Paths.get(planCacheFile));
+			} catch (IOException e) {
+				writeErrortoConsole("Unable to save the plan cache " + planCacheFile, e);
+			}
+		}
+	}
+
+	private static void writeMetrics() {
+
+		if (metricsFile != null) {
+			try {
+				new PrometheusExporter(metrics).writeFile(new File(metricsFile));
+			} catch (IOException e) {
+				writeErrortoConsole("Unable to write metrics to " + metricsFile, e);
+			}
+		}
+	}
+
+	// the level is checked before the int arguments are boxed for logFormat
+	private static void tracePush(Level level, String element, int size) {
+		if (tracer != null) {
+			tracer.push(level, element, size);
+		} else if (logger.isEnabled(level)) {
+			logger.logFormat(level, "Pushing element on stack: {} (size: {})", element, size);
+		}
+	}
+
+	private static void tracePop(String element, int size) {
+		if (tracer != null) {
+			tracer.pop(Level.INFO, element, size);
+		} else if (logger.isEnabled(Level.INFO)) {
+			logger.logFormat(Level.INFO, "Popping stack element : {} (remaining size: {})", element, size);
+		}
+	}
+
+	private static void traceLoad(String name, Integer value) {
+		if (tracer != null) {
+			tracer.load(Level.INFO, name, value);
+		} else if (logger.isEnabled(Level.INFO)) {
+			logger.logFormat(Level.INFO, "Getting variable from table: {}={}", name, value);
+		}
+	}
+
+	private static void traceStore(String name, String value) {
+		if (tracer != null) {
+			tracer.store(Level.INFO, name, value);
+		} else {
+			logger.logFormat(Level.INFO, "Setting variable in table: {}={}", name, value);
+		}
+	}
+
+	private static void traceEvaluate(String operator, String arg1, String arg2) {
+		if (tracer != null) {
+			tracer.evaluate(Level.INFO, operator, arg1, arg2);
+		} else {
+			logger.logFormat(Level.INFO, "Evaluating Expression: {}({},{})", operator, arg1, arg2);
+		}
+	}
+
+	private static void traceOperate(String operator, Integer x, Integer y) {
+		if (tracer != null) {
+			tracer.operate(Level.INFO, operator, x, y);
+		} else if (logger.isEnabled(Level.INFO)) {
+			logger.logFormat(Level.INFO, "Performing Operation: {}({},{})", operator, x, y);
+		}
+	}
+
 	private static void writeErrortoConsole(String msg, Exception ex) {
 
 		if (ex == null) {
@@ -612,7 +1269,7 @@ public class Calculator {
 		headerString.append("\nmult(add(2, 2), div(9, 3))");
 		headerString.append("\nlet(a, 5, add(a, a))");
 		headerString.append("\nlet(a, 5, let(b, mult(a, 10), add(b, a)))");
-		headerString.append("\nlet(a, let(b, 10, add(b, b)), let(b, 20, add(a, b))");
+		headerString.append("\nlet(a, let(b, 10, add(b, b)), let(b, 20, add(a, b)))");
 		headerString.append("\n\nAn expression is one of the following:");
 		headerString.append("\n• Numbers: integers between Integer.MIN_VALUE and Integer.MAX_VALUE");
 		headerString.append("\n• Variables: strings of characters, where each character is one of a-z, A-Z");
@@ -623,11 +1280,15 @@ public class Calculator {
 		headerString.append(
 				"\n\nAs with arithmetic functions, the value expression and the expression where the variable is used may be an arbitrary expression from this list.");
 		headerString.append(
-				"\n\nLog files will be created in the directory the program is invoked in. No log file will be produced unlesss one of the log file options is set.");
+				"\n\nLog files will be created in the directory the program is invoked in, or the one given with -logdir. No log file will be produced unlesss one of the log level options is set.");
 		headerString.append("\n\nInvocation examples:");
 		headerString.append("\n\njava -jar calculator.jar -h");
 		headerString.append("\njava -jar calculator.jar \"add(2,4)\"");
 		headerString.append("\njava -jar calculator.jar -info \"let(a, 5, add(a, a))\"");
+		headerString.append("\njava -jar calculator.jar -batch expressions.txt > results.txt");
+		headerString.append("\njava -jar calculator.jar -batch -threads 8 expressions.txt > results.txt");
+		headerString.append("\njava -jar calculator.jar -script -threads 8 formulas.txt > results.txt");
+		headerString.append("\njava -jar calculator.jar -serve -port 7070");
 		return headerString.toString();
 
 	}
@@ -0,0 +1,272 @@
+package com.paul.app.batch;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+
+import com.paul.app.expression.CompiledExpression;
+import com.paul.app.expression.ExpressionCache;
+import com.paul.app.expression.ExpressionCompiler;
+import com.paul.app.expression.ExpressionParseException;
+import com.paul.app.expression.NumericMode;
+import com.paul.app.metrics.CalculatorMetrics;
+import com.paul.app.metrics.CalculatorMetrics.Failure;
+import com.paul.app.metrics.CalculatorMetrics.Phase;
+
+/**
+ * Evaluates newline delimited expressions and writes one result per line.
+ * 
+ * A line that cannot be evaluated produces an error record instead of a
+ * result and does not stop the run. Nothing is logged per line.
+ * 
+ * @author Paul Canvin
+ *
+ */
+public class BatchEvaluator {
+
+	/** prefix of the record written for a line that cannot be evaluated */
+	public static final String ERROR_PREFIX = "ERROR: ";
+
+	private static final CalculatorMetrics metrics = CalculatorMetrics.getInstance();
+
+	static final int BUFFER_SIZE = 1 << 16;
+
+	private final ExpressionCache cache;
+
+	private long lineCount = 0;
+	private long errorCount = 0;
+
+	public BatchEvaluator() {
+		this(null);
+	}
+
+	/**
+	 * @param cache
+	 *            compiled expressions to reuse for repeated lines, or null to
+	 *            parse every line
+	 */
+	public BatchEvaluator(ExpressionCache cache) {
+		this.cache = cache;
+	}
+
+	/**
+	 * Evaluates every line of a file, or of stdin when no file is given, and
+	 * writes the results to stdout
+	 * 
+	 * @param fileName
+	 *            file to read or null for stdin
+	 * @throws IOException
+	 */
+	public void run(String fileName) throws IOException {
+
+		LineSource lines = openInput(fileName);
+		Writer writer = openOutput();
+
+		try {
+			run(lines, writer);
+		} finally {
+			lines.close();
+			writer.flush();
+		}
+	}
+
+	/**
+	 * Opens a file through memory mapping, or stdin through a buffered reader
+	 * 
+	 * @param fileName
+	 *            file to read or null for stdin
+	 * @return LineSource
+	 * @throws IOException
+	 */
+	static LineSource openInput(String fileName) throws IOException {
+
+		if (fileName != null) {
+			return new MappedLineReader(Paths.get(fileName));
+		}
+
+		FileChannel channel = new FileInputStream(FileDescriptor.in).getChannel();
+
+		return new ReaderLineSource(new BufferedReader(
+				Channels.newReader(channel, StandardCharsets.UTF_8.newDecoder(), BUFFER_SIZE), BUFFER_SIZE));
+	}
+
+	/**
+	 * @return buffered Writer on stdout, bypassing the autoflushing System.out
+	 */
+	static Writer openOutput() {
+		return new BufferedWriter(
+				new OutputStreamWriter(new FileOutputStream(FileDescriptor.out), StandardCharsets.UTF_8), BUFFER_SIZE);
+	}
+
+	/**
+	 * Evaluates every line read and writes one result or error record per line
+	 * 
+	 * @param reader
+	 *            newline delimited expressions
+	 * @param writer
+	 *            receives the results, flushed once all lines are evaluated
+	 * @throws IOException
+	 */
+	public void run(BufferedReader reader, Writer writer) throws IOException {
+		run(new ReaderLineSource(reader), writer);
+	}
+
+	/**
+	 * Evaluates every line read and writes one result or error record per line
+	 * 
+	 * @param lines
+	 *            newline delimited expressions
+	 * @param writer
+	 *            receives the results, flushed once all lines are evaluated
+	 * @throws IOException
+	 */
+	public void run(LineSource lines, Writer writer) throws IOException {
+
+		CharSequence line;
+		StringBuilder result = new StringBuilder(64);
+
+		while ((line = lines.readLine()) != null) {
+			++lineCount;
+			result.setLength(0);
+			if (!evaluateLine(line, cache, result)) {
+				++errorCount;
+			}
+			result.append('\n');
+			writer.append(result);
+		}
+
+		writer.flush();
+	}
+
+	/**
+	 * Evaluates one line, as every front end reading one expression per line
+	 * does. Safe to call from several threads at once.
+	 * 
+	 * @param line
+	 *            expression text
+	 * @param cache
+	 *            compiled expressions to reuse, or null
+	 * @param result
+	 *            receives the result of the expression or an error record
+	 * @return true if the expression was evaluated, false if an error record
+	 *         was appended
+	 */
+	public static boolean evaluateLine(CharSequence line, ExpressionCache cache, StringBuilder result) {
+
+		CompiledExpression compiled;
+		boolean measure = metrics.isEnabled();
+		long start = measure ? System.nanoTime() : 0;
+
+		try {
+			compiled = cache == null ? ExpressionCompiler.compile(line) : cache.get(line);
+		} catch (ExpressionParseException epex) {
+			if (measure) {
+				metrics.recordFailure(Failure.PARSE_ERROR);
+			}
+			result.append(ERROR_PREFIX).append(epex.getMessage());
+			return false;
+		}
+
+		if (measure) {
+			metrics.recordPhase(Phase.COMPILE, start);
+		}
+
+		return appendResult(compiled, result);
+	}
+
+	/**
+	 * Evaluates an expression that has no unbound variables. Safe to call from
+	 * several threads at once.
+	 * 
+	 * @param compiled
+	 * @param result
+	 *            receives the result of the expression or an error record
+	 * @return true if the expression was evaluated, false if an error record
+	 *         was appended
+	 */
+	public static boolean appendResult(CompiledExpression compiled, StringBuilder result) {
+
+		boolean measure = metrics.isEnabled();
+
+		if (!compiled.getVariables().isEmpty()) {
+			if (measure) {
+				metrics.recordFailure(Failure.MISSING_OPERAND);
+			}
+			result.append(ERROR_PREFIX).append("Variable ").append(compiled.getVariables().get(0))
+					.append(" has not been assigned a value");
+			return false;
+		}
+
+		long start = measure ? System.nanoTime() : 0;
+
+		try {
+			if (compiled.getNumericMode().isInt()) {
+				result.append(compiled.evaluate());
+			} else {
+				result.append(compiled.compute());
+			}
+		} catch (ArithmeticException aex) {
+			appendFailure(aex, measure, result);
+			return false;
+		}
+
+		if (measure) {
+			metrics.recordPhase(Phase.EVALUATE, start);
+			metrics.recordEvaluated();
+			metrics.recordStackDepth(compiled.getProgram().getMaxStack());
+		}
+		return true;
+	}
+
+	/**
+	 * Appends the error record of an evaluation that failed
+	 * 
+	 * @param aex
+	 *            thrown by the evaluation
+	 * @param measure
+	 *            true to count the failure in the metrics
+	 * @param result
+	 *            receives the error record
+	 */
+	static void appendFailure(ArithmeticException aex, boolean measure, StringBuilder result) {
+
+		// checked modes also fail on overflow
+		if (NumericMode.isOverflow(aex)) {
+			if (measure) {
+				metrics.recordFailure(Failure.OVERFLOW);
+			}
+			result.append(ERROR_PREFIX).append(aex.getMessage());
+		} else if (NumericMode.isDivisionByZero(aex)) {
+			if (measure) {
+				metrics.recordFailure(Failure.DIVISION_BY_ZERO);
+			}
+			result.append(ERROR_PREFIX).append("Division by zero");
+		} else {
+			result.append(ERROR_PREFIX).append(aex.getMessage());
+		}
+	}
+
+	/**
+	 * @return number of lines read
+	 */
+	public long getLineCount() {
+		return lineCount;
+	}
+
+	/**
+	 * @return number of lines written as error records
+	 */
+	public long getErrorCount() {
+		return errorCount;
+	}
+
+}
@@ -0,0 +1,52 @@
+package com.paul.app.batch;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Characters of a range of bytes, read in place without decoding.
+ * 
+ * Expressions only use ASCII characters, so every byte is one character. Any
+ * other byte is passed on as is and rejected by the lexer.
+ * 
+ * @author Paul Canvin
+ *
+ */
+final class ByteSequence implements CharSequence {
+
+	private final ByteBuffer buffer;
+	private final int offset;
+	private final int length;
+
+	ByteSequence(ByteBuffer buffer, int offset, int length) {
+		this.buffer = buffer;
+		this.offset = offset;
+		this.length = length;
+	}
+
+	@Override
+	public int length() {
+		return length;
+	}
+
+	@Override
+	public char charAt(int index) {
+		return (char) (buffer.get(offset + index) & 0xff);
+	}
+
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		return new ByteSequence(buffer, offset + start, end - start);
+	}
+
+	@Override
+	public String toString() {
+
+		byte[] bytes = new byte[length];
+		for (int i = 0; i < length; ++i) {
+			bytes[i] = buffer.get(offset + i);
+		}
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+}
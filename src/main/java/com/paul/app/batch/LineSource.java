@@ -0,0 +1,21 @@
+package com.paul.app.batch;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A source of newline delimited expressions.
+ * 
+ * @author Paul Canvin
+ *
+ */
+public interface LineSource extends Closeable {
+
+	/**
+	 * @return the next line without its line terminator, or null at the end of
+	 *         the input. The characters stay valid after later calls.
+	 * @throws IOException
+	 */
+	CharSequence readLine() throws IOException;
+
+}
@@ -0,0 +1,104 @@
+package com.paul.app.batch;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads the lines of a file through memory mapped regions, scanning the
+ * mapped bytes for newlines directly.
+ * 
+ * Lines are returned as views of the mapped bytes, so no line is copied or
+ * decoded into a String. A file larger than one region is mapped one region
+ * at a time, each new region starting at the first line not yet returned.
+ * 
+ * @author Paul Canvin
+ *
+ */
+public class MappedLineReader implements LineSource {
+
+	public static final int DEFAULT_REGION_SIZE = 1 << 28;
+
+	private final FileChannel channel;
+	private final long fileSize;
+	private final int regionSize;
+
+	private MappedByteBuffer region = null;
+	private long regionStart = 0;
+	private int position = 0;
+	private int limit = 0;
+
+	public MappedLineReader(Path file) throws IOException {
+		this(file, DEFAULT_REGION_SIZE);
+	}
+
+	/**
+	 * @param file
+	 * @param regionSize
+	 *            maximum number of bytes mapped at once, which is also the
+	 *            longest line that can be read
+	 * @throws IOException
+	 */
+	public MappedLineReader(Path file, int regionSize) throws IOException {
+		this.channel = FileChannel.open(file, StandardOpenOption.READ);
+		this.fileSize = channel.size();
+		this.regionSize = regionSize;
+	}
+
+	@Override
+	public CharSequence readLine() throws IOException {
+
+		if (region == null || (position == limit && regionStart + limit < fileSize)) {
+			map(regionStart + position);
+		}
+
+		if (position == limit) {
+			return null;
+		}
+
+		int end = position;
+
+		while (true) {
+
+			while (end < limit && region.get(end) != '\n') {
+				++end;
+			}
+
+			if (end < limit || regionStart + limit == fileSize) {
+				break;
+			}
+
+			// the line continues past the region, map again from its start
+			if (position == 0) {
+				throw new IOException("Line at offset " + regionStart + " is longer than " + regionSize + " bytes");
+			}
+			end -= position;
+			map(regionStart + position);
+		}
+
+		int start = position;
+		position = end < limit ? end + 1 : end;
+
+		if (end > start && region.get(end - 1) == '\r') {
+			--end;
+		}
+
+		return new ByteSequence(region, start, end - start);
+	}
+
+	private void map(long offset) throws IOException {
+		regionStart = offset;
+		limit = (int) Math.min(regionSize, fileSize - offset);
+		region = channel.map(MapMode.READ_ONLY, offset, limit);
+		position = 0;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+}
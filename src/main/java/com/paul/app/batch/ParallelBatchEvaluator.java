@@ -0,0 +1,237 @@
+package com.paul.app.batch;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import com.paul.app.expression.ExpressionCache;
+
+/**
+ * Evaluates newline delimited expressions on a fork-join pool and writes the
+ * results in input order.
+ * 
+ * The input is read in chunks of lines. At most a fixed number of chunks are
+ * read ahead of the writer, so memory use does not grow with the size of the
+ * input. Chunks share nothing but the immutable compiled expressions, so no
+ * lock is taken while evaluating.
+ * 
+ * @author Paul Canvin
+ *
+ */
+public class ParallelBatchEvaluator {
+
+	public static final int DEFAULT_CHUNK_SIZE = 4096;
+
+	private final int parallelism;
+	private final int chunkSize;
+	private final int window;
+	private final ExpressionCache cache;
+
+	private long lineCount = 0;
+	private long errorCount = 0;
+
+	/**
+	 * @param parallelism
+	 *            number of threads evaluating chunks
+	 */
+	public ParallelBatchEvaluator(int parallelism) {
+		this(parallelism, null);
+	}
+
+	/**
+	 * @param parallelism
+	 *            number of threads evaluating chunks
+	 * @param cache
+	 *            compiled expressions shared by all threads, or null to parse
+	 *            every line
+	 */
+	public ParallelBatchEvaluator(int parallelism, ExpressionCache cache) {
+		this(parallelism, DEFAULT_CHUNK_SIZE, 2 * parallelism, cache);
+	}
+
+	/**
+	 * @param parallelism
+	 *            number of threads evaluating chunks
+	 * @param chunkSize
+	 *            number of lines evaluated by one task
+	 * @param window
+	 *            maximum number of chunks read but not yet written
+	 * @param cache
+	 *            compiled expressions shared by all threads, or null to parse
+	 *            every line
+	 */
+	public ParallelBatchEvaluator(int parallelism, int chunkSize, int window, ExpressionCache cache) {
+
+		if (parallelism < 1 || chunkSize < 1 || window < 1) {
+			throw new IllegalArgumentException("parallelism, chunk size and window must be at least 1");
+		}
+
+		this.parallelism = parallelism;
+		this.chunkSize = chunkSize;
+		this.window = window;
+		this.cache = cache;
+	}
+
+	/**
+	 * Evaluates every line of a file, or of stdin when no file is given, and
+	 * writes the results to stdout
+	 * 
+	 * @param fileName
+	 *            file to read or null for stdin
+	 * @throws IOException
+	 */
+	public void run(String fileName) throws IOException {
+
+		LineSource lines = BatchEvaluator.openInput(fileName);
+		Writer writer = BatchEvaluator.openOutput();
+
+		try {
+			run(lines, writer);
+		} finally {
+			lines.close();
+			writer.flush();
+		}
+	}
+
+	/**
+	 * Evaluates every line read and writes one result or error record per line
+	 * 
+	 * @param reader
+	 *            newline delimited expressions
+	 * @param writer
+	 *            receives the results in input order, flushed once all lines
+	 *            are evaluated
+	 * @throws IOException
+	 */
+	public void run(BufferedReader reader, Writer writer) throws IOException {
+		run(new ReaderLineSource(reader), writer);
+	}
+
+	/**
+	 * Evaluates every line read and writes one result or error record per line
+	 * 
+	 * @param lines
+	 *            newline delimited expressions
+	 * @param writer
+	 *            receives the results in input order, flushed once all lines
+	 *            are evaluated
+	 * @throws IOException
+	 */
+	public void run(LineSource lines, Writer writer) throws IOException {
+
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		ArrayDeque<Future<Chunk>> inFlight = new ArrayDeque<Future<Chunk>>(window);
+
+		try {
+			CharSequence[] chunk;
+
+			while ((chunk = readChunk(lines)) != null) {
+
+				if (inFlight.size() == window) {
+					write(inFlight.poll(), writer);
+				}
+
+				inFlight.add(pool.submit(new Chunk(chunk, cache)));
+			}
+
+			while (!inFlight.isEmpty()) {
+				write(inFlight.poll(), writer);
+			}
+
+			writer.flush();
+
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	private CharSequence[] readChunk(LineSource source) throws IOException {
+
+		CharSequence[] lines = new CharSequence[chunkSize];
+		int count = 0;
+
+		while (count < chunkSize && (lines[count] = source.readLine()) != null) {
+			++count;
+		}
+
+		if (count == 0) {
+			return null;
+		}
+
+		lineCount += count;
+
+		if (count < chunkSize) {
+			CharSequence[] partial = new CharSequence[count];
+			System.arraycopy(lines, 0, partial, 0, count);
+			return partial;
+		}
+
+		return lines;
+	}
+
+	private void write(Future<Chunk> future, Writer writer) throws IOException {
+
+		Chunk chunk;
+
+		try {
+			chunk = future.get();
+		} catch (InterruptedException iex) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for results", iex);
+		} catch (ExecutionException eex) {
+			throw new IOException("Unable to evaluate chunk", eex.getCause());
+		}
+
+		errorCount += chunk.errors;
+		writer.append(chunk.results);
+	}
+
+	/**
+	 * @return number of lines read
+	 */
+	public long getLineCount() {
+		return lineCount;
+	}
+
+	/**
+	 * @return number of lines written as error records
+	 */
+	public long getErrorCount() {
+		return errorCount;
+	}
+
+	private static final class Chunk implements Callable<Chunk> {
+
+		private final CharSequence[] lines;
+		private final ExpressionCache cache;
+		private StringBuilder results;
+		private int errors = 0;
+
+		Chunk(CharSequence[] lines, ExpressionCache cache) {
+			this.lines = lines;
+			this.cache = cache;
+		}
+
+		@Override
+		public Chunk call() {
+
+			results = new StringBuilder(lines.length * 8);
+
+			for (CharSequence line : lines) {
+				if (!BatchEvaluator.evaluateLine(line, cache, results)) {
+					++errors;
+				}
+				results.append('\n');
+			}
+
+			return this;
+		}
+
+	}
+
+}
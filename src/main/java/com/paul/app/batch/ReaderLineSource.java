@@ -0,0 +1,31 @@
+package com.paul.app.batch;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+
+/**
+ * Lines decoded by a BufferedReader, used for input that cannot be mapped
+ * such as stdin.
+ * 
+ * @author Paul Canvin
+ *
+ */
+class ReaderLineSource implements LineSource {
+
+	private final BufferedReader reader;
+
+	ReaderLineSource(BufferedReader reader) {
+		this.reader = reader;
+	}
+
+	@Override
+	public CharSequence readLine() throws IOException {
+		return reader.readLine();
+	}
+
+	@Override
+	public void close() throws IOException {
+		reader.close();
+	}
+
+}
@@ -0,0 +1,529 @@
+package com.paul.app.batch;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.paul.app.expression.CompiledExpression;
+import com.paul.app.expression.ExpressionCache;
+import com.paul.app.expression.ExpressionCompiler;
+import com.paul.app.expression.ExpressionParseException;
+import com.paul.app.metrics.CalculatorMetrics;
+import com.paul.app.metrics.CalculatorMetrics.Failure;
+import com.paul.app.metrics.CalculatorMetrics.Phase;
+
+/**
+ * Evaluates a script, one statement per line, whose variables outlive the
+ * line that defines them.
+ *
+ * A line is either an expression, or a definition of a variable for the
+ * following lines:
+ *
+ * <pre>
+ * total = add(price, tax)
+ * let(total, add(price, tax))
+ * </pre>
+ *
+ * A variable read by a line is the one most recently defined above it, or
+ * failing that the value left in the environment by an earlier run. Every
+ * line writes its value, or an error record, and a line reading a variable
+ * whose definition failed fails too. Blank lines are written as blank lines.
+ *
+ * The whole script is read before it is evaluated. Lines are compiled in
+ * parallel, then each line is evaluated as soon as the lines defining its
+ * variables are, so lines that do not depend on each other run on different
+ * threads. The results are written in input order.
+ *
+ * @author Paul Canvin
+ *
+ */
+public class ScriptEvaluator {
+
+	// lines compiled by one task
+	private static final int COMPILE_CHUNK = 256;
+
+	private static final CalculatorMetrics metrics = CalculatorMetrics.getInstance();
+
+	private final int parallelism;
+	private final ExpressionCache cache;
+
+	// values of the variables defined by the runs so far
+	private final Map<String, Number> environment = new HashMap<String, Number>();
+
+	private long lineCount = 0;
+	private long errorCount = 0;
+
+	public ScriptEvaluator() {
+		this(1, null);
+	}
+
+	/**
+	 * @param parallelism
+	 *            number of threads compiling and evaluating lines
+	 * @param cache
+	 *            compiled expressions to reuse for repeated lines, or null to
+	 *            parse every line
+	 */
+	public ScriptEvaluator(int parallelism, ExpressionCache cache) {
+
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("parallelism must be at least 1");
+		}
+
+		this.parallelism = parallelism;
+		this.cache = cache;
+	}
+
+	/**
+	 * Evaluates a script read from a file, or from stdin when no file is
+	 * given, and writes the results to stdout
+	 *
+	 * @param fileName
+	 *            file to read or null for stdin
+	 * @throws IOException
+	 */
+	public void run(String fileName) throws IOException {
+
+		LineSource lines = BatchEvaluator.openInput(fileName);
+		Writer writer = BatchEvaluator.openOutput();
+
+		try {
+			run(lines, writer);
+		} finally {
+			lines.close();
+			writer.flush();
+		}
+	}
+
+	/**
+	 * Evaluates a script and writes one result or error record per line
+	 *
+	 * @param reader
+	 *            newline delimited statements
+	 * @param writer
+	 *            receives the results in input order, flushed once all lines
+	 *            are evaluated
+	 * @throws IOException
+	 */
+	public void run(BufferedReader reader, Writer writer) throws IOException {
+		run(new ReaderLineSource(reader), writer);
+	}
+
+	/**
+	 * Evaluates a script and writes one result or error record per line
+	 *
+	 * @param lines
+	 *            newline delimited statements
+	 * @param writer
+	 *            receives the results in input order, flushed once all lines
+	 *            are evaluated
+	 * @throws IOException
+	 */
+	public void run(LineSource lines, Writer writer) throws IOException {
+
+		List<Statement> script = new ArrayList<Statement>();
+		CharSequence line;
+
+		while ((line = lines.readLine()) != null) {
+			script.add(new Statement(script.size(), line.toString()));
+		}
+
+		lineCount += script.size();
+		Statement[] statements = script.toArray(new Statement[script.size()]);
+
+		if (parallelism == 1 || statements.length < 2) {
+			for (Statement statement : statements) {
+				statement.compile(cache);
+			}
+			link(statements, null);
+			// definitions are above the lines reading them, so input order
+			// is a dependency order
+			for (Statement statement : statements) {
+				statement.evaluate();
+			}
+		} else {
+			runParallel(statements);
+		}
+
+		StringBuilder result = new StringBuilder(64);
+		for (Statement statement : statements) {
+			result.setLength(0);
+			if (statement.error != null) {
+				++errorCount;
+				result.append(statement.error);
+			} else if (statement.value != null) {
+				result.append(statement.value);
+			}
+			result.append('\n');
+			writer.append(result);
+		}
+
+		for (Statement statement : statements) {
+			if (statement.name != null) {
+				if (statement.value != null) {
+					environment.put(statement.name, statement.value);
+				} else {
+					environment.remove(statement.name);
+				}
+			}
+		}
+
+		writer.flush();
+	}
+
+	private void runParallel(Statement[] statements) throws IOException {
+
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+
+		try {
+			pool.invoke(new Compile(statements, 0, statements.length, cache));
+
+			final CountDownLatch done = new CountDownLatch(statements.length);
+			final List<Statement> ready = link(statements, done);
+
+			pool.execute(new RecursiveAction() {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected void compute() {
+					for (Statement statement : ready) {
+						statement.fork();
+					}
+				}
+			});
+
+			done.await();
+
+		} catch (InterruptedException iex) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for results", iex);
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Resolves the variables read by each line to the line defining them or
+	 * to the environment
+	 *
+	 * @param statements
+	 *            script in input order, compiled
+	 * @param done
+	 *            counted down as lines are evaluated, or null to evaluate the
+	 *            lines in input order on the calling thread
+	 * @return lines that read no variable defined by another line
+	 */
+	private List<Statement> link(Statement[] statements, CountDownLatch done) {
+
+		Map<String, Statement> definitions = new HashMap<String, Statement>();
+		List<Statement> ready = new ArrayList<Statement>();
+
+		for (Statement statement : statements) {
+
+			statement.done = done;
+
+			if (statement.compiled != null) {
+				List<String> variables = statement.compiled.getVariables();
+				statement.inputs = new Statement[variables.size()];
+				statement.values = new Number[variables.size()];
+
+				for (int i = 0; i < variables.size(); ++i) {
+					String variable = variables.get(i);
+					Statement definition = definitions.get(variable);
+					if (definition != null) {
+						statement.inputs[i] = definition;
+						definition.dependents.add(statement);
+						statement.pending.incrementAndGet();
+					} else if (environment.containsKey(variable)) {
+						statement.values[i] = environment.get(variable);
+					} else if (statement.error == null) {
+						if (metrics.isEnabled()) {
+							metrics.recordFailure(Failure.MISSING_OPERAND);
+						}
+						statement.error = BatchEvaluator.ERROR_PREFIX + "Variable " + variable
+								+ " has not been assigned a value";
+					}
+				}
+			}
+
+			if (statement.name != null) {
+				definitions.put(statement.name, statement);
+			}
+			if (statement.pending.get() == 0) {
+				ready.add(statement);
+			}
+		}
+
+		return ready;
+	}
+
+	/**
+	 * @return values of the variables defined by the runs so far, by name
+	 */
+	public Map<String, Number> getEnvironment() {
+		return Collections.unmodifiableMap(environment);
+	}
+
+	/**
+	 * @return number of lines read
+	 */
+	public long getLineCount() {
+		return lineCount;
+	}
+
+	/**
+	 * @return number of lines written as error records
+	 */
+	public long getErrorCount() {
+		return errorCount;
+	}
+
+	/**
+	 * Compiles a range of lines, splitting it between threads
+	 */
+	private static final class Compile extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Statement[] statements;
+		private final int from;
+		private final int to;
+		private final ExpressionCache cache;
+
+		Compile(Statement[] statements, int from, int to, ExpressionCache cache) {
+			this.statements = statements;
+			this.from = from;
+			this.to = to;
+			this.cache = cache;
+		}
+
+		@Override
+		protected void compute() {
+
+			if (to - from > COMPILE_CHUNK) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new Compile(statements, from, middle, cache), new Compile(statements, middle, to, cache));
+				return;
+			}
+
+			for (int i = from; i < to; ++i) {
+				statements[i].compile(cache);
+			}
+		}
+
+	}
+
+	/**
+	 * One line of a script, evaluated once the lines defining the variables
+	 * it reads are
+	 */
+	private static final class Statement extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		final int line;
+		final String text;
+
+		// variable defined by the line, or null for an expression
+		String name = null;
+		// expression of the line, with the definition around it blanked out so
+		// parse errors keep their column
+		String expression = null;
+
+		CompiledExpression compiled = null;
+
+		// line defining each variable of compiled, or null for a value taken
+		// from the environment
+		Statement[] inputs;
+		Number[] values;
+
+		final List<Statement> dependents = new ArrayList<Statement>(0);
+		// inputs not evaluated yet
+		final AtomicInteger pending = new AtomicInteger();
+		CountDownLatch done;
+
+		Number value = null;
+		String error = null;
+
+		Statement(int line, String text) {
+			this.line = line;
+			this.text = text;
+			split();
+		}
+
+		// recognizes "name = <expression>" and "let(name, <expression>)"
+		private void split() {
+
+			int position = skipWhitespace(0);
+			if (position == text.length()) {
+				return;
+			}
+
+			int nameEnd = skipLetters(position);
+			int next = skipWhitespace(nameEnd);
+
+			if (nameEnd > position && next < text.length() && text.charAt(next) == '=') {
+				name = text.substring(position, nameEnd).toLowerCase();
+				expression = blank(0, next + 1) + text.substring(next + 1);
+				return;
+			}
+
+			if (nameEnd - position == 3 && text.regionMatches(true, position, "let", 0, 3) && next < text.length()
+					&& text.charAt(next) == '(') {
+
+				int nameStart = skipWhitespace(next + 1);
+				nameEnd = skipLetters(nameStart);
+				int comma = skipWhitespace(nameEnd);
+				int close = text.length() - 1;
+				while (close > comma && isWhitespace(text.charAt(close))) {
+					--close;
+				}
+
+				if (nameEnd > nameStart && comma < close && text.charAt(comma) == ','
+						&& text.charAt(close) == ')' && isSingleArgument(comma + 1, close)) {
+					name = text.substring(nameStart, nameEnd).toLowerCase();
+					expression = blank(0, comma + 1) + text.substring(comma + 1, close) + blank(close, text.length());
+					return;
+				}
+			}
+
+			expression = text;
+		}
+
+		// true if no comma separates arguments between from and to, so a let
+		// with a body is still evaluated as an expression
+		private boolean isSingleArgument(int from, int to) {
+
+			int depth = 0;
+			for (int i = from; i < to; ++i) {
+				char c = text.charAt(i);
+				if (c == '(') {
+					++depth;
+				} else if (c == ')') {
+					--depth;
+				} else if (c == ',' && depth == 0) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private int skipWhitespace(int position) {
+			while (position < text.length() && isWhitespace(text.charAt(position))) {
+				++position;
+			}
+			return position;
+		}
+
+		private int skipLetters(int position) {
+			while (position < text.length() && isLetter(text.charAt(position))) {
+				++position;
+			}
+			return position;
+		}
+
+		private static String blank(int from, int to) {
+			char[] spaces = new char[to - from];
+			Arrays.fill(spaces, ' ');
+			return new String(spaces);
+		}
+
+		private static boolean isLetter(char c) {
+			return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+		}
+
+		private static boolean isWhitespace(char c) {
+			return c == ' ' || c == '\t' || c == '\r' || c == '\n';
+		}
+
+		void compile(ExpressionCache cache) {
+
+			if (expression == null) {
+				return;
+			}
+
+			boolean measure = metrics.isEnabled();
+			long start = measure ? System.nanoTime() : 0;
+
+			try {
+				compiled = cache == null ? ExpressionCompiler.compile(expression) : cache.get(expression);
+			} catch (ExpressionParseException epex) {
+				if (measure) {
+					metrics.recordFailure(Failure.PARSE_ERROR);
+				}
+				error = BatchEvaluator.ERROR_PREFIX + epex.getMessage();
+				return;
+			}
+
+			if (measure) {
+				metrics.recordPhase(Phase.COMPILE, start);
+			}
+		}
+
+		void evaluate() {
+
+			if (error != null || compiled == null) {
+				return;
+			}
+
+			for (int i = 0; i < inputs.length; ++i) {
+				if (inputs[i] != null) {
+					if (inputs[i].value == null) {
+						error = BatchEvaluator.ERROR_PREFIX + "Variable " + inputs[i].name
+								+ " has no value, its definition on line " + (inputs[i].line + 1) + " failed";
+						return;
+					}
+					values[i] = inputs[i].value;
+				}
+			}
+
+			boolean measure = metrics.isEnabled();
+			long start = measure ? System.nanoTime() : 0;
+
+			try {
+				value = compiled.compute(values);
+			} catch (ArithmeticException aex) {
+				StringBuilder failure = new StringBuilder();
+				BatchEvaluator.appendFailure(aex, measure, failure);
+				error = failure.toString();
+				return;
+			} catch (IllegalArgumentException iaex) {
+				error = BatchEvaluator.ERROR_PREFIX + iaex.getMessage();
+				return;
+			}
+
+			if (measure) {
+				metrics.recordPhase(Phase.EVALUATE, start);
+				metrics.recordEvaluated();
+				metrics.recordStackDepth(compiled.getProgram().getMaxStack());
+			}
+		}
+
+		@Override
+		protected void compute() {
+
+			try {
+				evaluate();
+			} finally {
+				for (Statement dependent : dependents) {
+					if (dependent.pending.decrementAndGet() == 0) {
+						dependent.fork();
+					}
+				}
+				done.countDown();
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,8 @@
+/**
+ * Evaluation of many expressions in one run, one expression per line, or of
+ * a script whose lines define variables for the lines below them.
+ * 
+ * @author Paul Canvin
+ *
+ */
+package com.paul.app.batch;
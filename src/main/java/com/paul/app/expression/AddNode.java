@@ -0,0 +1,30 @@
+package com.paul.app.expression;
+
+/**
+ * add(x, y)
+ * 
+ * @author Paul Canvin
+ *
+ */
+public final class AddNode extends BinaryNode {
+
+	public AddNode(Node left, Node right) {
+		super(left, right);
+	}
+
+	@Override
+	public String getOperator() {
+		return "add";
+	}
+
+	@Override
+	public int apply(int x, int y) {
+		return x + y;
+	}
+
+	@Override
+	public int evaluate(int[] frame) {
+		return left.evaluate(frame) + right.evaluate(frame);
+	}
+
+}
@@ -0,0 +1,42 @@
+package com.paul.app.expression;
+
+/**
+ * An arithmetic function taking two arbitrary expressions as arguments.
+ * 
+ * @author Paul Canvin
+ *
+ */
+public abstract class BinaryNode extends Node {
+
+	protected final Node left;
+	protected final Node right;
+
+	protected BinaryNode(Node left, Node right) {
+		this.left = left;
+		this.right = right;
+	}
+
+	public Node getLeft() {
+		return left;
+	}
+
+	public Node getRight() {
+		return right;
+	}
+
+	/**
+	 * @return operator name as written in an expression, one of [add, sub,
+	 *         mult, div]
+	 */
+	public abstract String getOperator();
+
+	/**
+	 * Applies the operator to two operand values
+	 * 
+	 * @param x
+	 * @param y
+	 * @return int answer of (x operator y)
+	 */
+	public abstract int apply(int x, int y);
+
+}
@@ -0,0 +1,315 @@
+package com.paul.app.expression;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Turns a compiled expression tree into a JVM class implementing
+ * {@link IntExpression}, so the JIT sees straight-line arithmetic instead of
+ * a tree walk.
+ * 
+ * The class file is written directly, without any bytecode library. Unbound
+ * variables are read from the array passed to eval, variables bound by a
+ * "let" live in local variables of the generated method. Each class is
+ * defined in its own class loader so it can be unloaded once the expression
+ * is no longer referenced.
+ * 
+ * @author Paul Canvin
+ *
+ */
+public final class BytecodeCompiler {
+
+	/**
+	 * Larger methods are not compiled by the HotSpot JIT
+	 * (-XX:-DontCompileHugeMethods), so they are left to the interpreter.
+	 */
+	public static final int MAX_CODE_LENGTH = 8000;
+
+	private static final String INTERFACE_NAME = IntExpression.class.getName().replace('.', '/');
+	private static final String CLASS_PREFIX = "com/paul/app/expression/GeneratedExpression$";
+	private static final AtomicLong classCounter = new AtomicLong();
+
+	// constant pool indexes, fixed for every generated class
+	private static final int THIS_CLASS = 2;
+	private static final int OBJECT_CLASS = 4;
+	private static final int INTERFACE_CLASS = 6;
+	private static final int INIT_NAME = 7;
+	private static final int VOID_DESCRIPTOR = 8;
+	private static final int OBJECT_INIT = 10;
+	private static final int EVAL_NAME = 11;
+	private static final int EVAL_DESCRIPTOR = 12;
+	private static final int CODE_NAME = 13;
+	private static final int FIRST_INTEGER = 14;
+
+	private static final int ALOAD_0 = 0x2a;
+	private static final int ALOAD_1 = 0x2b;
+	private static final int ICONST_0 = 0x03;
+	private static final int BIPUSH = 0x10;
+	private static final int SIPUSH = 0x11;
+	private static final int LDC_W = 0x13;
+	private static final int ILOAD = 0x15;
+	private static final int ISTORE = 0x36;
+	private static final int IALOAD = 0x2e;
+	private static final int IADD = 0x60;
+	private static final int ISUB = 0x64;
+	private static final int IMUL = 0x68;
+	private static final int IDIV = 0x6c;
+	private static final int IRETURN = 0xac;
+	private static final int RETURN = 0xb1;
+	private static final int INVOKESPECIAL = 0xb7;
+	private static final int WIDE = 0xc4;
+
+	private final CompiledExpression expression;
+
+	// frame slot -> index into vars (unbound variables) or local variable
+	private final int[] slotIndex;
+	private final boolean[] slotIsInput;
+
+	private final ByteArrayOutputStream code = new ByteArrayOutputStream();
+	private final List<Integer> integers = new ArrayList<Integer>();
+	private int maxLocals = 2;
+
+	private BytecodeCompiler(CompiledExpression expression) {
+
+		this.expression = expression;
+		this.slotIndex = new int[expression.getFrameSize()];
+		this.slotIsInput = new boolean[expression.getFrameSize()];
+
+		int[] variableSlots = expression.getVariableSlots();
+		for (int i = 0; i < variableSlots.length; ++i) {
+			slotIndex[variableSlots[i]] = i;
+			slotIsInput[variableSlots[i]] = true;
+		}
+	}
+
+	/**
+	 * Generates and loads a class evaluating the expression
+	 * 
+	 * @param expression
+	 * @return IntExpression whose eval takes the values of
+	 *         {@link CompiledExpression#getVariables()}
+	 * @throws Exception
+	 *             if the expression is too large to be compiled or is not
+	 *             evaluated with wrapping int arithmetic
+	 */
+	public static IntExpression compile(CompiledExpression expression) throws Exception {
+
+		if (expression.getNumericMode() != NumericMode.INT) {
+			throw new Exception("Only int expressions can be compiled to bytecode, not "
+					+ expression.getNumericMode().getName());
+		}
+
+		BytecodeCompiler compiler = new BytecodeCompiler(expression);
+		String className = CLASS_PREFIX + classCounter.incrementAndGet();
+		byte[] classFile = compiler.generate(className);
+
+		Class<?> generated = new ExpressionClassLoader().define(className.replace('/', '.'), classFile);
+
+		return (IntExpression) generated.getDeclaredConstructor().newInstance();
+	}
+
+	private byte[] generate(String className) throws Exception {
+
+		// every node emits at least one byte, so larger trees are rejected before
+		// the recursive walks below could run out of Java stack
+		int nodes = expression.getRoot().size();
+		if (nodes > MAX_CODE_LENGTH) {
+			throw new Exception("Expression " + expression.getSource() + " is too large to compile to bytecode ("
+					+ nodes + " nodes).");
+		}
+
+		int maxStack = maxStack(expression.getRoot());
+		emit(expression.getRoot());
+		code.write(IRETURN);
+
+		if (code.size() > MAX_CODE_LENGTH) {
+			throw new Exception("Expression " + expression.getSource() + " is too large to compile to bytecode ("
+					+ code.size() + " bytes).");
+		}
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(256 + code.size());
+		DataOutputStream out = new DataOutputStream(bytes);
+
+		out.writeInt(0xCAFEBABE);
+		out.writeShort(0);
+		out.writeShort(50);
+
+		out.writeShort(FIRST_INTEGER + integers.size());
+		writeUtf8(out, className);
+		writeClass(out, 1);
+		writeUtf8(out, "java/lang/Object");
+		writeClass(out, 3);
+		writeUtf8(out, INTERFACE_NAME);
+		writeClass(out, 5);
+		writeUtf8(out, "<init>");
+		writeUtf8(out, "()V");
+		out.writeByte(12); // NameAndType
+		out.writeShort(INIT_NAME);
+		out.writeShort(VOID_DESCRIPTOR);
+		out.writeByte(10); // Methodref
+		out.writeShort(OBJECT_CLASS);
+		out.writeShort(9);
+		writeUtf8(out, "eval");
+		writeUtf8(out, "([I)I");
+		writeUtf8(out, "Code");
+		for (Integer value : integers) {
+			out.writeByte(3); // Integer
+			out.writeInt(value);
+		}
+
+		out.writeShort(0x0031); // public final super
+		out.writeShort(THIS_CLASS);
+		out.writeShort(OBJECT_CLASS);
+		out.writeShort(1);
+		out.writeShort(INTERFACE_CLASS);
+		out.writeShort(0); // fields
+
+		out.writeShort(2); // methods
+
+		byte[] init = { (byte) ALOAD_0, (byte) INVOKESPECIAL, 0, (byte) OBJECT_INIT, (byte) RETURN };
+		writeMethod(out, INIT_NAME, VOID_DESCRIPTOR, 1, 1, init);
+		writeMethod(out, EVAL_NAME, EVAL_DESCRIPTOR, maxStack, maxLocals, code.toByteArray());
+
+		out.writeShort(0); // attributes
+
+		return bytes.toByteArray();
+	}
+
+	private void emit(Node node) {
+
+		if (node instanceof ConstNode) {
+			pushInt(((ConstNode) node).getValue());
+
+		} else if (node instanceof VarNode) {
+			int slot = ((VarNode) node).getSlot();
+			if (slotIsInput[slot]) {
+				code.write(ALOAD_1);
+				pushInt(slotIndex[slot]);
+				code.write(IALOAD);
+			} else {
+				localInstruction(ILOAD, slotIndex[slot]);
+			}
+
+		} else if (node instanceof LetNode) {
+			LetNode let = (LetNode) node;
+			int local = maxLocals++;
+			slotIndex[let.getSlot()] = local;
+			emit(let.getValue());
+			localInstruction(ISTORE, local);
+			emit(let.getBody());
+
+		} else {
+			BinaryNode binary = (BinaryNode) node;
+			emit(binary.getLeft());
+			emit(binary.getRight());
+			if (binary instanceof AddNode) {
+				code.write(IADD);
+			} else if (binary instanceof SubNode) {
+				code.write(ISUB);
+			} else if (binary instanceof MultNode) {
+				code.write(IMUL);
+			} else {
+				code.write(IDIV);
+			}
+		}
+	}
+
+	private static int maxStack(Node node) {
+
+		if (node instanceof ConstNode) {
+			return 1;
+		} else if (node instanceof VarNode) {
+			// array reference and index
+			return 2;
+		} else if (node instanceof LetNode) {
+			LetNode let = (LetNode) node;
+			return Math.max(maxStack(let.getValue()), maxStack(let.getBody()));
+		} else {
+			BinaryNode binary = (BinaryNode) node;
+			return Math.max(maxStack(binary.getLeft()), 1 + maxStack(binary.getRight()));
+		}
+	}
+
+	private void pushInt(int value) {
+
+		if (value >= -1 && value <= 5) {
+			code.write(ICONST_0 + value);
+		} else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+			code.write(BIPUSH);
+			code.write(value);
+		} else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+			code.write(SIPUSH);
+			writeShort(value);
+		} else {
+			int index = integers.indexOf(value);
+			if (index < 0) {
+				index = integers.size();
+				integers.add(value);
+			}
+			code.write(LDC_W);
+			writeShort(FIRST_INTEGER + index);
+		}
+	}
+
+	private void localInstruction(int opcode, int local) {
+
+		if (local > 255) {
+			code.write(WIDE);
+			code.write(opcode);
+			writeShort(local);
+		} else {
+			code.write(opcode);
+			code.write(local);
+		}
+	}
+
+	private void writeShort(int value) {
+		code.write(value >>> 8);
+		code.write(value);
+	}
+
+	private static void writeUtf8(DataOutputStream out, String value) throws IOException {
+		out.writeByte(1);
+		out.writeUTF(value);
+	}
+
+	private static void writeClass(DataOutputStream out, int nameIndex) throws IOException {
+		out.writeByte(7);
+		out.writeShort(nameIndex);
+	}
+
+	private static void writeMethod(DataOutputStream out, int name, int descriptor, int maxStack, int maxLocals,
+			byte[] body) throws IOException {
+
+		out.writeShort(0x0001); // public
+		out.writeShort(name);
+		out.writeShort(descriptor);
+		out.writeShort(1);
+
+		out.writeShort(CODE_NAME);
+		out.writeInt(12 + body.length);
+		out.writeShort(maxStack);
+		out.writeShort(maxLocals);
+		out.writeInt(body.length);
+		out.write(body);
+		out.writeShort(0); // exception table
+		out.writeShort(0); // attributes
+	}
+
+	private static final class ExpressionClassLoader extends ClassLoader {
+
+		ExpressionClassLoader() {
+			super(IntExpression.class.getClassLoader());
+		}
+
+		Class<?> define(String name, byte[] classFile) {
+			return defineClass(name, classFile, 0, classFile.length);
+		}
+
+	}
+
+}
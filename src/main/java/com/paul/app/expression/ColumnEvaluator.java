@@ -0,0 +1,544 @@
+package com.paul.app.expression;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Evaluates one compiled expression over columns of variable values, writing
+ * one result per row.
+ *
+ * Rows are processed in chunks. Each operation of the expression is applied
+ * to a whole chunk before the next one, in simple loops over int arrays that
+ * the JIT compiles to SIMD instructions where the operator allows it. Values
+ * bound by a "let" and intermediate results live in chunk sized buffers that
+ * are reused as soon as nothing refers to them any more. Large columns can be
+ * split between the threads of a fork-join pool.
+ *
+ * Instances are immutable and may be shared between threads.
+ *
+ * @author Paul Canvin
+ *
+ */
+public final class ColumnEvaluator {
+
+	/** rows evaluated together, small enough for the buffers to stay in cache */
+	public static final int CHUNK_SIZE = 1024;
+
+	/** rows below which a parallel evaluation is not split further */
+	public static final int DEFAULT_SPLIT_SIZE = 1 << 16;
+
+	private static final int ADD = 0;
+	private static final int SUB = 1;
+	private static final int MULT = 2;
+	private static final int DIV = 3;
+
+	// where an operand is read from
+	private static final int INPUT = 0;
+	private static final int BUFFER = 1;
+	private static final int CONST = 2;
+
+	// destination of the last operation, written straight into the result
+	private static final int OUTPUT = -1;
+
+	private final List<String> variables;
+
+	// one entry per operation
+	private final int[] operators;
+	private final int[] leftKinds;
+	private final int[] lefts;
+	private final int[] rightKinds;
+	private final int[] rights;
+	private final int[] targets;
+
+	private final int bufferCount;
+	private final int resultKind;
+	private final int result;
+	// true if a literal division by zero fails every row
+	private final boolean dividesByZero;
+
+	/**
+	 * @param expression
+	 *            compiled expression, folded or not
+	 * @throws IllegalArgumentException
+	 *             if the expression is not evaluated with wrapping int
+	 *             arithmetic
+	 */
+	public ColumnEvaluator(CompiledExpression expression) {
+
+		if (expression.getNumericMode() != NumericMode.INT) {
+			throw new IllegalArgumentException(
+					"Columns are evaluated as int, not " + expression.getNumericMode().getName());
+		}
+
+		Planner planner = new Planner(expression.getProgram());
+
+		this.variables = expression.getVariables();
+		this.operators = Arrays.copyOf(planner.operators, planner.count);
+		this.leftKinds = Arrays.copyOf(planner.leftKinds, planner.count);
+		this.lefts = Arrays.copyOf(planner.lefts, planner.count);
+		this.rightKinds = Arrays.copyOf(planner.rightKinds, planner.count);
+		this.rights = Arrays.copyOf(planner.rights, planner.count);
+		this.targets = Arrays.copyOf(planner.targets, planner.count);
+		this.bufferCount = planner.refs.length;
+		this.dividesByZero = planner.dividesByZero;
+
+		Operand answer = planner.stack.peek();
+		if (answer.kind == BUFFER && planner.count > 0 && targets[planner.count - 1] == answer.value) {
+			targets[planner.count - 1] = OUTPUT;
+			this.resultKind = BUFFER;
+			this.result = OUTPUT;
+		} else {
+			this.resultKind = answer.kind;
+			this.result = answer.value;
+		}
+	}
+
+	/**
+	 * @return names of the variables whose columns are expected, in order
+	 */
+	public List<String> getVariables() {
+		return variables;
+	}
+
+	/**
+	 * @return number of column operations applied to each chunk
+	 */
+	public int getOperationCount() {
+		return operators.length;
+	}
+
+	/**
+	 * Evaluates every row on the calling thread
+	 *
+	 * @param columns
+	 *            one column per name of {@link #getVariables()}, all of the
+	 *            same length
+	 * @return int answer of each row, no rows when the expression has no
+	 *         variables
+	 * @throws ArithmeticException
+	 *             if a row divides by zero
+	 */
+	public int[] evaluate(int[]... columns) {
+
+		int[] results = new int[columns.length == 0 ? 0 : columns[0].length];
+		evaluate(columns, results);
+		return results;
+	}
+
+	/**
+	 * Evaluates every row on the calling thread
+	 *
+	 * @param columns
+	 *            one column per name of {@link #getVariables()}, each as long
+	 *            as results
+	 * @param results
+	 *            receives the answer of each row
+	 * @throws ArithmeticException
+	 *             if a row divides by zero
+	 */
+	public void evaluate(int[][] columns, int[] results) {
+
+		check(columns, results);
+		evaluate(columns, results, 0, results.length, newBuffers());
+	}
+
+	/**
+	 * Evaluates the rows on a fork-join pool, each task taking a range of at
+	 * least {@link #DEFAULT_SPLIT_SIZE} rows
+	 *
+	 * @param columns
+	 *            one column per name of {@link #getVariables()}, each as long
+	 *            as results
+	 * @param results
+	 *            receives the answer of each row
+	 * @param pool
+	 * @throws ArithmeticException
+	 *             if a row divides by zero
+	 */
+	public void evaluate(int[][] columns, int[] results, ForkJoinPool pool) {
+		evaluate(columns, results, pool, DEFAULT_SPLIT_SIZE);
+	}
+
+	/**
+	 * Evaluates the rows on a fork-join pool
+	 *
+	 * @param columns
+	 *            one column per name of {@link #getVariables()}, each as long
+	 *            as results
+	 * @param results
+	 *            receives the answer of each row
+	 * @param pool
+	 * @param splitSize
+	 *            rows below which a range is evaluated by a single task
+	 * @throws ArithmeticException
+	 *             if a row divides by zero
+	 */
+	public void evaluate(int[][] columns, int[] results, ForkJoinPool pool, int splitSize) {
+
+		check(columns, results);
+		pool.invoke(new RangeTask(columns, results, 0, results.length, Math.max(splitSize, CHUNK_SIZE)));
+	}
+
+	private void check(int[][] columns, int[] results) {
+
+		if (columns.length != variables.size()) {
+			throw new IllegalArgumentException(
+					"Expected " + variables.size() + " variable columns but got " + columns.length);
+		}
+		for (int i = 0; i < columns.length; ++i) {
+			if (columns[i].length != results.length) {
+				throw new IllegalArgumentException("Column " + variables.get(i) + " has " + columns[i].length
+						+ " rows but " + results.length + " results are expected");
+			}
+		}
+	}
+
+	private int[][] newBuffers() {
+		return new int[bufferCount][CHUNK_SIZE];
+	}
+
+	// evaluates rows [from, to) chunk by chunk
+	private void evaluate(int[][] columns, int[] results, int from, int to, int[][] buffers) {
+
+		if (dividesByZero && from < to) {
+			throw new ArithmeticException("Division by zero in row " + from);
+		}
+
+		for (int start = from; start < to; start += CHUNK_SIZE) {
+
+			int length = Math.min(CHUNK_SIZE, to - start);
+
+			for (int i = 0; i < operators.length; ++i) {
+
+				int[] target = targets[i] == OUTPUT ? results : buffers[targets[i]];
+				int targetOffset = targets[i] == OUTPUT ? start : 0;
+
+				if (leftKinds[i] == CONST) {
+					applyLeft(operators[i], lefts[i], column(rightKinds[i], rights[i], columns, buffers),
+							offset(rightKinds[i], start), target, targetOffset, length, start);
+				} else if (rightKinds[i] == CONST) {
+					applyRight(operators[i], column(leftKinds[i], lefts[i], columns, buffers),
+							offset(leftKinds[i], start), rights[i], target, targetOffset, length, start);
+				} else {
+					apply(operators[i], column(leftKinds[i], lefts[i], columns, buffers),
+							offset(leftKinds[i], start), column(rightKinds[i], rights[i], columns, buffers),
+							offset(rightKinds[i], start), target, targetOffset, length, start);
+				}
+			}
+
+			if (resultKind == CONST) {
+				Arrays.fill(results, start, start + length, result);
+			} else if (result != OUTPUT) {
+				System.arraycopy(column(resultKind, result, columns, buffers), offset(resultKind, start), results,
+						start, length);
+			}
+		}
+	}
+
+	private static int[] column(int kind, int index, int[][] columns, int[][] buffers) {
+		return kind == INPUT ? columns[index] : buffers[index];
+	}
+
+	private static int offset(int kind, int start) {
+		return kind == INPUT ? start : 0;
+	}
+
+	// one loop per operator, so each loop body is a single arithmetic
+	// instruction the JIT can vectorize
+	private static void apply(int operator, int[] x, int xOffset, int[] y, int yOffset, int[] target,
+			int targetOffset, int length, int row) {
+
+		switch (operator) {
+		case ADD:
+			for (int i = 0; i < length; ++i) {
+				target[targetOffset + i] = x[xOffset + i] + y[yOffset + i];
+			}
+			break;
+		case SUB:
+			for (int i = 0; i < length; ++i) {
+				target[targetOffset + i] = x[xOffset + i] - y[yOffset + i];
+			}
+			break;
+		case MULT:
+			for (int i = 0; i < length; ++i) {
+				target[targetOffset + i] = x[xOffset + i] * y[yOffset + i];
+			}
+			break;
+		default:
+			for (int i = 0; i < length; ++i) {
+				if (y[yOffset + i] == 0) {
+					throw new ArithmeticException("Division by zero in row " + (row + i));
+				}
+			}
+			for (int i = 0; i < length; ++i) {
+				target[targetOffset + i] = x[xOffset + i] / y[yOffset + i];
+			}
+			break;
+		}
+	}
+
+	private static void applyLeft(int operator, int x, int[] y, int yOffset, int[] target, int targetOffset,
+			int length, int row) {
+
+		switch (operator) {
+		case ADD:
+			for (int i = 0; i < length; ++i) {
+				target[targetOffset + i] = x + y[yOffset + i];
+			}
+			break;
+		case SUB:
+			for (int i = 0; i < length; ++i) {
+				target[targetOffset + i] = x - y[yOffset + i];
+			}
+			break;
+		case MULT:
+			for (int i = 0; i < length; ++i) {
+				target[targetOffset + i] = x * y[yOffset + i];
+			}
+			break;
+		default:
+			for (int i = 0; i < length; ++i) {
+				if (y[yOffset + i] == 0) {
+					throw new ArithmeticException("Division by zero in row " + (row + i));
+				}
+			}
+			for (int i = 0; i < length; ++i) {
+				target[targetOffset + i] = x / y[yOffset + i];
+			}
+			break;
+		}
+	}
+
+	// a literal zero divisor never reaches here, it fails the whole evaluation
+	private static void applyRight(int operator, int[] x, int xOffset, int y, int[] target, int targetOffset,
+			int length, int row) {
+
+		switch (operator) {
+		case ADD:
+			for (int i = 0; i < length; ++i) {
+				target[targetOffset + i] = x[xOffset + i] + y;
+			}
+			break;
+		case SUB:
+			for (int i = 0; i < length; ++i) {
+				target[targetOffset + i] = x[xOffset + i] - y;
+			}
+			break;
+		case MULT:
+			for (int i = 0; i < length; ++i) {
+				target[targetOffset + i] = x[xOffset + i] * y;
+			}
+			break;
+		default:
+			for (int i = 0; i < length; ++i) {
+				target[targetOffset + i] = x[xOffset + i] / y;
+			}
+			break;
+		}
+	}
+
+	/**
+	 * Splits a range of rows in halves until it is small enough to evaluate
+	 */
+	private final class RangeTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int[][] columns;
+		private final int[] results;
+		private final int from;
+		private final int to;
+		private final int splitSize;
+
+		RangeTask(int[][] columns, int[] results, int from, int to, int splitSize) {
+			this.columns = columns;
+			this.results = results;
+			this.from = from;
+			this.to = to;
+			this.splitSize = splitSize;
+		}
+
+		@Override
+		protected void compute() {
+
+			if (to - from <= splitSize) {
+				evaluate(columns, results, from, to, newBuffers());
+				return;
+			}
+
+			// split on a chunk boundary so no chunk is shared
+			int middle = from + ((to - from) / 2 / CHUNK_SIZE) * CHUNK_SIZE;
+			invokeAll(new RangeTask(columns, results, from, middle, splitSize),
+					new RangeTask(columns, results, middle, to, splitSize));
+		}
+
+	}
+
+	/**
+	 * A value on the operand stack or bound to a frame slot while planning
+	 */
+	private static final class Operand {
+
+		final int kind;
+		// column index, buffer index or literal value
+		final int value;
+
+		Operand(int kind, int value) {
+			this.kind = kind;
+			this.value = value;
+		}
+
+	}
+
+	/**
+	 * Runs the program once over operands instead of values, turning every
+	 * arithmetic opcode into a column operation and resolving each variable to
+	 * the column or buffer holding its value
+	 */
+	private static final class Planner {
+
+		int[] operators = new int[16];
+		int[] leftKinds = new int[16];
+		int[] lefts = new int[16];
+		int[] rightKinds = new int[16];
+		int[] rights = new int[16];
+		int[] targets = new int[16];
+		int count = 0;
+
+		// references to each buffer from the stack, the frame and saved values
+		int[] refs = new int[0];
+		final ArrayDeque<Integer> freeBuffers = new ArrayDeque<Integer>();
+
+		final ArrayDeque<Operand> stack = new ArrayDeque<Operand>();
+		boolean dividesByZero = false;
+
+		Planner(Program program) {
+
+			int[] code = program.getCode();
+			int[] constants = program.getConstants();
+			Operand[] frame = new Operand[program.getSlotNames().length];
+			ArrayDeque<Operand> saved = new ArrayDeque<Operand>();
+
+			for (int slot = 0; slot < program.getInputCount(); ++slot) {
+				frame[slot] = new Operand(INPUT, slot);
+			}
+
+			for (int pc = 0; pc < code.length;) {
+				int opcode = code[pc++];
+
+				switch (opcode) {
+				case Program.CONST:
+					stack.push(new Operand(CONST, constants[code[pc++]]));
+					break;
+				case Program.LOAD:
+					push(frame[code[pc++]]);
+					break;
+				case Program.STORE:
+					// the reference moves from the stack to the frame
+					release(frame[code[pc]]);
+					frame[code[pc++]] = stack.pop();
+					break;
+				case Program.BIND:
+					saved.push(frame[code[pc]]);
+					frame[code[pc++]] = stack.pop();
+					break;
+				case Program.UNBIND:
+					release(frame[code[pc]]);
+					frame[code[pc++]] = saved.pop();
+					break;
+				default:
+					operation(opcode - Program.ADD);
+					break;
+				}
+			}
+		}
+
+		private void operation(int operator) {
+
+			Operand y = stack.pop();
+			Operand x = stack.pop();
+
+			if (x.kind == CONST && y.kind == CONST) {
+				if (operator == DIV && y.value == 0) {
+					dividesByZero = true;
+					stack.push(y);
+				} else {
+					stack.push(new Operand(CONST, fold(operator, x.value, y.value)));
+				}
+				return;
+			}
+
+			if (operator == DIV && y.kind == CONST && y.value == 0) {
+				dividesByZero = true;
+			}
+
+			// an operand only the stack refers to is overwritten in place
+			int target;
+			if (x.kind == BUFFER && refs[x.value] == 1) {
+				target = x.value;
+			} else if (y.kind == BUFFER && refs[y.value] == 1) {
+				target = y.value;
+			} else if (!freeBuffers.isEmpty()) {
+				target = freeBuffers.pop();
+			} else {
+				target = refs.length;
+				refs = Arrays.copyOf(refs, target + 1);
+			}
+
+			if (count == operators.length) {
+				int size = count * 2;
+				operators = Arrays.copyOf(operators, size);
+				leftKinds = Arrays.copyOf(leftKinds, size);
+				lefts = Arrays.copyOf(lefts, size);
+				rightKinds = Arrays.copyOf(rightKinds, size);
+				rights = Arrays.copyOf(rights, size);
+				targets = Arrays.copyOf(targets, size);
+			}
+			operators[count] = operator;
+			leftKinds[count] = x.kind;
+			lefts[count] = x.value;
+			rightKinds[count] = y.kind;
+			rights[count] = y.value;
+			targets[count] = target;
+			++count;
+
+			// taken before releasing the operands, so a reused buffer is never
+			// put on the free list
+			++refs[target];
+			release(x);
+			release(y);
+			stack.push(new Operand(BUFFER, target));
+		}
+
+		private void push(Operand operand) {
+			if (operand.kind == BUFFER) {
+				++refs[operand.value];
+			}
+			stack.push(operand);
+		}
+
+		private void release(Operand operand) {
+			if (operand != null && operand.kind == BUFFER && --refs[operand.value] == 0) {
+				freeBuffers.push(operand.value);
+			}
+		}
+
+		private static int fold(int operator, int x, int y) {
+			switch (operator) {
+			case ADD:
+				return x + y;
+			case SUB:
+				return x - y;
+			case MULT:
+				return x * y;
+			default:
+				return x / y;
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,231 @@
+package com.paul.app.expression;
+
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Turns identical subtrees of an expression into a single shared node, so the
+ * tree becomes a directed acyclic graph and {@link Program} evaluates each
+ * shared node once, keeping its value in a frame slot for the other uses.
+ *
+ * Subtrees are compared by operator and operands, and a variable by the slot
+ * the parser resolved it to. Every "let" has its own slot, so the same text
+ * under different bindings of a name is never shared, and a shared node only
+ * appears within the scope of the lets it reads.
+ *
+ * @author Paul Canvin
+ *
+ */
+public final class CommonSubexpressions {
+
+	// identifiers of the distinct nodes seen so far, by content
+	private final Map<Integer, Integer> constants = new HashMap<Integer, Integer>();
+	private final Map<BigInteger, Integer> wideConstants = new HashMap<BigInteger, Integer>();
+	private final int[] variables;
+	private final Map<Key, Integer> operations = new HashMap<Key, Integer>();
+	private final List<Node> nodes = new ArrayList<Node>();
+	private boolean shared = false;
+
+	private CommonSubexpressions(int frameSize) {
+		this.variables = new int[frameSize];
+		Arrays.fill(variables, -1);
+	}
+
+	/**
+	 * @param expression
+	 * @return expression whose identical subtrees are one node, or expression
+	 *         itself if it has none
+	 */
+	public static CompiledExpression share(CompiledExpression expression) {
+
+		CommonSubexpressions sharer = new CommonSubexpressions(expression.getFrameSize());
+		Node root = sharer.share(expression.getRoot());
+
+		if (!sharer.shared) {
+			return expression;
+		}
+
+		return new CompiledExpression(expression.getSourceText(), root, expression.getVariableNames(),
+				expression.getVariableSlots(), expression.getFrameSize(), expression.getNumericMode(), true);
+	}
+
+	/**
+	 * @param root
+	 * @return number of distinct nodes reachable from root, which is
+	 *         {@link Node#size()} unless nodes are shared
+	 */
+	public static int countDistinct(Node root) {
+
+		IdentityHashMap<Node, Boolean> seen = new IdentityHashMap<Node, Boolean>();
+		ArrayDeque<Node> pending = new ArrayDeque<Node>();
+		pending.push(root);
+
+		while (!pending.isEmpty()) {
+			Node node = pending.pop();
+			if (seen.put(node, Boolean.TRUE) != null) {
+				continue;
+			}
+			if (node instanceof BinaryNode) {
+				pending.push(((BinaryNode) node).getRight());
+				pending.push(((BinaryNode) node).getLeft());
+			} else if (node instanceof LetNode) {
+				pending.push(((LetNode) node).getBody());
+				pending.push(((LetNode) node).getValue());
+			}
+		}
+
+		return seen.size();
+	}
+
+	// identifies children before their parent, keeping the nodes whose
+	// children are being identified on an explicit stack
+	private Node share(Node root) {
+
+		ArrayDeque<Node> pending = new ArrayDeque<Node>();
+		// children done for each pending node
+		int[] states = new int[16];
+		// identifiers of the children done
+		int[] ids = new int[16];
+		int idCount = 0;
+		pending.push(root);
+
+		while (!pending.isEmpty()) {
+			Node node = pending.peek();
+			int depth = pending.size() - 1;
+			int id;
+
+			if (node instanceof BinaryNode || node instanceof LetNode) {
+				if (states[depth] < 2) {
+					pending.push(child(node, states[depth]++));
+					if (depth + 1 == states.length) {
+						states = Arrays.copyOf(states, states.length * 2);
+					}
+					states[depth + 1] = 0;
+					continue;
+				}
+				idCount -= 2;
+				id = combine(node, ids[idCount], ids[idCount + 1]);
+			} else {
+				id = leaf(node);
+			}
+
+			pending.pop();
+			if (idCount == ids.length) {
+				ids = Arrays.copyOf(ids, ids.length * 2);
+			}
+			ids[idCount++] = id;
+		}
+
+		return nodes.get(ids[0]);
+	}
+
+	static Node child(Node node, int index) {
+
+		if (node instanceof LetNode) {
+			return index == 0 ? ((LetNode) node).getValue() : ((LetNode) node).getBody();
+		}
+		return index == 0 ? ((BinaryNode) node).getLeft() : ((BinaryNode) node).getRight();
+	}
+
+	private int leaf(Node node) {
+
+		Integer id;
+		if (node instanceof ConstNode) {
+			int value = ((ConstNode) node).getValue();
+			id = constants.get(value);
+			if (id == null) {
+				id = add(node);
+				constants.put(value, id);
+			}
+		} else if (node instanceof WideConstNode) {
+			BigInteger value = ((WideConstNode) node).getValue();
+			id = wideConstants.get(value);
+			if (id == null) {
+				id = add(node);
+				wideConstants.put(value, id);
+			}
+		} else {
+			int slot = ((VarNode) node).getSlot();
+			id = variables[slot];
+			if (id < 0) {
+				id = add(node);
+				variables[slot] = id;
+			}
+		}
+		return id;
+	}
+
+	private int combine(Node node, int left, int right) {
+
+		Node leftNode = nodes.get(left);
+		Node rightNode = nodes.get(right);
+
+		// a let has a slot of its own, so it can only appear once
+		if (node instanceof LetNode) {
+			LetNode let = (LetNode) node;
+			if (leftNode == let.getValue() && rightNode == let.getBody()) {
+				return add(node);
+			}
+			return add(new LetNode(let.getName(), let.getSlot(), leftNode, rightNode));
+		}
+
+		BinaryNode binary = (BinaryNode) node;
+		Key key = new Key(binary.getOperator(), left, right);
+		Integer id = operations.get(key);
+		if (id != null) {
+			shared = true;
+			return id;
+		}
+
+		if (leftNode == binary.getLeft() && rightNode == binary.getRight()) {
+			id = add(node);
+		} else {
+			id = add(ConstantFolder.copy(binary, leftNode, rightNode));
+		}
+		operations.put(key, id);
+		return id;
+	}
+
+	private int add(Node node) {
+		nodes.add(node);
+		return nodes.size() - 1;
+	}
+
+	/**
+	 * An operator applied to two distinct nodes
+	 */
+	private static final class Key {
+
+		final String operator;
+		final int left;
+		final int right;
+
+		Key(String operator, int left, int right) {
+			this.operator = operator;
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		public int hashCode() {
+			return (operator.hashCode() * 31 + left) * 31 + right;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof Key)) {
+				return false;
+			}
+			Key key = (Key) other;
+			return left == key.left && right == key.right && operator.equals(key.operator);
+		}
+
+	}
+
+}
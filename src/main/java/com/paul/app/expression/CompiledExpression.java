@@ -0,0 +1,286 @@
+package com.paul.app.expression;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An expression that has been parsed once into a typed node tree and can be
+ * evaluated any number of times.
+ * 
+ * Instances are immutable and may be shared between threads.
+ * 
+ * @author Paul Canvin
+ *
+ */
+public final class CompiledExpression implements IntExpression {
+
+	private final CharSequence source;
+	private String sourceText = null;
+	private final Node root;
+	private final String[] variables;
+	private final int[] variableSlots;
+	private final int frameSize;
+	private final NumericMode mode;
+	private final boolean shared;
+	private Program program = null;
+
+	private static final int[] NO_VALUES = new int[0];
+	private static final long[] NO_LONG_VALUES = new long[0];
+
+	CompiledExpression(CharSequence source, Node root, String[] variables, int[] variableSlots, int frameSize,
+			NumericMode mode) {
+		this(source, root, variables, variableSlots, frameSize, mode, false);
+	}
+
+	CompiledExpression(CharSequence source, Node root, String[] variables, int[] variableSlots, int frameSize,
+			NumericMode mode, boolean shared) {
+		this.source = source;
+		this.root = root;
+		this.variables = variables;
+		this.variableSlots = variableSlots;
+		this.frameSize = frameSize;
+		this.mode = mode;
+		this.shared = shared;
+	}
+
+	/**
+	 * @return expression text the tree was compiled from
+	 */
+	public String getSource() {
+
+		// expressions read from mapped files are only decoded when asked for
+		if (sourceText == null) {
+			sourceText = source.toString();
+		}
+		return sourceText;
+	}
+
+	public Node getRoot() {
+		return root;
+	}
+
+	/**
+	 * @return names of the variables used but not bound by a "let", in order
+	 *         of first use
+	 */
+	public List<String> getVariables() {
+		return Collections.unmodifiableList(Arrays.asList(variables));
+	}
+
+	CharSequence getSourceText() {
+		return source;
+	}
+
+	String[] getVariableNames() {
+		return variables;
+	}
+
+	/**
+	 * @return frame slot of each unbound variable, in the order of
+	 *         {@link #getVariables()}
+	 */
+	int[] getVariableSlots() {
+		return variableSlots;
+	}
+
+	/**
+	 * @return number of int slots needed to evaluate the tree
+	 */
+	public int getFrameSize() {
+		return frameSize;
+	}
+
+	/**
+	 * @return true if identical subtrees of the root are one node, see
+	 *         {@link CommonSubexpressions}
+	 */
+	public boolean isShared() {
+		return shared;
+	}
+
+	/**
+	 * @return arithmetic the expression was parsed for
+	 */
+	public NumericMode getNumericMode() {
+		return mode;
+	}
+
+	/**
+	 * @return the tree flattened into opcodes, built on first use
+	 */
+	public Program getProgram() {
+
+		// Program is immutable, a race only builds it twice
+		Program built = program;
+		if (built == null) {
+			built = Program.compile(this);
+			program = built;
+		}
+		return built;
+	}
+
+	/**
+	 * Evaluates an expression of an int mode that has no unbound variables
+	 * 
+	 * @return int answer of the expression
+	 * @throws IllegalStateException
+	 *             if the expression uses a variable that no "let" assigns, or
+	 *             is not evaluated with int arithmetic
+	 * @throws ArithmeticException
+	 *             on division by zero, or overflow in the checked mode
+	 */
+	public int evaluate() {
+
+		if (variables.length > 0) {
+			throw new IllegalStateException(
+					"Unable to evaluate expression, variable " + variables[0] + " has not been assigned a value.");
+		}
+
+		return evaluate(NO_VALUES);
+	}
+
+	/**
+	 * Evaluates the expression with values for its unbound variables
+	 * 
+	 * @param values
+	 *            one value for each name of {@link #getVariables()}, in the
+	 *            same order
+	 * @return int answer of the expression
+	 * @throws IllegalStateException
+	 *             if the expression is not evaluated with int arithmetic
+	 * @throws ArithmeticException
+	 *             on division by zero, or overflow in the checked mode
+	 */
+	public int evaluate(int... values) {
+
+		if (values.length != variables.length) {
+			throw new IllegalArgumentException(
+					"Expected " + variables.length + " variable values but got " + values.length);
+		}
+
+		if (mode == NumericMode.INT) {
+			return getProgram().execute(values);
+		} else if (mode == NumericMode.CHECKED) {
+			return getProgram().executeChecked(values);
+		}
+
+		throw new IllegalStateException("Expression is evaluated with " + mode.getName() + " arithmetic, use compute");
+	}
+
+	/**
+	 * Evaluates an expression that has no unbound variables with the
+	 * arithmetic of its numeric mode
+	 * 
+	 * @return Integer answer in the int modes, Long in the long mode and
+	 *         BigInteger in the big mode
+	 * @throws IllegalStateException
+	 *             if the expression uses a variable that no "let" assigns
+	 * @throws ArithmeticException
+	 *             on division by zero, or overflow in the checked and long
+	 *             modes
+	 */
+	public Number compute() {
+
+		if (variables.length > 0) {
+			throw new IllegalStateException(
+					"Unable to evaluate expression, variable " + variables[0] + " has not been assigned a value.");
+		}
+
+		return mode.isInt() ? Integer.valueOf(evaluate(NO_VALUES)) : compute(NO_LONG_VALUES);
+	}
+
+	/**
+	 * Evaluates the expression with the arithmetic of its numeric mode
+	 * 
+	 * @param values
+	 *            one value for each name of {@link #getVariables()}, in the
+	 *            same order
+	 * @return Integer answer in the int modes, Long in the long mode and
+	 *         BigInteger in the big mode
+	 * @throws IllegalArgumentException
+	 *             if a value does not fit the int modes
+	 * @throws ArithmeticException
+	 *             on division by zero, or overflow in the checked and long
+	 *             modes
+	 */
+	public Number compute(long... values) {
+
+		if (values.length != variables.length) {
+			throw new IllegalArgumentException(
+					"Expected " + variables.length + " variable values but got " + values.length);
+		}
+
+		switch (mode) {
+		case LONG:
+			return getProgram().executeLong(values);
+		case BIG:
+			return getProgram().executeBig(values);
+		default:
+			int[] ints = new int[values.length];
+			for (int i = 0; i < values.length; ++i) {
+				ints[i] = (int) values[i];
+				if (ints[i] != values[i]) {
+					throw new IllegalArgumentException("Value " + values[i] + " of variable " + variables[i]
+							+ " is outside the integer range");
+				}
+			}
+			return evaluate(ints);
+		}
+	}
+
+	/**
+	 * Evaluates the expression with the arithmetic of its numeric mode, with
+	 * values such as the answers of other expressions
+	 * 
+	 * @param values
+	 *            one Integer, Long or BigInteger for each name of
+	 *            {@link #getVariables()}, in the same order
+	 * @return Integer answer in the int modes, Long in the long mode and
+	 *         BigInteger in the big mode
+	 * @throws IllegalArgumentException
+	 *             if a value does not fit the numeric mode
+	 * @throws ArithmeticException
+	 *             on division by zero, or overflow in the checked and long
+	 *             modes
+	 */
+	public Number compute(Number[] values) {
+
+		if (values.length != variables.length) {
+			throw new IllegalArgumentException(
+					"Expected " + variables.length + " variable values but got " + values.length);
+		}
+
+		long[] longs = new long[values.length];
+		BigInteger[] bigs = null;
+
+		for (int i = 0; i < values.length; ++i) {
+			if (values[i] instanceof BigInteger && ((BigInteger) values[i]).bitLength() >= 64) {
+				if (mode != NumericMode.BIG) {
+					throw new IllegalArgumentException("Value " + values[i] + " of variable " + variables[i]
+							+ " is outside the long range");
+				}
+				if (bigs == null) {
+					bigs = new BigInteger[values.length];
+				}
+				bigs[i] = (BigInteger) values[i];
+			} else {
+				longs[i] = values[i].longValue();
+			}
+		}
+
+		return mode == NumericMode.BIG ? getProgram().executeBig(longs, bigs) : compute(longs);
+	}
+
+	@Override
+	public int eval(int[] vars) {
+		return evaluate(vars);
+	}
+
+	@Override
+	public String toString() {
+		return root.toString();
+	}
+
+}
@@ -0,0 +1,36 @@
+package com.paul.app.expression;
+
+/**
+ * An integer literal.
+ * 
+ * @author Paul Canvin
+ *
+ */
+public final class ConstNode extends Node {
+
+	private final int value;
+
+	public ConstNode(int value) {
+		this.value = value;
+	}
+
+	public int getValue() {
+		return value;
+	}
+
+	@Override
+	public int evaluate(int[] frame) {
+		return value;
+	}
+
+	@Override
+	public int size() {
+		return 1;
+	}
+
+	@Override
+	public String toString() {
+		return String.valueOf(value);
+	}
+
+}
@@ -0,0 +1,173 @@
+package com.paul.app.expression;
+
+import java.util.ArrayDeque;
+
+/**
+ * Collapses every subtree whose value does not depend on an unbound variable
+ * into a single literal.
+ * 
+ * A "let" whose value folds to a literal is removed and the literal is
+ * substituted for the variable in its body. Folding uses the same wrapping
+ * int arithmetic as evaluation. A division by a literal zero is never folded,
+ * so it still fails when the expression is evaluated. Only expressions of the
+ * wrapping int mode are folded.
+ * 
+ * @author Paul Canvin
+ *
+ */
+public final class ConstantFolder {
+
+	// literal value of each let slot whose value has been folded
+	private final boolean[] isConstant;
+	private final int[] constants;
+
+	private ConstantFolder(int frameSize) {
+		isConstant = new boolean[frameSize];
+		constants = new int[frameSize];
+	}
+
+	/**
+	 * @param expression
+	 * @return CompiledExpression with constant subtrees folded, or the same
+	 *         instance if nothing could be folded
+	 */
+	public static CompiledExpression fold(CompiledExpression expression) {
+
+		// the other modes must not fold away an overflow or a wide literal
+		if (expression.getNumericMode() != NumericMode.INT) {
+			return expression;
+		}
+
+		Node root = expression.getRoot();
+		Node folded = new ConstantFolder(expression.getFrameSize()).fold(root);
+
+		if (folded == root) {
+			return expression;
+		}
+
+		return new CompiledExpression(expression.getSourceText(), folded, expression.getVariableNames(),
+				expression.getVariableSlots(), expression.getFrameSize(), expression.getNumericMode());
+	}
+
+	// folds children before their parent, keeping the nodes whose children are
+	// being folded on an explicit stack
+	private Node fold(Node root) {
+
+		ArrayDeque<Frame> frames = new ArrayDeque<Frame>();
+		ArrayDeque<Node> folded = new ArrayDeque<Node>();
+		frames.push(new Frame(root));
+
+		while (!frames.isEmpty()) {
+			Frame frame = frames.peek();
+			Node node = frame.node;
+
+			if (node instanceof VarNode) {
+				frames.pop();
+				int slot = ((VarNode) node).getSlot();
+				folded.push(isConstant[slot] ? new ConstNode(constants[slot]) : node);
+
+			} else if (node instanceof LetNode) {
+				LetNode let = (LetNode) node;
+
+				if (frame.state == 0) {
+					frame.state = 1;
+					frames.push(new Frame(let.getValue()));
+
+				} else if (frame.state == 1) {
+					Node value = folded.pop();
+
+					if (value instanceof ConstNode) {
+						// the let is replaced by its folded body
+						isConstant[let.getSlot()] = true;
+						constants[let.getSlot()] = ((ConstNode) value).getValue();
+						frames.pop();
+					} else {
+						frame.state = 2;
+						frame.first = value;
+					}
+					frames.push(new Frame(let.getBody()));
+
+				} else {
+					frames.pop();
+					Node value = frame.first;
+					Node body = folded.pop();
+					if (value == let.getValue() && body == let.getBody()) {
+						folded.push(node);
+					} else {
+						folded.push(new LetNode(let.getName(), let.getSlot(), value, body));
+					}
+				}
+
+			} else if (node instanceof BinaryNode) {
+				BinaryNode binary = (BinaryNode) node;
+
+				if (frame.state == 0) {
+					frame.state = 1;
+					frames.push(new Frame(binary.getLeft()));
+
+				} else if (frame.state == 1) {
+					frame.state = 2;
+					frames.push(new Frame(binary.getRight()));
+
+				} else {
+					frames.pop();
+					Node right = folded.pop();
+					Node left = folded.pop();
+
+					if (left instanceof ConstNode && right instanceof ConstNode
+							&& !(binary instanceof DivNode && ((ConstNode) right).getValue() == 0)) {
+						folded.push(new ConstNode(
+								binary.apply(((ConstNode) left).getValue(), ((ConstNode) right).getValue())));
+					} else if (left == binary.getLeft() && right == binary.getRight()) {
+						folded.push(node);
+					} else {
+						folded.push(copy(binary, left, right));
+					}
+				}
+
+			} else {
+				frames.pop();
+				folded.push(node);
+			}
+		}
+
+		return folded.pop();
+	}
+
+	/**
+	 * @param binary
+	 * @param left
+	 * @param right
+	 * @return BinaryNode with the operator of binary and the given operands
+	 */
+	static BinaryNode copy(BinaryNode binary, Node left, Node right) {
+
+		if (binary instanceof AddNode) {
+			return new AddNode(left, right);
+		} else if (binary instanceof SubNode) {
+			return new SubNode(left, right);
+		} else if (binary instanceof MultNode) {
+			return new MultNode(left, right);
+		} else {
+			return new DivNode(left, right);
+		}
+	}
+
+	/**
+	 * A node whose children are being folded
+	 */
+	private static final class Frame {
+
+		final Node node;
+		// 0 before the first child, 1 and 2 after each child has been folded
+		int state = 0;
+		// folded value of a let that did not fold to a literal
+		Node first = null;
+
+		Frame(Node node) {
+			this.node = node;
+		}
+
+	}
+
+}
@@ -0,0 +1,30 @@
+package com.paul.app.expression;
+
+/**
+ * div(x, y)
+ * 
+ * @author Paul Canvin
+ *
+ */
+public final class DivNode extends BinaryNode {
+
+	public DivNode(Node left, Node right) {
+		super(left, right);
+	}
+
+	@Override
+	public String getOperator() {
+		return "div";
+	}
+
+	@Override
+	public int apply(int x, int y) {
+		return x / y;
+	}
+
+	@Override
+	public int evaluate(int[] frame) {
+		return left.evaluate(frame) / right.evaluate(frame);
+	}
+
+}
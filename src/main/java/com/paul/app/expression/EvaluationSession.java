@@ -0,0 +1,396 @@
+package com.paul.app.expression;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Keeps the value of every node of a compiled expression, so that after some
+ * of its variables change only the nodes depending on them are evaluated
+ * again.
+ *
+ * The nodes are numbered in post order, children before their parent and the
+ * value of a "let" before its body, so evaluating the changed nodes in
+ * ascending order sees every node after the nodes it depends on. A variable
+ * bound by a "let" depends on the value of that let, which the parser has
+ * already resolved through the let's own slot, so shadowing is handled the
+ * same way as by full evaluation. A node is only re-evaluated when something
+ * it depends on changed value.
+ *
+ * A session is not thread safe.
+ *
+ * @author Paul Canvin
+ *
+ */
+public final class EvaluationSession {
+
+	private static final int CONST = 0;
+	// variable supplied from outside, operand is its index in the variables
+	private static final int INPUT = 1;
+	// variable bound by a let, operand is the node holding the let's value
+	private static final int BOUND = 2;
+	private static final int LET = 3;
+	private static final int ADD = 4;
+	private static final int SUB = 5;
+	private static final int MULT = 6;
+	private static final int DIV = 7;
+
+	private final List<String> variables;
+
+	private final int[] kinds;
+	// literal value, variable index, node bound or first child
+	private final int[] lefts;
+	// second child, the body of a let
+	private final int[] rights;
+
+	// nodes to re-evaluate when a node changes, in compressed rows
+	private final int[] dependentStart;
+	private final int[] dependents;
+	// nodes reading each variable, in compressed rows
+	private final int[] inputStart;
+	private final int[] inputNodes;
+
+	private final int[] values;
+	private final int[] inputs;
+	private final boolean[] assigned;
+	private int unassignedCount;
+	// nodes dividing by zero, directly or through a node they depend on
+	private final BitSet failed = new BitSet();
+	private final BitSet dirty = new BitSet();
+	private int evaluatedCount = 0;
+
+	/**
+	 * @param expression
+	 * @throws IllegalArgumentException
+	 *             if the expression is not evaluated with wrapping int
+	 *             arithmetic
+	 */
+	public EvaluationSession(CompiledExpression expression) {
+
+		if (expression.getNumericMode() != NumericMode.INT) {
+			throw new IllegalArgumentException(
+					"Sessions evaluate as int, not " + expression.getNumericMode().getName());
+		}
+
+		this.variables = expression.getVariables();
+
+		Flattener flattener = new Flattener(expression);
+		int count = flattener.count;
+
+		this.kinds = Arrays.copyOf(flattener.kinds, count);
+		this.lefts = Arrays.copyOf(flattener.lefts, count);
+		this.rights = Arrays.copyOf(flattener.rights, count);
+
+		// each node depends on its children, a bound variable on the let value
+		// and a let on both its value and its body
+		dependentStart = new int[count + 1];
+		inputStart = new int[variables.size() + 1];
+		for (int node = 0; node < count; ++node) {
+			switch (kinds[node]) {
+			case CONST:
+				break;
+			case INPUT:
+				++inputStart[lefts[node] + 1];
+				break;
+			case BOUND:
+				++dependentStart[lefts[node] + 1];
+				break;
+			default:
+				++dependentStart[lefts[node] + 1];
+				++dependentStart[rights[node] + 1];
+				break;
+			}
+		}
+		for (int node = 0; node < count; ++node) {
+			dependentStart[node + 1] += dependentStart[node];
+		}
+		for (int variable = 0; variable < variables.size(); ++variable) {
+			inputStart[variable + 1] += inputStart[variable];
+		}
+
+		dependents = new int[dependentStart[count]];
+		inputNodes = new int[inputStart[variables.size()]];
+		int[] dependentFill = Arrays.copyOf(dependentStart, count);
+		int[] inputFill = Arrays.copyOf(inputStart, variables.size());
+		for (int node = 0; node < count; ++node) {
+			switch (kinds[node]) {
+			case CONST:
+				break;
+			case INPUT:
+				inputNodes[inputFill[lefts[node]]++] = node;
+				break;
+			case BOUND:
+				dependents[dependentFill[lefts[node]]++] = node;
+				break;
+			default:
+				dependents[dependentFill[lefts[node]]++] = node;
+				dependents[dependentFill[rights[node]]++] = node;
+				break;
+			}
+		}
+
+		this.values = new int[count];
+		this.inputs = new int[variables.size()];
+		this.assigned = new boolean[variables.size()];
+		this.unassignedCount = variables.size();
+		dirty.set(0, count);
+	}
+
+	/**
+	 * @return names of the variables used but not bound by a "let"
+	 */
+	public List<String> getVariables() {
+		return variables;
+	}
+
+	/**
+	 * Assigns a variable, nothing is evaluated until {@link #evaluate()}
+	 *
+	 * @param name
+	 *            one of {@link #getVariables()}
+	 * @param value
+	 * @throws IllegalArgumentException
+	 *             if the expression does not use the variable
+	 */
+	public void set(String name, int value) {
+
+		int variable = variables.indexOf(name);
+		if (variable < 0) {
+			throw new IllegalArgumentException("Expression has no variable " + name);
+		}
+		set(variable, value);
+	}
+
+	/**
+	 * Assigns a variable, nothing is evaluated until {@link #evaluate()}
+	 *
+	 * @param variable
+	 *            index in {@link #getVariables()}
+	 * @param value
+	 */
+	public void set(int variable, int value) {
+
+		if (assigned[variable] && inputs[variable] == value) {
+			return;
+		}
+
+		inputs[variable] = value;
+		if (!assigned[variable]) {
+			assigned[variable] = true;
+			--unassignedCount;
+		}
+		for (int i = inputStart[variable]; i < inputStart[variable + 1]; ++i) {
+			dirty.set(inputNodes[i]);
+		}
+	}
+
+	/**
+	 * Re-evaluates the nodes depending on the variables changed since the last
+	 * evaluation
+	 *
+	 * @return int answer of the expression
+	 * @throws IllegalStateException
+	 *             if a variable has not been assigned a value
+	 * @throws ArithmeticException
+	 *             on division by zero
+	 */
+	public int evaluate() {
+
+		if (unassignedCount > 0) {
+			for (int variable = 0; variable < assigned.length; ++variable) {
+				if (!assigned[variable]) {
+					throw new IllegalStateException("Unable to evaluate expression, variable "
+							+ variables.get(variable) + " has not been assigned a value.");
+				}
+			}
+		}
+
+		evaluatedCount = 0;
+
+		for (int node = dirty.nextSetBit(0); node >= 0; node = dirty.nextSetBit(node + 1)) {
+			dirty.clear(node);
+			++evaluatedCount;
+
+			int previous = values[node];
+			boolean previouslyFailed = failed.get(node);
+			evaluateNode(node);
+
+			if (values[node] != previous || failed.get(node) != previouslyFailed) {
+				for (int i = dependentStart[node]; i < dependentStart[node + 1]; ++i) {
+					dirty.set(dependents[i]);
+				}
+			}
+		}
+
+		int root = kinds.length - 1;
+		if (failed.get(root)) {
+			throw new ArithmeticException("/ by zero");
+		}
+		return values[root];
+	}
+
+	/**
+	 * @return number of nodes the last {@link #evaluate()} evaluated
+	 */
+	public int getEvaluatedCount() {
+		return evaluatedCount;
+	}
+
+	/**
+	 * @return number of nodes of the expression
+	 */
+	public int getNodeCount() {
+		return kinds.length;
+	}
+
+	private void evaluateNode(int node) {
+
+		int left = lefts[node];
+		int right = rights[node];
+
+		switch (kinds[node]) {
+		case CONST:
+			values[node] = left;
+			return;
+		case INPUT:
+			values[node] = inputs[left];
+			return;
+		case BOUND:
+			values[node] = values[left];
+			failed.set(node, failed.get(left));
+			return;
+		default:
+			break;
+		}
+
+		if (failed.get(left) || failed.get(right)) {
+			failed.set(node);
+			return;
+		}
+		failed.clear(node);
+
+		switch (kinds[node]) {
+		case LET:
+			values[node] = values[right];
+			break;
+		case ADD:
+			values[node] = values[left] + values[right];
+			break;
+		case SUB:
+			values[node] = values[left] - values[right];
+			break;
+		case MULT:
+			values[node] = values[left] * values[right];
+			break;
+		default:
+			if (values[right] == 0) {
+				failed.set(node);
+			} else {
+				values[node] = values[left] / values[right];
+			}
+			break;
+		}
+	}
+
+	/**
+	 * Numbers the nodes of a tree in post order, with an explicit stack so the
+	 * depth of the tree is not limited by the Java stack
+	 */
+	private static final class Flattener {
+
+		int[] kinds = new int[16];
+		int[] lefts = new int[16];
+		int[] rights = new int[16];
+		int count = 0;
+
+		Flattener(CompiledExpression expression) {
+
+			// variable index of each unbound slot, node holding each let value
+			int[] slotVariable = new int[expression.getFrameSize()];
+			int[] slotNode = new int[expression.getFrameSize()];
+			Arrays.fill(slotVariable, -1);
+			int[] variableSlots = expression.getVariableSlots();
+			for (int variable = 0; variable < variableSlots.length; ++variable) {
+				slotVariable[variableSlots[variable]] = variable;
+			}
+
+			// nodes whose children are being numbered, with the number of
+			// children done and the number given to the first one
+			ArrayDeque<Node> nodes = new ArrayDeque<Node>();
+			ArrayDeque<int[]> states = new ArrayDeque<int[]>();
+			nodes.push(expression.getRoot());
+			states.push(new int[2]);
+
+			while (!nodes.isEmpty()) {
+				Node node = nodes.peek();
+				int[] state = states.peek();
+
+				if (node instanceof ConstNode) {
+					add(CONST, ((ConstNode) node).getValue(), 0);
+					nodes.pop();
+					states.pop();
+
+				} else if (node instanceof VarNode) {
+					int slot = ((VarNode) node).getSlot();
+					if (slotVariable[slot] >= 0) {
+						add(INPUT, slotVariable[slot], 0);
+					} else {
+						add(BOUND, slotNode[slot], 0);
+					}
+					nodes.pop();
+					states.pop();
+
+				} else if (state[0] == 0) {
+					state[0] = 1;
+					nodes.push(node instanceof LetNode ? ((LetNode) node).getValue() : ((BinaryNode) node).getLeft());
+					states.push(new int[2]);
+
+				} else if (state[0] == 1) {
+					state[0] = 2;
+					state[1] = count - 1;
+					if (node instanceof LetNode) {
+						slotNode[((LetNode) node).getSlot()] = state[1];
+					}
+					nodes.push(node instanceof LetNode ? ((LetNode) node).getBody() : ((BinaryNode) node).getRight());
+					states.push(new int[2]);
+
+				} else {
+					add(kind(node), state[1], count - 1);
+					nodes.pop();
+					states.pop();
+				}
+			}
+		}
+
+		private static int kind(Node node) {
+
+			if (node instanceof LetNode) {
+				return LET;
+			} else if (node instanceof AddNode) {
+				return ADD;
+			} else if (node instanceof SubNode) {
+				return SUB;
+			} else if (node instanceof MultNode) {
+				return MULT;
+			} else {
+				return DIV;
+			}
+		}
+
+		private void add(int kind, int left, int right) {
+
+			if (count == kinds.length) {
+				kinds = Arrays.copyOf(kinds, count * 2);
+				lefts = Arrays.copyOf(lefts, count * 2);
+				rights = Arrays.copyOf(rights, count * 2);
+			}
+			kinds[count] = kind;
+			lefts[count] = left;
+			rights[count] = right;
+			++count;
+		}
+
+	}
+
+}
@@ -0,0 +1,246 @@
+package com.paul.app.expression;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of compiled expressions keyed by their normalized text.
+ * 
+ * Normalizing lowercases the text and drops whitespace that does not separate
+ * two tokens, so texts differing only in case and spacing share one entry.
+ * The cache is split into segments, each an LRU map with its own lock, so
+ * threads looking up different expressions rarely wait on each other. With a
+ * {@link PlanCache}, a text missing from the cache is looked up there before
+ * it is parsed, and the expressions parsed are added to it.
+ * 
+ * @author Paul Canvin
+ *
+ */
+public class ExpressionCache {
+
+	public static final int DEFAULT_MAX_SIZE = 10000;
+
+	private static final int MAX_SEGMENTS = 16;
+
+	private final Segment[] segments;
+	private final int segmentMask;
+	private final int maxSize;
+
+	private volatile PlanCache plans = null;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	public ExpressionCache() {
+		this(DEFAULT_MAX_SIZE);
+	}
+
+	/**
+	 * @param maxSize
+	 *            maximum number of expressions kept
+	 */
+	public ExpressionCache(int maxSize) {
+
+		if (maxSize < 1) {
+			throw new IllegalArgumentException("Cache size must be at least 1");
+		}
+
+		// small caches keep a single segment so they stay strictly LRU
+		int segmentCount = 1;
+		while (segmentCount < MAX_SEGMENTS && segmentCount * 2 * MAX_SEGMENTS <= maxSize) {
+			segmentCount *= 2;
+		}
+
+		this.maxSize = maxSize;
+		this.segmentMask = segmentCount - 1;
+		this.segments = new Segment[segmentCount];
+		for (int i = 0; i < segmentCount; ++i) {
+			segments[i] = new Segment((maxSize + segmentCount - 1) / segmentCount);
+		}
+	}
+
+	/**
+	 * Returns the compiled form of an expression, parsing it only if an
+	 * equivalent text is not cached
+	 * 
+	 * @param source
+	 *            expression text
+	 * @return CompiledExpression
+	 * @throws ExpressionParseException
+	 *             if the expression is not valid, invalid texts are not cached
+	 */
+	public CompiledExpression get(CharSequence source) throws ExpressionParseException {
+
+		String key = normalize(source);
+		Segment segment = segmentFor(key);
+		CompiledExpression compiled;
+
+		synchronized (segment) {
+			compiled = segment.get(key);
+		}
+
+		if (compiled != null) {
+			hits.increment();
+			return compiled;
+		}
+
+		misses.increment();
+
+		// parsed outside the lock, another thread may parse the same text
+		// concurrently and the last one in wins
+		PlanCache plans = this.plans;
+		if (plans != null) {
+			compiled = plans.get(key, NumericMode.getDefault());
+		}
+		if (compiled == null) {
+			// a cached expression must not keep the caller's text alive, it
+			// may be a view of a large mapped input
+			compiled = ExpressionCompiler.compile(source.toString());
+			if (plans != null) {
+				plans.put(key, compiled);
+			}
+		}
+
+		synchronized (segment) {
+			segment.put(key, compiled);
+		}
+
+		return compiled;
+	}
+
+	/**
+	 * @param plans
+	 *            consulted before parsing a text missing from this cache, null
+	 *            to always parse
+	 */
+	public void setPlanCache(PlanCache plans) {
+		this.plans = plans;
+	}
+
+	public PlanCache getPlanCache() {
+		return plans;
+	}
+
+	/**
+	 * Lowercases an expression and removes whitespace that does not separate
+	 * two names or numbers
+	 * 
+	 * @param source
+	 *            expression text
+	 * @return String normalized text
+	 */
+	public static String normalize(CharSequence source) {
+
+		StringBuilder key = new StringBuilder(source.length());
+		boolean pendingSpace = false;
+
+		for (int i = 0; i < source.length(); ++i) {
+
+			char c = source.charAt(i);
+
+			if (Lexer.isWhitespace(c)) {
+				pendingSpace = key.length() > 0;
+				continue;
+			}
+
+			if (pendingSpace && isTokenChar(c) && isTokenChar(key.charAt(key.length() - 1))) {
+				key.append(' ');
+			}
+			pendingSpace = false;
+
+			key.append(c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c);
+		}
+
+		return key.toString();
+	}
+
+	private static boolean isTokenChar(char c) {
+		return Lexer.isLetter(c) || Lexer.isDigit(c) || c == '-' || c == '+';
+	}
+
+	private Segment segmentFor(String key) {
+		int hash = key.hashCode();
+		return segments[(hash ^ (hash >>> 16)) & segmentMask];
+	}
+
+	/**
+	 * @return number of expressions cached
+	 */
+	public int size() {
+		int size = 0;
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				size += segment.size();
+			}
+		}
+		return size;
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * @return number of lookups answered from the cache
+	 */
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	/**
+	 * @return number of lookups that had to parse the expression
+	 */
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	/**
+	 * @return number of expressions dropped to stay within the size bound
+	 */
+	public long getEvictionCount() {
+		return evictions.sum();
+	}
+
+	/**
+	 * Removes every cached expression, counters are kept
+	 */
+	public void clear() {
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				segment.clear();
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "ExpressionCache[size=" + size() + ", hits=" + getHitCount() + ", misses=" + getMissCount()
+				+ ", evictions=" + getEvictionCount() + "]";
+	}
+
+	// LRU map, guarded by synchronizing on the segment itself
+	private final class Segment extends LinkedHashMap<String, CompiledExpression> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int capacity;
+
+		Segment(int capacity) {
+			super(16, 0.75f, true);
+			this.capacity = capacity;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, CompiledExpression> eldest) {
+			if (size() > capacity) {
+				evictions.increment();
+				return true;
+			}
+			return false;
+		}
+
+	}
+
+}
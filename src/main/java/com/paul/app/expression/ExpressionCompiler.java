@@ -0,0 +1,25 @@
+package com.paul.app.expression;
+
+/**
+ * Parses an expression and runs the optimizations every evaluation path
+ * benefits from.
+ * 
+ * @author Paul Canvin
+ *
+ */
+public final class ExpressionCompiler {
+
+	private ExpressionCompiler() {}
+
+	/**
+	 * @param source
+	 *            expression text
+	 * @return CompiledExpression
+	 * @throws ExpressionParseException
+	 *             if the expression is not valid
+	 */
+	public static CompiledExpression compile(CharSequence source) throws ExpressionParseException {
+		return CommonSubexpressions.share(ConstantFolder.fold(Parser.parse(source)));
+	}
+
+}
@@ -0,0 +1,35 @@
+package com.paul.app.expression;
+
+/**
+ * Thrown when an expression does not follow the calculator grammar.
+ * 
+ * @author Paul Canvin
+ *
+ */
+public class ExpressionParseException extends Exception {
+
+	private static final long serialVersionUID = 1L;
+
+	private final int position;
+
+	/**
+	 * @param message
+	 *            description of the error
+	 * @param position
+	 *            zero based offset into the expression where the error was
+	 *            detected
+	 */
+	public ExpressionParseException(String message, int position) {
+		super(message + " at column " + (position + 1));
+		this.position = position;
+	}
+
+	/**
+	 * @return zero based offset into the expression where the error was
+	 *         detected
+	 */
+	public int getPosition() {
+		return position;
+	}
+
+}
@@ -0,0 +1,19 @@
+package com.paul.app.expression;
+
+/**
+ * An expression evaluated over primitive int inputs.
+ * 
+ * @author Paul Canvin
+ *
+ */
+public interface IntExpression {
+
+	/**
+	 * @param vars
+	 *            one value for each unbound variable of the expression, in the
+	 *            order of {@link CompiledExpression#getVariables()}
+	 * @return int answer of the expression
+	 */
+	int eval(int[] vars);
+
+}
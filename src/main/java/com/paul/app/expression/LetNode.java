@@ -0,0 +1,49 @@
+package com.paul.app.expression;
+
+/**
+ * let(&lt;variable name&gt;, &lt;value expression&gt;, &lt;expression where
+ * variable is used&gt;)
+ * 
+ * Every let is given its own frame slot, so an inner let of the same name
+ * shadows the outer one without having to restore it afterwards.
+ * 
+ * @author Paul Canvin
+ *
+ */
+public final class LetNode extends Node {
+
+	private final String name;
+	private final int slot;
+	private final Node value;
+	private final Node body;
+
+	public LetNode(String name, int slot, Node value, Node body) {
+		this.name = name;
+		this.slot = slot;
+		this.value = value;
+		this.body = body;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getSlot() {
+		return slot;
+	}
+
+	public Node getValue() {
+		return value;
+	}
+
+	public Node getBody() {
+		return body;
+	}
+
+	@Override
+	public int evaluate(int[] frame) {
+		frame[slot] = value.evaluate(frame);
+		return body.evaluate(frame);
+	}
+
+}
@@ -0,0 +1,234 @@
+package com.paul.app.expression;
+
+import java.math.BigInteger;
+
+/**
+ * Splits an expression into tokens one character at a time.
+ * 
+ * Names are returned in lowercase, as expressions are case insensitive.
+ * Numbers are checked against the range of the numeric mode while they are
+ * read, so no exception is created for a literal that is not a number. In the
+ * long and big modes a number outside the int range is returned as a wide
+ * number.
+ * 
+ * @author Paul Canvin
+ *
+ */
+public class Lexer {
+
+	public enum Token {
+		NAME, NUMBER, OPEN, CLOSE, COMMA, END
+	};
+
+	private final CharSequence input;
+	private final int end;
+	private int position;
+
+	private Token token;
+	private int start;
+	private String name;
+	private int number;
+	private BigInteger wideNumber;
+	private NumericMode mode = NumericMode.INT;
+
+	public Lexer(CharSequence input) {
+		this(input, 0, input.length());
+	}
+
+	/**
+	 * @param input
+	 *            characters to read
+	 * @param start
+	 *            offset of the first character of the expression
+	 * @param end
+	 *            offset after the last character of the expression
+	 */
+	public Lexer(CharSequence input, int start, int end) {
+		this.input = input;
+		this.position = start;
+		this.end = end;
+	}
+
+	/**
+	 * @param mode
+	 *            decides the range of the numbers accepted
+	 */
+	public void setNumericMode(NumericMode mode) {
+		this.mode = mode;
+	}
+
+	/**
+	 * Reads the next token
+	 * 
+	 * @return type of the token read
+	 * @throws ExpressionParseException
+	 *             if a character cannot start a token or a number is out of
+	 *             range
+	 */
+	public Token next() throws ExpressionParseException {
+
+		while (position < end && isWhitespace(input.charAt(position))) {
+			++position;
+		}
+
+		start = position;
+
+		if (position == end) {
+			token = Token.END;
+			return token;
+		}
+
+		char c = input.charAt(position);
+
+		if (c == '(') {
+			++position;
+			token = Token.OPEN;
+		} else if (c == ')') {
+			++position;
+			token = Token.CLOSE;
+		} else if (c == ',') {
+			++position;
+			token = Token.COMMA;
+		} else if (isLetter(c)) {
+			readName();
+		} else if (isDigit(c) || c == '-' || c == '+') {
+			readNumber();
+		} else {
+			throw new ExpressionParseException("Unexpected character '" + c + "'", position);
+		}
+
+		return token;
+	}
+
+	/**
+	 * @return type of the last token read
+	 */
+	public Token getToken() {
+		return token;
+	}
+
+	/**
+	 * @return offset of the first character of the last token read
+	 */
+	public int getStart() {
+		return start;
+	}
+
+	/**
+	 * @return lowercase text of the last NAME token read
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return value of the last NUMBER token read, if it is not wide
+	 */
+	public int getNumber() {
+		return number;
+	}
+
+	/**
+	 * @return value of the last NUMBER token read if it is outside the int
+	 *         range, null otherwise
+	 */
+	public BigInteger getWideNumber() {
+		return wideNumber;
+	}
+
+	/**
+	 * @return text of the last token read as it appears in the input
+	 */
+	public String getText() {
+		return input.subSequence(start, position).toString();
+	}
+
+	private void readName() {
+
+		StringBuilder builder = new StringBuilder(8);
+
+		while (position < end && isLetter(input.charAt(position))) {
+			char c = input.charAt(position++);
+			builder.append(c <= 'Z' ? (char) (c + ('a' - 'A')) : c);
+		}
+
+		name = builder.toString();
+		token = Token.NAME;
+	}
+
+	private void readNumber() throws ExpressionParseException {
+
+		boolean negative = false;
+		char sign = input.charAt(position);
+
+		if (sign == '-' || sign == '+') {
+			negative = sign == '-';
+			++position;
+		}
+
+		if (position == end || !isDigit(input.charAt(position))) {
+			throw new ExpressionParseException("Expected a digit after '" + sign + "'", position);
+		}
+
+		// accumulate negatively so the minimum value can be represented
+		long minimum = mode.isInt() ? Integer.MIN_VALUE : Long.MIN_VALUE;
+		long value = 0;
+		boolean wide = false;
+		while (position < end && isDigit(input.charAt(position))) {
+			int digit = input.charAt(position++) - '0';
+			if (wide) {
+				continue;
+			}
+			if (value < (minimum + digit) / 10) {
+				if (mode != NumericMode.BIG) {
+					throw outOfRange();
+				}
+				wide = true;
+				continue;
+			}
+			value = value * 10 - digit;
+		}
+
+		if (!negative && !wide) {
+			if (value == minimum) {
+				if (mode != NumericMode.BIG) {
+					throw outOfRange();
+				}
+				wide = true;
+			}
+			value = -value;
+		}
+
+		if (position < end && isLetter(input.charAt(position))) {
+			throw new ExpressionParseException("Unexpected character '" + input.charAt(position) + "'", position);
+		}
+
+		if (wide) {
+			wideNumber = new BigInteger(input.subSequence(start, position).toString());
+		} else if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+			wideNumber = BigInteger.valueOf(value);
+		} else {
+			wideNumber = null;
+			number = (int) value;
+		}
+		token = Token.NUMBER;
+	}
+
+	private ExpressionParseException outOfRange() {
+		return new ExpressionParseException(
+				"Number is outside the " + (mode.isInt() ? "integer" : "long") + " range", start);
+	}
+
+	static boolean isLetter(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+	}
+
+	static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+
+	static boolean isWhitespace(char c) {
+		return c == ' ' || c == '\t' || c == '\r' || c == '\n';
+	}
+
+}
@@ -0,0 +1,90 @@
+package com.paul.app.expression;
+
+import java.util.ArrayDeque;
+
+/**
+ * A node of a compiled expression tree.
+ * 
+ * Variables are resolved to slots of an int frame when the tree is built, so
+ * evaluation works on primitive ints only. {@link #size()} and
+ * {@link #toString()} walk the tree with an explicit stack, so they work on
+ * trees nested deeper than the Java stack allows; {@link #evaluate(int[])}
+ * recurses and is meant for shallow trees, {@link Program} evaluates trees of
+ * any depth.
+ * 
+ * @author Paul Canvin
+ *
+ */
+public abstract class Node {
+
+	/**
+	 * Evaluates this node
+	 * 
+	 * @param frame
+	 *            variable values indexed by slot
+	 * @return int value of the node
+	 */
+	public abstract int evaluate(int[] frame);
+
+	/**
+	 * @return number of nodes in the tree rooted at this node
+	 */
+	public int size() {
+
+		int size = 0;
+		ArrayDeque<Node> pending = new ArrayDeque<Node>();
+		pending.push(this);
+
+		while (!pending.isEmpty()) {
+			Node node = pending.pop();
+			++size;
+			if (node instanceof BinaryNode) {
+				pending.push(((BinaryNode) node).getRight());
+				pending.push(((BinaryNode) node).getLeft());
+			} else if (node instanceof LetNode) {
+				pending.push(((LetNode) node).getBody());
+				pending.push(((LetNode) node).getValue());
+			}
+		}
+
+		return size;
+	}
+
+	/**
+	 * @return the expression in the calculator grammar, leaves override it
+	 */
+	@Override
+	public String toString() {
+
+		StringBuilder text = new StringBuilder();
+
+		// nodes still to print and the separators between them
+		ArrayDeque<Object> pending = new ArrayDeque<Object>();
+		pending.push(this);
+
+		while (!pending.isEmpty()) {
+			Object item = pending.pop();
+
+			if (item instanceof BinaryNode) {
+				BinaryNode binary = (BinaryNode) item;
+				text.append(binary.getOperator()).append('(');
+				pending.push(")");
+				pending.push(binary.getRight());
+				pending.push(", ");
+				pending.push(binary.getLeft());
+			} else if (item instanceof LetNode) {
+				LetNode let = (LetNode) item;
+				text.append("let(").append(let.getName()).append(", ");
+				pending.push(")");
+				pending.push(let.getBody());
+				pending.push(", ");
+				pending.push(let.getValue());
+			} else {
+				text.append(item);
+			}
+		}
+
+		return text.toString();
+	}
+
+}
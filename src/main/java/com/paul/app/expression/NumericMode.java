@@ -0,0 +1,101 @@
+package com.paul.app.expression;
+
+import java.util.Locale;
+
+/**
+ * Arithmetic used to evaluate compiled expressions.
+ * 
+ * The mode is chosen when an expression is parsed, as it decides which
+ * literals are accepted, and each mode is evaluated by its own loop, so the
+ * int mode pays nothing for the others.
+ * 
+ * @author Paul Canvin
+ *
+ */
+public enum NumericMode {
+
+	/** int arithmetic that wraps on overflow, the default */
+	INT,
+	/** int arithmetic that fails with a NumericOverflowException on overflow */
+	CHECKED,
+	/** long arithmetic that fails with a NumericOverflowException on overflow */
+	LONG,
+	/** arbitrary precision, computed with longs while the values fit */
+	BIG;
+
+	// used by parsers unless told otherwise, set once at startup
+	private static volatile NumericMode defaultMode = forName(System.getProperty("calculator.numericMode", "int"));
+
+	/**
+	 * @return lowercase name, as given on the command line
+	 */
+	public String getName() {
+		return name().toLowerCase(Locale.ROOT);
+	}
+
+	/**
+	 * @return true if results are ints
+	 */
+	public boolean isInt() {
+		return this == INT || this == CHECKED;
+	}
+
+	/**
+	 * @param aex
+	 *            thrown while evaluating an expression
+	 * @return true if the evaluation overflowed in the checked, long or big
+	 *         mode
+	 */
+	public static boolean isOverflow(ArithmeticException aex) {
+		return aex instanceof NumericOverflowException;
+	}
+
+	/**
+	 * The JVM may throw a division by zero without a message once the
+	 * division is hot.
+	 * 
+	 * @param aex
+	 *            thrown while evaluating an expression
+	 * @return true if the evaluation divided by zero
+	 */
+	public static boolean isDivisionByZero(ArithmeticException aex) {
+		return !isOverflow(aex) && (aex.getMessage() == null || aex.getMessage().endsWith("by zero"));
+	}
+
+	/**
+	 * @param name
+	 *            one of [int, checked, long, big], in any case
+	 * @return NumericMode
+	 * @throws IllegalArgumentException
+	 *             if the name is not a mode
+	 */
+	public static NumericMode forName(String name) {
+
+		for (NumericMode mode : values()) {
+			if (mode.getName().equalsIgnoreCase(name)) {
+				return mode;
+			}
+		}
+		throw new IllegalArgumentException("Unknown numeric mode " + name + ", expected one of int, checked, long, big");
+	}
+
+	/**
+	 * @return mode of expressions parsed without an explicit mode, int unless
+	 *         set or overridden by the calculator.numericMode system property
+	 */
+	public static NumericMode getDefault() {
+		return defaultMode;
+	}
+
+	/**
+	 * Sets the mode of expressions parsed without an explicit mode. Cached
+	 * expressions keep the mode they were parsed with, so it should be set
+	 * before anything is evaluated.
+	 * 
+	 * @param mode
+	 */
+	public static void setDefault(NumericMode mode) {
+		defaultMode = mode;
+	}
+
+}
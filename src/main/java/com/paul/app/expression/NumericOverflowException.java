@@ -0,0 +1,22 @@
+package com.paul.app.expression;
+
+/**
+ * Thrown when a result does not fit the arithmetic of the checked, long or
+ * big numeric mode.
+ * 
+ * @author Paul Canvin
+ *
+ */
+public class NumericOverflowException extends ArithmeticException {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * @param message
+	 *            description of the overflow, such as "integer overflow"
+	 */
+	public NumericOverflowException(String message) {
+		super(message);
+	}
+
+}
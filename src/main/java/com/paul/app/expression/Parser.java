@@ -0,0 +1,305 @@
+package com.paul.app.expression;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.paul.app.expression.Lexer.Token;
+
+/**
+ * Parser for the calculator grammar:
+ * 
+ * <pre>
+ * expression := number
+ *             | variable
+ *             | ( add | sub | mult | div ) "(" expression "," expression ")"
+ *             | let "(" variable "," expression "," expression ")"
+ * </pre>
+ * 
+ * Every variable is resolved to a frame slot while parsing. Nested functions
+ * are tracked on an explicit stack, so deeply nested expressions cannot
+ * overflow the Java stack. Nesting deeper than the maximum depth is reported
+ * as a parse error.
+ * 
+ * @author Paul Canvin
+ *
+ */
+public class Parser {
+
+	private static final String ADD = "add";
+	private static final String SUB = "sub";
+	private static final String MULT = "mult";
+	private static final String DIV = "div";
+	private static final String LET = "let";
+
+	/**
+	 * Deepest nesting of functions accepted, unless overridden by the
+	 * calculator.maxDepth system property
+	 */
+	public static final int DEFAULT_MAX_DEPTH = Integer.getInteger("calculator.maxDepth", 1000000);
+
+	private final CharSequence input;
+	private final Lexer lexer;
+
+	// innermost binding of each variable name
+	private final Map<String, Deque<Integer>> scopes = new HashMap<String, Deque<Integer>>();
+	private final Map<String, Integer> freeSlots = new HashMap<String, Integer>();
+	private final List<String> freeVariables = new ArrayList<String>();
+	private int slotCount = 0;
+	private int maxDepth = DEFAULT_MAX_DEPTH;
+	private NumericMode mode;
+
+	public Parser(CharSequence input) {
+		this(input, 0, input.length());
+	}
+
+	/**
+	 * @param input
+	 *            characters holding the expression
+	 * @param start
+	 *            offset of the first character of the expression
+	 * @param end
+	 *            offset after the last character of the expression
+	 */
+	public Parser(CharSequence input, int start, int end) {
+		this.input = input.subSequence(start, end);
+		this.lexer = new Lexer(input, start, end);
+		setNumericMode(NumericMode.getDefault());
+	}
+
+	/**
+	 * @param mode
+	 *            arithmetic the expression will be evaluated with, which
+	 *            decides the range of the literals accepted
+	 */
+	public void setNumericMode(NumericMode mode) {
+		this.mode = mode;
+		lexer.setNumericMode(mode);
+	}
+
+	/**
+	 * @param maxDepth
+	 *            deepest nesting of functions accepted
+	 */
+	public void setMaxDepth(int maxDepth) {
+		this.maxDepth = maxDepth;
+	}
+
+	/**
+	 * Parses a complete expression
+	 * 
+	 * @param input
+	 * @return CompiledExpression
+	 * @throws ExpressionParseException
+	 *             if the input is not exactly one valid expression
+	 */
+	public static CompiledExpression parse(CharSequence input) throws ExpressionParseException {
+		return new Parser(input).parse();
+	}
+
+	/**
+	 * Parses the input into a compiled expression
+	 * 
+	 * @return CompiledExpression
+	 * @throws ExpressionParseException
+	 *             if the input is not exactly one valid expression
+	 */
+	public CompiledExpression parse() throws ExpressionParseException {
+
+		lexer.next();
+		Node root = parseExpression();
+
+		if (lexer.getToken() != Token.END) {
+			throw error("Unexpected '" + lexer.getText() + "' after end of expression");
+		}
+
+		String[] variables = freeVariables.toArray(new String[freeVariables.size()]);
+		int[] variableSlots = new int[variables.length];
+		for (int i = 0; i < variables.length; ++i) {
+			variableSlots[i] = freeSlots.get(variables[i]);
+		}
+
+		return new CompiledExpression(input, root, variables, variableSlots, slotCount, mode);
+	}
+
+	// on entry the lexer is positioned on the first token of the expression,
+	// on exit on the token following it. Functions whose arguments are still
+	// being parsed are kept on an explicit stack rather than the Java stack, so
+	// the nesting depth is only limited by maxDepth.
+	private Node parseExpression() throws ExpressionParseException {
+
+		ArrayDeque<Frame> frames = new ArrayDeque<Frame>();
+
+		while (true) {
+
+			Node node;
+
+			switch (lexer.getToken()) {
+
+			case NUMBER:
+				node = lexer.getWideNumber() == null ? new ConstNode(lexer.getNumber())
+						: new WideConstNode(lexer.getWideNumber());
+				lexer.next();
+				break;
+
+			case NAME:
+				String name = lexer.getName();
+
+				if (isKeyword(name)) {
+					if (frames.size() == maxDepth) {
+						throw new ExpressionParseException("Expression is nested deeper than " + maxDepth + " functions",
+								lexer.getStart());
+					}
+					expect(Token.OPEN, "'(' after " + name);
+					frames.push(LET.equals(name) ? openLet() : new Frame(name, null));
+					lexer.next();
+					continue;
+				}
+
+				node = new VarNode(name, resolve(name));
+				lexer.next();
+				break;
+
+			case END:
+				throw new ExpressionParseException("Expression ended where an operand was expected", lexer.getStart());
+
+			default:
+				throw error("Expected a number, variable or function but found '" + lexer.getText() + "'");
+			}
+
+			// close every function this operand completes
+			while (true) {
+
+				Frame frame = frames.peek();
+				if (frame == null) {
+					return node;
+				}
+
+				if (frame.first == null) {
+					if (lexer.getToken() != Token.COMMA) {
+						throw error("Expected ','");
+					}
+					frame.first = node;
+					if (frame.variable != null) {
+						bind(frame);
+					}
+					lexer.next();
+					break;
+				}
+
+				if (lexer.getToken() != Token.CLOSE) {
+					throw error("Expected ')'");
+				}
+				frames.pop();
+				node = close(frame, node);
+				lexer.next();
+			}
+		}
+	}
+
+	// on entry the lexer is on the '(' after let, on exit on the ',' before the
+	// value
+	private Frame openLet() throws ExpressionParseException {
+
+		if (lexer.next() != Token.NAME || isKeyword(lexer.getName())) {
+			throw error("First element after a let must always be a variable");
+		}
+		String name = lexer.getName();
+
+		expect(Token.COMMA, "','");
+
+		return new Frame(LET, name);
+	}
+
+	// the value is evaluated before the variable comes into scope, so the
+	// variable is only bound once the value has been parsed
+	private void bind(Frame let) {
+
+		let.slot = slotCount++;
+		Deque<Integer> bindings = scopes.get(let.variable);
+		if (bindings == null) {
+			bindings = new ArrayDeque<Integer>();
+			scopes.put(let.variable, bindings);
+		}
+		bindings.push(let.slot);
+	}
+
+	private Node close(Frame frame, Node second) {
+
+		Node first = frame.first;
+
+		if (LET.equals(frame.function)) {
+			scopes.get(frame.variable).pop();
+			return new LetNode(frame.variable, frame.slot, first, second);
+		} else if (ADD.equals(frame.function)) {
+			return new AddNode(first, second);
+		} else if (SUB.equals(frame.function)) {
+			return new SubNode(first, second);
+		} else if (MULT.equals(frame.function)) {
+			return new MultNode(first, second);
+		} else {
+			return new DivNode(first, second);
+		}
+	}
+
+	private void expect(Token expected, String description) throws ExpressionParseException {
+		if (lexer.next() != expected) {
+			throw error("Expected " + description);
+		}
+	}
+
+	private ExpressionParseException error(String message) {
+
+		if (lexer.getToken() == Token.END) {
+			return new ExpressionParseException(message + " but the expression ended", lexer.getStart());
+		}
+		return new ExpressionParseException(message, lexer.getStart());
+	}
+
+	private int resolve(String name) {
+
+		Deque<Integer> bindings = scopes.get(name);
+		if (bindings != null && !bindings.isEmpty()) {
+			return bindings.peek();
+		}
+
+		Integer slot = freeSlots.get(name);
+		if (slot == null) {
+			slot = slotCount++;
+			freeSlots.put(name, slot);
+			freeVariables.add(name);
+		}
+		return slot;
+	}
+
+	/**
+	 * @param name
+	 *            lowercase name
+	 * @return true if name is one of [add, sub, mult, div, let]
+	 */
+	public static boolean isKeyword(String name) {
+		return ADD.equals(name) || SUB.equals(name) || MULT.equals(name) || DIV.equals(name) || LET.equals(name);
+	}
+
+	/**
+	 * A function whose arguments are being parsed
+	 */
+	private static final class Frame {
+
+		final String function;
+		// variable bound by a let, null for an arithmetic function
+		final String variable;
+		int slot;
+		Node first = null;
+
+		Frame(String function, String variable) {
+			this.function = function;
+			this.variable = variable;
+		}
+
+	}
+
+}
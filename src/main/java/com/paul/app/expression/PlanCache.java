@@ -0,0 +1,609 @@
+package com.paul.app.expression;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+
+/**
+ * Compiled expressions saved to a file, so a new process can load them
+ * without parsing, keyed by a hash of their normalized text and numeric mode.
+ *
+ * The file is memory mapped and only its index is read when it is loaded;
+ * each entry is checked against its CRC32 and decoded the first time it is
+ * asked for. A file with another magic number or version, or whose index is
+ * damaged, is ignored, and a damaged entry is treated as missing, so a
+ * corrupt file costs a parse and never a wrong answer. Expressions compiled
+ * since loading are written by {@link #save(Path)}.
+ *
+ * File layout, big endian:
+ *
+ * <pre>
+ * header  magic, version, entry count, CRC32 of the index
+ * index   per entry: key hash (long), offset, length, CRC32 of the entry
+ * entries per entry: numeric mode (byte), normalized text, frame size,
+ *         name of each slot, slot of each unbound variable, int constants,
+ *         wide constants, node opcodes in post order
+ * </pre>
+ *
+ * A node shared by several parents is written once and referred to by
+ * number afterwards, so the loaded tree shares it again.
+ *
+ * @author Paul Canvin
+ *
+ */
+public final class PlanCache {
+
+	/** "CPLN" */
+	public static final int MAGIC = 0x43504C4E;
+	public static final int VERSION = 1;
+
+	private static final int HEADER_SIZE = 16;
+	private static final int INDEX_ENTRY_SIZE = 20;
+
+	// node opcodes, each followed by an operand up to LET
+	private static final int CONST = 0;
+	private static final int WIDE = 1;
+	private static final int VAR = 2;
+	private static final int LET = 3;
+	// operand is the number of a node already decoded
+	private static final int SHARED = 4;
+	private static final int ADD = 5;
+	private static final int SUB = 6;
+	private static final int MULT = 7;
+	private static final int DIV = 8;
+
+	// read only, each lookup reads through its own duplicate
+	private final ByteBuffer mapped;
+	// entry number in the index of each key hash of the file
+	private final Map<Long, Integer> index;
+	// entries compiled since loading, encoded
+	private final Map<Long, byte[]> added = new ConcurrentHashMap<Long, byte[]>();
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder corrupt = new LongAdder();
+
+	/**
+	 * An empty cache
+	 */
+	public PlanCache() {
+		this.mapped = null;
+		this.index = Collections.emptyMap();
+	}
+
+	private PlanCache(ByteBuffer mapped, Map<Long, Integer> index) {
+		this.mapped = mapped;
+		this.index = index;
+	}
+
+	/**
+	 * Maps a cache file and reads its index
+	 *
+	 * @param file
+	 *            cache file, need not exist
+	 * @return PlanCache holding the entries of the file, empty if the file does
+	 *         not exist or cannot be used
+	 * @throws IOException
+	 *             if the file exists but cannot be read
+	 */
+	public static PlanCache load(Path file) throws IOException {
+
+		if (!Files.exists(file)) {
+			return new PlanCache();
+		}
+
+		ByteBuffer mapped;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("Plan cache " + file + " is larger than 2GB");
+			}
+			// the mapping stays valid after the channel is closed
+			mapped = channel.map(MapMode.READ_ONLY, 0, channel.size());
+		}
+
+		if (mapped.limit() < HEADER_SIZE || mapped.getInt(0) != MAGIC) {
+			return discarded();
+		}
+		if (mapped.getInt(4) != VERSION) {
+			// written by another release, rebuilt rather than converted
+			return new PlanCache();
+		}
+
+		int count = mapped.getInt(8);
+		if (count < 0 || count > (mapped.limit() - HEADER_SIZE) / INDEX_ENTRY_SIZE
+				|| crc(mapped, HEADER_SIZE, count * INDEX_ENTRY_SIZE) != mapped.getInt(12)) {
+			return discarded();
+		}
+
+		Map<Long, Integer> index = new HashMap<Long, Integer>(count * 2);
+		for (int entry = 0; entry < count; ++entry) {
+			index.put(mapped.getLong(HEADER_SIZE + entry * INDEX_ENTRY_SIZE), entry);
+		}
+
+		return new PlanCache(mapped, index);
+	}
+
+	// an empty cache counting the file it ignored as one damaged entry
+	private static PlanCache discarded() {
+		PlanCache cache = new PlanCache();
+		cache.corrupt.increment();
+		return cache;
+	}
+
+	/**
+	 * @param key
+	 *            normalized expression text, see
+	 *            {@link ExpressionCache#normalize(CharSequence)}
+	 * @param mode
+	 *            numeric mode the expression is parsed with
+	 * @return CompiledExpression saved for the text and mode, or null if there
+	 *         is none or its entry is damaged
+	 */
+	public CompiledExpression get(String key, NumericMode mode) {
+
+		long hash = hash(key, mode);
+		CompiledExpression compiled = null;
+
+		byte[] encoded = added.get(hash);
+		if (encoded != null) {
+			compiled = decode(ByteBuffer.wrap(encoded), key, mode);
+		} else {
+			Integer entry = index.get(hash);
+			if (entry != null) {
+				ByteBuffer bytes = entry(entry);
+				if (bytes == null) {
+					corrupt.increment();
+				} else {
+					compiled = decode(bytes, key, mode);
+				}
+			}
+		}
+
+		if (compiled != null) {
+			hits.increment();
+		} else {
+			misses.increment();
+		}
+		return compiled;
+	}
+
+	/**
+	 * Adds an expression compiled by this process, written by the next
+	 * {@link #save(Path)}
+	 *
+	 * @param key
+	 *            normalized expression text, see
+	 *            {@link ExpressionCache#normalize(CharSequence)}
+	 * @param compiled
+	 */
+	public void put(String key, CompiledExpression compiled) {
+
+		long hash = hash(key, compiled.getNumericMode());
+		if (!added.containsKey(hash) && !(index.containsKey(hash) && entry(index.get(hash)) != null)) {
+			added.put(hash, encode(key, compiled));
+		}
+	}
+
+	/**
+	 * @return true if expressions were added or damaged entries found since
+	 *         loading, so the file should be saved
+	 */
+	public boolean isModified() {
+		return !added.isEmpty() || corrupt.sum() > 0;
+	}
+
+	/**
+	 * Writes the valid entries of the loaded file and the ones added since.
+	 * The file is replaced at once, so readers never see a partial file.
+	 *
+	 * @param file
+	 * @throws IOException
+	 */
+	public void save(Path file) throws IOException {
+
+		Map<Long, ByteBuffer> entries = new LinkedHashMap<Long, ByteBuffer>();
+		for (Map.Entry<Long, Integer> entry : index.entrySet()) {
+			ByteBuffer bytes = entry(entry.getValue());
+			if (bytes != null) {
+				entries.put(entry.getKey(), bytes);
+			}
+		}
+		for (Map.Entry<Long, byte[]> entry : added.entrySet()) {
+			if (!entries.containsKey(entry.getKey())) {
+				entries.put(entry.getKey(), ByteBuffer.wrap(entry.getValue()));
+			}
+		}
+
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + entries.size() * INDEX_ENTRY_SIZE);
+		header.putInt(MAGIC).putInt(VERSION).putInt(entries.size()).putInt(0);
+		int offset = header.capacity();
+		for (Map.Entry<Long, ByteBuffer> entry : entries.entrySet()) {
+			int length = entry.getValue().remaining();
+			header.putLong(entry.getKey()).putInt(offset).putInt(length)
+					.putInt(crc(entry.getValue(), entry.getValue().position(), length));
+			offset += length;
+		}
+		header.putInt(12, crc(header, HEADER_SIZE, entries.size() * INDEX_ENTRY_SIZE));
+
+		File target = file.toAbsolutePath().toFile();
+		File temporary = File.createTempFile(target.getName(), ".tmp", target.getParentFile());
+
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(temporary)))) {
+			out.write(header.array());
+			for (ByteBuffer bytes : entries.values()) {
+				if (bytes.hasArray()) {
+					out.write(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+				} else {
+					byte[] copy = new byte[bytes.remaining()];
+					bytes.get(copy);
+					out.write(copy);
+				}
+			}
+		} catch (IOException e) {
+			temporary.delete();
+			throw e;
+		}
+
+		Files.move(temporary.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * @return number of expressions held, loaded or added
+	 */
+	public int size() {
+		int size = index.size();
+		for (Long hash : added.keySet()) {
+			if (!index.containsKey(hash)) {
+				++size;
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * @return number of lookups answered without parsing
+	 */
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	/**
+	 * @return number of lookups that found no usable entry
+	 */
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	/**
+	 * @return number of damaged entries found, counting a discarded file as one
+	 */
+	public long getCorruptCount() {
+		return corrupt.sum();
+	}
+
+	@Override
+	public String toString() {
+		return "PlanCache[size=" + size() + ", hits=" + getHitCount() + ", misses=" + getMissCount() + ", corrupt="
+				+ getCorruptCount() + "]";
+	}
+
+	/**
+	 * @param key
+	 * @param mode
+	 * @return 64 bit FNV-1a hash of the text and mode
+	 */
+	static long hash(String key, NumericMode mode) {
+
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < key.length(); ++i) {
+			hash = (hash ^ key.charAt(i)) * 0x100000001b3L;
+		}
+		return (hash ^ mode.ordinal()) * 0x100000001b3L;
+	}
+
+	// the bytes of an entry of the file, or null if they fail their checks
+	private ByteBuffer entry(int entry) {
+
+		int at = HEADER_SIZE + entry * INDEX_ENTRY_SIZE;
+		int offset = mapped.getInt(at + 8);
+		int length = mapped.getInt(at + 12);
+
+		if (offset < HEADER_SIZE || length < 0 || offset > mapped.limit() - length
+				|| crc(mapped, offset, length) != mapped.getInt(at + 16)) {
+			return null;
+		}
+
+		ByteBuffer bytes = mapped.duplicate();
+		bytes.limit(offset + length).position(offset);
+		return bytes.slice();
+	}
+
+	private static int crc(ByteBuffer buffer, int offset, int length) {
+
+		ByteBuffer bytes = buffer.duplicate();
+		bytes.limit(offset + length).position(offset);
+		CRC32 crc = new CRC32();
+		crc.update(bytes);
+		return (int) crc.getValue();
+	}
+
+	private static byte[] encode(String key, CompiledExpression compiled) {
+
+		String[] names = new String[compiled.getFrameSize()];
+		List<Integer> constants = new ArrayList<Integer>();
+		Map<Integer, Integer> constantIndex = new HashMap<Integer, Integer>();
+		List<BigInteger> wideConstants = new ArrayList<BigInteger>();
+		Map<BigInteger, Integer> wideIndex = new HashMap<BigInteger, Integer>();
+		Map<Node, Integer> sharedNodes = new IdentityHashMap<Node, Integer>();
+		int[] code = new int[32];
+		int length = 0;
+		int nodeCount = 0;
+
+		// writes children before their parent, keeping the nodes whose
+		// children are being written on an explicit stack
+		ArrayDeque<Node> pending = new ArrayDeque<Node>();
+		ArrayDeque<int[]> states = new ArrayDeque<int[]>();
+		pending.push(compiled.getRoot());
+		states.push(new int[1]);
+
+		while (!pending.isEmpty()) {
+			Node node = pending.peek();
+			int[] state = states.peek();
+
+			if (code.length - length < 2) {
+				code = Arrays.copyOf(code, code.length * 2);
+			}
+
+			Integer shared = compiled.isShared() ? sharedNodes.get(node) : null;
+			if (shared != null) {
+				code[length++] = SHARED;
+				code[length++] = shared;
+				pending.pop();
+				states.pop();
+				continue;
+			}
+
+			if (node instanceof BinaryNode || node instanceof LetNode) {
+				if (state[0] < 2) {
+					pending.push(CommonSubexpressions.child(node, state[0]++));
+					states.push(new int[1]);
+					continue;
+				}
+				if (node instanceof LetNode) {
+					LetNode let = (LetNode) node;
+					names[let.getSlot()] = let.getName();
+					code[length++] = LET;
+					code[length++] = let.getSlot();
+				} else {
+					code[length++] = node instanceof AddNode ? ADD
+							: node instanceof SubNode ? SUB : node instanceof MultNode ? MULT : DIV;
+					if (compiled.isShared()) {
+						sharedNodes.put(node, nodeCount);
+					}
+				}
+
+			} else if (node instanceof ConstNode) {
+				int value = ((ConstNode) node).getValue();
+				Integer constant = constantIndex.get(value);
+				if (constant == null) {
+					constant = constants.size();
+					constants.add(value);
+					constantIndex.put(value, constant);
+				}
+				code[length++] = CONST;
+				code[length++] = constant;
+
+			} else if (node instanceof WideConstNode) {
+				BigInteger value = ((WideConstNode) node).getValue();
+				Integer constant = wideIndex.get(value);
+				if (constant == null) {
+					constant = wideConstants.size();
+					wideConstants.add(value);
+					wideIndex.put(value, constant);
+				}
+				code[length++] = WIDE;
+				code[length++] = constant;
+
+			} else {
+				VarNode variable = (VarNode) node;
+				names[variable.getSlot()] = variable.getName();
+				code[length++] = VAR;
+				code[length++] = variable.getSlot();
+			}
+
+			++nodeCount;
+			pending.pop();
+			states.pop();
+		}
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + key.length() + length * 4);
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeByte(compiled.getNumericMode().ordinal());
+			writeString(out, key);
+			out.writeInt(names.length);
+			for (String name : names) {
+				writeString(out, name);
+			}
+			int[] variableSlots = compiled.getVariableSlots();
+			out.writeInt(variableSlots.length);
+			for (int slot : variableSlots) {
+				out.writeInt(slot);
+			}
+			out.writeInt(constants.size());
+			for (int value : constants) {
+				out.writeInt(value);
+			}
+			out.writeInt(wideConstants.size());
+			for (BigInteger value : wideConstants) {
+				byte[] magnitude = value.toByteArray();
+				out.writeInt(magnitude.length);
+				out.write(magnitude);
+			}
+			out.writeInt(nodeCount);
+			out.writeInt(length);
+			for (int i = 0; i < length; ++i) {
+				out.writeInt(code[i]);
+			}
+		} catch (IOException e) {
+			// not thrown by a ByteArrayOutputStream
+			throw new IllegalStateException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	// rebuilds the tree, or returns null if the entry is for another text or
+	// cannot be decoded
+	private CompiledExpression decode(ByteBuffer in, String key, NumericMode mode) {
+
+		try {
+			if (in.get() != mode.ordinal() || !key.equals(readString(in))) {
+				return null;
+			}
+
+			String[] names = new String[in.getInt()];
+			for (int slot = 0; slot < names.length; ++slot) {
+				names[slot] = readString(in);
+			}
+			int[] variableSlots = new int[in.getInt()];
+			String[] variables = new String[variableSlots.length];
+			for (int i = 0; i < variableSlots.length; ++i) {
+				variableSlots[i] = in.getInt();
+				variables[i] = names[variableSlots[i]];
+			}
+			int[] constants = new int[in.getInt()];
+			for (int i = 0; i < constants.length; ++i) {
+				constants[i] = in.getInt();
+			}
+			BigInteger[] wideConstants = new BigInteger[in.getInt()];
+			for (int i = 0; i < wideConstants.length; ++i) {
+				byte[] magnitude = new byte[in.getInt()];
+				in.get(magnitude);
+				wideConstants[i] = new BigInteger(magnitude);
+			}
+
+			Node[] nodes = new Node[in.getInt()];
+			int nodeCount = 0;
+			boolean shared = false;
+			ArrayDeque<Node> stack = new ArrayDeque<Node>();
+			int length = in.getInt();
+
+			for (int pc = 0; pc < length; ++pc) {
+				int opcode = in.getInt();
+				Node node;
+
+				switch (opcode) {
+				case CONST:
+					node = new ConstNode(constants[in.getInt()]);
+					++pc;
+					break;
+				case WIDE:
+					node = new WideConstNode(wideConstants[in.getInt()]);
+					++pc;
+					break;
+				case VAR: {
+					int slot = in.getInt();
+					node = new VarNode(names[slot], slot);
+					++pc;
+					break;
+				}
+				case LET: {
+					int slot = in.getInt();
+					Node body = stack.pop();
+					node = new LetNode(names[slot], slot, stack.pop(), body);
+					++pc;
+					break;
+				}
+				case SHARED:
+					stack.push(nodes[in.getInt()]);
+					shared = true;
+					++pc;
+					continue;
+				default: {
+					Node right = stack.pop();
+					Node left = stack.pop();
+					if (opcode == ADD) {
+						node = new AddNode(left, right);
+					} else if (opcode == SUB) {
+						node = new SubNode(left, right);
+					} else if (opcode == MULT) {
+						node = new MultNode(left, right);
+					} else if (opcode == DIV) {
+						node = new DivNode(left, right);
+					} else {
+						return corrupt();
+					}
+					break;
+				}
+				}
+
+				nodes[nodeCount++] = node;
+				stack.push(node);
+			}
+
+			if (stack.size() != 1 || in.hasRemaining()) {
+				return corrupt();
+			}
+
+			return new CompiledExpression(key, stack.pop(), variables, variableSlots, names.length, mode, shared);
+
+		} catch (RuntimeException e) {
+			// out of bounds reads and indexes, empty stacks: the checksum
+			// matched bytes that were never a valid entry
+			return corrupt();
+		}
+	}
+
+	private CompiledExpression corrupt() {
+		corrupt.increment();
+		return null;
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+
+		if (value == null) {
+			out.writeInt(-1);
+			return;
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(ByteBuffer in) {
+
+		int length = in.getInt();
+		if (length < 0) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		in.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+}
@@ -0,0 +1,1011 @@
+package com.paul.app.expression;
+
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compiled expression flattened into an array of opcodes evaluated over a
+ * primitive int operand stack.
+ * 
+ * Every variable name is given one slot of an int frame. Unbound variables
+ * take the first slots, in the order of
+ * {@link CompiledExpression#getVariables()}. A "let" that shadows a variable
+ * of the same name saves the outer value when binding and restores it after
+ * its body. Evaluation reuses a per thread {@link Context}, so it does not
+ * allocate once the context has grown to fit the program.
+ * 
+ * A node shared by several parents, see {@link CommonSubexpressions}, is
+ * evaluated where it is first used and stored into a slot of its own, which
+ * its other uses load.
+ * 
+ * Each {@link NumericMode} is evaluated by its own loop: the wrapping int loop
+ * has no overflow checks, the checked and long loops use exact arithmetic and
+ * the big loop works on longs until a value no longer fits. An overflow is
+ * always thrown as a {@link NumericOverflowException}.
+ * 
+ * @author Paul Canvin
+ *
+ */
+public final class Program {
+
+	/** push constants[operand] */
+	public static final int CONST = 0;
+	/** push frame[operand] */
+	public static final int LOAD = 1;
+	/** pop into frame[operand] */
+	public static final int STORE = 2;
+	/** save frame[operand], then pop into it */
+	public static final int BIND = 3;
+	/** restore the value saved by the matching BIND */
+	public static final int UNBIND = 4;
+	/** pop y, pop x, push x + y */
+	public static final int ADD = 5;
+	/** pop y, pop x, push x - y */
+	public static final int SUB = 6;
+	/** pop y, pop x, push x * y */
+	public static final int MULT = 7;
+	/** pop y, pop x, push x / y */
+	public static final int DIV = 8;
+
+	private static final String[] NAMES = { "const", "load", "store", "bind", "unbind", "add", "sub", "mult", "div" };
+
+	private static final ThreadLocal<Context> contexts = new ThreadLocal<Context>() {
+		@Override
+		protected Context initialValue() {
+			return new Context();
+		}
+	};
+
+	private final int[] code;
+	private final int[] constants;
+	// every constant as a long, and the ones beyond the long range, if any
+	private final long[] longConstants;
+	private final BigInteger[] bigConstants;
+	private final String[] slotNames;
+	private final int inputCount;
+	private final int maxStack;
+	private final int maxSaved;
+
+	Program(int[] code, int[] constants, BigInteger[] wideConstants, String[] slotNames, int inputCount,
+			int maxStack, int maxSaved) {
+		this.code = code;
+		this.constants = constants;
+
+		// wide constants only come from expressions parsed for the long and big
+		// modes, whose loops read these instead of constants
+		this.longConstants = new long[constants.length];
+		BigInteger[] bigConstants = null;
+		for (int i = 0; i < constants.length; ++i) {
+			BigInteger wide = wideConstants[i];
+			if (wide == null) {
+				longConstants[i] = constants[i];
+			} else if (wide.bitLength() < 64) {
+				longConstants[i] = wide.longValue();
+			} else {
+				if (bigConstants == null) {
+					bigConstants = new BigInteger[constants.length];
+				}
+				bigConstants[i] = wide;
+			}
+		}
+		this.bigConstants = bigConstants;
+
+		this.slotNames = slotNames;
+		this.inputCount = inputCount;
+		this.maxStack = maxStack;
+		this.maxSaved = maxSaved;
+	}
+
+	/**
+	 * Flattens the tree of a compiled expression
+	 * 
+	 * @param expression
+	 * @return Program
+	 */
+	public static Program compile(CompiledExpression expression) {
+		return new Builder(expression).build();
+	}
+
+	/**
+	 * Evaluates the program with the calling thread's context
+	 * 
+	 * @param inputs
+	 *            values of the unbound variables
+	 * @return int answer of the expression
+	 * @throws ArithmeticException
+	 *             on division by zero
+	 */
+	public int execute(int[] inputs) {
+		return execute(contexts.get(), inputs);
+	}
+
+	/**
+	 * Evaluates the program
+	 * 
+	 * @param context
+	 *            working storage, not shared with another thread
+	 * @param inputs
+	 *            values of the unbound variables
+	 * @return int answer of the expression
+	 * @throws ArithmeticException
+	 *             on division by zero
+	 */
+	public int execute(Context context, int[] inputs) {
+
+		context.ensureCapacity(maxStack, slotNames.length, maxSaved);
+
+		final int[] code = this.code;
+		final int[] constants = this.constants;
+		final int[] stack = context.stack;
+		final int[] frame = context.frame;
+		final int[] saved = context.saved;
+
+		System.arraycopy(inputs, 0, frame, 0, inputCount);
+
+		int sp = 0;
+		int savedTop = 0;
+		int pc = 0;
+
+		while (pc < code.length) {
+			switch (code[pc++]) {
+			case CONST:
+				stack[sp++] = constants[code[pc++]];
+				break;
+			case LOAD:
+				stack[sp++] = frame[code[pc++]];
+				break;
+			case STORE:
+				frame[code[pc++]] = stack[--sp];
+				break;
+			case BIND:
+				saved[savedTop++] = frame[code[pc]];
+				frame[code[pc++]] = stack[--sp];
+				break;
+			case UNBIND:
+				frame[code[pc++]] = saved[--savedTop];
+				break;
+			case ADD:
+				--sp;
+				stack[sp - 1] = stack[sp - 1] + stack[sp];
+				break;
+			case SUB:
+				--sp;
+				stack[sp - 1] = stack[sp - 1] - stack[sp];
+				break;
+			case MULT:
+				--sp;
+				stack[sp - 1] = stack[sp - 1] * stack[sp];
+				break;
+			default:
+				--sp;
+				stack[sp - 1] = stack[sp - 1] / stack[sp];
+				break;
+			}
+		}
+
+		return stack[0];
+	}
+
+	/**
+	 * Evaluates the program with int arithmetic that fails on overflow, with
+	 * the calling thread's context
+	 * 
+	 * @param inputs
+	 *            values of the unbound variables
+	 * @return int answer of the expression
+	 * @throws ArithmeticException
+	 *             on division by zero or overflow
+	 */
+	public int executeChecked(int[] inputs) {
+		return executeChecked(contexts.get(), inputs);
+	}
+
+	/**
+	 * Evaluates the program with int arithmetic that fails on overflow
+	 * 
+	 * @param context
+	 *            working storage, not shared with another thread
+	 * @param inputs
+	 *            values of the unbound variables
+	 * @return int answer of the expression
+	 * @throws ArithmeticException
+	 *             on division by zero or overflow
+	 */
+	public int executeChecked(Context context, int[] inputs) {
+
+		context.ensureCapacity(maxStack, slotNames.length, maxSaved);
+
+		final int[] code = this.code;
+		final int[] constants = this.constants;
+		final int[] stack = context.stack;
+		final int[] frame = context.frame;
+		final int[] saved = context.saved;
+
+		System.arraycopy(inputs, 0, frame, 0, inputCount);
+
+		int sp = 0;
+		int savedTop = 0;
+		int pc = 0;
+
+		while (pc < code.length) {
+			switch (code[pc++]) {
+			case CONST:
+				stack[sp++] = constants[code[pc++]];
+				break;
+			case LOAD:
+				stack[sp++] = frame[code[pc++]];
+				break;
+			case STORE:
+				frame[code[pc++]] = stack[--sp];
+				break;
+			case BIND:
+				saved[savedTop++] = frame[code[pc]];
+				frame[code[pc++]] = stack[--sp];
+				break;
+			case UNBIND:
+				frame[code[pc++]] = saved[--savedTop];
+				break;
+			case ADD:
+				--sp;
+				stack[sp - 1] = addExact(stack[sp - 1], stack[sp]);
+				break;
+			case SUB:
+				--sp;
+				stack[sp - 1] = subtractExact(stack[sp - 1], stack[sp]);
+				break;
+			case MULT:
+				--sp;
+				stack[sp - 1] = multiplyExact(stack[sp - 1], stack[sp]);
+				break;
+			default:
+				--sp;
+				if (stack[sp - 1] == Integer.MIN_VALUE && stack[sp] == -1) {
+					throw new NumericOverflowException("integer overflow");
+				}
+				stack[sp - 1] = stack[sp - 1] / stack[sp];
+				break;
+			}
+		}
+
+		return stack[0];
+	}
+
+	/**
+	 * Evaluates the program with long arithmetic that fails on overflow, with
+	 * the calling thread's context
+	 * 
+	 * @param inputs
+	 *            values of the unbound variables
+	 * @return long answer of the expression
+	 * @throws ArithmeticException
+	 *             on division by zero or overflow
+	 */
+	public long executeLong(long[] inputs) {
+		return executeLong(contexts.get(), inputs);
+	}
+
+	/**
+	 * Evaluates the program with long arithmetic that fails on overflow
+	 * 
+	 * @param context
+	 *            working storage, not shared with another thread
+	 * @param inputs
+	 *            values of the unbound variables
+	 * @return long answer of the expression
+	 * @throws ArithmeticException
+	 *             on division by zero or overflow
+	 */
+	public long executeLong(Context context, long[] inputs) {
+
+		context.ensureLongCapacity(maxStack, slotNames.length, maxSaved);
+
+		final int[] code = this.code;
+		final long[] constants = this.longConstants;
+		final long[] stack = context.longStack;
+		final long[] frame = context.longFrame;
+		final long[] saved = context.longSaved;
+
+		System.arraycopy(inputs, 0, frame, 0, inputCount);
+
+		int sp = 0;
+		int savedTop = 0;
+		int pc = 0;
+
+		while (pc < code.length) {
+			switch (code[pc++]) {
+			case CONST:
+				stack[sp++] = constants[code[pc++]];
+				break;
+			case LOAD:
+				stack[sp++] = frame[code[pc++]];
+				break;
+			case STORE:
+				frame[code[pc++]] = stack[--sp];
+				break;
+			case BIND:
+				saved[savedTop++] = frame[code[pc]];
+				frame[code[pc++]] = stack[--sp];
+				break;
+			case UNBIND:
+				frame[code[pc++]] = saved[--savedTop];
+				break;
+			case ADD:
+				--sp;
+				stack[sp - 1] = addExact(stack[sp - 1], stack[sp]);
+				break;
+			case SUB:
+				--sp;
+				stack[sp - 1] = subtractExact(stack[sp - 1], stack[sp]);
+				break;
+			case MULT:
+				--sp;
+				stack[sp - 1] = multiplyExact(stack[sp - 1], stack[sp]);
+				break;
+			default:
+				--sp;
+				if (stack[sp - 1] == Long.MIN_VALUE && stack[sp] == -1) {
+					throw new NumericOverflowException("long overflow");
+				}
+				stack[sp - 1] = stack[sp - 1] / stack[sp];
+				break;
+			}
+		}
+
+		return stack[0];
+	}
+
+	/**
+	 * Evaluates the program with arbitrary precision, with the calling
+	 * thread's context
+	 * 
+	 * @param inputs
+	 *            values of the unbound variables
+	 * @return BigInteger answer of the expression
+	 * @throws ArithmeticException
+	 *             on division by zero, or a NumericOverflowException if a
+	 *             result is outside the range of BigInteger
+	 */
+	public BigInteger executeBig(long[] inputs) {
+		return executeBig(contexts.get(), inputs, null);
+	}
+
+	/**
+	 * Evaluates the program with arbitrary precision, with the calling
+	 * thread's context
+	 * 
+	 * @param inputs
+	 *            values of the unbound variables
+	 * @param bigInputs
+	 *            values of the unbound variables that do not fit in a long,
+	 *            null for the others, or null if they all fit
+	 * @return BigInteger answer of the expression
+	 * @throws ArithmeticException
+	 *             on division by zero, or a NumericOverflowException if a
+	 *             result is outside the range of BigInteger
+	 */
+	public BigInteger executeBig(long[] inputs, BigInteger[] bigInputs) {
+		return executeBig(contexts.get(), inputs, bigInputs);
+	}
+
+	/**
+	 * Evaluates the program with arbitrary precision. Every value is a long
+	 * unless its entry in the matching BigInteger array is set, which only
+	 * happens once a result no longer fits in a long.
+	 * 
+	 * @param context
+	 *            working storage, not shared with another thread
+	 * @param inputs
+	 *            values of the unbound variables
+	 * @return BigInteger answer of the expression
+	 * @throws ArithmeticException
+	 *             on division by zero, or a NumericOverflowException if a
+	 *             result is outside the range of BigInteger
+	 */
+	public BigInteger executeBig(Context context, long[] inputs) {
+		return executeBig(context, inputs, null);
+	}
+
+	/**
+	 * Evaluates the program with arbitrary precision, with inputs that may
+	 * not fit in a long
+	 * 
+	 * @param context
+	 *            working storage, not shared with another thread
+	 * @param inputs
+	 *            values of the unbound variables
+	 * @param bigInputs
+	 *            values of the unbound variables that do not fit in a long,
+	 *            null for the others, or null if they all fit
+	 * @return BigInteger answer of the expression
+	 * @throws ArithmeticException
+	 *             on division by zero, or a NumericOverflowException if a
+	 *             result is outside the range of BigInteger
+	 */
+	public BigInteger executeBig(Context context, long[] inputs, BigInteger[] bigInputs) {
+
+		context.ensureBigCapacity(maxStack, slotNames.length, maxSaved);
+
+		final int[] code = this.code;
+		final long[] constants = this.longConstants;
+		final BigInteger[] bigConstants = this.bigConstants;
+		final long[] stack = context.longStack;
+		final long[] frame = context.longFrame;
+		final long[] saved = context.longSaved;
+		final BigInteger[] bigStack = context.bigStack;
+		final BigInteger[] bigFrame = context.bigFrame;
+		final BigInteger[] bigSaved = context.bigSaved;
+
+		System.arraycopy(inputs, 0, frame, 0, inputCount);
+		if (bigInputs == null) {
+			Arrays.fill(bigFrame, 0, inputCount, null);
+		} else {
+			System.arraycopy(bigInputs, 0, bigFrame, 0, inputCount);
+		}
+
+		int sp = 0;
+		int savedTop = 0;
+		int pc = 0;
+		int slot;
+
+		try {
+			while (pc < code.length) {
+				switch (code[pc++]) {
+				case CONST:
+					stack[sp] = constants[code[pc]];
+					bigStack[sp++] = bigConstants == null ? null : bigConstants[code[pc]];
+					++pc;
+					break;
+				case LOAD:
+					slot = code[pc++];
+					stack[sp] = frame[slot];
+					bigStack[sp++] = bigFrame[slot];
+					break;
+				case STORE:
+					slot = code[pc++];
+					frame[slot] = stack[--sp];
+					bigFrame[slot] = bigStack[sp];
+					break;
+				case BIND:
+					slot = code[pc++];
+					saved[savedTop] = frame[slot];
+					bigSaved[savedTop++] = bigFrame[slot];
+					frame[slot] = stack[--sp];
+					bigFrame[slot] = bigStack[sp];
+					break;
+				case UNBIND:
+					slot = code[pc++];
+					frame[slot] = saved[--savedTop];
+					bigFrame[slot] = bigSaved[savedTop];
+					break;
+				case ADD: {
+					--sp;
+					long x = stack[sp - 1];
+					long y = stack[sp];
+					long r = x + y;
+					if (bigStack[sp - 1] == null && bigStack[sp] == null && ((x ^ r) & (y ^ r)) >= 0) {
+						stack[sp - 1] = r;
+					} else {
+						setBig(stack, bigStack, sp - 1, apply(ADD, big(stack, bigStack, sp - 1), big(stack, bigStack, sp)));
+					}
+					break;
+				}
+				case SUB: {
+					--sp;
+					long x = stack[sp - 1];
+					long y = stack[sp];
+					long r = x - y;
+					if (bigStack[sp - 1] == null && bigStack[sp] == null && ((x ^ y) & (x ^ r)) >= 0) {
+						stack[sp - 1] = r;
+					} else {
+						setBig(stack, bigStack, sp - 1,
+								apply(SUB, big(stack, bigStack, sp - 1), big(stack, bigStack, sp)));
+					}
+					break;
+				}
+				case MULT: {
+					--sp;
+					long x = stack[sp - 1];
+					long y = stack[sp];
+					long r = x * y;
+					// the overflow test of Math.multiplyExact
+					if (bigStack[sp - 1] == null && bigStack[sp] == null
+							&& (((Math.abs(x) | Math.abs(y)) >>> 31 == 0)
+									|| ((y == 0 || r / y == x) && !(x == Long.MIN_VALUE && y == -1)))) {
+						stack[sp - 1] = r;
+					} else {
+						setBig(stack, bigStack, sp - 1,
+								apply(MULT, big(stack, bigStack, sp - 1), big(stack, bigStack, sp)));
+					}
+					break;
+				}
+				default: {
+					--sp;
+					long x = stack[sp - 1];
+					long y = stack[sp];
+					// a BigInteger is never zero, zero always fits in a long
+					if (bigStack[sp] == null && y == 0) {
+						throw new ArithmeticException("/ by zero");
+					}
+					if (bigStack[sp - 1] == null && bigStack[sp] == null && !(x == Long.MIN_VALUE && y == -1)) {
+						stack[sp - 1] = x / y;
+					} else {
+						setBig(stack, bigStack, sp - 1,
+								apply(DIV, big(stack, bigStack, sp - 1), big(stack, bigStack, sp)));
+					}
+					break;
+				}
+				}
+			}
+
+			return big(stack, bigStack, 0);
+
+		} finally {
+			// the context is kept by the thread, so it must not hold on to values
+			Arrays.fill(bigStack, 0, maxStack, null);
+			Arrays.fill(bigFrame, 0, slotNames.length, null);
+			Arrays.fill(bigSaved, 0, maxSaved, null);
+		}
+	}
+
+	// Math's exact operations, failing with a NumericOverflowException that
+	// always has its message
+	private static int addExact(int x, int y) {
+		try {
+			return Math.addExact(x, y);
+		} catch (ArithmeticException aex) {
+			throw new NumericOverflowException("integer overflow");
+		}
+	}
+
+	private static int subtractExact(int x, int y) {
+		try {
+			return Math.subtractExact(x, y);
+		} catch (ArithmeticException aex) {
+			throw new NumericOverflowException("integer overflow");
+		}
+	}
+
+	private static int multiplyExact(int x, int y) {
+		try {
+			return Math.multiplyExact(x, y);
+		} catch (ArithmeticException aex) {
+			throw new NumericOverflowException("integer overflow");
+		}
+	}
+
+	private static long addExact(long x, long y) {
+		try {
+			return Math.addExact(x, y);
+		} catch (ArithmeticException aex) {
+			throw new NumericOverflowException("long overflow");
+		}
+	}
+
+	private static long subtractExact(long x, long y) {
+		try {
+			return Math.subtractExact(x, y);
+		} catch (ArithmeticException aex) {
+			throw new NumericOverflowException("long overflow");
+		}
+	}
+
+	private static long multiplyExact(long x, long y) {
+		try {
+			return Math.multiplyExact(x, y);
+		} catch (ArithmeticException aex) {
+			throw new NumericOverflowException("long overflow");
+		}
+	}
+
+	// the divisor is never zero, so BigInteger only fails when the result is
+	// outside its supported range
+	private static BigInteger apply(int opcode, BigInteger x, BigInteger y) {
+		try {
+			switch (opcode) {
+			case ADD:
+				return x.add(y);
+			case SUB:
+				return x.subtract(y);
+			case MULT:
+				return x.multiply(y);
+			default:
+				return x.divide(y);
+			}
+		} catch (ArithmeticException aex) {
+			throw new NumericOverflowException("big overflow: " + aex.getMessage());
+		}
+	}
+
+	private static BigInteger big(long[] stack, BigInteger[] bigStack, int index) {
+		BigInteger value = bigStack[index];
+		return value != null ? value : BigInteger.valueOf(stack[index]);
+	}
+
+	// goes back to a long as soon as the value fits
+	private static void setBig(long[] stack, BigInteger[] bigStack, int index, BigInteger value) {
+		if (value.bitLength() < 64) {
+			stack[index] = value.longValue();
+			bigStack[index] = null;
+		} else {
+			bigStack[index] = value;
+		}
+	}
+
+	/**
+	 * @return opcodes, each followed by its operand for CONST, LOAD, STORE,
+	 *         BIND and UNBIND
+	 */
+	public int[] getCode() {
+		return code.clone();
+	}
+
+	public int[] getConstants() {
+		return constants.clone();
+	}
+
+	/**
+	 * @return variable name held by each frame slot
+	 */
+	public String[] getSlotNames() {
+		return slotNames.clone();
+	}
+
+	/**
+	 * @return number of unbound variables, which occupy the first slots
+	 */
+	public int getInputCount() {
+		return inputCount;
+	}
+
+	/**
+	 * @return deepest operand stack reached while evaluating
+	 */
+	public int getMaxStack() {
+		return maxStack;
+	}
+
+	/**
+	 * @return number of opcodes
+	 */
+	public int getLength() {
+		int length = 0;
+		for (int pc = 0; pc < code.length; pc += hasOperand(code[pc]) ? 2 : 1) {
+			++length;
+		}
+		return length;
+	}
+
+	static boolean hasOperand(int opcode) {
+		return opcode <= UNBIND;
+	}
+
+	@Override
+	public String toString() {
+
+		StringBuilder builder = new StringBuilder();
+
+		for (int pc = 0; pc < code.length;) {
+			int opcode = code[pc++];
+			if (builder.length() > 0) {
+				builder.append("; ");
+			}
+			builder.append(NAMES[opcode]);
+			if (opcode == CONST) {
+				builder.append(' ').append(constants[code[pc++]]);
+			} else if (hasOperand(opcode)) {
+				builder.append(' ').append(slotNames[code[pc++]]);
+			}
+		}
+
+		return builder.toString();
+	}
+
+	/**
+	 * Operand stack and frame used to evaluate programs on one thread
+	 */
+	public static final class Context {
+
+		private int[] stack = new int[16];
+		private int[] frame = new int[16];
+		private int[] saved = new int[16];
+
+		// only allocated by the long and big modes
+		private long[] longStack = new long[0];
+		private long[] longFrame = new long[0];
+		private long[] longSaved = new long[0];
+		private BigInteger[] bigStack = new BigInteger[0];
+		private BigInteger[] bigFrame = new BigInteger[0];
+		private BigInteger[] bigSaved = new BigInteger[0];
+
+		void ensureCapacity(int stackSize, int frameSize, int savedSize) {
+			if (stack.length < stackSize) {
+				stack = new int[stackSize];
+			}
+			if (frame.length < frameSize) {
+				frame = new int[frameSize];
+			}
+			if (saved.length < savedSize) {
+				saved = new int[savedSize];
+			}
+		}
+
+		void ensureLongCapacity(int stackSize, int frameSize, int savedSize) {
+			if (longStack.length < stackSize) {
+				longStack = new long[Math.max(stackSize, 16)];
+			}
+			if (longFrame.length < frameSize) {
+				longFrame = new long[Math.max(frameSize, 16)];
+			}
+			if (longSaved.length < savedSize) {
+				longSaved = new long[Math.max(savedSize, 16)];
+			}
+		}
+
+		void ensureBigCapacity(int stackSize, int frameSize, int savedSize) {
+			ensureLongCapacity(stackSize, frameSize, savedSize);
+			if (bigStack.length < longStack.length) {
+				bigStack = new BigInteger[longStack.length];
+			}
+			if (bigFrame.length < longFrame.length) {
+				bigFrame = new BigInteger[longFrame.length];
+			}
+			if (bigSaved.length < longSaved.length) {
+				bigSaved = new BigInteger[longSaved.length];
+			}
+		}
+
+	}
+
+	private static final class Builder {
+
+		private final CompiledExpression expression;
+		private final Map<String, Integer> slots = new HashMap<String, Integer>();
+		private final List<String> slotNames = new ArrayList<String>();
+		private final Map<Integer, Integer> constantIndex = new HashMap<Integer, Integer>();
+		private final Map<BigInteger, Integer> wideConstantIndex = new HashMap<BigInteger, Integer>();
+		private int[] constants = new int[8];
+		private BigInteger[] wideConstants = new BigInteger[8];
+		private int constantCount = 0;
+		private int[] code = new int[32];
+		private int length = 0;
+
+		// names currently bound by an enclosing let or supplied as inputs
+		private final Map<String, Integer> bound = new HashMap<String, Integer>();
+
+		// uses of the nodes with several parents, and the slot of those
+		// already evaluated
+		private final Map<Node, Integer> uses = new IdentityHashMap<Node, Integer>();
+		private final Map<Node, Integer> sharedSlots = new IdentityHashMap<Node, Integer>();
+
+		private int depth = 0;
+		private int maxStack = 0;
+		private int saved = 0;
+		private int maxSaved = 0;
+
+		Builder(CompiledExpression expression) {
+			this.expression = expression;
+			for (String name : expression.getVariableNames()) {
+				slotFor(name);
+				bound.put(name, 1);
+			}
+		}
+
+		Program build() {
+
+			if (expression.isShared()) {
+				countUses(expression.getRoot());
+			}
+			emit(expression.getRoot());
+
+			return new Program(Arrays.copyOf(code, length), Arrays.copyOf(constants, constantCount),
+					Arrays.copyOf(wideConstants, constantCount),
+					slotNames.toArray(new String[slotNames.size()]), expression.getVariableNames().length,
+					Math.max(maxStack, 1), maxSaved);
+		}
+
+		// emits children before their parent, keeping the nodes whose children
+		// are being emitted on an explicit stack
+		private void emit(Node root) {
+
+			ArrayDeque<Frame> frames = new ArrayDeque<Frame>();
+			frames.push(new Frame(root));
+
+			while (!frames.isEmpty()) {
+				Frame frame = frames.peek();
+				Node node = frame.node;
+
+				if (node instanceof ConstNode) {
+					frames.pop();
+					int value = ((ConstNode) node).getValue();
+					Integer index = constantIndex.get(value);
+					if (index == null) {
+						index = constant(value, null);
+						constantIndex.put(value, index);
+					}
+					instruction(CONST, index);
+					push();
+
+				} else if (node instanceof WideConstNode) {
+					frames.pop();
+					BigInteger value = ((WideConstNode) node).getValue();
+					Integer index = wideConstantIndex.get(value);
+					if (index == null) {
+						index = constant(value.intValue(), value);
+						wideConstantIndex.put(value, index);
+					}
+					instruction(CONST, index);
+					push();
+
+				} else if (node instanceof VarNode) {
+					frames.pop();
+					instruction(LOAD, slotFor(((VarNode) node).getName()));
+					push();
+
+				} else if (node instanceof LetNode) {
+					LetNode let = (LetNode) node;
+					String name = let.getName();
+					int slot = slotFor(name);
+
+					if (frame.state == 0) {
+						frame.state = 1;
+						frames.push(new Frame(let.getValue()));
+
+					} else if (frame.state == 1) {
+						frame.state = 2;
+
+						frame.bindings = bound.get(name);
+						frame.shadows = frame.bindings != null && frame.bindings > 0;
+						bound.put(name, frame.shadows ? frame.bindings + 1 : 1);
+
+						if (frame.shadows) {
+							instruction(BIND, slot);
+							maxSaved = Math.max(maxSaved, ++saved);
+						} else {
+							instruction(STORE, slot);
+						}
+						--depth;
+
+						frames.push(new Frame(let.getBody()));
+
+					} else {
+						frames.pop();
+						if (frame.shadows) {
+							instruction(UNBIND, slot);
+							--saved;
+							bound.put(name, frame.bindings);
+						} else {
+							bound.remove(name);
+						}
+					}
+
+				} else {
+					BinaryNode binary = (BinaryNode) node;
+					Integer shared = sharedSlots.get(node);
+
+					if (shared != null) {
+						frames.pop();
+						instruction(LOAD, shared);
+						push();
+
+					} else if (frame.state == 0) {
+						frame.state = 1;
+						frames.push(new Frame(binary.getLeft()));
+
+					} else if (frame.state == 1) {
+						frame.state = 2;
+						frames.push(new Frame(binary.getRight()));
+
+					} else {
+						frames.pop();
+						if (binary instanceof AddNode) {
+							instruction(ADD);
+						} else if (binary instanceof SubNode) {
+							instruction(SUB);
+						} else if (binary instanceof MultNode) {
+							instruction(MULT);
+						} else {
+							instruction(DIV);
+						}
+						--depth;
+
+						if (uses.containsKey(node)) {
+							int slot = slotNames.size();
+							slotNames.add("#" + sharedSlots.size());
+							sharedSlots.put(node, slot);
+							instruction(STORE, slot);
+							instruction(LOAD, slot);
+						}
+					}
+				}
+			}
+		}
+
+		// keeps the operations reached through more than one parent, visiting
+		// the children of each node once
+		private void countUses(Node root) {
+
+			Map<Node, Integer> counts = new IdentityHashMap<Node, Integer>();
+			ArrayDeque<Node> pending = new ArrayDeque<Node>();
+			pending.push(root);
+
+			while (!pending.isEmpty()) {
+				Node node = pending.pop();
+				Integer count = counts.get(node);
+				counts.put(node, count == null ? 1 : count + 1);
+				if (count != null) {
+					if (node instanceof BinaryNode) {
+						uses.put(node, count + 1);
+					}
+				} else if (node instanceof BinaryNode) {
+					pending.push(((BinaryNode) node).getRight());
+					pending.push(((BinaryNode) node).getLeft());
+				} else if (node instanceof LetNode) {
+					pending.push(((LetNode) node).getBody());
+					pending.push(((LetNode) node).getValue());
+				}
+			}
+		}
+
+		private void push() {
+			maxStack = Math.max(maxStack, ++depth);
+		}
+
+		private int constant(int value, BigInteger wide) {
+			if (constantCount == constants.length) {
+				constants = Arrays.copyOf(constants, constantCount * 2);
+				wideConstants = Arrays.copyOf(wideConstants, constantCount * 2);
+			}
+			constants[constantCount] = value;
+			wideConstants[constantCount] = wide;
+			return constantCount++;
+		}
+
+		private int slotFor(String name) {
+			Integer slot = slots.get(name);
+			if (slot == null) {
+				slot = slotNames.size();
+				slots.put(name, slot);
+				slotNames.add(name);
+			}
+			return slot;
+		}
+
+		private void instruction(int opcode) {
+			if (length == code.length) {
+				code = Arrays.copyOf(code, length * 2);
+			}
+			code[length++] = opcode;
+		}
+
+		private void instruction(int opcode, int operand) {
+			instruction(opcode);
+			instruction(operand);
+		}
+
+		/**
+		 * A node whose children are being emitted
+		 */
+		private static final class Frame {
+
+			final Node node;
+			// 0 before the first child, 1 and 2 after each child has been emitted
+			int state = 0;
+			// outer bindings of the name a let binds, restored after its body
+			Integer bindings = null;
+			boolean shadows = false;
+
+			Frame(Node node) {
+				this.node = node;
+			}
+
+		}
+
+	}
+
+}
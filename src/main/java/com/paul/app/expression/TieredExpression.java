@@ -0,0 +1,93 @@
+package com.paul.app.expression;
+
+import com.paul.utils.log.SimpleLogger;
+import com.paul.utils.log.SimpleLogger.Level;
+
+/**
+ * Evaluates an expression with the tree interpreter until it has been
+ * evaluated a given number of times, then promotes it to a generated class.
+ * 
+ * The evaluation count is deliberately not synchronized: when several threads
+ * share an instance the promotion may happen a few evaluations late, which
+ * is harmless.
+ * 
+ * @author Paul Canvin
+ *
+ */
+public final class TieredExpression implements IntExpression {
+
+	/**
+	 * Evaluations before an expression is compiled, unless overridden by the
+	 * calculator.compileThreshold system property
+	 */
+	public static final int DEFAULT_THRESHOLD = Integer.getInteger("calculator.compileThreshold", 10000);
+
+	private static final SimpleLogger logger = SimpleLogger.getInstance();
+
+	private final CompiledExpression expression;
+	private final int threshold;
+	private int evaluations = 0;
+	private volatile IntExpression compiled = null;
+	private volatile boolean compilable = true;
+
+	public TieredExpression(CompiledExpression expression) {
+		this(expression, DEFAULT_THRESHOLD);
+	}
+
+	/**
+	 * @param expression
+	 * @param threshold
+	 *            number of interpreted evaluations before compiling, 0 to
+	 *            compile on the first evaluation
+	 */
+	public TieredExpression(CompiledExpression expression, int threshold) {
+		this.expression = expression;
+		this.threshold = threshold;
+	}
+
+	@Override
+	public int eval(int[] vars) {
+
+		IntExpression target = compiled;
+		if (target != null) {
+			return target.eval(vars);
+		}
+
+		if (compilable && ++evaluations > threshold) {
+			promote();
+			target = compiled;
+			if (target != null) {
+				return target.eval(vars);
+			}
+		}
+
+		return expression.evaluate(vars);
+	}
+
+	/**
+	 * @return true once the expression runs as a generated class
+	 */
+	public boolean isCompiled() {
+		return compiled != null;
+	}
+
+	public CompiledExpression getExpression() {
+		return expression;
+	}
+
+	private synchronized void promote() {
+
+		if (compiled != null || !compilable) {
+			return;
+		}
+
+		try {
+			compiled = BytecodeCompiler.compile(expression);
+			logger.logMessage(Level.DEBUG, "Compiled to bytecode after " + threshold + " evaluations: " + expression);
+		} catch (Exception e) {
+			compilable = false;
+			logger.logMessage(Level.DEBUG, "Expression stays interpreted: " + e.getMessage());
+		}
+	}
+
+}
@@ -0,0 +1,49 @@
+package com.paul.app.expression;
+
+/**
+ * A reference to a variable, either bound by an enclosing "let" or supplied
+ * from outside the expression.
+ * 
+ * @author Paul Canvin
+ *
+ */
+public final class VarNode extends Node {
+
+	private final String name;
+	private final int slot;
+
+	/**
+	 * @param name
+	 *            variable name
+	 * @param slot
+	 *            frame slot holding the value of the variable
+	 */
+	public VarNode(String name, int slot) {
+		this.name = name;
+		this.slot = slot;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getSlot() {
+		return slot;
+	}
+
+	@Override
+	public int evaluate(int[] frame) {
+		return frame[slot];
+	}
+
+	@Override
+	public int size() {
+		return 1;
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+
+}
@@ -0,0 +1,43 @@
+package com.paul.app.expression;
+
+import java.math.BigInteger;
+
+/**
+ * An integer literal outside the int range, only accepted by the long and big
+ * numeric modes.
+ * 
+ * @author Paul Canvin
+ *
+ */
+public final class WideConstNode extends Node {
+
+	private final BigInteger value;
+
+	public WideConstNode(BigInteger value) {
+		this.value = value;
+	}
+
+	public BigInteger getValue() {
+		return value;
+	}
+
+	/**
+	 * @throws ArithmeticException
+	 *             always, the literal does not fit in an int
+	 */
+	@Override
+	public int evaluate(int[] frame) {
+		throw new ArithmeticException("Literal " + value + " does not fit in an int");
+	}
+
+	@Override
+	public int size() {
+		return 1;
+	}
+
+	@Override
+	public String toString() {
+		return value.toString();
+	}
+
+}
@@ -0,0 +1,8 @@
+/**
+ * Typed expression trees produced by compiling a calculator expression once
+ * so it can be evaluated many times without re-tokenizing.
+ * 
+ * @author Paul Canvin
+ *
+ */
+package com.paul.app.expression;
@@ -0,0 +1,292 @@
+package com.paul.app.generator;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import com.paul.app.expression.Parser;
+
+/**
+ * Generates random valid expressions and computes their expected results.
+ *
+ * Every node is an operation with probability fanOut, until maxDepth is
+ * reached, and a literal or a bound variable otherwise. The operation is picked
+ * by weight from add, sub, mult, div and let, lets only while fewer than
+ * maxLetNesting lets enclose the node. Variables are only used where they are
+ * bound, so every expression can be evaluated.
+ *
+ * The expected result is computed while generating, from the values of the
+ * operands already generated, without going through the parser or the
+ * evaluators. A division by zero anywhere in the expression makes the
+ * expected result an error.
+ *
+ * @author Paul Canvin
+ *
+ */
+public class ExpressionGenerator {
+
+	public static final int ADD = 0;
+	public static final int SUB = 1;
+	public static final int MULT = 2;
+	public static final int DIV = 3;
+	public static final int LET = 4;
+
+	private static final String[] OPERATORS = { "add", "sub", "mult", "div", "let" };
+
+	private final Random random;
+
+	private int maxDepth = 6;
+	private double fanOut = 0.7;
+	private int[] weights = { 3, 3, 2, 1, 2 };
+	private int maxLetNesting = 4;
+	private int minValue = -100;
+	private int maxValue = 100;
+	private String[] names;
+
+	// innermost binding last
+	private final ArrayList<String> boundNames = new ArrayList<String>();
+	private int[] boundValues = new int[16];
+
+	private boolean divisionByZero;
+	private int result;
+
+	/**
+	 * @param seed
+	 *            the same seed and settings generate the same expressions
+	 */
+	public ExpressionGenerator(long seed) {
+		this.random = new Random(seed);
+		setVariableCount(8);
+	}
+
+	/**
+	 * @param maxDepth
+	 *            operations nested at most this deep, 0 for literals only
+	 */
+	public void setMaxDepth(int maxDepth) {
+		this.maxDepth = maxDepth;
+	}
+
+	/**
+	 * @param fanOut
+	 *            probability that an operand is an operation rather than a
+	 *            literal or variable
+	 */
+	public void setFanOut(double fanOut) {
+		this.fanOut = fanOut;
+	}
+
+	/**
+	 * @param weights
+	 *            relative frequency of add, sub, mult, div and let, indexed by
+	 *            ADD, SUB, MULT, DIV and LET
+	 */
+	public void setOperatorWeights(int[] weights) {
+
+		if (weights.length != OPERATORS.length) {
+			throw new IllegalArgumentException("Expected " + OPERATORS.length + " operator weights");
+		}
+
+		int total = 0;
+		for (int weight : weights) {
+			if (weight < 0) {
+				throw new IllegalArgumentException("Negative operator weight");
+			}
+			total += weight;
+		}
+		if (total == weights[LET]) {
+			throw new IllegalArgumentException("At least one arithmetic operator needs a weight");
+		}
+
+		this.weights = weights.clone();
+	}
+
+	/**
+	 * @param maxLetNesting
+	 *            lets enclosing one another at most
+	 */
+	public void setMaxLetNesting(int maxLetNesting) {
+		this.maxLetNesting = maxLetNesting;
+	}
+
+	/**
+	 * @param count
+	 *            number of distinct variable names lets choose from
+	 */
+	public void setVariableCount(int count) {
+
+		if (count < 1) {
+			throw new IllegalArgumentException("At least one variable name is needed");
+		}
+
+		names = new String[count];
+		int next = 0;
+		for (int i = 0; i < count; ++i) {
+			String name;
+			do {
+				name = name(next++);
+			} while (Parser.isKeyword(name));
+			names[i] = name;
+		}
+	}
+
+	/**
+	 * @param minValue
+	 *            smallest literal
+	 * @param maxValue
+	 *            largest literal
+	 */
+	public void setValueRange(int minValue, int maxValue) {
+
+		if (minValue > maxValue) {
+			throw new IllegalArgumentException("Empty value range " + minValue + ".." + maxValue);
+		}
+
+		this.minValue = minValue;
+		this.maxValue = maxValue;
+	}
+
+	/**
+	 * Appends a new expression
+	 *
+	 * @param expression
+	 *            receives the expression, without a line separator
+	 */
+	public void generate(StringBuilder expression) {
+
+		divisionByZero = false;
+		boundNames.clear();
+
+		result = maxDepth > 0 ? operation(expression, 0, 0) : literal(expression);
+	}
+
+	/**
+	 * @return false if evaluating the last expression divides by zero
+	 */
+	public boolean hasResult() {
+		return !divisionByZero;
+	}
+
+	/**
+	 * @return expected value of the last expression generated, meaningless
+	 *         if it divides by zero
+	 */
+	public int getResult() {
+		return result;
+	}
+
+	private int expression(StringBuilder expression, int depth, int lets) {
+
+		if (depth < maxDepth && random.nextDouble() < fanOut) {
+			return operation(expression, depth, lets);
+		}
+
+		if (!boundNames.isEmpty() && random.nextBoolean()) {
+			return variable(expression);
+		}
+
+		return literal(expression);
+	}
+
+	private int operation(StringBuilder expression, int depth, int lets) {
+
+		int operator = pickOperator(lets < maxLetNesting);
+		expression.append(OPERATORS[operator]).append('(');
+
+		if (operator == LET) {
+
+			String name = names[random.nextInt(names.length)];
+			expression.append(name).append(", ");
+			int value = expression(expression, depth + 1, lets + 1);
+			expression.append(", ");
+
+			bind(name, value);
+			int body = expression(expression, depth + 1, lets + 1);
+			boundNames.remove(boundNames.size() - 1);
+
+			expression.append(')');
+			return body;
+		}
+
+		int x = expression(expression, depth + 1, lets);
+		expression.append(", ");
+		int y = expression(expression, depth + 1, lets);
+		expression.append(')');
+
+		switch (operator) {
+		case ADD:
+			return x + y;
+		case SUB:
+			return x - y;
+		case MULT:
+			return x * y;
+		default:
+			if (y == 0) {
+				divisionByZero = true;
+				return 0;
+			}
+			return x / y;
+		}
+	}
+
+	private int pickOperator(boolean letAllowed) {
+
+		int total = 0;
+		for (int i = 0; i < weights.length; ++i) {
+			if (i != LET || letAllowed) {
+				total += weights[i];
+			}
+		}
+
+		int pick = random.nextInt(total);
+		for (int i = 0; i < weights.length; ++i) {
+			if (i != LET || letAllowed) {
+				pick -= weights[i];
+				if (pick < 0) {
+					return i;
+				}
+			}
+		}
+		return ADD;
+	}
+
+	private void bind(String name, int value) {
+
+		int index = boundNames.size();
+		if (index == boundValues.length) {
+			int[] grown = new int[index * 2];
+			System.arraycopy(boundValues, 0, grown, 0, index);
+			boundValues = grown;
+		}
+		boundNames.add(name);
+		boundValues[index] = value;
+	}
+
+	private int variable(StringBuilder expression) {
+
+		String name = boundNames.get(random.nextInt(boundNames.size()));
+		expression.append(name);
+
+		// the innermost let binding the name gives its value
+		return boundValues[boundNames.lastIndexOf(name)];
+	}
+
+	private int literal(StringBuilder expression) {
+
+		int value = (int) (minValue + (long) (random.nextDouble() * ((long) maxValue - minValue + 1)));
+		expression.append(value);
+		return value;
+	}
+
+	// a, b, ..., z, aa, ab, ...
+	private static String name(int index) {
+
+		StringBuilder name = new StringBuilder();
+		int i = index;
+		do {
+			name.insert(0, (char) ('a' + i % 26));
+			i = i / 26 - 1;
+		} while (i >= 0);
+		return name.toString();
+	}
+
+}
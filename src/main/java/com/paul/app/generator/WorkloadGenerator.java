@@ -0,0 +1,162 @@
+package com.paul.app.generator;
+
+import java.io.BufferedWriter;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+
+import com.paul.app.batch.BatchEvaluator;
+
+/**
+ * Writes generated expressions one per line, in the input format of -batch,
+ * and optionally the results -batch is expected to write for them:
+ *
+ * <pre>
+ * java -cp calculator.jar com.paul.app.generator.WorkloadGenerator -count 10000000 -expected expected.txt expressions.txt
+ * java -jar calculator.jar -batch expressions.txt &gt; results.txt
+ * cmp results.txt expected.txt
+ * </pre>
+ *
+ * @author Paul Canvin
+ *
+ */
+public class WorkloadGenerator {
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final ExpressionGenerator generator;
+
+	public WorkloadGenerator(ExpressionGenerator generator) {
+		this.generator = generator;
+	}
+
+	/**
+	 * Generates expressions and their expected results
+	 *
+	 * @param count
+	 *            number of expressions
+	 * @param expressions
+	 *            receives one expression per line
+	 * @param expected
+	 *            receives one result or error record per line, or null
+	 * @throws IOException
+	 */
+	public void write(long count, Writer expressions, Writer expected) throws IOException {
+
+		StringBuilder line = new StringBuilder(256);
+		StringBuilder result = new StringBuilder(32);
+
+		for (long i = 0; i < count; ++i) {
+
+			line.setLength(0);
+			generator.generate(line);
+			line.append('\n');
+			expressions.append(line);
+
+			if (expected != null) {
+				result.setLength(0);
+				if (generator.hasResult()) {
+					result.append(generator.getResult());
+				} else {
+					result.append(BatchEvaluator.ERROR_PREFIX).append("Division by zero");
+				}
+				result.append('\n');
+				expected.append(result);
+			}
+		}
+
+		expressions.flush();
+		if (expected != null) {
+			expected.flush();
+		}
+	}
+
+	public static void main(String[] args) {
+
+		Options options = new Options();
+		options.addOption(new Option("h", "print this message"));
+		options.addOption(option("count", "n", "number of expressions, default 1000"));
+		options.addOption(option("seed", "seed", "random seed, default 1"));
+		options.addOption(option("depth", "n", "operations nested at most n deep, default 6"));
+		options.addOption(option("fanout", "p", "probability that an operand is an operation, default 0.7"));
+		options.addOption(option("weights", "a,s,m,d,l", "weights of add, sub, mult, div and let, default 3,3,2,1,2"));
+		options.addOption(option("lets", "n", "lets enclosing one another at most, default 4"));
+		options.addOption(option("vars", "n", "number of variable names, default 8"));
+		options.addOption(option("min", "value", "smallest literal, default -100"));
+		options.addOption(option("max", "value", "largest literal, default 100"));
+		options.addOption(option("expected", "file", "write the expected -batch output to this file"));
+
+		String usage = "java -cp calculator.jar com.paul.app.generator.WorkloadGenerator [options] [<file>]";
+
+		try {
+			CommandLine cmdLine = new DefaultParser().parse(options, args);
+
+			if (cmdLine.hasOption("h") || cmdLine.getArgs().length > 1) {
+				new HelpFormatter().printHelp(usage, "\nWrites to stdout if no file is given.\n\n", options, null);
+				return;
+			}
+
+			ExpressionGenerator generator = new ExpressionGenerator(Long.parseLong(cmdLine.getOptionValue("seed", "1")));
+			generator.setMaxDepth(Integer.parseInt(cmdLine.getOptionValue("depth", "6")));
+			generator.setFanOut(Double.parseDouble(cmdLine.getOptionValue("fanout", "0.7")));
+			generator.setMaxLetNesting(Integer.parseInt(cmdLine.getOptionValue("lets", "4")));
+			generator.setVariableCount(Integer.parseInt(cmdLine.getOptionValue("vars", "8")));
+			generator.setValueRange(Integer.parseInt(cmdLine.getOptionValue("min", "-100")),
+					Integer.parseInt(cmdLine.getOptionValue("max", "100")));
+
+			if (cmdLine.hasOption("weights")) {
+				String[] values = cmdLine.getOptionValue("weights").split(",");
+				int[] weights = new int[values.length];
+				for (int i = 0; i < values.length; ++i) {
+					weights[i] = Integer.parseInt(values[i].trim());
+				}
+				generator.setOperatorWeights(weights);
+			}
+
+			long count = Long.parseLong(cmdLine.getOptionValue("count", "1000"));
+
+			Writer expressions = cmdLine.getArgs().length == 1 ? open(new FileOutputStream(cmdLine.getArgs()[0]))
+					: open(new FileOutputStream(FileDescriptor.out));
+			Writer expected = cmdLine.hasOption("expected") ? open(new FileOutputStream(cmdLine.getOptionValue("expected")))
+					: null;
+
+			try {
+				new WorkloadGenerator(generator).write(count, expressions, expected);
+			} finally {
+				expressions.close();
+				if (expected != null) {
+					expected.close();
+				}
+			}
+
+		} catch (ParseException | IllegalArgumentException ex) {
+			System.err.println("Invalid arguments: " + ex.getMessage());
+			new HelpFormatter().printHelp(usage, options);
+			System.exit(1);
+		} catch (IOException e) {
+			System.err.println("Unable to write expressions: " + e.getMessage());
+			System.exit(1);
+		}
+	}
+
+	private static Option option(String name, String argName, String description) {
+		Option option = new Option(name, true, description);
+		option.setArgName(argName);
+		return option;
+	}
+
+	private static Writer open(FileOutputStream out) {
+		return new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+	}
+
+}
@@ -0,0 +1,7 @@
+/**
+ * Random expressions for load, scaling and correctness tests.
+ * 
+ * @author Paul Canvin
+ *
+ */
+package com.paul.app.generator;
@@ -0,0 +1,217 @@
+package com.paul.app.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.paul.app.expression.ExpressionCache;
+
+/**
+ * Counts the expressions evaluated and the failures by type, and records the
+ * duration of the compile and evaluate phases, the deepest stack an
+ * evaluation needed and the hit rate of the expression caches.
+ *
+ * Nothing is recorded until metrics are enabled, so the evaluation paths only
+ * pay for reading a flag. Recording uses striped counters and never takes a
+ * lock.
+ *
+ * @author Paul Canvin
+ *
+ */
+public class CalculatorMetrics implements CalculatorMetricsMXBean {
+
+	public static final String OBJECT_NAME = "com.paul.app:type=CalculatorMetrics";
+
+	public enum Phase {
+		// parsing and folding, or finding the compiled expression in a cache
+		COMPILE,
+		EVALUATE
+	};
+
+	public enum Failure {
+		PARSE_ERROR, MISSING_OPERAND, DIVISION_BY_ZERO, OVERFLOW
+	};
+
+	private volatile boolean enabled = false;
+
+	private final LongAdder evaluated = new LongAdder();
+	private final LongAdder[] failures = new LongAdder[Failure.values().length];
+	private final LatencyHistogram[] phases = new LatencyHistogram[Phase.values().length];
+	private final LongAccumulator maxStackDepth = new LongAccumulator(LatencyHistogram.MAX, 0);
+	private final CopyOnWriteArrayList<ExpressionCache> caches = new CopyOnWriteArrayList<ExpressionCache>();
+
+	protected CalculatorMetrics() {
+		for (int i = 0; i < failures.length; ++i) {
+			failures[i] = new LongAdder();
+		}
+		for (int i = 0; i < phases.length; ++i) {
+			phases[i] = new LatencyHistogram();
+		}
+	}
+
+	// created on first use, the class loader guarantees a single instance
+	private static class InstanceHolder {
+		static final CalculatorMetrics instance = new CalculatorMetrics();
+	}
+
+	public static CalculatorMetrics getInstance() {
+		return InstanceHolder.instance;
+	}
+
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Registers the metrics with the platform MBean server
+	 *
+	 * @throws JMException
+	 *             if they are already registered
+	 */
+	public void registerMBean() throws JMException {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		server.registerMBean(this, new ObjectName(OBJECT_NAME));
+	}
+
+	/**
+	 * @param cache
+	 *            cache whose hits and misses are reported
+	 */
+	public void registerCache(ExpressionCache cache) {
+		caches.addIfAbsent(cache);
+	}
+
+	public void recordEvaluated() {
+		evaluated.increment();
+	}
+
+	public void recordFailure(Failure failure) {
+		failures[failure.ordinal()].increment();
+	}
+
+	/**
+	 * @param phase
+	 * @param startNanos
+	 *            System.nanoTime() when the phase started, the end is now
+	 */
+	public void recordPhase(Phase phase, long startNanos) {
+		phases[phase.ordinal()].record(System.nanoTime() - startNanos);
+	}
+
+	public void recordStackDepth(int depth) {
+		maxStackDepth.accumulate(depth);
+	}
+
+	public long getFailures(Failure failure) {
+		return failures[failure.ordinal()].sum();
+	}
+
+	public LatencyHistogram getHistogram(Phase phase) {
+		return phases[phase.ordinal()];
+	}
+
+	@Override
+	public long getExpressionsEvaluated() {
+		return evaluated.sum();
+	}
+
+	@Override
+	public long getParseErrors() {
+		return getFailures(Failure.PARSE_ERROR);
+	}
+
+	@Override
+	public long getMissingOperands() {
+		return getFailures(Failure.MISSING_OPERAND);
+	}
+
+	@Override
+	public long getDivisionsByZero() {
+		return getFailures(Failure.DIVISION_BY_ZERO);
+	}
+
+	@Override
+	public long getOverflows() {
+		return getFailures(Failure.OVERFLOW);
+	}
+
+	@Override
+	public long getCompileCount() {
+		return getHistogram(Phase.COMPILE).getCount();
+	}
+
+	@Override
+	public long getCompileP50() {
+		return getHistogram(Phase.COMPILE).getValueAtPercentile(50);
+	}
+
+	@Override
+	public long getCompileP99() {
+		return getHistogram(Phase.COMPILE).getValueAtPercentile(99);
+	}
+
+	@Override
+	public long getCompileMax() {
+		return getHistogram(Phase.COMPILE).getMax();
+	}
+
+	@Override
+	public long getEvaluateCount() {
+		return getHistogram(Phase.EVALUATE).getCount();
+	}
+
+	@Override
+	public long getEvaluateP50() {
+		return getHistogram(Phase.EVALUATE).getValueAtPercentile(50);
+	}
+
+	@Override
+	public long getEvaluateP99() {
+		return getHistogram(Phase.EVALUATE).getValueAtPercentile(99);
+	}
+
+	@Override
+	public long getEvaluateMax() {
+		return getHistogram(Phase.EVALUATE).getMax();
+	}
+
+	@Override
+	public long getMaxStackDepth() {
+		return maxStackDepth.get();
+	}
+
+	@Override
+	public long getCacheHits() {
+		long hits = 0;
+		for (ExpressionCache cache : caches) {
+			hits += cache.getHitCount();
+		}
+		return hits;
+	}
+
+	@Override
+	public long getCacheMisses() {
+		long misses = 0;
+		for (ExpressionCache cache : caches) {
+			misses += cache.getMissCount();
+		}
+		return misses;
+	}
+
+	@Override
+	public double getCacheHitRate() {
+		long hits = getCacheHits();
+		long lookups = hits + getCacheMisses();
+		return lookups == 0 ? 0 : (double) hits / lookups;
+	}
+
+}
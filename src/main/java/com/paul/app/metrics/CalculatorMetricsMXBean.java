@@ -0,0 +1,45 @@
+package com.paul.app.metrics;
+
+/**
+ * Evaluation metrics as JMX attributes. Durations are in nanoseconds.
+ *
+ * @author Paul Canvin
+ *
+ */
+public interface CalculatorMetricsMXBean {
+
+	long getExpressionsEvaluated();
+
+	long getParseErrors();
+
+	long getMissingOperands();
+
+	long getDivisionsByZero();
+
+	long getOverflows();
+
+	long getCompileCount();
+
+	long getCompileP50();
+
+	long getCompileP99();
+
+	long getCompileMax();
+
+	long getEvaluateCount();
+
+	long getEvaluateP50();
+
+	long getEvaluateP99();
+
+	long getEvaluateMax();
+
+	long getMaxStackDepth();
+
+	long getCacheHits();
+
+	long getCacheMisses();
+
+	double getCacheHitRate();
+
+}
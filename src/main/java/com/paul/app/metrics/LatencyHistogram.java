@@ -0,0 +1,155 @@
+package com.paul.app.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongBinaryOperator;
+
+/**
+ * Histogram of durations in nanoseconds with log-linear buckets, in the
+ * manner of HdrHistogram: each power of two is split into SUB_BUCKETS
+ * buckets, so any recorded value is known to within 1/SUB_BUCKETS of itself.
+ *
+ * Recording never takes a lock. The counts are striped by thread so threads
+ * recording the same duration do not contend on one counter; reads add the
+ * stripes up and are only consistent once recording stops.
+ *
+ * @author Paul Canvin
+ *
+ */
+public class LatencyHistogram {
+
+	static final int SUB_BUCKET_BITS = 4;
+	static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	// values below SUB_BUCKETS get a bucket each, then SUB_BUCKETS per power of
+	// two up to 2^63
+	static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+	// a class rather than Math::max, whose lambda bootstrap would be part of
+	// every start of the program
+	static final LongBinaryOperator MAX = new LongBinaryOperator() {
+		@Override
+		public long applyAsLong(long left, long right) {
+			return Math.max(left, right);
+		}
+	};
+
+	private final int stripeMask;
+	private final AtomicLongArray counts;
+	private final LongAdder total = new LongAdder();
+	private final LongAccumulator max = new LongAccumulator(MAX, 0);
+
+	public LatencyHistogram() {
+		int stripes = Integer.highestOneBit(Math.max(Runtime.getRuntime().availableProcessors(), 1) * 2 - 1);
+		this.stripeMask = stripes - 1;
+		this.counts = new AtomicLongArray(stripes * BUCKETS);
+	}
+
+	/**
+	 * @param nanos
+	 *            duration to record, negative values count as 0
+	 */
+	public void record(long nanos) {
+
+		long value = Math.max(nanos, 0);
+		int stripe = (int) Thread.currentThread().getId() & stripeMask;
+
+		counts.incrementAndGet(stripe * BUCKETS + bucket(value));
+		total.add(value);
+		max.accumulate(value);
+	}
+
+	static int bucket(long value) {
+
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int shift = exponent - SUB_BUCKET_BITS;
+		int mantissa = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+		return (shift + 1) * SUB_BUCKETS + mantissa;
+	}
+
+	// largest value counted in a bucket
+	static long bucketLimit(int bucket) {
+
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+
+		int shift = bucket / SUB_BUCKETS - 1;
+		long mantissa = SUB_BUCKETS + bucket % SUB_BUCKETS;
+		long limit = ((mantissa + 1) << shift) - 1;
+		return limit < 0 ? Long.MAX_VALUE : limit;
+	}
+
+	/**
+	 * @return number of durations recorded
+	 */
+	public long getCount() {
+		long recorded = 0;
+		for (int i = 0; i < counts.length(); ++i) {
+			recorded += counts.get(i);
+		}
+		return recorded;
+	}
+
+	/**
+	 * @return sum of the durations recorded, in nanoseconds
+	 */
+	public long getTotal() {
+		return total.sum();
+	}
+
+	/**
+	 * @return longest duration recorded, in nanoseconds
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * @param percentile
+	 *            between 0 and 100
+	 * @return duration in nanoseconds that percentile of the recorded
+	 *         durations do not exceed, to within the bucket precision, or 0
+	 *         if nothing was recorded
+	 */
+	public long getValueAtPercentile(double percentile) {
+
+		long[] buckets = getBucketCounts();
+
+		long recorded = 0;
+		for (long bucketCount : buckets) {
+			recorded += bucketCount;
+		}
+		if (recorded == 0) {
+			return 0;
+		}
+
+		long rank = Math.max((long) Math.ceil(percentile / 100 * recorded), 1);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; ++i) {
+			seen += buckets[i];
+			if (seen >= rank) {
+				return Math.min(bucketLimit(i), getMax());
+			}
+		}
+		return getMax();
+	}
+
+	/**
+	 * @return count of each bucket, summed over the stripes
+	 */
+	long[] getBucketCounts() {
+
+		long[] buckets = new long[BUCKETS];
+		for (int i = 0; i < counts.length(); ++i) {
+			buckets[i % BUCKETS] += counts.get(i);
+		}
+		return buckets;
+	}
+
+}
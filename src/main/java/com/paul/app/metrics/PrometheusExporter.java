@@ -0,0 +1,176 @@
+package com.paul.app.metrics;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+
+import com.paul.app.metrics.CalculatorMetrics.Failure;
+import com.paul.app.metrics.CalculatorMetrics.Phase;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Writes the metrics in the Prometheus text exposition format, to a file or
+ * to anyone requesting /metrics from a local port. Phase durations are
+ * exported as summaries in seconds.
+ *
+ * @author Paul Canvin
+ *
+ */
+public class PrometheusExporter {
+
+	static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+
+	private final CalculatorMetrics metrics;
+	private HttpServer server = null;
+
+	public PrometheusExporter(CalculatorMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Writes the current values
+	 *
+	 * @param out
+	 * @throws IOException
+	 */
+	public void write(Writer out) throws IOException {
+
+		StringBuilder text = new StringBuilder(2048);
+
+		header(text, "calculator_expressions_evaluated_total", "counter", "Expressions evaluated to a result.");
+		text.append("calculator_expressions_evaluated_total ").append(metrics.getExpressionsEvaluated()).append('\n');
+
+		header(text, "calculator_failures_total", "counter", "Expressions that could not be evaluated, by cause.");
+		for (Failure failure : Failure.values()) {
+			text.append("calculator_failures_total{type=\"").append(label(failure)).append("\"} ")
+					.append(metrics.getFailures(failure)).append('\n');
+		}
+
+		header(text, "calculator_phase_duration_seconds", "summary", "Duration of the compile and evaluate phases.");
+		for (Phase phase : Phase.values()) {
+			LatencyHistogram histogram = metrics.getHistogram(phase);
+			for (double quantile : QUANTILES) {
+				text.append("calculator_phase_duration_seconds{phase=\"").append(label(phase)).append("\",quantile=\"")
+						.append(quantile).append("\"} ")
+						.append(seconds(histogram.getValueAtPercentile(quantile * 100))).append('\n');
+			}
+			text.append("calculator_phase_duration_seconds_sum{phase=\"").append(label(phase)).append("\"} ")
+					.append(seconds(histogram.getTotal())).append('\n');
+			text.append("calculator_phase_duration_seconds_count{phase=\"").append(label(phase)).append("\"} ")
+					.append(histogram.getCount()).append('\n');
+		}
+
+		header(text, "calculator_phase_duration_max_seconds", "gauge", "Longest compile and evaluate phases.");
+		for (Phase phase : Phase.values()) {
+			text.append("calculator_phase_duration_max_seconds{phase=\"").append(label(phase)).append("\"} ")
+					.append(seconds(metrics.getHistogram(phase).getMax())).append('\n');
+		}
+
+		header(text, "calculator_stack_depth_max", "gauge", "Deepest operand stack an evaluation needed.");
+		text.append("calculator_stack_depth_max ").append(metrics.getMaxStackDepth()).append('\n');
+
+		header(text, "calculator_cache_hits_total", "counter", "Expressions found compiled in a cache.");
+		text.append("calculator_cache_hits_total ").append(metrics.getCacheHits()).append('\n');
+
+		header(text, "calculator_cache_misses_total", "counter", "Expressions compiled because no cache held them.");
+		text.append("calculator_cache_misses_total ").append(metrics.getCacheMisses()).append('\n');
+
+		out.append(text);
+		out.flush();
+	}
+
+	/**
+	 * Replaces the file with the current values, so readers never see a
+	 * partial dump
+	 *
+	 * @param file
+	 * @throws IOException
+	 */
+	public void writeFile(File file) throws IOException {
+
+		File directory = file.getAbsoluteFile().getParentFile();
+		File temporary = File.createTempFile(file.getName(), ".tmp", directory);
+
+		try (Writer out = new OutputStreamWriter(new FileOutputStream(temporary), StandardCharsets.UTF_8)) {
+			write(out);
+		} catch (IOException e) {
+			temporary.delete();
+			throw e;
+		}
+
+		Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Answers GET /metrics on a loopback port
+	 *
+	 * @param port
+	 *            0 to pick a free port
+	 * @throws IOException
+	 */
+	public synchronized void start(int port) throws IOException {
+
+		if (server != null) {
+			throw new IllegalStateException("Metrics endpoint already started");
+		}
+
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		server.createContext("/metrics", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+
+				StringWriter text = new StringWriter();
+				write(text);
+				byte[] body = text.toString().getBytes(StandardCharsets.UTF_8);
+
+				exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+				exchange.sendResponseHeaders(200, body.length);
+				try (OutputStream out = exchange.getResponseBody()) {
+					out.write(body);
+				}
+			}
+		});
+		server.start();
+	}
+
+	/**
+	 * @return port the endpoint listens on
+	 */
+	public synchronized int getPort() {
+		return server == null ? -1 : server.getAddress().getPort();
+	}
+
+	public synchronized void stop() {
+		if (server != null) {
+			server.stop(0);
+			server = null;
+		}
+	}
+
+	private static void header(StringBuilder text, String name, String type, String help) {
+		text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		text.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+	}
+
+	private static String label(Enum<?> value) {
+		return value.name().toLowerCase(Locale.ROOT);
+	}
+
+	private static double seconds(long nanos) {
+		return nanos / 1e9;
+	}
+
+}
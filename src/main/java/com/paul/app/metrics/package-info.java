@@ -0,0 +1,8 @@
+/**
+ * Counters and latency histograms of the evaluations, exported over JMX and
+ * in the Prometheus text format.
+ * 
+ * @author Paul Canvin
+ *
+ */
+package com.paul.app.metrics;
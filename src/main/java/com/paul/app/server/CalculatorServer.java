@@ -0,0 +1,198 @@
+package com.paul.app.server;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.paul.app.batch.BatchEvaluator;
+import com.paul.app.expression.ExpressionCache;
+import com.paul.utils.log.SimpleLogger;
+import com.paul.utils.log.SimpleLogger.Level;
+
+/**
+ * Accepts connections on a loopback TCP port and answers each newline
+ * delimited expression with one line holding its result or an error record.
+ * 
+ * Each connection is served by its own thread. Compiled expressions are
+ * cached across connections, so an expression sent again is not parsed
+ * again.
+ * 
+ * @author Paul Canvin
+ *
+ */
+public class CalculatorServer implements Closeable {
+
+	public static final int DEFAULT_PORT = 7070;
+
+	private static final SimpleLogger logger = SimpleLogger.getInstance();
+
+	private final ServerSocket serverSocket;
+	private final ExecutorService connections;
+	private final ExpressionCache cache;
+	private Thread acceptThread = null;
+
+	/**
+	 * Binds the server to a port of the loopback interface
+	 * 
+	 * @param port
+	 *            port to listen on, 0 for any free port
+	 * @throws IOException
+	 *             if the port cannot be bound
+	 */
+	public CalculatorServer(int port) throws IOException {
+		this(port, new ExpressionCache());
+	}
+
+	/**
+	 * Binds the server to a port of the loopback interface
+	 * 
+	 * @param port
+	 *            port to listen on, 0 for any free port
+	 * @param cache
+	 *            compiled expressions shared by all connections
+	 * @throws IOException
+	 *             if the port cannot be bound
+	 */
+	public CalculatorServer(int port, ExpressionCache cache) throws IOException {
+
+		this.cache = cache;
+		serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+
+		final AtomicInteger connectionCount = new AtomicInteger();
+		connections = Executors.newCachedThreadPool(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "calculator-connection-" + connectionCount.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * @return port the server listens on
+	 */
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	/**
+	 * @return compiled expressions shared by all connections
+	 */
+	public ExpressionCache getCache() {
+		return cache;
+	}
+
+	/**
+	 * Starts accepting connections on a background thread
+	 */
+	public synchronized void start() {
+
+		if (acceptThread != null) {
+			return;
+		}
+
+		acceptThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				acceptConnections();
+			}
+		}, "calculator-server");
+		acceptThread.start();
+
+		logger.logMessage(Level.INFO, "Calculator server listening on port " + getPort());
+	}
+
+	/**
+	 * Waits until the server is closed
+	 * 
+	 * @throws InterruptedException
+	 */
+	public void join() throws InterruptedException {
+		Thread thread;
+		synchronized (this) {
+			thread = acceptThread;
+		}
+		if (thread != null) {
+			thread.join();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		serverSocket.close();
+		connections.shutdownNow();
+		logger.logMessage(Level.INFO, "Calculator server on port " + getPort() + " closed, " + cache);
+	}
+
+	private void acceptConnections() {
+
+		while (!serverSocket.isClosed()) {
+			try {
+				final Socket socket = serverSocket.accept();
+				connections.execute(new Runnable() {
+					@Override
+					public void run() {
+						serve(socket);
+					}
+				});
+			} catch (SocketException sex) {
+				// server socket closed
+			} catch (IOException e) {
+				logger.logMessage(Level.ERROR, "Unable to accept connection", e);
+			}
+		}
+	}
+
+	private void serve(Socket socket) {
+
+		logger.setContext("client " + socket.getRemoteSocketAddress());
+
+		try {
+			BufferedReader reader = new BufferedReader(
+					new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+			Writer writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+			StringBuilder result = new StringBuilder(64);
+			String line;
+
+			while ((line = reader.readLine()) != null) {
+
+				result.setLength(0);
+				BatchEvaluator.evaluateLine(line, cache, result);
+				result.append('\n');
+				writer.append(result);
+
+				// answer once every pipelined request has been read
+				if (!reader.ready()) {
+					writer.flush();
+				}
+			}
+
+			writer.flush();
+
+		} catch (IOException e) {
+			logger.logMessage(Level.ERROR, "Connection from " + socket.getRemoteSocketAddress() + " failed", e);
+		} finally {
+			try {
+				socket.close();
+			} catch (IOException e) {
+				// ignore
+			}
+			logger.clearContext();
+		}
+	}
+
+}
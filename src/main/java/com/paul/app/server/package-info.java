@@ -0,0 +1,7 @@
+/**
+ * Long running calculator evaluating expressions sent over a local socket.
+ * 
+ * @author Paul Canvin
+ *
+ */
+package com.paul.app.server;
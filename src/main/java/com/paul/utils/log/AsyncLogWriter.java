@@ -0,0 +1,228 @@
+package com.paul.utils.log;
+
+import java.io.PrintWriter;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import com.paul.utils.log.SimpleLogger.Level;
+
+/**
+ * Writes log messages on a background thread.
+ * 
+ * Producers claim a slot of a ring buffer with a compare-and-set and publish
+ * the message into it; they never take a lock. A single writer thread drains
+ * the published messages in batches, formats them and flushes once per batch.
+ * When the buffer is full the overflow policy decides whether the producer
+ * waits, drops the message, or waits for one message in every
+ * SAMPLE_RATE and drops the rest.
+ */
+public class AsyncLogWriter {
+
+	public enum OverflowPolicy {
+		BLOCK, DROP, SAMPLE
+	};
+
+	public static final int DEFAULT_CAPACITY = 8192;
+	public static final int SAMPLE_RATE = 100;
+
+	private static final long IDLE_PARK_NANOS = 1000000L;
+
+	private final PrintWriter out;
+	private final OverflowPolicy policy;
+	private final int capacity;
+	private final int mask;
+
+	private final long[] times;
+	private final Level[] levels;
+	private final String[] messages;
+	private final Exception[] exceptions;
+	// sequence + 1 of the message published in each slot
+	private final AtomicLongArray published;
+
+	private final AtomicLong claimed = new AtomicLong();
+	private final AtomicLong consumed = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+	private final AtomicLong overflows = new AtomicLong();
+
+	private final Thread writerThread;
+	private volatile boolean running = true;
+
+	/**
+	 * @param out
+	 *            destination of the formatted messages, only used by the
+	 *            writer thread
+	 * @param capacity
+	 *            number of messages buffered, rounded up to a power of two
+	 * @param policy
+	 *            what producers do when the buffer is full
+	 */
+	public AsyncLogWriter(PrintWriter out, int capacity, OverflowPolicy policy) {
+
+		int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+
+		this.out = out;
+		this.policy = policy;
+		this.capacity = size;
+		this.mask = size - 1;
+		this.times = new long[size];
+		this.levels = new Level[size];
+		this.messages = new String[size];
+		this.exceptions = new Exception[size];
+		this.published = new AtomicLongArray(size);
+
+		writerThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				drain();
+			}
+		}, "async-log-writer");
+		writerThread.setDaemon(true);
+		writerThread.start();
+	}
+
+	/**
+	 * Queues a message for the writer thread
+	 * 
+	 * @return false if the message was dropped
+	 */
+	public boolean append(Level level, String msg, Exception ex) {
+
+		long sequence;
+
+		while (true) {
+
+			if (!running) {
+				dropped.incrementAndGet();
+				return false;
+			}
+
+			sequence = claimed.get();
+
+			if (sequence - consumed.get() >= capacity) {
+				if (!waitForSpace()) {
+					dropped.incrementAndGet();
+					return false;
+				}
+			} else if (claimed.compareAndSet(sequence, sequence + 1)) {
+				break;
+			}
+		}
+
+		int slot = (int) sequence & mask;
+
+		// the writer may have stopped between the check above and the claim;
+		// the slot is still published, empty, so a writer that has not
+		// stopped yet does not wait for it
+		if (!running) {
+			levels[slot] = null;
+			published.lazySet(slot, sequence + 1);
+			dropped.incrementAndGet();
+			return false;
+		}
+
+		times[slot] = System.currentTimeMillis();
+		levels[slot] = level;
+		messages[slot] = msg;
+		exceptions[slot] = ex;
+		published.lazySet(slot, sequence + 1);
+
+		return true;
+	}
+
+	// true if the producer should retry, false if the message is dropped
+	private boolean waitForSpace() {
+
+		switch (policy) {
+		case DROP:
+			return false;
+		case SAMPLE:
+			if (overflows.getAndIncrement() % SAMPLE_RATE != 0) {
+				return false;
+			}
+			// wait for this one
+			LockSupport.parkNanos(10000L);
+			return true;
+		default:
+			LockSupport.parkNanos(10000L);
+			return true;
+		}
+	}
+
+	private void drain() {
+
+		long next = consumed.get();
+
+		while (true) {
+
+			int batch = 0;
+			int slot = (int) next & mask;
+
+			while (batch < capacity && published.get(slot) == next + 1) {
+
+				if (levels[slot] != null) {
+					write(TimestampFormatter.format(times[slot]), levels[slot], messages[slot], exceptions[slot]);
+				}
+
+				messages[slot] = null;
+				exceptions[slot] = null;
+				++next;
+				consumed.lazySet(next);
+				++batch;
+				slot = (int) next & mask;
+			}
+
+			if (batch > 0) {
+				out.flush();
+			} else if (!running && next == claimed.get()) {
+				break;
+			} else {
+				LockSupport.parkNanos(IDLE_PARK_NANOS);
+			}
+		}
+
+		out.flush();
+	}
+
+	private void write(String dateString, Level level, String msg, Exception ex) {
+
+		try {
+			out.print(dateString);
+			out.print(' ');
+			out.print(level);
+			out.print(": ");
+			out.println(msg);
+			if (ex != null) {
+				out.println(ex.getMessage());
+				ex.printStackTrace(out);
+			}
+		} catch (Exception e) {
+			System.err.format("ERROR: Unable to write to log file: %s%n", e);
+		}
+	}
+
+	/**
+	 * Writes every message already queued, then stops the writer thread.
+	 * Messages appended afterwards are dropped.
+	 */
+	public void close() {
+
+		running = false;
+		LockSupport.unpark(writerThread);
+
+		try {
+			writerThread.join();
+		} catch (InterruptedException iex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * @return number of messages dropped because the buffer was full or the
+	 *         writer closed
+	 */
+	public long getDroppedCount() {
+		return dropped.get();
+	}
+
+}
@@ -0,0 +1,270 @@
+package com.paul.utils.log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Log file that starts a new file once the current one reaches a size or an
+ * age, keeping a bounded number of files in its directory. Files are named by
+ * the time they were opened. Rolled files can be compressed, which, like
+ * deleting the oldest files, happens on a background thread.
+ *
+ * The size and age are only checked on flush, so a file always ends with a
+ * complete line.
+ */
+final class RollingLogFile extends Writer {
+
+	static final String SUFFIX = ".txt";
+	static final String COMPRESSED_SUFFIX = ".gz";
+
+	private static final Pattern LOG_FILE_NAME = Pattern
+			.compile("\\d{4}-\\d\\d-\\d\\d \\d\\d-\\d\\d-\\d\\d-\\d{3}[+-]\\d{4}(-\\d+)?\\.txt(\\.gz)?");
+
+	private final File directory;
+	private final long maxFileSize;
+	private final long maxFileAge;
+	private final int maxFiles;
+	private final boolean compress;
+
+	// oldest first, including the current file
+	private final ArrayDeque<File> files = new ArrayDeque<File>();
+
+	private File currentFile;
+	private Writer out;
+	private long written;
+	private long rollTime;
+
+	private ExecutorService housekeeping = null;
+
+	/**
+	 * @param directory
+	 *            directory the log files are written to, created if missing
+	 * @param maxFileSize
+	 *            characters written before starting a new file, 0 for no limit
+	 * @param maxFileAge
+	 *            milliseconds before starting a new file, 0 for no limit
+	 * @param maxFiles
+	 *            log files kept in the directory, 0 to keep all of them
+	 * @param compress
+	 *            gzip files once they are rolled
+	 * @throws IOException
+	 */
+	RollingLogFile(File directory, long maxFileSize, long maxFileAge, int maxFiles, boolean compress)
+			throws IOException {
+
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Unable to create log directory " + directory);
+		}
+
+		this.directory = directory;
+		this.maxFileSize = maxFileSize;
+		this.maxFileAge = maxFileAge;
+		this.maxFiles = maxFiles;
+		this.compress = compress;
+
+		// files left by earlier runs count towards the limit
+		String[] names = directory.list();
+		if (names != null) {
+			Arrays.sort(names);
+			for (String name : names) {
+				if (LOG_FILE_NAME.matcher(name).matches()) {
+					files.add(new File(directory, name));
+				}
+			}
+		}
+
+		open();
+		delete(expire());
+	}
+
+	/**
+	 * @return the file currently written to
+	 */
+	File getCurrentFile() {
+		synchronized (lock) {
+			return currentFile;
+		}
+	}
+
+	private void open() throws IOException {
+
+		long now = System.currentTimeMillis();
+		String name = new SimpleDateFormat("yyyy-MM-dd HH-mm-ss-SSSZ").format(new Date(now));
+
+		File file = new File(directory, name + SUFFIX);
+		for (int i = 1; file.exists() || new File(directory, file.getName() + COMPRESSED_SUFFIX).exists(); ++i) {
+			file = new File(directory, name + "-" + i + SUFFIX);
+		}
+
+		out = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8);
+		currentFile = file;
+		written = 0;
+		rollTime = maxFileAge > 0 ? now + maxFileAge : Long.MAX_VALUE;
+		files.add(file);
+	}
+
+	@Override
+	public void write(char[] buffer, int offset, int length) throws IOException {
+		synchronized (lock) {
+			out.write(buffer, offset, length);
+			written += length;
+		}
+	}
+
+	@Override
+	public void write(String text, int offset, int length) throws IOException {
+		synchronized (lock) {
+			out.write(text, offset, length);
+			written += length;
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		synchronized (lock) {
+			out.flush();
+			if ((maxFileSize > 0 && written >= maxFileSize) || System.currentTimeMillis() >= rollTime) {
+				roll();
+			}
+		}
+	}
+
+	private void roll() throws IOException {
+
+		out.close();
+		final File rolled = currentFile;
+		open();
+
+		// renamed before expiring, so deletes, including of the rolled file
+		// itself, see the name its compression writes
+		final File compressed = new File(directory, rolled.getName() + COMPRESSED_SUFFIX);
+		if (compress) {
+			replace(rolled, compressed);
+		}
+
+		final File[] expired = expire();
+
+		if (compress) {
+			housekeeping().execute(new Runnable() {
+				@Override
+				public void run() {
+					compress(rolled, compressed);
+					delete(expired);
+				}
+			});
+		} else if (expired.length > 0) {
+			housekeeping().execute(new Runnable() {
+				@Override
+				public void run() {
+					delete(expired);
+				}
+			});
+		}
+	}
+
+	// removes the oldest files over the limit from the retained files
+	private File[] expire() {
+
+		File[] expired = new File[maxFiles > 0 ? Math.max(files.size() - maxFiles, 0) : 0];
+		for (int i = 0; i < expired.length; ++i) {
+			expired[i] = files.poll();
+		}
+		return expired;
+	}
+
+	private void replace(File file, File replacement) {
+		ArrayDeque<File> renamed = new ArrayDeque<File>(files.size());
+		for (File f : files) {
+			renamed.add(f.equals(file) ? replacement : f);
+		}
+		files.clear();
+		files.addAll(renamed);
+	}
+
+	private ExecutorService housekeeping() {
+
+		if (housekeeping == null) {
+			housekeeping = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "log-housekeeping");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return housekeeping;
+	}
+
+	private static void compress(File source, File target) {
+
+		byte[] buffer = new byte[1 << 16];
+
+		try (InputStream in = new FileInputStream(source);
+				OutputStream gzip = new GZIPOutputStream(new FileOutputStream(target))) {
+			int read;
+			while ((read = in.read(buffer)) >= 0) {
+				gzip.write(buffer, 0, read);
+			}
+		} catch (IOException e) {
+			System.err.format("ERROR: Unable to compress log file %s: %s%n", source, e);
+			target.delete();
+			return;
+		}
+
+		source.delete();
+	}
+
+	private static void delete(File[] expired) {
+		for (File file : expired) {
+			if (!file.delete() && file.exists()) {
+				System.err.format("ERROR: Unable to delete log file %s%n", file);
+			}
+			// not compressed yet when its compression failed
+			if (file.getName().endsWith(COMPRESSED_SUFFIX)) {
+				String name = file.getName();
+				new File(file.getParentFile(), name.substring(0, name.length() - COMPRESSED_SUFFIX.length())).delete();
+			}
+		}
+	}
+
+	/**
+	 * Closes the current file and waits for pending compressions
+	 */
+	@Override
+	public void close() throws IOException {
+
+		ExecutorService pending;
+		synchronized (lock) {
+			out.close();
+			pending = housekeeping;
+		}
+
+		if (pending != null) {
+			pending.shutdown();
+			try {
+				pending.awaitTermination(10, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+}
@@ -1,12 +1,11 @@
 package com.paul.utils.log;
 
 import java.io.File;
-import java.io.FileWriter;
 import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.io.StringWriter;
+import java.util.function.Supplier;
 
 public class SimpleLogger {
 
@@ -14,41 +13,215 @@ public class SimpleLogger {
 		NONE, DEBUG, INFO, ERROR
 	};
 
-	private static SimpleLogger instance = null;
-	private Level loggingLevel = Level.NONE;
+	private volatile Level loggingLevel = Level.NONE;
 
-	private File logFile = null;
-	private FileWriter fileWriter = null;
+	// reused to build messages and log lines on each thread
+	private static final ThreadLocal<StringBuilder> buffers = new ThreadLocal<StringBuilder>() {
+		@Override
+		protected StringBuilder initialValue() {
+			return new StringBuilder(256);
+		}
+	};
+
+	// tag of the evaluation or connection a thread is working on
+	private static final ThreadLocal<String> contexts = new ThreadLocal<String>();
+
+	// set before the log file is created to choose where it goes and when it rolls
+	private File logDirectory = new File(".");
+	private long maxFileSize = 0;
+	private long maxFileAge = 0;
+	private int maxFiles = 0;
+	private boolean compressRolledFiles = false;
+
+	private RollingLogFile logFile = null;
 	private BufferedWriter bufferedWriter = null;
 	private PrintWriter printWriter = null;
 
-	private boolean logToWindow = false;
-	private boolean logFileCreated = false;
+	private volatile boolean logToWindow = false;
+	private volatile boolean logFileCreated = false;
+
+	// set before the log file is created to write messages on a background thread
+	private boolean asyncEnabled = false;
+	private int asyncCapacity = AsyncLogWriter.DEFAULT_CAPACITY;
+	private AsyncLogWriter.OverflowPolicy asyncPolicy = AsyncLogWriter.OverflowPolicy.BLOCK;
+	private volatile AsyncLogWriter asyncWriter = null;
 
 	protected SimpleLogger() {}
 
+	// created on first use, the class loader guarantees a single instance
+	private static class InstanceHolder {
+		static final SimpleLogger instance = new SimpleLogger();
+	}
+
 	public static SimpleLogger getInstance() {
-		if (instance == null) {
-			instance = new SimpleLogger();
-		}
-		return instance;
+		return InstanceHolder.instance;
 	}
 
 	public void setLevel(Level level) {
 		loggingLevel = level;
 	}
 
+	public synchronized void setAsync(int capacity, AsyncLogWriter.OverflowPolicy policy) {
+		asyncEnabled = true;
+		asyncCapacity = capacity;
+		asyncPolicy = policy;
+	}
+
+	public synchronized void setDirectory(File directory) {
+		logDirectory = directory;
+	}
+
+	/**
+	 * Starts a new log file once the current one is too large or too old
+	 * 
+	 * @param maxFileSize
+	 *            characters written to a file, 0 for no limit
+	 * @param maxFileAge
+	 *            milliseconds a file is written to, 0 for no limit
+	 * @param maxFiles
+	 *            log files kept in the directory, 0 to keep all of them
+	 * @param compress
+	 *            gzip the files that have been rolled
+	 */
+	public synchronized void setRolling(long maxFileSize, long maxFileAge, int maxFiles, boolean compress) {
+		this.maxFileSize = maxFileSize;
+		this.maxFileAge = maxFileAge;
+		this.maxFiles = maxFiles;
+		this.compressRolledFiles = compress;
+	}
+
+	/**
+	 * Tags the messages logged by the current thread until the context is
+	 * cleared
+	 * 
+	 * @param context
+	 *            written with each message, such as a request or connection
+	 */
+	public void setContext(String context) {
+		contexts.set(context);
+	}
+
+	public void clearContext() {
+		contexts.remove();
+	}
+
+	/**
+	 * @return the context of the current thread, or null
+	 */
+	public String getContext() {
+		return contexts.get();
+	}
+
+	/**
+	 * @return true if a message of the given level would be written
+	 */
+	public boolean isEnabled(Level level) {
+		Level current = loggingLevel;
+		return current != Level.NONE && level.ordinal() >= current.ordinal();
+	}
+
 	public void logMessage(Level level, String message) {
 		logMessage(level, message, null);
 	}
 
+	/**
+	 * Logs the message built by the supplier, which is only called if the
+	 * level is enabled
+	 */
+	public void logMessage(Level level, Supplier<String> message) {
+		if (isEnabled(level)) {
+			logMessage(level, message.get(), null);
+		}
+	}
+
+	/**
+	 * Logs a message built by replacing the "{}" in the template with the
+	 * argument, only if the level is enabled
+	 */
+	public void logFormat(Level level, String template, Object arg) {
+		if (isEnabled(level)) {
+			logMessage(level, format(template, arg, null, null, 1), null);
+		}
+	}
+
+	public void logFormat(Level level, String template, Object arg1, Object arg2) {
+		if (isEnabled(level)) {
+			logMessage(level, format(template, arg1, arg2, null, 2), null);
+		}
+	}
+
+	public void logFormat(Level level, String template, Object arg1, Object arg2, Object arg3) {
+		if (isEnabled(level)) {
+			logMessage(level, format(template, arg1, arg2, arg3, 3), null);
+		}
+	}
+
+	public void logFormat(Level level, String template, Object... args) {
+		if (isEnabled(level)) {
+			logMessage(level, formatArgs(template, args), null);
+		}
+	}
+
+	static String formatArgs(String template, Object... args) {
+
+		StringBuilder builder = buffer();
+		int next = 0;
+		for (Object arg : args) {
+			next = appendUntilPlaceholder(builder, template, next, arg);
+		}
+		builder.append(template, Math.min(next, template.length()), template.length());
+		return builder.toString();
+	}
+
+	private static String format(String template, Object arg1, Object arg2, Object arg3, int count) {
+
+		StringBuilder builder = buffer();
+		int next = appendUntilPlaceholder(builder, template, 0, arg1);
+		if (count > 1) {
+			next = appendUntilPlaceholder(builder, template, next, arg2);
+		}
+		if (count > 2) {
+			next = appendUntilPlaceholder(builder, template, next, arg3);
+		}
+		builder.append(template, Math.min(next, template.length()), template.length());
+		return builder.toString();
+	}
+
+	// appends the template up to the next "{}" followed by arg, returns the
+	// offset after the placeholder
+	private static int appendUntilPlaceholder(StringBuilder builder, String template, int from, Object arg) {
+
+		if (from >= template.length()) {
+			return from;
+		}
+
+		int placeholder = template.indexOf("{}", from);
+		if (placeholder < 0) {
+			builder.append(template, from, template.length());
+			return template.length();
+		}
+
+		builder.append(template, from, placeholder).append(arg);
+		return placeholder + 2;
+	}
+
+	private static StringBuilder buffer() {
+		StringBuilder builder = buffers.get();
+		builder.setLength(0);
+		return builder;
+	}
+
 	public void logMessage(Level level, String msg, Exception ex) {
 
 		// no logging
 		if (!(loggingLevel.equals(Level.NONE))) {
 			
 			if (!logFileCreated && !logToWindow) {
-				createLogFile();
+				synchronized (this) {
+					if (!logFileCreated && !logToWindow) {
+						createLogFile();
+					}
+				}
 			}
 
 			// regardless of logging level, always log
@@ -62,26 +235,43 @@ public class SimpleLogger {
 
 	private void writeMessage(Level level, String msg, Exception ex) {
 
-		Date date = new Date();
-		SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH-mm-ss-SSS");
-		String dateString = dateFormat.format(date);
+		String context = contexts.get();
+
+		AsyncLogWriter async = asyncWriter;
+		if (async != null) {
+			if (context != null) {
+				msg = buffer().append('[').append(context).append("] ").append(msg).toString();
+			}
+			async.append(level, msg, ex);
+			return;
+		}
+
+		String dateString = TimestampFormatter.format(System.currentTimeMillis());
 
 		try {
 
+			StringBuilder line = buffer();
+			line.append(dateString).append(' ').append(level).append(": ");
+			if (context != null) {
+				line.append('[').append(context).append("] ");
+			}
+			line.append(msg);
+
 			if (logToWindow) {
 				if (ex == null) {
-					System.err.format("%s %s: %s", dateString, level, msg);
+					System.err.format("%s", line);
 				} else {
-					System.err.format("%s %s: %s\n%s", dateString, level, msg, ex.getMessage());
+					System.err.format("%s\n%s", line, ex.getMessage());
 					ex.printStackTrace();
 				}
 			} else {
+
 				if (ex == null) {
-					printWriter.printf("%s %s: %s%n", dateString, level, msg);
+					printWriter.println(line);
 				} else {
-					printWriter.printf("%s %s: %s%n", dateString, level, msg);
-					printWriter.println(ex.getMessage());
-					ex.printStackTrace(printWriter);
+					// one println keeps the message and its stack trace together,
+					// also across a roll of the log file
+					printWriter.println(withStackTrace(line, ex));
 				}
 			}
 		} catch (Exception e) {
@@ -90,20 +280,45 @@ public class SimpleLogger {
 
 	}
 	
+	private static String withStackTrace(StringBuilder line, Exception ex) {
+
+		StringWriter record = new StringWriter(line.length() + 1024);
+		PrintWriter recordWriter = new PrintWriter(record);
+		recordWriter.println(line);
+		recordWriter.println(ex.getMessage());
+		ex.printStackTrace(recordWriter);
+		recordWriter.flush();
+
+		// println adds the last line separator
+		StringBuffer text = record.getBuffer();
+		String separator = System.lineSeparator();
+		if (text.length() >= separator.length()
+				&& text.substring(text.length() - separator.length()).equals(separator)) {
+			text.setLength(text.length() - separator.length());
+		}
+		return text.toString();
+	}
+
 	protected void createLogFile() {
 		
-		Date date = new Date();
-		SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH-mm-ss-SSSZ");
-		String fileName = dateFormat.format(date) + ".txt";
-
 		try {
-				logFile = new File(fileName);
-				logFile.createNewFile();
-				fileWriter = new FileWriter(logFile);
-				bufferedWriter = new BufferedWriter(fileWriter);
-				printWriter = new PrintWriter(bufferedWriter, true);
+				logFile = new RollingLogFile(logDirectory, maxFileSize, maxFileAge, maxFiles, compressRolledFiles);
+				bufferedWriter = new BufferedWriter(logFile);
+				if (asyncEnabled) {
+					printWriter = new PrintWriter(bufferedWriter, false);
+					asyncWriter = new AsyncLogWriter(printWriter, asyncCapacity, asyncPolicy);
+				} else {
+					printWriter = new PrintWriter(bufferedWriter, true);
+				}
 				logFileCreated = true;
 
+				Runtime.getRuntime().addShutdownHook(new Thread("log-shutdown") {
+					@Override
+					public void run() {
+						shutdown();
+					}
+				});
+
 		} catch (IOException e) {
 			logToWindow = true;
 			System.err.format("ERROR: Unable to Create log file: %s%n", e);
@@ -111,7 +326,18 @@ public class SimpleLogger {
 
 	}
 
-	protected void finalize() {
+	/**
+	 * Writes every queued message and closes the log file. Called by a
+	 * shutdown hook once a log file has been created.
+	 */
+	public synchronized void shutdown() {
+
+		AsyncLogWriter async = asyncWriter;
+		if (async != null) {
+			async.close();
+			asyncWriter = null;
+		}
+
 		if (printWriter != null) {
 			printWriter.close();
 		}
@@ -0,0 +1,44 @@
+package com.paul.utils.log;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Formats log timestamps, reusing the previous result while the time stays
+ * within the same millisecond.
+ */
+final class TimestampFormatter {
+
+	private static final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH-mm-ss-SSS")
+			.withZone(ZoneId.systemDefault());
+
+	private static volatile Entry last = new Entry(Long.MIN_VALUE, "");
+
+	private TimestampFormatter() {}
+
+	static String format(long millis) {
+
+		Entry entry = last;
+		if (entry.millis == millis) {
+			return entry.text;
+		}
+
+		String text = formatter.format(Instant.ofEpochMilli(millis));
+		last = new Entry(millis, text);
+		return text;
+	}
+
+	private static final class Entry {
+
+		final long millis;
+		final String text;
+
+		Entry(long millis, String text) {
+			this.millis = millis;
+			this.text = text;
+		}
+
+	}
+
+}
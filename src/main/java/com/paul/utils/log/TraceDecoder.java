@@ -0,0 +1,207 @@
+package com.paul.utils.log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+import com.paul.utils.log.SimpleLogger.Level;
+import com.paul.utils.log.TraceWriter.Event;
+
+/**
+ * Turns a trace written by TraceWriter back into the log lines the logger
+ * would have written for the same steps.
+ *
+ * <pre>
+ * java -cp calculator.jar com.paul.utils.log.TraceDecoder trace.bin &gt; trace.txt
+ * </pre>
+ */
+public final class TraceDecoder {
+
+	private static final Event[] EVENTS = Event.values();
+	private static final Level[] LEVELS = Level.values();
+
+	private final DataInputStream in;
+	private final ArrayList<String> names = new ArrayList<String>();
+
+	private long startMillis;
+	private long startNanos;
+
+	public TraceDecoder(InputStream in) {
+		this.in = new DataInputStream(new BufferedInputStream(in, 1 << 16));
+	}
+
+	public static void main(String[] args) {
+
+		if (args.length != 1) {
+			System.err.println("Usage: java -cp calculator.jar com.paul.utils.log.TraceDecoder <trace file>");
+			System.exit(1);
+		}
+
+		try (InputStream in = new FileInputStream(args[0])) {
+			Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 16);
+			long events = new TraceDecoder(in).decode(out);
+			out.flush();
+			System.err.println(events + " events decoded");
+		} catch (IOException e) {
+			System.err.println("Unable to decode " + args[0] + ": " + e.getMessage());
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Writes one line per recorded event
+	 *
+	 * @param out
+	 * @return number of events decoded
+	 * @throws IOException
+	 *             if the input is not a trace or is cut inside a record
+	 */
+	public long decode(Writer out) throws IOException {
+
+		readHeader();
+
+		StringBuilder line = new StringBuilder(128);
+		long events = 0;
+
+		while (true) {
+
+			int kind;
+			try {
+				kind = in.readUnsignedByte();
+			} catch (EOFException eof) {
+				break;
+			}
+
+			if (kind == 0) {
+				// rest of a region that was never written
+				break;
+			}
+
+			if (kind == TraceWriter.NAME) {
+				readName();
+				continue;
+			}
+
+			if (kind > EVENTS.length) {
+				throw new IOException("Unknown event kind " + kind + " after " + events + " events");
+			}
+
+			Level level = LEVELS[in.readUnsignedByte()];
+			int flags = in.readUnsignedByte();
+			int opcode = in.readUnsignedByte();
+			int depth = in.readInt();
+			int a = in.readInt();
+			int b = in.readInt();
+			long nanos = in.readLong();
+			in.readLong();
+
+			line.setLength(0);
+			line.append(TimestampFormatter.format(startMillis + (nanos - startNanos) / 1000000L)).append(' ')
+					.append(level).append(": ");
+
+			switch (EVENTS[kind - 1]) {
+			case PUSH:
+				line.append("Pushing element on stack: ");
+				operand(line, a, flags & TraceWriter.NAME_A).append(" (size: ").append(depth).append(')');
+				break;
+			case POP:
+				line.append("Popping stack element : ");
+				operand(line, a, flags & TraceWriter.NAME_A).append(" (remaining size: ").append(depth).append(')');
+				break;
+			case LOAD:
+				line.append("Getting variable from table: ");
+				operand(line, a, flags & TraceWriter.NAME_A).append('=');
+				operand(line, b, flags & TraceWriter.NAME_B);
+				break;
+			case STORE:
+				line.append("Setting variable in table: ");
+				operand(line, a, flags & TraceWriter.NAME_A).append('=');
+				operand(line, b, flags & TraceWriter.NAME_B);
+				break;
+			case EVALUATE:
+				line.append("Evaluating Expression: ");
+				operation(line, opcode, a, b, flags);
+				break;
+			case OPERATE:
+				line.append("Performing Operation: ");
+				operation(line, opcode, a, b, flags);
+				break;
+			}
+
+			line.append('\n');
+			out.append(line);
+			++events;
+		}
+
+		return events;
+	}
+
+	private void readHeader() throws IOException {
+
+		int magic;
+		try {
+			magic = in.readInt();
+		} catch (EOFException eof) {
+			throw new IOException("Empty trace");
+		}
+
+		if (magic != TraceWriter.MAGIC) {
+			throw new IOException("Not a trace file");
+		}
+
+		int version = in.readInt();
+		if (version != TraceWriter.VERSION) {
+			throw new IOException("Unsupported trace version " + version);
+		}
+
+		startMillis = in.readLong();
+		startNanos = in.readLong();
+		in.readLong();
+	}
+
+	private void readName() throws IOException {
+
+		int length = in.readUnsignedByte();
+		in.readUnsignedShort();
+		int id = in.readInt();
+		byte[] bytes = new byte[TraceWriter.NAME_BYTES];
+		in.readFully(bytes);
+
+		String part = new String(bytes, 0, length, StandardCharsets.UTF_8);
+		if (id == names.size()) {
+			names.add(part);
+		} else if (id == names.size() - 1) {
+			names.set(id, names.get(id) + part);
+		} else {
+			throw new IOException("Name " + id + " out of sequence");
+		}
+	}
+
+	private StringBuilder operand(StringBuilder line, int value, int isName) throws IOException {
+
+		if (isName == 0) {
+			return line.append(value);
+		}
+		if (value < 0 || value >= names.size()) {
+			throw new IOException("Undefined name " + value);
+		}
+		return line.append(names.get(value));
+	}
+
+	private void operation(StringBuilder line, int opcode, int a, int b, int flags) throws IOException {
+
+		line.append(opcode > 0 && opcode <= TraceWriter.OPERATORS.length ? TraceWriter.OPERATORS[opcode - 1] : "?");
+		line.append('(');
+		operand(line, a, flags & TraceWriter.NAME_A).append(',');
+		operand(line, b, flags & TraceWriter.NAME_B).append(')');
+	}
+
+}
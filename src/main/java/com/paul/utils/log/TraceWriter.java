@@ -0,0 +1,255 @@
+package com.paul.utils.log;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+
+import com.paul.utils.log.SimpleLogger.Level;
+
+/**
+ * Records evaluation steps as fixed size binary records written through
+ * memory mapped regions of a file. TraceDecoder turns a trace back into the
+ * text the logger would have written.
+ *
+ * The file starts with a header record holding the wall clock and nano time
+ * the trace was opened at. Every other record is RECORD_SIZE bytes:
+ *
+ * <pre>
+ *  0  byte  event kind, 0 past the last record
+ *  1  byte  log level
+ *  2  byte  flags, NAME_A and NAME_B when an operand is a name id
+ *  3  byte  opcode, index + 1 of the operator in OPERATORS, 0 for none
+ *  4  int   stack depth
+ *  8  int   operand a, a value or a name id
+ * 12  int   operand b, a value or a name id
+ * 16  long  System.nanoTime()
+ * 24  long  unused
+ * </pre>
+ *
+ * Names are written once, in NAME records placed before their first use:
+ *
+ * <pre>
+ *  0  byte  NAME
+ *  1  byte  number of UTF-8 bytes in this record
+ *  4  int   name id
+ *  8  byte[NAME_BYTES] UTF-8 bytes, continued in the next NAME record with
+ *           the same id if longer
+ * </pre>
+ *
+ * All values are big endian. The methods are synchronized so one trace can be
+ * shared by threads.
+ */
+public final class TraceWriter implements Closeable {
+
+	public enum Event {
+		PUSH, POP, LOAD, STORE, EVALUATE, OPERATE
+	};
+
+	public static final int MAGIC = 0x43545243;
+	public static final int VERSION = 1;
+	public static final int RECORD_SIZE = 32;
+	public static final int DEFAULT_REGION_SIZE = 1 << 26;
+
+	static final int NAME = 0x7F;
+	static final int NAME_A = 1;
+	static final int NAME_B = 2;
+	static final int NAME_BYTES = RECORD_SIZE - 8;
+
+	static final String[] OPERATORS = { "add", "sub", "mult", "div", "let" };
+
+	private final FileChannel channel;
+	private final int regionSize;
+
+	private final HashMap<String, Integer> names = new HashMap<String, Integer>();
+
+	private MappedByteBuffer region = null;
+	private long regionStart = 0;
+	private int position = 0;
+
+	public TraceWriter(Path file) throws IOException {
+		this(file, DEFAULT_REGION_SIZE);
+	}
+
+	/**
+	 * @param file
+	 *            created or truncated
+	 * @param regionSize
+	 *            bytes mapped at once, rounded down to a whole number of
+	 *            records
+	 * @throws IOException
+	 */
+	public TraceWriter(Path file, int regionSize) throws IOException {
+
+		this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		this.regionSize = Math.max(regionSize / RECORD_SIZE, 1) * RECORD_SIZE;
+
+		int header = claim();
+		region.putInt(header, MAGIC);
+		region.putInt(header + 4, VERSION);
+		region.putLong(header + 8, System.currentTimeMillis());
+		region.putLong(header + 16, System.nanoTime());
+	}
+
+	public synchronized void push(Level level, String element, int depth) {
+		record(Event.PUSH, level, 0, depth, element, null);
+	}
+
+	public synchronized void pop(Level level, String element, int depth) {
+		record(Event.POP, level, 0, depth, element, null);
+	}
+
+	public synchronized void load(Level level, String name, int value) {
+		write(Event.LOAD, level, NAME_A, 0, 0, nameId(name), value);
+	}
+
+	public synchronized void store(Level level, String name, String value) {
+		record(Event.STORE, level, 0, 0, name, value);
+	}
+
+	public synchronized void evaluate(Level level, String operator, String a, String b) {
+		record(Event.EVALUATE, level, opcode(operator), 0, a, b);
+	}
+
+	public synchronized void operate(Level level, String operator, int a, int b) {
+		write(Event.OPERATE, level, 0, opcode(operator), 0, a, b);
+	}
+
+	// operands that are int literals are stored as values, anything else as a
+	// name
+	private void record(Event event, Level level, int opcode, int depth, String a, String b) {
+
+		int flags = 0;
+		int valueA = 0;
+		int valueB = 0;
+
+		if (a != null) {
+			if (isInt(a)) {
+				valueA = Integer.parseInt(a);
+			} else {
+				valueA = nameId(a);
+				flags |= NAME_A;
+			}
+		}
+
+		if (b != null) {
+			if (isInt(b)) {
+				valueB = Integer.parseInt(b);
+			} else {
+				valueB = nameId(b);
+				flags |= NAME_B;
+			}
+		}
+
+		write(event, level, flags, opcode, depth, valueA, valueB);
+	}
+
+	private void write(Event event, Level level, int flags, int opcode, int depth, int a, int b) {
+
+		int offset = claim();
+		region.put(offset, (byte) (event.ordinal() + 1));
+		region.put(offset + 1, (byte) level.ordinal());
+		region.put(offset + 2, (byte) flags);
+		region.put(offset + 3, (byte) opcode);
+		region.putInt(offset + 4, depth);
+		region.putInt(offset + 8, a);
+		region.putInt(offset + 12, b);
+		region.putLong(offset + 16, System.nanoTime());
+	}
+
+	private int nameId(String name) {
+
+		Integer id = names.get(name);
+		if (id != null) {
+			return id.intValue();
+		}
+
+		int newId = names.size();
+		names.put(name, newId);
+
+		byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+		int written = 0;
+		do {
+			int length = Math.min(bytes.length - written, NAME_BYTES);
+			int offset = claim();
+			region.put(offset, (byte) NAME);
+			region.put(offset + 1, (byte) length);
+			region.putInt(offset + 4, newId);
+			for (int i = 0; i < length; ++i) {
+				region.put(offset + 8 + i, bytes[written + i]);
+			}
+			written += length;
+		} while (written < bytes.length);
+
+		return newId;
+	}
+
+	// offset of the next record in the current region, mapping a new one when
+	// it is full
+	private int claim() {
+
+		if (region == null || position == regionSize) {
+			try {
+				regionStart += position;
+				region = channel.map(MapMode.READ_WRITE, regionStart, regionSize);
+				position = 0;
+			} catch (IOException e) {
+				throw new IllegalStateException("Unable to map trace file at offset " + regionStart, e);
+			}
+		}
+
+		int offset = position;
+		position += RECORD_SIZE;
+		return offset;
+	}
+
+	static int opcode(String operator) {
+		for (int i = 0; i < OPERATORS.length; ++i) {
+			if (OPERATORS[i].equals(operator)) {
+				return i + 1;
+			}
+		}
+		return 0;
+	}
+
+	private static boolean isInt(String token) {
+
+		int length = token.length();
+		int start = length > 1 && token.charAt(0) == '-' ? 1 : 0;
+		if (length == start || length - start > 10) {
+			return false;
+		}
+
+		long value = 0;
+		for (int i = start; i < length; ++i) {
+			char c = token.charAt(i);
+			if (c < '0' || c > '9') {
+				return false;
+			}
+			value = value * 10 + (c - '0');
+		}
+
+		return start == 1 ? -value >= Integer.MIN_VALUE : value <= Integer.MAX_VALUE;
+	}
+
+	/**
+	 * Cuts the file after the last record written
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+
+		if (region != null) {
+			region.force();
+			region = null;
+		}
+		channel.truncate(regionStart + position);
+		channel.close();
+	}
+
+}
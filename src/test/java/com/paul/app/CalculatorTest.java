@@ -0,0 +1,205 @@
+package com.paul.app;
+
+import org.apache.commons.cli.ParseException;
+
+import com.paul.app.expression.CompiledExpression;
+import com.paul.app.expression.NumericMode;
+import com.paul.utils.log.SimpleLogger;
+import com.paul.utils.log.SimpleLogger.Level;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Compares the compiled evaluator against the reference stack evaluator.
+ */
+public class CalculatorTest 
+    extends TestCase
+{
+    private static final String[] FOOTER_EXAMPLES = {
+        "add(1, 2)",
+        "add(1, mult(2, 3))",
+        "mult(add(2, 2), div(9, 3))",
+        "let(a, 5, add(a, a))",
+        "let(a, 5, let(b, mult(a, 10), add(b, a)))",
+        "let(a, let(b, 10, add(b, b)), let(b, 20, add(a, b)))"
+    };
+
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public CalculatorTest( String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( CalculatorTest.class );
+    }
+
+    protected void tearDown()
+    {
+        SimpleLogger.getInstance().setLevel( Level.NONE );
+    }
+
+    public void testCompiledMatchesReference() throws Exception
+    {
+        for ( String expression : FOOTER_EXAMPLES )
+        {
+            assertEquals( expression, Calculator.evaluateReference( expression ), Calculator.evaluate( expression ) );
+        }
+    }
+
+    public void testFooterAnswers() throws Exception
+    {
+        assertEquals( 3, Calculator.compile( "add(1, 2)" ).evaluate() );
+        assertEquals( 7, Calculator.compile( "add(1, mult(2, 3))" ).evaluate() );
+        assertEquals( 12, Calculator.compile( "mult(add(2, 2), div(9, 3))" ).evaluate() );
+        assertEquals( 10, Calculator.compile( "let(a, 5, add(a, a))" ).evaluate() );
+        assertEquals( 55, Calculator.compile( "let(a, 5, let(b, mult(a, 10), add(b, a)))" ).evaluate() );
+        assertEquals( 40, Calculator.compile( "let(a, let(b, 10, add(b, b)), let(b, 20, add(a, b)))" ).evaluate() );
+    }
+
+    public void testNestedOperators() throws Exception
+    {
+        assertEquals( 11, Calculator.compile( "add(add(1, add(2, 3)), 5)" ).evaluate() );
+        assertEquals( 5, Calculator.compile( "let(a, 5, a)" ).evaluate() );
+    }
+
+    public void testFreeVariables() throws Exception
+    {
+        CompiledExpression compiled = Calculator.compile( "let(a, x, add(mult(a, y), z))" );
+
+        assertEquals( 3, compiled.getVariables().size() );
+        assertEquals( "x", compiled.getVariables().get( 0 ) );
+        assertEquals( 2 * 3 + 4, compiled.evaluate( 2, 3, 4 ) );
+        assertEquals( 10 * 10 + 1, compiled.evaluate( 10, 10, 1 ) );
+    }
+
+    public void testShadowing() throws Exception
+    {
+        assertEquals( 6, Calculator.compile( "let(a, 1, add(let(a, 5, a), a))" ).evaluate() );
+        assertEquals( 3, Calculator.compile( "let(a, 1, let(a, add(a, 1), add(a, 1)))" ).evaluate() );
+    }
+
+    public void testOverflowWraps() throws Exception
+    {
+        assertEquals( Integer.MIN_VALUE, Calculator.compile( "add(2147483647, 1)" ).evaluate() );
+    }
+
+    public void testDivideByZero() throws Exception
+    {
+        try
+        {
+            Calculator.compile( "div(1, sub(2, 2))" ).evaluate();
+            fail( "expected ArithmeticException" );
+        }
+        catch ( ArithmeticException aex )
+        {
+            // expected
+        }
+    }
+
+    public void testDeepNesting() throws Exception
+    {
+        // each let takes the value of the let nested in its value, plus one
+        int depth = 100000;
+        StringBuilder expression = new StringBuilder();
+        for ( int i = 0; i < depth; ++i )
+        {
+            expression.append( "let(x, " );
+        }
+        expression.append( '1' );
+        for ( int i = 0; i < depth; ++i )
+        {
+            expression.append( ", add(x, 1))" );
+        }
+
+        assertEquals( Integer.valueOf( depth + 1 ), Calculator.evaluateReference( expression.toString() ) );
+        assertEquals( Integer.valueOf( depth + 1 ), Calculator.evaluate( expression.toString() ) );
+    }
+
+    public void testMissingOperand()
+    {
+        try
+        {
+            Calculator.compile( "add(1)" );
+            fail( "expected parse failure" );
+        }
+        catch ( Exception ex )
+        {
+            // expected
+        }
+    }
+
+    public void testSimpleCommandLine() throws Exception
+    {
+        assertEquals( "add(1, 2)", Calculator.processSimpleCommandLine( new String[] { "add(1, 2)" } ) );
+        assertEquals( "add(1, 2)", Calculator.processCommandLine( new String[] { "add(1, 2)" } ) );
+        assertFalse( SimpleLogger.getInstance().isEnabled( Level.ERROR ) );
+    }
+
+    public void testSimpleCommandLineLogLevels() throws Exception
+    {
+        SimpleLogger logger = SimpleLogger.getInstance();
+
+        assertEquals( "add(1, 2)", Calculator.processSimpleCommandLine( new String[] { "-debug", "-info", "add(1, 2)" } ) );
+        boolean debug = logger.isEnabled( Level.DEBUG );
+        boolean info = logger.isEnabled( Level.INFO );
+
+        // -mode is only known to the full parser
+        logger.setLevel( Level.NONE );
+        NumericMode previous = NumericMode.getDefault();
+        try
+        {
+            String[] args = { "-mode", "int", "-debug", "-info", "add(1, 2)" };
+            assertNull( Calculator.processSimpleCommandLine( args ) );
+            assertEquals( "add(1, 2)", Calculator.processCommandLine( args ) );
+        }
+        finally
+        {
+            NumericMode.setDefault( previous );
+        }
+
+        assertEquals( logger.isEnabled( Level.DEBUG ), debug );
+        assertEquals( logger.isEnabled( Level.INFO ), info );
+        assertFalse( debug );
+        assertTrue( info );
+    }
+
+    public void testSimpleCommandLineLeavesOtherOptionsToTheFullParser() throws Exception
+    {
+        // a trailing -h prints the help instead of evaluating
+        assertNull( Calculator.processSimpleCommandLine( new String[] { "add(1, 2)", "-h" } ) );
+        assertNull( Calculator.processCommandLine( new String[] { "add(1, 2)", "-h" } ) );
+
+        assertNull( Calculator.processSimpleCommandLine( new String[] { "-batch", "expressions.txt" } ) );
+        assertNull( Calculator.processSimpleCommandLine( new String[] { "-info", "-batch" } ) );
+        assertNull( Calculator.processSimpleCommandLine( new String[0] ) );
+    }
+
+    public void testNegativeLogLimitsAreRejected()
+    {
+        String[][] invalid = { { "-logsize", "-1", "add(1, 2)" }, { "-logage", "-1", "add(1, 2)" },
+            { "-logkeep", "-1", "add(1, 2)" } };
+        for ( String[] args : invalid )
+        {
+            try
+            {
+                Calculator.processCommandLine( args );
+                fail( args[0] );
+            }
+            catch ( ParseException pex )
+            {
+                assertEquals( "Invalid log size, age or number of log files", pex.getMessage() );
+            }
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.paul.app.batch;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import com.paul.app.expression.ExpressionCache;
+import com.paul.app.expression.NumericOverflowException;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for batch evaluation.
+ */
+public class BatchEvaluatorTest 
+    extends TestCase
+{
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public BatchEvaluatorTest( String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( BatchEvaluatorTest.class );
+    }
+
+    public void testOneResultPerLine() throws Exception
+    {
+        String input = "add(1, 2)\n"
+            + "div(1, 0)\n"
+            + "add(1,\n"
+            + "let(a, 5, add(a, a))\n"
+            + "add(x, 1)\n"
+            + "\n"
+            + "mult(3, 4)";
+
+        BatchEvaluator batch = new BatchEvaluator();
+        StringWriter output = new StringWriter();
+        batch.run( new BufferedReader( new StringReader( input ) ), output );
+
+        String[] lines = output.toString().split( "\n", -1 );
+
+        assertEquals( 8, lines.length );
+        assertEquals( "3", lines[0] );
+        assertEquals( "ERROR: Division by zero", lines[1] );
+        assertTrue( lines[2], lines[2].startsWith( BatchEvaluator.ERROR_PREFIX ) );
+        assertEquals( "10", lines[3] );
+        assertTrue( lines[4], lines[4].startsWith( BatchEvaluator.ERROR_PREFIX ) );
+        assertTrue( lines[5], lines[5].startsWith( BatchEvaluator.ERROR_PREFIX ) );
+        assertEquals( "12", lines[6] );
+        assertEquals( "", lines[7] );
+
+        assertEquals( 7, batch.getLineCount() );
+        assertEquals( 4, batch.getErrorCount() );
+    }
+
+    public void testFailureRecords()
+    {
+        StringBuilder result = new StringBuilder();
+        BatchEvaluator.appendFailure( new NumericOverflowException( "long overflow" ), false, result );
+        assertEquals( "ERROR: long overflow", result.toString() );
+
+        result.setLength( 0 );
+        BatchEvaluator.appendFailure( new ArithmeticException(), false, result );
+        assertEquals( "ERROR: Division by zero", result.toString() );
+
+        // only a division by zero is reported as one
+        result.setLength( 0 );
+        BatchEvaluator.appendFailure( new ArithmeticException( "BigInteger would overflow supported range" ), false,
+                                      result );
+        assertEquals( "ERROR: BigInteger would overflow supported range", result.toString() );
+    }
+
+    public void testParallelKeepsInputOrder() throws Exception
+    {
+        StringBuilder input = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for ( int i = 0; i < 10000; ++i )
+        {
+            if ( i % 97 == 0 )
+            {
+                input.append( "div(" ).append( i ).append( ", 0)\n" );
+                expected.append( "ERROR: Division by zero\n" );
+            }
+            else
+            {
+                input.append( "let(a, " ).append( i ).append( ", add(a, mult(a, 2)))\n" );
+                expected.append( 3 * i ).append( '\n' );
+            }
+        }
+
+        ParallelBatchEvaluator batch = new ParallelBatchEvaluator( 4, 100, 3, new ExpressionCache( 50 ) );
+        StringWriter output = new StringWriter();
+        batch.run( new BufferedReader( new StringReader( input.toString() ) ), output );
+
+        assertEquals( expected.toString(), output.toString() );
+        assertEquals( 10000, batch.getLineCount() );
+        assertEquals( 104, batch.getErrorCount() );
+    }
+}
@@ -0,0 +1,131 @@
+package com.paul.app.batch;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for reading lines from memory mapped regions.
+ */
+public class MappedLineReaderTest 
+    extends TestCase
+{
+    private File file;
+
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public MappedLineReaderTest( String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( MappedLineReaderTest.class );
+    }
+
+    protected void setUp() throws IOException
+    {
+        file = File.createTempFile( "expressions", ".txt" );
+    }
+
+    protected void tearDown()
+    {
+        file.delete();
+    }
+
+    public void testLinesAcrossRegions() throws Exception
+    {
+        write( "add(1, 2)\r\nlet(a, 5, add(a, a))\n\nmult(2, 3)" );
+
+        MappedLineReader reader = new MappedLineReader( file.toPath(), 24 );
+        try
+        {
+            assertEquals( "add(1, 2)", reader.readLine().toString() );
+            assertEquals( "let(a, 5, add(a, a))", reader.readLine().toString() );
+            assertEquals( "", reader.readLine().toString() );
+            assertEquals( "mult(2, 3)", reader.readLine().toString() );
+            assertNull( reader.readLine() );
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+
+    public void testEmptyFile() throws Exception
+    {
+        MappedLineReader reader = new MappedLineReader( file.toPath() );
+        try
+        {
+            assertNull( reader.readLine() );
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+
+    public void testLineLongerThanRegion() throws Exception
+    {
+        write( "add(1, 2)\nadd(100000, 200000)\n" );
+
+        MappedLineReader reader = new MappedLineReader( file.toPath(), 12 );
+        try
+        {
+            assertEquals( "add(1, 2)", reader.readLine().toString() );
+            reader.readLine();
+            fail( "expected IOException" );
+        }
+        catch ( IOException ioex )
+        {
+            // expected
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+
+    public void testEvaluatesMappedLines() throws Exception
+    {
+        StringBuilder input = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for ( int i = 0; i < 1000; ++i )
+        {
+            input.append( "let(a, " ).append( i ).append( ", mult(a, a))\n" );
+            expected.append( i * i ).append( '\n' );
+        }
+        write( input.toString() );
+
+        StringWriter output = new StringWriter();
+        MappedLineReader reader = new MappedLineReader( file.toPath(), 100 );
+        try
+        {
+            new BatchEvaluator().run( reader, output );
+        }
+        finally
+        {
+            reader.close();
+        }
+
+        assertEquals( expected.toString(), output.toString() );
+    }
+
+    private void write( String content ) throws IOException
+    {
+        Files.write( file.toPath(), content.getBytes( StandardCharsets.UTF_8 ) );
+    }
+}
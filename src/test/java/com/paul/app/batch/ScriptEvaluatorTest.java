@@ -0,0 +1,172 @@
+package com.paul.app.batch;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Random;
+
+import com.paul.app.expression.ExpressionCache;
+import com.paul.app.expression.NumericMode;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for scripts whose definitions are read by later lines.
+ */
+public class ScriptEvaluatorTest
+    extends TestCase
+{
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public ScriptEvaluatorTest( String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( ScriptEvaluatorTest.class );
+    }
+
+    private static String run( ScriptEvaluator script, String input ) throws Exception
+    {
+        StringWriter output = new StringWriter();
+        script.run( new BufferedReader( new StringReader( input ) ), output );
+        return output.toString();
+    }
+
+    public void testDefinitionsPersist() throws Exception
+    {
+        String input = "a = 5\n"
+            + "B = mult(a, 2)\n"
+            + "add(a, b)\n"
+            + "let(c, sub(b, 1))\n"
+            + "let(x, 2, add(x, c))\n"
+            + "\n"
+            + "  let ( d , let(y, c, mult(y, y)) )  ";
+
+        ScriptEvaluator script = new ScriptEvaluator();
+
+        assertEquals( "5\n10\n15\n9\n11\n\n81\n", run( script, input ) );
+        assertEquals( 0, script.getErrorCount() );
+        assertEquals( 7, script.getLineCount() );
+        assertEquals( 4, script.getEnvironment().size() );
+        assertEquals( Integer.valueOf( 81 ), script.getEnvironment().get( "d" ) );
+    }
+
+    public void testRedefinitionReadsPreviousValue() throws Exception
+    {
+        String input = "x = 1\n"
+            + "add(x, 100)\n"
+            + "x = add(x, 1)\n"
+            + "mult(x, 10)";
+
+        assertEquals( "1\n101\n2\n20\n", run( new ScriptEvaluator(), input ) );
+    }
+
+    public void testFailuresPropagate() throws Exception
+    {
+        String input = "a = div(1, 0)\n"
+            + "add(a, 1)\n"
+            + "add(z, 1)\n"
+            + "b = add(1,\n"
+            + "c = 3\n"
+            + "mult(c, b)";
+
+        ScriptEvaluator script = new ScriptEvaluator();
+        String[] lines = run( script, input ).split( "\n", -1 );
+
+        assertEquals( "ERROR: Division by zero", lines[0] );
+        assertEquals( "ERROR: Variable a has no value, its definition on line 1 failed", lines[1] );
+        assertEquals( "ERROR: Variable z has not been assigned a value", lines[2] );
+        // the column is that of the whole line
+        assertTrue( lines[3], lines[3].startsWith( BatchEvaluator.ERROR_PREFIX ) && lines[3].endsWith( "column 11" ) );
+        assertEquals( "3", lines[4] );
+        assertEquals( "ERROR: Variable b has no value, its definition on line 4 failed", lines[5] );
+        assertEquals( 5, script.getErrorCount() );
+        assertEquals( 1, script.getEnvironment().size() );
+    }
+
+    public void testEnvironmentOutlivesRun() throws Exception
+    {
+        ScriptEvaluator script = new ScriptEvaluator( 2, new ExpressionCache() );
+
+        assertEquals( "7\n", run( script, "rate = 7" ) );
+        assertEquals( "14\n8\n", run( script, "mult(rate, 2)\nrate = add(rate, 1)" ) );
+        assertEquals( "16\n", run( script, "add(rate, rate)" ) );
+
+        run( script, "rate = div(rate, 0)" );
+        assertFalse( script.getEnvironment().containsKey( "rate" ) );
+    }
+
+    public void testParallelMatchesSequential() throws Exception
+    {
+        Random random = new Random( 42 );
+        StringBuilder input = new StringBuilder();
+
+        // chains of definitions reading a few of the earlier ones
+        for ( int i = 0; i < 5000; ++i )
+        {
+            String operator = new String[] { "add", "sub", "mult", "div" }[random.nextInt( 4 )];
+            String left = i < 10 ? String.valueOf( random.nextInt( 100 ) ) : name( random.nextInt( i ) );
+            String right = i < 10 ? String.valueOf( random.nextInt( 100 ) + 1 ) : name( i - 1 - random.nextInt( 10 ) );
+            if ( random.nextInt( 10 ) == 0 )
+            {
+                input.append( operator ).append( '(' ).append( left ).append( ", " ).append( right ).append( ")\n" );
+            }
+            input.append( name( i ) ).append( " = " ).append( operator ).append( '(' ).append( left ).append( ", " )
+                .append( right ).append( ")\n" );
+        }
+
+        ScriptEvaluator sequential = new ScriptEvaluator();
+        String expected = run( sequential, input.toString() );
+
+        for ( int threads = 2; threads <= 8; threads *= 2 )
+        {
+            ScriptEvaluator parallel = new ScriptEvaluator( threads, null );
+            assertEquals( expected, run( parallel, input.toString() ) );
+            assertEquals( sequential.getErrorCount(), parallel.getErrorCount() );
+            assertEquals( sequential.getEnvironment(), parallel.getEnvironment() );
+        }
+    }
+
+    public void testBigValuesFlowBetweenLines() throws Exception
+    {
+        NumericMode previous = NumericMode.getDefault();
+        NumericMode.setDefault( NumericMode.BIG );
+        try
+        {
+            String input = "a = mult(4294967296, 4294967296)\n"
+                + "b = mult(a, a)\n"
+                + "div(b, a)";
+
+            assertEquals( "18446744073709551616\n340282366920938463463374607431768211456\n18446744073709551616\n",
+                          run( new ScriptEvaluator( 4, null ), input ) );
+        }
+        finally
+        {
+            NumericMode.setDefault( previous );
+        }
+    }
+
+    // variable names are letters only
+    private static String name( int index )
+    {
+        StringBuilder name = new StringBuilder( "v" );
+        do
+        {
+            name.append( (char) ( 'a' + index % 26 ) );
+            index /= 26;
+        }
+        while ( index > 0 );
+        return name.toString();
+    }
+}
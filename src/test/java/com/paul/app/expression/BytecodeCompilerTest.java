@@ -0,0 +1,100 @@
+package com.paul.app.expression;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Compares generated classes against the tree interpreter.
+ */
+public class BytecodeCompilerTest 
+    extends TestCase
+{
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public BytecodeCompilerTest( String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( BytecodeCompilerTest.class );
+    }
+
+    public void testMatchesInterpreter() throws Exception
+    {
+        String[] expressions = {
+            "add(1, 2)",
+            "mult(add(2, 2), div(9, 3))",
+            "let(a, 5, let(b, mult(a, 10), add(b, a)))",
+            "let(a, let(b, 10, add(b, b)), let(b, 20, add(a, b)))",
+            "let(a, 1, add(let(a, 5, a), a))",
+            "sub(-1, add(127, add(-128, add(32767, add(-32769, 2147483647)))))"
+        };
+
+        for ( String expression : expressions )
+        {
+            CompiledExpression compiled = Parser.parse( expression );
+            assertEquals( expression, compiled.evaluate(), BytecodeCompiler.compile( compiled ).eval( new int[0] ) );
+        }
+    }
+
+    public void testInputVariables() throws Exception
+    {
+        CompiledExpression compiled = Parser.parse( "let(a, x, add(mult(a, y), sub(z, x)))" );
+        IntExpression generated = BytecodeCompiler.compile( compiled );
+
+        assertEquals( compiled.evaluate( 3, 4, 5 ), generated.eval( new int[] { 3, 4, 5 } ) );
+        assertEquals( compiled.evaluate( -7, 9, 100 ), generated.eval( new int[] { -7, 9, 100 } ) );
+    }
+
+    public void testDivideByZero() throws Exception
+    {
+        IntExpression generated = BytecodeCompiler.compile( Parser.parse( "div(x, 0)" ) );
+        try
+        {
+            generated.eval( new int[] { 1 } );
+            fail( "expected ArithmeticException" );
+        }
+        catch ( ArithmeticException aex )
+        {
+            // expected
+        }
+    }
+
+    public void testPromotion() throws Exception
+    {
+        TieredExpression tiered = new TieredExpression( Parser.parse( "add(x, 1)" ), 3 );
+        int[] vars = { 41 };
+
+        for ( int i = 0; i < 3; ++i )
+        {
+            assertEquals( 42, tiered.eval( vars ) );
+            assertFalse( tiered.isCompiled() );
+        }
+        assertEquals( 42, tiered.eval( vars ) );
+        assertTrue( tiered.isCompiled() );
+    }
+
+    public void testTooLargeStaysInterpreted() throws Exception
+    {
+        // 4096 leaves of 3 bytes each
+        String expression = "100000";
+        for ( int i = 0; i < 12; ++i )
+        {
+            expression = "add(" + expression + ", " + expression + ")";
+        }
+
+        TieredExpression tiered = new TieredExpression( Parser.parse( expression ), 0 );
+
+        assertEquals( 409600000, tiered.eval( new int[0] ) );
+        assertFalse( tiered.isCompiled() );
+    }
+}
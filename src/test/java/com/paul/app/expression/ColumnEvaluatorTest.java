@@ -0,0 +1,165 @@
+package com.paul.app.expression;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for evaluating an expression over columns of variable values.
+ */
+public class ColumnEvaluatorTest 
+    extends TestCase
+{
+    private static final String[] EXPRESSIONS = {
+        "let(a, x, add(mult(a, y), z))",
+        "x",
+        "add(x, 1)",
+        "sub(7, x)",
+        "mult(add(x, y), sub(x, y))",
+        "let(x, add(x, 1), mult(x, let(x, 3, add(x, y))))",
+        "let(a, add(x, y), let(b, mult(a, a), add(b, let(a, z, sub(a, b)))))",
+        "add(let(a, mult(x, 2), a), let(a, 5, mult(a, y)))",
+        "div(add(mult(x, 3), y), 7)",
+        "add(mult(2, 3), 4)"
+    };
+
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public ColumnEvaluatorTest( String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( ColumnEvaluatorTest.class );
+    }
+
+    public void testMatchesRowByRow() throws Exception
+    {
+        // more than one chunk, the last one partial
+        int rows = 3 * ColumnEvaluator.CHUNK_SIZE + 17;
+        Random random = new Random( 42 );
+
+        for ( String expression : EXPRESSIONS )
+        {
+            CompiledExpression compiled = Parser.parse( expression );
+            int[][] columns = columns( compiled.getVariables().size(), rows, random );
+            int[] results = new int[rows];
+
+            new ColumnEvaluator( compiled ).evaluate( columns, results );
+
+            for ( int row = 0; row < rows; ++row )
+            {
+                assertEquals( expression + " row " + row, compiled.evaluate( row( columns, row ) ), results[row] );
+            }
+        }
+    }
+
+    public void testFoldedExpression() throws Exception
+    {
+        CompiledExpression folded = ConstantFolder.fold( Parser.parse( "let(a, 5, add(mult(a, x), a))" ) );
+        int[] results = new ColumnEvaluator( folded ).evaluate( new int[] { 0, 1, -2 } );
+
+        assertEquals( 5, results[0] );
+        assertEquals( 10, results[1] );
+        assertEquals( -5, results[2] );
+    }
+
+    public void testDivisionByZero() throws Exception
+    {
+        int[] divisors = new int[2000];
+        Arrays.fill( divisors, 1 );
+        divisors[1500] = 0;
+
+        try
+        {
+            new ColumnEvaluator( Parser.parse( "div(10, x)" ) ).evaluate( divisors );
+            fail( "expected ArithmeticException" );
+        }
+        catch ( ArithmeticException aex )
+        {
+            assertTrue( aex.getMessage(), aex.getMessage().contains( "row 1500" ) );
+        }
+
+        try
+        {
+            new ColumnEvaluator( Parser.parse( "add(x, div(1, 0))" ) ).evaluate( new int[] { 1 } );
+            fail( "expected ArithmeticException" );
+        }
+        catch ( ArithmeticException aex )
+        {
+            // expected
+        }
+    }
+
+    public void testColumnCount() throws Exception
+    {
+        try
+        {
+            new ColumnEvaluator( Parser.parse( "add(x, y)" ) ).evaluate( new int[] { 1 }, new int[] { 1, 2 } );
+            fail( "expected IllegalArgumentException" );
+        }
+        catch ( IllegalArgumentException iaex )
+        {
+            // expected
+        }
+    }
+
+    public void testParallelMatchesSequential() throws Exception
+    {
+        int rows = 300001;
+        CompiledExpression compiled = Parser.parse( EXPRESSIONS[0] );
+        int[][] columns = columns( 3, rows, new Random( 7 ) );
+        ColumnEvaluator evaluator = new ColumnEvaluator( compiled );
+
+        int[] sequential = new int[rows];
+        evaluator.evaluate( columns, sequential );
+
+        int[] parallel = new int[rows];
+        ForkJoinPool pool = new ForkJoinPool( 4 );
+        try
+        {
+            evaluator.evaluate( columns, parallel, pool, 10000 );
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+
+        assertTrue( Arrays.equals( sequential, parallel ) );
+    }
+
+    private static int[][] columns( int count, int rows, Random random )
+    {
+        int[][] columns = new int[count][rows];
+        for ( int[] column : columns )
+        {
+            for ( int row = 0; row < rows; ++row )
+            {
+                column[row] = random.nextInt( 2001 ) - 1000;
+            }
+        }
+        return columns;
+    }
+
+    private static int[] row( int[][] columns, int row )
+    {
+        int[] values = new int[columns.length];
+        for ( int i = 0; i < columns.length; ++i )
+        {
+            values[i] = columns[i][row];
+        }
+        return values;
+    }
+}
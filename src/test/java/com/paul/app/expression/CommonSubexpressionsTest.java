@@ -0,0 +1,204 @@
+package com.paul.app.expression;
+
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for sharing identical subtrees.
+ */
+public class CommonSubexpressionsTest
+    extends TestCase
+{
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public CommonSubexpressionsTest( String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( CommonSubexpressionsTest.class );
+    }
+
+    private static int count( Program program, int opcode )
+    {
+        int count = 0;
+        int[] code = program.getCode();
+        for ( int pc = 0; pc < code.length; ++pc )
+        {
+            if ( code[pc] == opcode )
+            {
+                ++count;
+            }
+            if ( Program.hasOperand( code[pc] ) )
+            {
+                ++pc;
+            }
+        }
+        return count;
+    }
+
+    public void testSharesRepeatedSubtree() throws Exception
+    {
+        CompiledExpression parsed = Parser.parse( "add(mult(add(x, y), 10), mult(add(x, y), 10))" );
+        CompiledExpression shared = CommonSubexpressions.share( parsed );
+
+        assertTrue( shared.isShared() );
+        assertEquals( 11, shared.getRoot().size() );
+        assertEquals( 6, CommonSubexpressions.countDistinct( shared.getRoot() ) );
+        assertEquals( parsed.toString(), shared.toString() );
+
+        // add(x, y) and its parent are evaluated once, mult only once
+        assertEquals( 2, count( shared.getProgram(), Program.ADD ) );
+        assertEquals( 1, count( shared.getProgram(), Program.MULT ) );
+        assertEquals( 140, shared.evaluate( 3, 4 ) );
+    }
+
+    public void testNothingToShare() throws Exception
+    {
+        CompiledExpression parsed = Parser.parse( "add(mult(x, 2), mult(2, x))" );
+        assertSame( parsed, CommonSubexpressions.share( parsed ) );
+    }
+
+    public void testSameBindingIsShared() throws Exception
+    {
+        CompiledExpression shared = CommonSubexpressions.share(
+            Parser.parse( "let(a, add(x, 1), add(mult(a, a), mult(a, a)))" ) );
+
+        assertTrue( shared.isShared() );
+        assertEquals( 1, count( shared.getProgram(), Program.MULT ) );
+        assertEquals( 32, shared.evaluate( 3 ) );
+    }
+
+    public void testShadowingIsNotShared() throws Exception
+    {
+        String[] expressions = {
+            "add(let(a, x, mult(a, 2)), let(a, y, mult(a, 2)))",
+            "let(a, x, add(mult(a, 3), let(a, y, mult(a, 3))))",
+            "let(a, x, add(let(a, y, mult(a, 3)), mult(a, 3)))"
+        };
+
+        for ( String expression : expressions )
+        {
+            CompiledExpression parsed = Parser.parse( expression );
+            CompiledExpression shared = CommonSubexpressions.share( parsed );
+
+            assertFalse( expression, shared.isShared() );
+            assertEquals( expression, parsed.evaluate( 2, 5 ), shared.evaluate( 2, 5 ) );
+        }
+
+        // the outer a, read both outside and inside a let of another name
+        CompiledExpression shared = CommonSubexpressions.share(
+            Parser.parse( "let(a, x, add(mult(a, 3), let(b, y, add(b, mult(a, 3)))))" ) );
+        assertTrue( shared.isShared() );
+        assertEquals( 6 + 5 + 6, shared.evaluate( 2, 5 ) );
+    }
+
+    public void testMatchesUnsharedEvaluation() throws Exception
+    {
+        Random random = new Random( 42 );
+
+        for ( int i = 0; i < 200; ++i )
+        {
+            StringBuilder text = new StringBuilder();
+            generate( text, random, 6 );
+            CompiledExpression parsed = Parser.parse( text );
+            CompiledExpression shared = CommonSubexpressions.share( parsed );
+
+            int x = random.nextInt( 21 ) - 10;
+            int y = random.nextInt( 21 ) - 10;
+            int[] values = parsed.getVariables().size() == 2 ? new int[] { x, y }
+                : parsed.getVariables().isEmpty() ? new int[0] : new int[] { x };
+
+            Integer expected;
+            try
+            {
+                expected = parsed.evaluate( values );
+            }
+            catch ( ArithmeticException aex )
+            {
+                expected = null;
+            }
+
+            Integer actual;
+            try
+            {
+                actual = shared.evaluate( values );
+            }
+            catch ( ArithmeticException aex )
+            {
+                actual = null;
+            }
+
+            assertEquals( text.toString(), expected, actual );
+            assertEquals( text.toString(), parsed.getRoot().size(), shared.getRoot().size() );
+        }
+    }
+
+    public void testModesShareToo() throws Exception
+    {
+        Parser parser = new Parser( "add(mult(x, 4294967296), mult(x, 4294967296))" );
+        parser.setNumericMode( NumericMode.BIG );
+        CompiledExpression shared = CommonSubexpressions.share( parser.parse() );
+
+        assertTrue( shared.isShared() );
+        assertEquals( "36893488147419103232", shared.compute( 4294967296L ).toString() );
+    }
+
+    public void testDeepSharedChain() throws Exception
+    {
+        StringBuilder chain = new StringBuilder();
+        for ( int i = 0; i < 100000; ++i )
+        {
+            chain.append( "add(x, " );
+        }
+        chain.append( '1' );
+        for ( int i = 0; i < 100000; ++i )
+        {
+            chain.append( ')' );
+        }
+
+        CompiledExpression shared = CommonSubexpressions.share(
+            Parser.parse( "sub(" + chain + ", " + chain + ")" ) );
+
+        assertEquals( 100003, CommonSubexpressions.countDistinct( shared.getRoot() ) );
+        assertEquals( 100000, count( shared.getProgram(), Program.ADD ) );
+        assertEquals( 0, shared.evaluate( 7 ) );
+    }
+
+    // expressions over x and y drawn from few operands, so subtrees repeat
+    private static void generate( StringBuilder text, Random random, int levels )
+    {
+        int choice = random.nextInt( levels == 0 ? 3 : 8 );
+        if ( choice < 3 )
+        {
+            text.append( choice == 0 ? "x" : choice == 1 ? "y" : String.valueOf( random.nextInt( 3 ) ) );
+        }
+        else if ( choice == 3 )
+        {
+            text.append( "let(" ).append( random.nextBoolean() ? "x" : "a" ).append( ", " );
+            generate( text, random, levels - 1 );
+            text.append( ", " );
+            generate( text, random, levels - 1 );
+            text.append( ')' );
+        }
+        else
+        {
+            text.append( new String[] { "add", "sub", "mult", "div" }[choice - 4] ).append( '(' );
+            generate( text, random, levels - 1 );
+            text.append( ", " );
+            generate( text, random, levels - 1 );
+            text.append( ')' );
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.paul.app.expression;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for constant folding.
+ */
+public class ConstantFolderTest 
+    extends TestCase
+{
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public ConstantFolderTest( String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( ConstantFolderTest.class );
+    }
+
+    public void testFoldsToLiteral() throws Exception
+    {
+        assertFolded( "mult(add(2, 2), div(9, 3))", "12" );
+        assertFolded( "let(a, 5, add(a, a))", "10" );
+        assertFolded( "let(a, let(b, 10, add(b, b)), let(b, 20, add(a, b)))", "40" );
+        assertFolded( "let(a, 1, add(let(a, 5, a), a))", "6" );
+    }
+
+    public void testKeepsInputs() throws Exception
+    {
+        assertFolded( "let(a, 5, add(mult(a, 2), x))", "add(10, x)" );
+        assertFolded( "let(a, x, add(a, mult(2, 3)))", "let(a, x, add(a, 6))" );
+        assertFolded( "add(x, 1)", "add(x, 1)" );
+    }
+
+    public void testKeepsDivisionByZero() throws Exception
+    {
+        CompiledExpression folded = ConstantFolder.fold( Parser.parse( "add(1, div(add(2, 2), sub(3, 3)))" ) );
+
+        assertEquals( "add(1, div(4, 0))", folded.toString() );
+        try
+        {
+            folded.evaluate();
+            fail( "expected ArithmeticException" );
+        }
+        catch ( ArithmeticException aex )
+        {
+            // expected
+        }
+    }
+
+    public void testKeepsOverflow() throws Exception
+    {
+        assertFolded( "mult(65536, 65536)", "0" );
+        assertFolded( "div(-2147483648, -1)", "-2147483648" );
+    }
+
+    public void testDeepLetChain() throws Exception
+    {
+        StringBuilder expression = new StringBuilder();
+        for ( int i = 0; i < 100000; ++i )
+        {
+            expression.append( "let(a, add(" ).append( i == 0 ? "0" : "a" ).append( ", 1), " );
+        }
+        expression.append( "add(a, x)" );
+        for ( int i = 0; i < 100000; ++i )
+        {
+            expression.append( ')' );
+        }
+
+        assertEquals( "add(100000, x)", ConstantFolder.fold( Parser.parse( expression ) ).toString() );
+    }
+
+    private static void assertFolded( String expression, String expected ) throws Exception
+    {
+        CompiledExpression parsed = Parser.parse( expression );
+        CompiledExpression folded = ConstantFolder.fold( parsed );
+
+        assertEquals( expected, folded.toString() );
+        assertEquals( parsed.getVariables(), folded.getVariables() );
+        if ( parsed.getVariables().isEmpty() )
+        {
+            assertEquals( parsed.evaluate(), folded.evaluate() );
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.paul.app.expression;
+
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for incremental re-evaluation.
+ */
+public class EvaluationSessionTest 
+    extends TestCase
+{
+    private static final String[] EXPRESSIONS = {
+        "let(a, x, add(mult(a, y), z))",
+        "let(x, add(x, 1), mult(x, let(x, 3, add(x, y))))",
+        "let(a, add(x, y), let(b, mult(a, a), add(b, let(a, z, sub(a, b)))))",
+        "add(let(a, mult(x, 2), a), let(a, 5, mult(a, y)))",
+        "div(add(mult(x, 3), y), sub(z, 2))",
+        "let(q, div(x, y), z)"
+    };
+
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public EvaluationSessionTest( String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( EvaluationSessionTest.class );
+    }
+
+    public void testMatchesFullEvaluation() throws Exception
+    {
+        Random random = new Random( 3 );
+
+        for ( String expression : EXPRESSIONS )
+        {
+            CompiledExpression compiled = Parser.parse( expression );
+            EvaluationSession session = new EvaluationSession( compiled );
+            int[] values = new int[compiled.getVariables().size()];
+            for ( int i = 0; i < values.length; ++i )
+            {
+                session.set( i, values[i] );
+            }
+
+            for ( int update = 0; update < 500; ++update )
+            {
+                int variable = random.nextInt( values.length );
+                values[variable] = random.nextInt( 7 ) - 3;
+                session.set( compiled.getVariables().get( variable ), values[variable] );
+
+                Integer expected;
+                try
+                {
+                    expected = compiled.evaluate( values.clone() );
+                }
+                catch ( ArithmeticException aex )
+                {
+                    expected = null;
+                }
+
+                try
+                {
+                    assertEquals( expression, expected, Integer.valueOf( session.evaluate() ) );
+                }
+                catch ( ArithmeticException aex )
+                {
+                    assertNull( expression, expected );
+                }
+            }
+        }
+    }
+
+    public void testOnlyAffectedPathIsEvaluated() throws Exception
+    {
+        // x feeds one leaf of a long chain that only depends on y
+        StringBuilder expression = new StringBuilder( "add(mult(x, 2), " );
+        for ( int i = 0; i < 1000; ++i )
+        {
+            expression.append( "add(" ).append( i ).append( ", " );
+        }
+        expression.append( 'y' );
+        for ( int i = 0; i < 1000; ++i )
+        {
+            expression.append( ')' );
+        }
+        expression.append( ')' );
+
+        EvaluationSession session = new EvaluationSession( Parser.parse( expression ) );
+        session.set( "x", 1 );
+        session.set( "y", 1 );
+        assertEquals( 2 + 499500 + 1, session.evaluate() );
+        assertEquals( session.getNodeCount(), session.getEvaluatedCount() );
+
+        session.set( "x", 5 );
+        assertEquals( 10 + 499500 + 1, session.evaluate() );
+        // x, mult and the root
+        assertEquals( 3, session.getEvaluatedCount() );
+
+        session.set( "x", 5 );
+        assertEquals( 10 + 499500 + 1, session.evaluate() );
+        assertEquals( 0, session.getEvaluatedCount() );
+    }
+
+    public void testUnchangedValueStopsPropagation() throws Exception
+    {
+        EvaluationSession session = new EvaluationSession( Parser.parse( "add(mult(x, 0), let(a, y, add(a, a)))" ) );
+        session.set( "x", 1 );
+        session.set( "y", 2 );
+        assertEquals( 4, session.evaluate() );
+
+        session.set( "x", 7 );
+        assertEquals( 4, session.evaluate() );
+        // x and mult, whose value did not change
+        assertEquals( 2, session.getEvaluatedCount() );
+    }
+
+    public void testDivisionByZeroRecovers() throws Exception
+    {
+        EvaluationSession session = new EvaluationSession( Parser.parse( "let(q, div(10, x), y)" ) );
+        session.set( "x", 0 );
+        session.set( "y", 3 );
+        try
+        {
+            session.evaluate();
+            fail( "expected ArithmeticException" );
+        }
+        catch ( ArithmeticException aex )
+        {
+            // expected
+        }
+
+        session.set( "x", 2 );
+        assertEquals( 3, session.evaluate() );
+    }
+
+    public void testUnassignedVariable() throws Exception
+    {
+        EvaluationSession session = new EvaluationSession( Parser.parse( "add(x, y)" ) );
+        session.set( "x", 1 );
+        try
+        {
+            session.evaluate();
+            fail( "expected IllegalStateException" );
+        }
+        catch ( IllegalStateException isex )
+        {
+            assertTrue( isex.getMessage(), isex.getMessage().contains( "variable y" ) );
+        }
+
+        try
+        {
+            session.set( "z", 1 );
+            fail( "expected IllegalArgumentException" );
+        }
+        catch ( IllegalArgumentException iaex )
+        {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.paul.app.expression;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for the compiled expression cache.
+ */
+public class ExpressionCacheTest 
+    extends TestCase
+{
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public ExpressionCacheTest( String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( ExpressionCacheTest.class );
+    }
+
+    public void testNormalize()
+    {
+        assertEquals( "let(a,5,add(a,a))", ExpressionCache.normalize( " LET( a, 5,\tAdd(a , A) ) " ) );
+        // whitespace between two tokens is significant
+        assertEquals( "add(1 2,3)", ExpressionCache.normalize( "add(1  2, 3)" ) );
+        assertEquals( "1 -2", ExpressionCache.normalize( "1 -2" ) );
+    }
+
+    public void testHitsOnEquivalentText() throws Exception
+    {
+        ExpressionCache cache = new ExpressionCache( 10 );
+
+        CompiledExpression first = cache.get( "add(1, 2)" );
+        assertSame( first, cache.get( "ADD(1,2)" ) );
+        assertSame( first, cache.get( "  add ( 1 , 2 )" ) );
+
+        assertEquals( 2, cache.getHitCount() );
+        assertEquals( 1, cache.getMissCount() );
+        assertEquals( 1, cache.size() );
+    }
+
+    public void testCachedExpressionHoldsACopyOfTheText() throws Exception
+    {
+        ExpressionCache cache = new ExpressionCache( 10 );
+
+        StringBuilder line = new StringBuilder( "add(1, 2)" );
+        CompiledExpression compiled = cache.get( line );
+        line.setLength( 0 );
+
+        assertTrue( compiled.getSourceText() instanceof String );
+        assertEquals( "add(1, 2)", compiled.getSource() );
+    }
+
+    public void testInvalidTextIsNotCached() throws Exception
+    {
+        ExpressionCache cache = new ExpressionCache( 10 );
+        try
+        {
+            cache.get( "add(1 2, 3)" );
+            fail( "expected a parse error" );
+        }
+        catch ( ExpressionParseException epex )
+        {
+            assertEquals( 6, epex.getPosition() );
+        }
+        assertEquals( 0, cache.size() );
+    }
+
+    public void testLeastRecentlyUsedIsEvicted() throws Exception
+    {
+        ExpressionCache cache = new ExpressionCache( 3 );
+
+        CompiledExpression one = cache.get( "add(1, 1)" );
+        cache.get( "add(2, 2)" );
+        cache.get( "add(3, 3)" );
+        assertSame( one, cache.get( "add(1, 1)" ) );
+        cache.get( "add(4, 4)" );
+
+        assertEquals( 3, cache.size() );
+        assertEquals( 1, cache.getEvictionCount() );
+        assertSame( one, cache.get( "add(1, 1)" ) );
+
+        long misses = cache.getMissCount();
+        cache.get( "add(2, 2)" );
+        assertEquals( misses + 1, cache.getMissCount() );
+    }
+
+    public void testBoundedUnderConcurrentUse() throws Exception
+    {
+        final ExpressionCache cache = new ExpressionCache( 1000 );
+        Thread[] threads = new Thread[4];
+        final Throwable[] failure = new Throwable[1];
+
+        for ( int t = 0; t < threads.length; ++t )
+        {
+            threads[t] = new Thread()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        for ( int i = 0; i < 5000; ++i )
+                        {
+                            assertEquals( 2 * i, cache.get( "add(" + i + ", " + i + ")" ).evaluate() );
+                        }
+                    }
+                    catch ( Throwable e )
+                    {
+                        failure[0] = e;
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for ( Thread thread : threads )
+        {
+            thread.join();
+        }
+
+        if ( failure[0] != null )
+        {
+            throw new AssertionError( failure[0] );
+        }
+        assertTrue( cache.size() <= 1008 );
+        assertEquals( 20000, cache.getHitCount() + cache.getMissCount() );
+    }
+}
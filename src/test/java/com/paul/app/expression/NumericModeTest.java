@@ -0,0 +1,238 @@
+package com.paul.app.expression;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.math.BigInteger;
+import java.util.Random;
+
+import com.paul.app.batch.BatchEvaluator;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for evaluating expressions with the checked, long and big
+ * numeric modes.
+ */
+public class NumericModeTest
+    extends TestCase
+{
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public NumericModeTest( String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( NumericModeTest.class );
+    }
+
+    private static CompiledExpression parse( String expression, NumericMode mode ) throws Exception
+    {
+        Parser parser = new Parser( expression );
+        parser.setNumericMode( mode );
+        return ConstantFolder.fold( parser.parse() );
+    }
+
+    private static Number compute( String expression, NumericMode mode ) throws Exception
+    {
+        return parse( expression, mode ).compute();
+    }
+
+    private static String failure( String expression, NumericMode mode ) throws Exception
+    {
+        try
+        {
+            compute( expression, mode );
+            fail( expression + " should fail in the " + mode.getName() + " mode" );
+            return null;
+        }
+        catch ( ArithmeticException aex )
+        {
+            // overflows are told from divisions by zero by their type
+            assertEquals( aex.getMessage(), aex.getMessage().endsWith( "overflow" ), NumericMode.isOverflow( aex ) );
+            assertEquals( aex.getMessage(), !NumericMode.isOverflow( aex ), NumericMode.isDivisionByZero( aex ) );
+            return aex.getMessage();
+        }
+    }
+
+    public void testForName()
+    {
+        assertEquals( NumericMode.BIG, NumericMode.forName( "Big" ) );
+        assertEquals( "checked", NumericMode.CHECKED.getName() );
+        try
+        {
+            NumericMode.forName( "float" );
+            fail( "float is not a mode" );
+        }
+        catch ( IllegalArgumentException iaex )
+        {
+            // expected
+        }
+    }
+
+    public void testIntStillWraps() throws Exception
+    {
+        assertEquals( Integer.MIN_VALUE, compute( "add(2147483647, 1)", NumericMode.INT ) );
+        assertEquals( Integer.MIN_VALUE, compute( "div(-2147483648, -1)", NumericMode.INT ) );
+        assertEquals( Integer.valueOf( 0 ), compute( "mult(65536, 65536)", NumericMode.INT ) );
+    }
+
+    public void testCheckedOverflow() throws Exception
+    {
+        assertEquals( Integer.valueOf( Integer.MAX_VALUE ), compute( "add(2147483646, 1)", NumericMode.CHECKED ) );
+        assertEquals( "integer overflow", failure( "add(2147483647, 1)", NumericMode.CHECKED ) );
+        assertEquals( "integer overflow", failure( "sub(-2147483648, 1)", NumericMode.CHECKED ) );
+        assertEquals( "integer overflow", failure( "mult(65536, 65536)", NumericMode.CHECKED ) );
+        assertEquals( "integer overflow", failure( "div(-2147483648, -1)", NumericMode.CHECKED ) );
+        assertEquals( "integer overflow", failure( "let(a, 2147483647, add(a, a))", NumericMode.CHECKED ) );
+        assertEquals( 6, parse( "add(x, 1)", NumericMode.CHECKED ).evaluate( 5 ) );
+    }
+
+    public void testLong() throws Exception
+    {
+        assertEquals( Long.valueOf( 2147483648L ), compute( "add(2147483647, 1)", NumericMode.LONG ) );
+        assertEquals( Long.valueOf( Long.MIN_VALUE ), compute( "-9223372036854775808", NumericMode.LONG ) );
+        assertEquals( Long.valueOf( 4294967296L ), compute( "let(a, 65536, mult(a, a))", NumericMode.LONG ) );
+        assertEquals( "long overflow", failure( "add(9223372036854775807, 1)", NumericMode.LONG ) );
+        assertEquals( "long overflow", failure( "mult(4294967296, 4294967296)", NumericMode.LONG ) );
+        assertEquals( "long overflow", failure( "div(-9223372036854775808, -1)", NumericMode.LONG ) );
+        assertEquals( Long.valueOf( 10000000001L ), parse( "add(x, 1)", NumericMode.LONG ).compute( 10000000000L ) );
+    }
+
+    public void testLiteralRanges() throws Exception
+    {
+        String[] tooLarge = { "2147483648", "-2147483649" };
+        for ( String literal : tooLarge )
+        {
+            try
+            {
+                parse( literal, NumericMode.CHECKED );
+                fail( literal );
+            }
+            catch ( ExpressionParseException epex )
+            {
+                assertTrue( epex.getMessage(), epex.getMessage().startsWith( "Number is outside the integer range" ) );
+            }
+        }
+
+        try
+        {
+            parse( "add(1, 9223372036854775808)", NumericMode.LONG );
+            fail( "beyond the long range" );
+        }
+        catch ( ExpressionParseException epex )
+        {
+            assertTrue( epex.getMessage(), epex.getMessage().startsWith( "Number is outside the long range" ) );
+            assertEquals( 7, epex.getPosition() );
+        }
+
+        assertEquals( new BigInteger( "123456789012345678901234567890" ),
+                      compute( "123456789012345678901234567890", NumericMode.BIG ) );
+    }
+
+    public void testBigPromotesAndDemotes() throws Exception
+    {
+        assertEquals( BigInteger.ONE.shiftLeft( 64 ), compute( "mult(4294967296, 4294967296)", NumericMode.BIG ) );
+        assertEquals( BigInteger.valueOf( Long.MAX_VALUE ).add( BigInteger.ONE ),
+                      compute( "add(9223372036854775807, 1)", NumericMode.BIG ) );
+        assertEquals( BigInteger.valueOf( Long.MIN_VALUE ).negate(),
+                      compute( "div(-9223372036854775808, -1)", NumericMode.BIG ) );
+
+        // back to a long once the value fits again
+        assertEquals( BigInteger.valueOf( 7 ),
+                      compute( "let(a, mult(9223372036854775807, 4), sub(div(a, 4), 9223372036854775800))", NumericMode.BIG ) );
+        assertEquals( new BigInteger( "-99999999999999999999999999999" ),
+                      compute( "sub(1, 100000000000000000000000000000)", NumericMode.BIG ) );
+    }
+
+    public void testBigMatchesBigInteger() throws Exception
+    {
+        Random random = new Random( 42 );
+        CompiledExpression compiled = parse( "let(a, mult(x, y), add(mult(a, a), div(sub(a, z), add(mult(z, z), 1))))",
+                                             NumericMode.BIG );
+
+        for ( int i = 0; i < 1000; ++i )
+        {
+            long x = random.nextLong();
+            long y = random.nextLong() >> random.nextInt( 64 );
+            long z = random.nextLong() >> random.nextInt( 64 );
+
+            BigInteger a = BigInteger.valueOf( x ).multiply( BigInteger.valueOf( y ) );
+            BigInteger bz = BigInteger.valueOf( z );
+            BigInteger expected = a.multiply( a ).add( a.subtract( bz ).divide( bz.multiply( bz ).add( BigInteger.ONE ) ) );
+
+            assertEquals( expected, compiled.compute( x, y, z ) );
+        }
+    }
+
+    public void testDivisionByZero() throws Exception
+    {
+        for ( NumericMode mode : NumericMode.values() )
+        {
+            assertEquals( mode.getName(), "/ by zero", failure( "div(1, sub(2, 2))", mode ) );
+        }
+        assertEquals( "/ by zero", failure( "div(100000000000000000000, 0)", NumericMode.BIG ) );
+    }
+
+    public void testIntOnlyEvaluators() throws Exception
+    {
+        CompiledExpression compiled = parse( "add(x, 1)", NumericMode.LONG );
+        try
+        {
+            compiled.evaluate( 1 );
+            fail( "long expression evaluated as int" );
+        }
+        catch ( IllegalStateException isex )
+        {
+            // expected
+        }
+        try
+        {
+            new ColumnEvaluator( compiled );
+            fail( "long expression evaluated over int columns" );
+        }
+        catch ( IllegalArgumentException iaex )
+        {
+            // expected
+        }
+        try
+        {
+            parse( "add(1, 2)", NumericMode.CHECKED ).compute( 1L << 40 );
+            fail( "int expression given a long" );
+        }
+        catch ( IllegalArgumentException iaex )
+        {
+            // expected
+        }
+    }
+
+    public void testBatchOverflowRecords() throws Exception
+    {
+        NumericMode previous = NumericMode.getDefault();
+        StringWriter output = new StringWriter();
+        NumericMode.setDefault( NumericMode.CHECKED );
+        try
+        {
+            String input = "add(2147483647, 1)\ndiv(1, 0)\nadd(1, 2)\n";
+            new BatchEvaluator( null ).run( new BufferedReader( new StringReader( input ) ), output );
+        }
+        finally
+        {
+            NumericMode.setDefault( previous );
+        }
+
+        assertEquals( BatchEvaluator.ERROR_PREFIX + "integer overflow\n" + BatchEvaluator.ERROR_PREFIX
+                      + "Division by zero\n3\n", output.toString() );
+    }
+}
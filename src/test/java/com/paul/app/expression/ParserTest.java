@@ -0,0 +1,136 @@
+package com.paul.app.expression;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for the expression parser.
+ */
+public class ParserTest 
+    extends TestCase
+{
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public ParserTest( String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( ParserTest.class );
+    }
+
+    public void testCaseAndWhitespace() throws Exception
+    {
+        assertEquals( 10, Parser.parse( " LET ( A ,5,\tadd(a, A) ) " ).evaluate() );
+    }
+
+    public void testIntegerRange() throws Exception
+    {
+        assertEquals( Integer.MIN_VALUE, Parser.parse( "-2147483648" ).evaluate() );
+        assertEquals( Integer.MAX_VALUE, Parser.parse( "+2147483647" ).evaluate() );
+        assertErrorAt( "add(1, 2147483648)", 7 );
+        assertErrorAt( "add(1, -2147483649)", 7 );
+    }
+
+    public void testMultiLetterVariables() throws Exception
+    {
+        assertEquals( 12, Parser.parse( "let(price, 4, mult(price, 3))" ).evaluate() );
+    }
+
+    public void testErrorPositions()
+    {
+        assertErrorAt( "add(1 2)", 6 );
+        assertErrorAt( "add(1, 2", 8 );
+        assertErrorAt( "add(1, 2))", 9 );
+        assertErrorAt( "mult 1, 2", 5 );
+        assertErrorAt( "let(5, 1, 2)", 4 );
+        assertErrorAt( "let(add, 1, 2)", 4 );
+        assertErrorAt( "add(1, $)", 7 );
+        assertErrorAt( "add(1, 2a)", 8 );
+        assertErrorAt( "", 0 );
+    }
+
+    public void testDeepNesting() throws Exception
+    {
+        int depth = 100000;
+        StringBuilder right = new StringBuilder();
+        StringBuilder left = new StringBuilder();
+        for ( int i = 0; i < depth; ++i )
+        {
+            right.append( "add(1, " );
+            left.append( "sub(" );
+        }
+        right.append( '1' );
+        left.append( '0' );
+        for ( int i = 0; i < depth; ++i )
+        {
+            right.append( ')' );
+            left.append( ", 1)" );
+        }
+
+        CompiledExpression parsed = Parser.parse( right );
+        assertEquals( depth + 1, parsed.evaluate() );
+        assertEquals( 2 * depth + 1, parsed.getRoot().size() );
+        assertEquals( right.toString(), parsed.toString() );
+        assertEquals( -depth, Parser.parse( left ).evaluate() );
+    }
+
+    public void testDeepLetNesting() throws Exception
+    {
+        int depth = 100000;
+        StringBuilder expression = new StringBuilder( "let(a, 0, " );
+        for ( int i = 0; i < depth; ++i )
+        {
+            expression.append( "let(a, add(a, 1), " );
+        }
+        expression.append( "mult(a, x)" );
+        for ( int i = 0; i <= depth; ++i )
+        {
+            expression.append( ')' );
+        }
+
+        assertEquals( 2 * depth, Parser.parse( expression ).evaluate( 2 ) );
+    }
+
+    public void testMaxDepth() throws Exception
+    {
+        Parser parser = new Parser( "add(1, let(a, 1, add(a, 1)))" );
+        parser.setMaxDepth( 3 );
+        assertEquals( 3, parser.parse().evaluate() );
+
+        parser = new Parser( "add(1, let(a, 1, add(a, 1)))" );
+        parser.setMaxDepth( 2 );
+        try
+        {
+            parser.parse();
+            fail( "expected a depth error" );
+        }
+        catch ( ExpressionParseException epex )
+        {
+            assertEquals( 17, epex.getPosition() );
+            assertTrue( epex.getMessage(), epex.getMessage().contains( "nested deeper than 2" ) );
+        }
+    }
+
+    private static void assertErrorAt( String expression, int position )
+    {
+        try
+        {
+            Parser.parse( expression );
+            fail( "expected a parse error for " + expression );
+        }
+        catch ( ExpressionParseException epex )
+        {
+            assertEquals( epex.getMessage(), position, epex.getPosition() );
+        }
+    }
+}
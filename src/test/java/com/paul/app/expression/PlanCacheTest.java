@@ -0,0 +1,234 @@
+package com.paul.app.expression;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for saving compiled expressions to a file and loading them back.
+ */
+public class PlanCacheTest
+    extends TestCase
+{
+    private static final String[] EXPRESSIONS = {
+        "add(1, 2)",
+        "let(a, x, add(mult(a, y), z))",
+        "let(a, 5, let(b, mult(a, 10), add(b, a)))",
+        "let(x, add(x, 1), mult(x, let(x, 3, add(x, y))))",
+        "add(mult(add(x, y), 10), mult(add(x, y), 10))",
+        "div(x, 0)"
+    };
+
+    private File file;
+
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public PlanCacheTest( String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( PlanCacheTest.class );
+    }
+
+    protected void setUp() throws IOException
+    {
+        file = File.createTempFile( "plans", ".bin" );
+        file.delete();
+    }
+
+    protected void tearDown()
+    {
+        file.delete();
+    }
+
+    private void saveAll() throws Exception
+    {
+        PlanCache plans = PlanCache.load( file.toPath() );
+        for ( String expression : EXPRESSIONS )
+        {
+            plans.put( ExpressionCache.normalize( expression ), ExpressionCompiler.compile( expression ) );
+        }
+        assertTrue( plans.isModified() );
+        plans.save( file.toPath() );
+    }
+
+    public void testRoundTrip() throws Exception
+    {
+        saveAll();
+        PlanCache plans = PlanCache.load( file.toPath() );
+        assertEquals( EXPRESSIONS.length, plans.size() );
+
+        for ( String expression : EXPRESSIONS )
+        {
+            CompiledExpression compiled = ExpressionCompiler.compile( expression );
+            CompiledExpression loaded = plans.get( ExpressionCache.normalize( expression ), NumericMode.INT );
+
+            assertNotNull( expression, loaded );
+            assertEquals( expression, compiled.toString(), loaded.toString() );
+            assertEquals( expression, compiled.getVariables(), loaded.getVariables() );
+            assertEquals( expression, compiled.getFrameSize(), loaded.getFrameSize() );
+            assertEquals( expression, compiled.isShared(), loaded.isShared() );
+            assertEquals( expression, compiled.getProgram().toString(), loaded.getProgram().toString() );
+
+            int[] values = new int[compiled.getVariables().size()];
+            for ( int i = 0; i < values.length; ++i )
+            {
+                values[i] = i + 3;
+            }
+            if ( !expression.startsWith( "div" ) )
+            {
+                assertEquals( expression, compiled.evaluate( values ), loaded.evaluate( values ) );
+            }
+        }
+
+        assertEquals( EXPRESSIONS.length, plans.getHitCount() );
+        assertEquals( 0, plans.getCorruptCount() );
+        assertFalse( plans.isModified() );
+    }
+
+    public void testSharedNodesStayShared() throws Exception
+    {
+        saveAll();
+        CompiledExpression loaded = PlanCache.load( file.toPath() )
+            .get( ExpressionCache.normalize( EXPRESSIONS[4] ), NumericMode.INT );
+
+        assertEquals( 6, CommonSubexpressions.countDistinct( loaded.getRoot() ) );
+        assertEquals( 140, loaded.evaluate( 3, 4 ) );
+    }
+
+    public void testMissesOtherTextAndMode() throws Exception
+    {
+        saveAll();
+        PlanCache plans = PlanCache.load( file.toPath() );
+
+        assertNull( plans.get( "add(1,3)", NumericMode.INT ) );
+        assertNull( plans.get( ExpressionCache.normalize( EXPRESSIONS[0] ), NumericMode.LONG ) );
+        assertEquals( 2, plans.getMissCount() );
+    }
+
+    public void testWideConstants() throws Exception
+    {
+        String key = ExpressionCache.normalize( "add(x, 123456789012345678901234567890)" );
+        Parser parser = new Parser( key );
+        parser.setNumericMode( NumericMode.BIG );
+
+        PlanCache plans = new PlanCache();
+        plans.put( key, parser.parse() );
+        plans.save( file.toPath() );
+
+        CompiledExpression loaded = PlanCache.load( file.toPath() ).get( key, NumericMode.BIG );
+        assertEquals( NumericMode.BIG, loaded.getNumericMode() );
+        assertEquals( "123456789012345678901234567891", loaded.compute( 1 ).toString() );
+    }
+
+    public void testSaveKeepsLoadedEntries() throws Exception
+    {
+        saveAll();
+        PlanCache plans = PlanCache.load( file.toPath() );
+        plans.put( "sub(x,1)", ExpressionCompiler.compile( "sub(x,1)" ) );
+        plans.save( file.toPath() );
+
+        plans = PlanCache.load( file.toPath() );
+        assertEquals( EXPRESSIONS.length + 1, plans.size() );
+        assertEquals( 4, plans.get( "sub(x,1)", NumericMode.INT ).evaluate( 5 ) );
+        assertNotNull( plans.get( ExpressionCache.normalize( EXPRESSIONS[1] ), NumericMode.INT ) );
+    }
+
+    public void testDamagedEntryIsMissing() throws Exception
+    {
+        saveAll();
+        byte[] bytes = Files.readAllBytes( file.toPath() );
+
+        // flip a byte of the last entry, the tail of the last node opcodes
+        corrupt( bytes.length - 2 );
+
+        PlanCache plans = PlanCache.load( file.toPath() );
+        int found = 0;
+        for ( String expression : EXPRESSIONS )
+        {
+            if ( plans.get( ExpressionCache.normalize( expression ), NumericMode.INT ) != null )
+            {
+                ++found;
+            }
+        }
+
+        assertEquals( EXPRESSIONS.length - 1, found );
+        assertEquals( 1, plans.getCorruptCount() );
+        assertTrue( plans.isModified() );
+
+        // saving drops the damaged entry
+        plans.save( file.toPath() );
+        assertEquals( EXPRESSIONS.length - 1, PlanCache.load( file.toPath() ).size() );
+    }
+
+    public void testDamagedIndexDiscardsFile() throws Exception
+    {
+        saveAll();
+        corrupt( 20 );
+
+        PlanCache plans = PlanCache.load( file.toPath() );
+        assertEquals( 0, plans.size() );
+        assertEquals( 1, plans.getCorruptCount() );
+    }
+
+    public void testOtherVersionIsIgnored() throws Exception
+    {
+        saveAll();
+        try ( RandomAccessFile out = new RandomAccessFile( file, "rw" ) )
+        {
+            out.seek( 4 );
+            out.writeInt( PlanCache.VERSION + 1 );
+        }
+
+        PlanCache plans = PlanCache.load( file.toPath() );
+        assertEquals( 0, plans.size() );
+        assertEquals( 0, plans.getCorruptCount() );
+
+        try ( RandomAccessFile out = new RandomAccessFile( file, "rw" ) )
+        {
+            out.writeInt( 0x12345678 );
+        }
+        assertEquals( 1, PlanCache.load( file.toPath() ).getCorruptCount() );
+    }
+
+    public void testExpressionCacheSkipsParsing() throws Exception
+    {
+        saveAll();
+
+        ExpressionCache cache = new ExpressionCache();
+        cache.setPlanCache( PlanCache.load( file.toPath() ) );
+
+        CompiledExpression compiled = cache.get( "LET(a, X, add(mult(a, y),   z))" );
+        assertEquals( 1, cache.getPlanCache().getHitCount() );
+        assertEquals( 2 * 3 + 4, compiled.evaluate( 2, 3, 4 ) );
+
+        cache.get( "mult(x, 2)" );
+        assertEquals( 1, cache.getPlanCache().getMissCount() );
+        assertTrue( cache.getPlanCache().isModified() );
+    }
+
+    private void corrupt( int position ) throws IOException
+    {
+        try ( RandomAccessFile out = new RandomAccessFile( file, "rw" ) )
+        {
+            out.seek( position );
+            int value = out.read();
+            out.seek( position );
+            out.write( value ^ 0x5a );
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.paul.app.expression;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Compares the opcode evaluator against the tree interpreter.
+ */
+public class ProgramTest 
+    extends TestCase
+{
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public ProgramTest( String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( ProgramTest.class );
+    }
+
+    public void testMatchesTree() throws Exception
+    {
+        String[] expressions = {
+            "add(1, 2)",
+            "mult(add(2, 2), div(9, 3))",
+            "let(a, 5, let(b, mult(a, 10), add(b, a)))",
+            "let(a, let(b, 10, add(b, b)), let(b, 20, add(a, b)))",
+            "let(a, 1, add(let(a, 5, a), a))",
+            "let(a, 1, let(a, add(a, 1), let(a, mult(a, 10), add(a, 1))))",
+            "add(x, let(x, mult(x, 2), add(x, y)))",
+            "let(a, x, add(mult(a, y), sub(z, a)))"
+        };
+        int[] values = { 7, -3, 11 };
+
+        for ( String expression : expressions )
+        {
+            CompiledExpression compiled = Parser.parse( expression );
+            int[] inputs = new int[compiled.getVariables().size()];
+            int[] frame = new int[compiled.getFrameSize()];
+            for ( int i = 0; i < inputs.length; ++i )
+            {
+                inputs[i] = values[i];
+                frame[compiled.getVariableSlots()[i]] = values[i];
+            }
+
+            assertEquals( expression, compiled.getRoot().evaluate( frame ), compiled.getProgram().execute( inputs ) );
+        }
+    }
+
+    public void testShadowingSavesAndRestores() throws Exception
+    {
+        Program program = Parser.parse( "let(a, 1, add(let(a, 5, a), a))" ).getProgram();
+
+        assertEquals( "const 1; store a; const 5; bind a; load a; unbind a; load a; add", program.toString() );
+        assertEquals( 1, program.getSlotNames().length );
+        assertEquals( 6, program.execute( new int[0] ) );
+    }
+
+    public void testNoAllocationPerEvaluation() throws Exception
+    {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if ( !( threads instanceof com.sun.management.ThreadMXBean ) )
+        {
+            return;
+        }
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        if ( !allocations.isThreadAllocatedMemorySupported() || !allocations.isThreadAllocatedMemoryEnabled() )
+        {
+            return;
+        }
+
+        CompiledExpression compiled = Parser.parse( "let(a, x, let(b, mult(a, 10), add(b, let(a, y, div(a, 2)))))" );
+        int[] inputs = { 3, 8 };
+        long sum = 0;
+
+        for ( int i = 0; i < 20000; ++i )
+        {
+            sum += compiled.evaluate( inputs );
+        }
+
+        long thread = Thread.currentThread().getId();
+        long before = allocations.getThreadAllocatedBytes( thread );
+        for ( int i = 0; i < 100000; ++i )
+        {
+            sum += compiled.evaluate( inputs );
+        }
+        long allocated = allocations.getThreadAllocatedBytes( thread ) - before;
+
+        assertEquals( 120000L * 34, sum );
+        // a single object per evaluation would take at least 1.6 MB
+        assertTrue( "allocated " + allocated + " bytes", allocated < 16 * 1024 );
+    }
+}
@@ -0,0 +1,99 @@
+package com.paul.app.generator;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import com.paul.app.batch.BatchEvaluator;
+import com.paul.app.expression.CompiledExpression;
+import com.paul.app.expression.ExpressionCompiler;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for the expression generator.
+ */
+public class ExpressionGeneratorTest
+    extends TestCase
+{
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public ExpressionGeneratorTest( String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( ExpressionGeneratorTest.class );
+    }
+
+    public void testSameSeedSameExpressions()
+    {
+        ExpressionGenerator first = new ExpressionGenerator( 42 );
+        ExpressionGenerator second = new ExpressionGenerator( 42 );
+
+        for ( int i = 0; i < 100; ++i )
+        {
+            StringBuilder a = new StringBuilder();
+            StringBuilder b = new StringBuilder();
+            first.generate( a );
+            second.generate( b );
+            assertEquals( a.toString(), b.toString() );
+        }
+    }
+
+    public void testExpectedResultsMatchBatch() throws Exception
+    {
+        ExpressionGenerator generator = new ExpressionGenerator( 7 );
+        generator.setMaxDepth( 8 );
+        generator.setVariableCount( 40 );
+        generator.setValueRange( -3, 3 );
+
+        StringWriter expressions = new StringWriter();
+        StringWriter expected = new StringWriter();
+        new WorkloadGenerator( generator ).write( 2000, expressions, expected );
+
+        StringWriter results = new StringWriter();
+        new BatchEvaluator().run( new BufferedReader( new StringReader( expressions.toString() ) ), results );
+
+        assertEquals( expected.toString(), results.toString() );
+        assertTrue( "no division by zero generated", expected.toString().contains( "ERROR: Division by zero" ) );
+    }
+
+    public void testLiteralsStayInRange() throws Exception
+    {
+        ExpressionGenerator generator = new ExpressionGenerator( 3 );
+        generator.setMaxDepth( 0 );
+        generator.setValueRange( Integer.MAX_VALUE - 1, Integer.MAX_VALUE );
+
+        for ( int i = 0; i < 50; ++i )
+        {
+            StringBuilder expression = new StringBuilder();
+            generator.generate( expression );
+            CompiledExpression compiled = ExpressionCompiler.compile( expression );
+            assertEquals( generator.getResult(), compiled.evaluate() );
+            assertTrue( generator.getResult() >= Integer.MAX_VALUE - 1 );
+        }
+    }
+
+    public void testRejectsLetOnlyWeights()
+    {
+        try
+        {
+            new ExpressionGenerator( 1 ).setOperatorWeights( new int[] { 0, 0, 0, 0, 1 } );
+            fail( "accepted weights without an arithmetic operator" );
+        }
+        catch ( IllegalArgumentException expected )
+        {
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.paul.app.metrics;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for the log-linear latency histogram.
+ */
+public class LatencyHistogramTest
+    extends TestCase
+{
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public LatencyHistogramTest( String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( LatencyHistogramTest.class );
+    }
+
+    public void testBucketsCoverEveryValue()
+    {
+        long[] values = { 0, 1, 15, 16, 17, 31, 32, 1000, 123456789, Long.MAX_VALUE };
+        int previous = -1;
+        for ( long value : values )
+        {
+            int bucket = LatencyHistogram.bucket( value );
+            assertTrue( bucket >= previous );
+            assertTrue( bucket < LatencyHistogram.BUCKETS );
+            assertTrue( value <= LatencyHistogram.bucketLimit( bucket ) );
+            if ( bucket > 0 )
+            {
+                assertTrue( value > LatencyHistogram.bucketLimit( bucket - 1 ) );
+            }
+            previous = bucket;
+        }
+    }
+
+    public void testPercentilesWithinPrecision()
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for ( int i = 1; i <= 10000; ++i )
+        {
+            histogram.record( i * 100L );
+        }
+
+        assertEquals( 10000, histogram.getCount() );
+        assertEquals( 1000000, histogram.getMax() );
+        assertEquals( 50005000L * 100, histogram.getTotal() );
+
+        long median = histogram.getValueAtPercentile( 50 );
+        assertTrue( String.valueOf( median ), median >= 500000 && median <= 500000 + 500000 / LatencyHistogram.SUB_BUCKETS );
+        assertEquals( 1000000, histogram.getValueAtPercentile( 100 ) );
+    }
+
+    public void testEmpty()
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals( 0, histogram.getCount() );
+        assertEquals( 0, histogram.getValueAtPercentile( 99 ) );
+    }
+
+    public void testConcurrentRecording() throws Exception
+    {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        Thread[] threads = new Thread[4];
+        for ( int t = 0; t < threads.length; ++t )
+        {
+            threads[t] = new Thread()
+            {
+                public void run()
+                {
+                    for ( int i = 0; i < 25000; ++i )
+                    {
+                        histogram.record( i );
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for ( Thread thread : threads )
+        {
+            thread.join();
+        }
+
+        assertEquals( 100000, histogram.getCount() );
+    }
+}
@@ -0,0 +1,126 @@
+package com.paul.app.metrics;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+import com.paul.app.batch.BatchEvaluator;
+import com.paul.app.expression.ExpressionCache;
+import com.paul.app.metrics.CalculatorMetrics.Failure;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for the metrics recorded by batch evaluation and their export.
+ */
+public class PrometheusExporterTest
+    extends TestCase
+{
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public PrometheusExporterTest( String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( PrometheusExporterTest.class );
+    }
+
+    public void testBatchFailuresAndExport() throws Exception
+    {
+        CalculatorMetrics metrics = new CalculatorMetrics();
+        metrics.setEnabled( true );
+        metrics.recordEvaluated();
+        metrics.recordFailure( Failure.DIVISION_BY_ZERO );
+        metrics.recordFailure( Failure.PARSE_ERROR );
+        metrics.recordFailure( Failure.PARSE_ERROR );
+        metrics.recordStackDepth( 3 );
+        metrics.recordStackDepth( 2 );
+
+        StringWriter text = new StringWriter();
+        new PrometheusExporter( metrics ).write( text );
+        String dump = text.toString();
+
+        assertTrue( dump, dump.contains( "calculator_expressions_evaluated_total 1\n" ) );
+        assertTrue( dump, dump.contains( "calculator_failures_total{type=\"parse_error\"} 2\n" ) );
+        assertTrue( dump, dump.contains( "calculator_failures_total{type=\"division_by_zero\"} 1\n" ) );
+        assertTrue( dump, dump.contains( "calculator_stack_depth_max 3\n" ) );
+        assertTrue( dump, dump.contains( "# TYPE calculator_phase_duration_seconds summary\n" ) );
+        assertTrue( dump, dump.contains( "calculator_phase_duration_seconds_count{phase=\"evaluate\"} 0\n" ) );
+    }
+
+    public void testBatchRecordsWhenEnabled() throws Exception
+    {
+        CalculatorMetrics metrics = CalculatorMetrics.getInstance();
+        ExpressionCache cache = new ExpressionCache();
+        metrics.registerCache( cache );
+
+        long evaluated = metrics.getExpressionsEvaluated();
+        long divisions = metrics.getDivisionsByZero();
+        long missing = metrics.getMissingOperands();
+        long parseErrors = metrics.getParseErrors();
+        long hits = metrics.getCacheHits();
+
+        metrics.setEnabled( true );
+        try
+        {
+            String input = "add(1, 2)\nadd(1,2)\ndiv(1, 0)\nadd(x, 1)\nadd(1\n";
+            new BatchEvaluator( cache ).run( new BufferedReader( new StringReader( input ) ), new StringWriter() );
+        }
+        finally
+        {
+            metrics.setEnabled( false );
+        }
+
+        assertEquals( 2, metrics.getExpressionsEvaluated() - evaluated );
+        assertEquals( 1, metrics.getDivisionsByZero() - divisions );
+        assertEquals( 1, metrics.getMissingOperands() - missing );
+        assertEquals( 1, metrics.getParseErrors() - parseErrors );
+        assertEquals( 1, metrics.getCacheHits() - hits );
+        assertTrue( metrics.getEvaluateCount() >= 2 );
+    }
+
+    public void testEndpoint() throws Exception
+    {
+        CalculatorMetrics metrics = new CalculatorMetrics();
+        metrics.recordEvaluated();
+
+        PrometheusExporter exporter = new PrometheusExporter( metrics );
+        exporter.start( 0 );
+        try
+        {
+            URL url = new URL( "http://127.0.0.1:" + exporter.getPort() + "/metrics" );
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            assertEquals( 200, connection.getResponseCode() );
+
+            BufferedReader reader = new BufferedReader( new InputStreamReader( connection.getInputStream(), StandardCharsets.UTF_8 ) );
+            StringBuilder body = new StringBuilder();
+            String line;
+            while ( ( line = reader.readLine() ) != null )
+            {
+                body.append( line ).append( '\n' );
+            }
+            reader.close();
+
+            assertTrue( body.toString(), body.toString().contains( "calculator_expressions_evaluated_total 1\n" ) );
+        }
+        finally
+        {
+            exporter.stop();
+        }
+    }
+}
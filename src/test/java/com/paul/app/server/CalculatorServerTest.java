@@ -0,0 +1,128 @@
+package com.paul.app.server;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Talks to a calculator server on localhost.
+ */
+public class CalculatorServerTest 
+    extends TestCase
+{
+    private CalculatorServer server;
+
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public CalculatorServerTest( String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( CalculatorServerTest.class );
+    }
+
+    protected void setUp() throws Exception
+    {
+        server = new CalculatorServer( 0 );
+        server.start();
+    }
+
+    protected void tearDown() throws Exception
+    {
+        server.close();
+    }
+
+    public void testRequestsOnOneConnection() throws Exception
+    {
+        Socket socket = new Socket( InetAddress.getLoopbackAddress(), server.getPort() );
+        try
+        {
+            BufferedReader reader = new BufferedReader( new InputStreamReader( socket.getInputStream(), StandardCharsets.UTF_8 ) );
+            Writer writer = new OutputStreamWriter( socket.getOutputStream(), StandardCharsets.UTF_8 );
+
+            writer.write( "add(2, 4)\n" );
+            writer.flush();
+            assertEquals( "6", reader.readLine() );
+
+            // pipelined requests are answered in order
+            writer.write( "let(a, 5, add(a, a))\ndiv(1, 0)\nadd(1,\nadd(2, 4)\n" );
+            writer.flush();
+            assertEquals( "10", reader.readLine() );
+            assertEquals( "ERROR: Division by zero", reader.readLine() );
+            assertTrue( reader.readLine().startsWith( "ERROR: " ) );
+            assertEquals( "6", reader.readLine() );
+        }
+        finally
+        {
+            socket.close();
+        }
+    }
+
+    public void testConcurrentConnections() throws Exception
+    {
+        Thread[] clients = new Thread[4];
+        final Throwable[] failure = new Throwable[1];
+
+        for ( int c = 0; c < clients.length; ++c )
+        {
+            final int client = c;
+            clients[c] = new Thread()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        Socket socket = new Socket( InetAddress.getLoopbackAddress(), server.getPort() );
+                        try
+                        {
+                            BufferedReader reader = new BufferedReader( new InputStreamReader( socket.getInputStream(), StandardCharsets.UTF_8 ) );
+                            Writer writer = new OutputStreamWriter( socket.getOutputStream(), StandardCharsets.UTF_8 );
+                            for ( int i = 0; i < 200; ++i )
+                            {
+                                writer.write( "mult(" + client + ", " + i + ")\n" );
+                                writer.flush();
+                                assertEquals( String.valueOf( client * i ), reader.readLine() );
+                            }
+                        }
+                        finally
+                        {
+                            socket.close();
+                        }
+                    }
+                    catch ( Throwable t )
+                    {
+                        failure[0] = t;
+                    }
+                }
+            };
+            clients[c].start();
+        }
+
+        for ( Thread client : clients )
+        {
+            client.join();
+        }
+
+        if ( failure[0] != null )
+        {
+            throw new AssertionError( failure[0] );
+        }
+    }
+}
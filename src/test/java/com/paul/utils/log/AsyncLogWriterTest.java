@@ -0,0 +1,160 @@
+package com.paul.utils.log;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.concurrent.CountDownLatch;
+
+import com.paul.utils.log.AsyncLogWriter.OverflowPolicy;
+import com.paul.utils.log.SimpleLogger.Level;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for the background log writer.
+ */
+public class AsyncLogWriterTest 
+    extends TestCase
+{
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public AsyncLogWriterTest( String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( AsyncLogWriterTest.class );
+    }
+
+    public void testCloseWritesEveryMessage() throws Exception
+    {
+        StringWriter output = new StringWriter();
+        final AsyncLogWriter writer = new AsyncLogWriter( new PrintWriter( output ), 16, OverflowPolicy.BLOCK );
+
+        Thread[] producers = new Thread[4];
+        for ( int p = 0; p < producers.length; ++p )
+        {
+            final int producer = p;
+            producers[p] = new Thread()
+            {
+                public void run()
+                {
+                    for ( int i = 0; i < 1000; ++i )
+                    {
+                        writer.append( Level.INFO, producer + ":" + i, null );
+                    }
+                }
+            };
+            producers[p].start();
+        }
+        for ( Thread producer : producers )
+        {
+            producer.join();
+        }
+        writer.close();
+
+        String[] lines = output.toString().split( System.lineSeparator() );
+        assertEquals( 4000, lines.length );
+        assertEquals( 0, writer.getDroppedCount() );
+
+        // messages of one producer stay in order
+        int[] next = new int[producers.length];
+        for ( String line : lines )
+        {
+            assertTrue( line, line.matches( "\\d{4}-\\d\\d-\\d\\d \\d\\d-\\d\\d-\\d\\d-\\d{3} INFO: \\d:\\d+" ) );
+            String[] message = line.substring( line.indexOf( ": " ) + 2 ).split( ":" );
+            int producer = Integer.parseInt( message[0] );
+            assertEquals( next[producer]++, Integer.parseInt( message[1] ) );
+        }
+    }
+
+    public void testMessagesRacingCloseAreWrittenOrDropped() throws Exception
+    {
+        for ( int round = 0; round < 50; ++round )
+        {
+            StringWriter output = new StringWriter();
+            final AsyncLogWriter writer = new AsyncLogWriter( new PrintWriter( output ), 1024, OverflowPolicy.BLOCK );
+
+            Thread[] producers = new Thread[4];
+            for ( int p = 0; p < producers.length; ++p )
+            {
+                producers[p] = new Thread()
+                {
+                    public void run()
+                    {
+                        for ( int i = 0; i < 500; ++i )
+                        {
+                            writer.append( Level.INFO, "message " + i, null );
+                        }
+                    }
+                };
+                producers[p].start();
+            }
+            writer.close();
+            for ( Thread producer : producers )
+            {
+                producer.join();
+            }
+
+            String text = output.toString();
+            int written = text.isEmpty() ? 0 : text.split( System.lineSeparator() ).length;
+            assertEquals( 2000, written + writer.getDroppedCount() );
+        }
+    }
+
+    public void testDropWhenFull() throws Exception
+    {
+        final CountDownLatch release = new CountDownLatch( 1 );
+        Writer blocked = new Writer()
+        {
+            public void write( char[] buffer, int offset, int length ) throws IOException
+            {
+                try
+                {
+                    release.await();
+                }
+                catch ( InterruptedException iex )
+                {
+                    throw new IOException( iex );
+                }
+            }
+
+            public void flush()
+            {
+            }
+
+            public void close()
+            {
+            }
+        };
+
+        AsyncLogWriter writer = new AsyncLogWriter( new PrintWriter( blocked ), 8, OverflowPolicy.DROP );
+
+        int accepted = 0;
+        for ( int i = 0; i < 100; ++i )
+        {
+            if ( writer.append( Level.ERROR, "message " + i, null ) )
+            {
+                ++accepted;
+            }
+        }
+
+        // the writer thread holds at most one message while blocked
+        assertTrue( "accepted " + accepted, accepted <= 9 );
+        assertEquals( 100 - accepted, writer.getDroppedCount() );
+
+        release.countDown();
+        writer.close();
+    }
+}
@@ -0,0 +1,127 @@
+package com.paul.utils.log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for the size bounded log files.
+ */
+public class RollingLogFileTest
+    extends TestCase
+{
+    private File directory;
+
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public RollingLogFileTest( String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( RollingLogFileTest.class );
+    }
+
+    protected void setUp() throws IOException
+    {
+        directory = Files.createTempDirectory( "logs" ).toFile();
+    }
+
+    protected void tearDown()
+    {
+        for ( File file : directory.listFiles() )
+        {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    public void testRollsOnSizeAndKeepsNewestFiles() throws Exception
+    {
+        RollingLogFile logFile = new RollingLogFile( directory, 100, 0, 3, false );
+        PrintWriter writer = new PrintWriter( logFile, true );
+
+        for ( int i = 0; i < 50; ++i )
+        {
+            writer.println( "message number " + i );
+        }
+        File current = logFile.getCurrentFile();
+        writer.close();
+
+        String[] names = directory.list();
+        assertEquals( 3, names.length );
+
+        String last = new String( Files.readAllBytes( current.toPath() ), "UTF-8" );
+        assertTrue( last, last.endsWith( "message number 49" + System.lineSeparator() ) );
+        assertTrue( last.length() <= 100 + 20 );
+    }
+
+    public void testCompressesRolledFiles() throws Exception
+    {
+        RollingLogFile logFile = new RollingLogFile( directory, 10, 0, 0, true );
+        PrintWriter writer = new PrintWriter( logFile, true );
+
+        writer.println( "first file line" );
+        writer.println( "second file line" );
+        writer.close();
+
+        int compressed = 0;
+        int plain = 0;
+        for ( String name : directory.list() )
+        {
+            if ( name.endsWith( RollingLogFile.COMPRESSED_SUFFIX ) )
+            {
+                ++compressed;
+            }
+            else
+            {
+                ++plain;
+            }
+        }
+        assertEquals( 2, compressed );
+        assertEquals( 1, plain );
+    }
+
+    public void testDeletesCompressedFilesOverTheLimit() throws Exception
+    {
+        RollingLogFile logFile = new RollingLogFile( directory, 10, 0, 1, true );
+        PrintWriter writer = new PrintWriter( logFile, true );
+
+        for ( int i = 0; i < 5; ++i )
+        {
+            writer.println( "rolled file " + i );
+        }
+        File current = logFile.getCurrentFile();
+        writer.close();
+
+        String[] names = directory.list();
+        assertEquals( 1, names.length );
+        assertEquals( current.getName(), names[0] );
+    }
+
+    public void testCountsFilesFromEarlierRuns() throws Exception
+    {
+        for ( int run = 0; run < 3; ++run )
+        {
+            RollingLogFile logFile = new RollingLogFile( directory, 10, 0, 2, false );
+            PrintWriter writer = new PrintWriter( logFile, true );
+            writer.println( "run " + run );
+            writer.close();
+        }
+
+        assertEquals( 2, directory.list().length );
+    }
+}
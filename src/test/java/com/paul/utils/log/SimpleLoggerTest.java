@@ -0,0 +1,73 @@
+package com.paul.utils.log;
+
+import java.util.function.Supplier;
+
+import com.paul.utils.log.SimpleLogger.Level;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for the lazy message construction of the logger.
+ */
+public class SimpleLoggerTest
+    extends TestCase
+{
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public SimpleLoggerTest( String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( SimpleLoggerTest.class );
+    }
+
+    public void testIsEnabled()
+    {
+        SimpleLogger logger = new SimpleLogger();
+
+        assertFalse( logger.isEnabled( Level.ERROR ) );
+
+        logger.setLevel( Level.INFO );
+        assertFalse( logger.isEnabled( Level.DEBUG ) );
+        assertTrue( logger.isEnabled( Level.INFO ) );
+        assertTrue( logger.isEnabled( Level.ERROR ) );
+
+        logger.setLevel( Level.ERROR );
+        assertFalse( logger.isEnabled( Level.INFO ) );
+        assertTrue( logger.isEnabled( Level.ERROR ) );
+    }
+
+    public void testSupplierNotCalledWhenDisabled()
+    {
+        SimpleLogger logger = new SimpleLogger();
+        logger.setLevel( Level.ERROR );
+
+        logger.logMessage( Level.DEBUG, new Supplier<String>()
+        {
+            public String get()
+            {
+                fail( "message built for a disabled level" );
+                return null;
+            }
+        } );
+    }
+
+    public void testFormatArgs()
+    {
+        assertEquals( "add(1,2)", SimpleLogger.formatArgs( "{}({},{})", "add", 1, 2 ) );
+        assertEquals( "x=null", SimpleLogger.formatArgs( "{}={}", "x", null ) );
+        assertEquals( "no placeholders", SimpleLogger.formatArgs( "no placeholders", "ignored" ) );
+        assertEquals( "a {} left", SimpleLogger.formatArgs( "{} {} left", "a" ) );
+    }
+}
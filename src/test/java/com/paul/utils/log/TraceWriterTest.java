@@ -0,0 +1,130 @@
+package com.paul.utils.log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+
+import com.paul.utils.log.SimpleLogger.Level;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for the binary trace and its decoder.
+ */
+public class TraceWriterTest
+    extends TestCase
+{
+    private File file;
+
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public TraceWriterTest( String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( TraceWriterTest.class );
+    }
+
+    protected void setUp() throws IOException
+    {
+        file = File.createTempFile( "trace", ".bin" );
+    }
+
+    protected void tearDown()
+    {
+        file.delete();
+    }
+
+    public void testDecodesEveryEvent() throws Exception
+    {
+        TraceWriter trace = new TraceWriter( file.toPath() );
+        trace.push( Level.DEBUG, "add", 1 );
+        trace.pop( Level.INFO, "-12", 3 );
+        trace.load( Level.INFO, "x", 42 );
+        trace.store( Level.INFO, "x", "null" );
+        trace.evaluate( Level.INFO, "let", "x", "5" );
+        trace.operate( Level.INFO, "div", 7, -2 );
+        trace.close();
+
+        String[] lines = decode();
+
+        assertEquals( 6, lines.length );
+        assertEquals( "DEBUG: Pushing element on stack: add (size: 1)", lines[0] );
+        assertEquals( "INFO: Popping stack element : -12 (remaining size: 3)", lines[1] );
+        assertEquals( "INFO: Getting variable from table: x=42", lines[2] );
+        assertEquals( "INFO: Setting variable in table: x=null", lines[3] );
+        assertEquals( "INFO: Evaluating Expression: let(x,5)", lines[4] );
+        assertEquals( "INFO: Performing Operation: div(7,-2)", lines[5] );
+    }
+
+    public void testLongNamesAcrossRegions() throws Exception
+    {
+        String longName = "averyveryverylongvariablenamethatspansrecords";
+
+        TraceWriter trace = new TraceWriter( file.toPath(), 3 * TraceWriter.RECORD_SIZE );
+        for ( int i = 0; i < 100; ++i )
+        {
+            trace.store( Level.INFO, longName, String.valueOf( i ) );
+        }
+        trace.close();
+
+        assertEquals( ( 1 + 2 + 100 ) * TraceWriter.RECORD_SIZE, file.length() );
+
+        String[] lines = decode();
+        assertEquals( 100, lines.length );
+        assertEquals( "INFO: Setting variable in table: " + longName + "=99", lines[99] );
+    }
+
+    public void testRejectsOtherFiles() throws Exception
+    {
+        InputStream in = new FileInputStream( file );
+        try
+        {
+            new TraceDecoder( in ).decode( new StringWriter() );
+            fail( "decoded an empty file" );
+        }
+        catch ( IOException expected )
+        {
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    // decoded lines without their timestamps
+    private String[] decode() throws IOException
+    {
+        StringWriter out = new StringWriter();
+        InputStream in = new FileInputStream( file );
+        try
+        {
+            new TraceDecoder( in ).decode( out );
+        }
+        finally
+        {
+            in.close();
+        }
+
+        String[] lines = out.toString().split( "\n" );
+        for ( int i = 0; i < lines.length; ++i )
+        {
+            // date and time are the first two fields
+            lines[i] = lines[i].substring( lines[i].indexOf( ' ', lines[i].indexOf( ' ' ) + 1 ) + 1 );
+        }
+        return lines;
+    }
+}